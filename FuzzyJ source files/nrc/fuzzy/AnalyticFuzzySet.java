@@ -0,0 +1,64 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+
+/**
+ * An interface implemented by FuzzySets whose points are generated from a
+ * closed form curve (for example the GaussianFuzzySet or the SFuzzySet).
+ * The points of such a FuzzySet are only an approximation of the curve, but
+ * the curve itself is still known. This lets the modifiers that raise
+ * membership values to a power (very, extremely, somewhat, plus, etc.)
+ * work from the exact curve rather than from the approximating points.
+ * For some families the result has an exact form in the same family; for
+ * example <code>very</code> applied to a gaussian with standard deviation 
+ * sigma is a gaussian with standard deviation sigma/sqrt(2). For the others
+ * the power is recorded along with the original curve (see PowerFuzzySet)
+ * so that a chain of modifiers such as "very very extremely" is applied
+ * as a single exponent (2*2*3 = 12) to the original curve.
+ * <p>
+ * Note that a FuzzySet only behaves as an analytic set while its points are the
+ * ones generated from the curve (see the <code>isAnalytic</code> method of FuzzySet).
+ * Once points are added or removed (for example by confining the
+ * set to the Universe of Discourse) it is treated like any other FuzzySet.
+ *
+ * @see FuzzySet
+ * @see PowerFuzzySet
+ * @see ModifierFunction
+ * @see GaussianFuzzySet
+ * @see SFuzzySet
+ */
+public interface AnalyticFuzzySet
+{
+    /**
+     * Returns the membership value of the curve that generated the FuzzySet 
+     * at the specified x value. Unlike getMembership, which interpolates 
+     * between the points of the FuzzySet, this is the exact value of the curve.
+     *
+     * @param x the x value at which to find the membership value of the curve
+     * @return the membership value of the curve at x
+     */
+    public double getAnalyticMembership(double x);
+
+    /**
+     * Returns a new FuzzySet whose membership values are those of this 
+     * FuzzySet's curve raised to the specified power. When the result has a 
+     * closed form in the same family (such as a gaussian raised to a power
+     * of 1 or more) the new FuzzySet is an instance of that family, otherwise
+     * it is a PowerFuzzySet. In either case the result is itself an
+     * AnalyticFuzzySet, so that powers can be combined. The x range of the 
+     * result is never larger than the x range of this FuzzySet.
+     *
+     * @param exponent the power (exponent) to which the membership values
+     *                 are raised; must be greater than 0
+     * @return a new FuzzySet representing this FuzzySet raised to the power
+     */
+    public FuzzySet power(double exponent);
+}
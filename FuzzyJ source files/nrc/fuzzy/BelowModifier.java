@@ -120,6 +120,7 @@ import java.io.*;
      */
     public FuzzySet call(FuzzySet a)
     {
+        a.ensurePoints();
         FuzzySet fs = new FuzzySet();
         double maxY = 0, maxPos = 0;
         double x, y;
@@ -0,0 +1,177 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+package nrc.fuzzy;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A CompiledFuzzyRules is a set of FuzzyRules that has been turned into a generated
+ * class by the FuzzyRuleCompiler. The generated execute method is straight-line code
+ * written for the particular rules: the membership functions of the antecedents are 
+ * inlined as comparisons against constants, the degree of fulfillment (DOF) of each rule 
+ * is a few arithmetic operations on local variables and only the rules that fire add 
+ * their conclusions to the outputs. No objects are created when the rules are fired.
+ * <p>
+ * The results are the same as those of a FuzzyRuleBatch for the same rules (the
+ * union of the rule outputs is formed exactly and defuzzified with the moment or 
+ * center of area method). If no rule fires the output is Double.NaN.
+ * <p>
+ * A CompiledFuzzyRules holds the arrays it works in and so it must not be used by more 
+ * than one thread at a time; use copy to get another instance of the same 
+ * generated class for each thread.
+ *
+ * @see FuzzyRuleCompiler
+ * @see FuzzyRuleBatch
+ */
+public abstract class CompiledFuzzyRules
+{
+    /** the prepared rules and the arrays that the union of the outputs is formed in */
+    final FuzzyRuleBatch batch;
+    /** the values passed to the AntecedentCombineOperator of a rule: [rule][antecedent] */
+    final double[][] matchValues;
+    private final AntecedentCombineOperator[] combineOperators;
+    /** the reused arrays of the single record execute(double[][], double[][], int, int) */
+    private final double[] recordInputs;
+    private final double[] recordOutputs;
+    
+    /** the generated source and a handle on the constructor of the generated class */
+    String source;
+    MethodHandle constructor;
+
+    /**
+     * Called by the constructor of the generated class.
+     */
+    CompiledFuzzyRules(FuzzyRuleBatch batch)
+    {
+        this.batch = batch;
+        matchValues = new double[batch.numRules][];
+        for (int r=0; r<batch.numRules; r++)
+            matchValues[r] = new double[batch.antecedentInput[r].length];
+        combineOperators = batch.ruleCombineOperator;
+        recordInputs = new double[batch.inputVariables.length];
+        recordOutputs = new double[batch.outputVariables.length];
+    }
+
+    /**
+     * Fire the rules for one record of crisp input values.
+     *
+     * @param inputs the crisp value of each input variable, in the order of 
+     *        getInputVariables
+     * @param outputs an array to hold the defuzzified value of each output variable, 
+     *        in the order of getOutputVariables
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     */
+    public abstract void execute(double[] inputs, double[] outputs)
+        throws XValueOutsideUODException;
+
+    /**
+     * Fire the rules for the records from <code>from</code> to <code>from+count-1</code>
+     * of the input columns, writing the results to the same records of the output columns
+     * (the same layout as is used by FuzzyRuleBatch).
+     *
+     * @param inputs one column of crisp values for each input variable
+     * @param outputs one column for each output variable to hold the defuzzified results
+     * @param from the first record to process
+     * @param count the number of records to process
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     */
+    public void execute(double[][] inputs, double[][] outputs, int from, int count)
+        throws XValueOutsideUODException
+    {
+        for (int i=from; i<from+count; i++)
+        {   for (int v=0; v<recordInputs.length; v++)
+                recordInputs[v] = inputs[v][i];
+            execute(recordInputs, recordOutputs);
+            for (int o=0; o<recordOutputs.length; o++)
+                outputs[o][i] = recordOutputs[o];
+        }
+    }
+
+    /**
+     * Returns the FuzzyVariables of the inputs, in order.
+     *
+     * @return an array with the input FuzzyVariables
+     */
+    public FuzzyVariable[] getInputVariables()
+    {
+        return batch.inputVariables.clone();
+    }
+
+    /**
+     * Returns the FuzzyVariables of the outputs, in order.
+     *
+     * @return an array with the output FuzzyVariables
+     */
+    public FuzzyVariable[] getOutputVariables()
+    {
+        return batch.outputVariables.clone();
+    }
+
+    /**
+     * Returns the Java source of the generated class.
+     *
+     * @return the source code that was compiled
+     */
+    public String getSource()
+    {
+        return source;
+    }
+
+    /**
+     * Returns a new instance of the same generated class, with its own arrays to work in,
+     * for use by another thread. Nothing is compiled.
+     *
+     * @return a new CompiledFuzzyRules for the same rules
+     */
+    public CompiledFuzzyRules copy()
+    {
+        try
+        {   CompiledFuzzyRules c = (CompiledFuzzyRules)constructor.invoke(new FuzzyRuleBatch(batch));
+            c.source = source;
+            c.constructor = constructor;
+            return c;
+        }
+        catch (RuntimeException e)
+        {   throw e;
+        }
+        catch (Throwable t)
+        {   throw new RuntimeException("Unable to create a copy of the compiled rules: " + t);
+        }
+    }
+
+    // The methods used by the generated code
+
+    /** report an input value that is outside the universe of discourse */
+    final void outside(int input, double x)
+        throws XValueOutsideUODException
+    {
+        throw new XValueOutsideUODException("Input value " + x + " is outside the Universe of Discourse of " + 
+                                            batch.inputVariables[input].getName());
+    }
+
+    /** the DOF of a rule whose AntecedentCombineOperator is not inlined */
+    final double combine(int rule, double[] values)
+    {
+        return combineOperators[rule].execute(values);
+    }
+
+    /** add the k'th conclusion of output o, limited by the DOF of its rule */
+    final void fire(int o, int k, double dof)
+    {
+        batch.addToUnion(o, k, dof);
+    }
+
+    /** the defuzzified union of the rule outputs for output o */
+    final double defuzzify(int o)
+    {
+        return batch.defuzzifyUnion(o);
+    }
+}
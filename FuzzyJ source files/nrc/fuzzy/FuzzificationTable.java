@@ -0,0 +1,298 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+import java.util.*;
+
+/**
+ * The merged, sorted table of the breakpoints (point x values) of a group of fuzzy 
+ * sets, such as those of the terms of a FuzzyVariable, used to find the membership 
+ * values of a crisp x value in all of the sets at once (see FuzzyVariable.fuzzify).
+ * The x axis is divided into regions by the breakpoints: region 0 is before the first breakpoint, region k is between breakpoints
+ * k-1 and k, and the last region is after the last breakpoint. In each region
+ * the membership function of each term is a straight line (a constant in the 
+ * first and last regions) and only the terms that are not zero in the region are 
+ * stored. The exact membership values at the breakpoints are stored as well
+ * since a fuzzy set may have a vertical edge at a breakpoint.
+ * <p>
+ * A table never changes once it is built so it can be shared by many threads.
+ *
+ * @see FuzzyVariable
+ */
+final class FuzzificationTable
+{
+    /** the number of terms */
+    final int numTerms;
+    /** the sorted, distinct x values of the points of all of the term sets */
+    final double[] breakpoints;
+    /** the terms not zero in region k are entries regionStart[k] to regionStart[k+1]-1 */
+    final int[] regionStart;
+    final int[] regionTerm;
+    final double[] regionSlope;
+    final double[] regionIntercept;
+    /** the terms not zero at breakpoint k are entries pointStart[k] to pointStart[k+1]-1 */
+    final int[] pointStart;
+    final int[] pointTerm;
+    final double[] pointMembership;
+    /** true if the terms form a Ruspini partition */
+    final boolean ruspini;
+    /** 
+     * the spacing of the breakpoints if they are evenly spaced (each gap is within
+     * Parameters.FUZZY_TOLERANCE of the spacing), otherwise 0.0 
+     */
+    final double spacing;
+
+    /**
+     * The location to pass to fuzzify for a column whose values were not set by 
+     * this table, so that all of its values are cleared.
+     */
+    static final int UNKNOWN_LOCATION = Integer.MIN_VALUE;
+
+    /**
+     * Create a table from the arrays of one built earlier (see FuzzyRuleBaseSnapshot).
+     */
+    FuzzificationTable(int numTerms, double[] breakpoints, int[] regionStart, 
+                       int[] regionTerm, double[] regionSlope, double[] regionIntercept,
+                       int[] pointStart, int[] pointTerm, double[] pointMembership,
+                       boolean ruspini, double spacing)
+    {
+        this.numTerms = numTerms;
+        this.breakpoints = breakpoints;
+        this.regionStart = regionStart;
+        this.regionTerm = regionTerm;
+        this.regionSlope = regionSlope;
+        this.regionIntercept = regionIntercept;
+        this.pointStart = pointStart;
+        this.pointTerm = pointTerm;
+        this.pointMembership = pointMembership;
+        this.ruspini = ruspini;
+        this.spacing = spacing;
+    }
+
+    FuzzificationTable(FuzzySet[] sets)
+    {
+        numTerms = sets.length;
+
+        // merge the x values of all of the sets
+        int total = 0;
+        for (int t=0; t<numTerms; t++)
+           total += sets[t].size();
+        double[] all = new double[total];
+        total = 0;
+        for (int t=0; t<numTerms; t++)
+           for (int i=0; i<sets[t].size(); i++)
+              all[total++] = sets[t].getX(i);
+        Arrays.sort(all);
+        int numBreakpoints = 0;
+        for (int i=0; i<total; i++)
+           if (numBreakpoints == 0 || all[i] != all[numBreakpoints-1])
+              all[numBreakpoints++] = all[i];
+        breakpoints = new double[numBreakpoints];
+        System.arraycopy(all, 0, breakpoints, 0, numBreakpoints);
+
+        // the membership lines of the terms in each region (regions 0 and 
+        // numBreakpoints are the constant values beyond the ends) and the
+        // exact membership values at each breakpoint
+        int numRegions = (numBreakpoints == 0) ? 0 : numBreakpoints+1;
+        regionStart = new int[numRegions+1];
+        pointStart = new int[numBreakpoints+1];
+        int[] rTerm = new int[numRegions*numTerms];
+        double[] rSlope = new double[numRegions*numTerms];
+        double[] rIntercept = new double[numRegions*numTerms];
+        int[] pTerm = new int[numBreakpoints*numTerms];
+        double[] pMembership = new double[numBreakpoints*numTerms];
+        boolean isRuspini = numTerms > 0;
+        int n = 0;
+        for (int k=0; k<numRegions; k++)
+        {   regionStart[k] = n;
+            double xa, xb;
+            if (k == 0)
+            {   xa = breakpoints[0] - 2.0; xb = breakpoints[0] - 1.0; }
+            else if (k == numBreakpoints)
+            {   xa = breakpoints[k-1] + 1.0; xb = breakpoints[k-1] + 2.0; }
+            else 
+            {   double width = breakpoints[k] - breakpoints[k-1];
+                xa = breakpoints[k-1] + 0.25*width; 
+                xb = breakpoints[k-1] + 0.75*width; 
+            }
+            double sumA = 0.0, sumB = 0.0;
+            for (int t=0; t<numTerms; t++)
+            {   double ya = membership(sets[t], xa);
+                double yb = membership(sets[t], xb);
+                if (ya > 0.0 || yb > 0.0)
+                {   double slope = (k == 0 || k == numBreakpoints) ? 0.0 : (yb - ya)/(xb - xa);
+                    rTerm[n] = t;
+                    rSlope[n] = slope;
+                    rIntercept[n] = ya - slope*xa;
+                    n++;
+                    sumA += ya;
+                    sumB += yb;
+                }
+            }
+            if (n - regionStart[k] > 2 || !isOne(sumA) || !isOne(sumB))
+                isRuspini = false;
+        }
+        regionStart[numRegions] = n;
+        regionTerm = new int[n];
+        regionSlope = new double[n];
+        regionIntercept = new double[n];
+        System.arraycopy(rTerm, 0, regionTerm, 0, n);
+        System.arraycopy(rSlope, 0, regionSlope, 0, n);
+        System.arraycopy(rIntercept, 0, regionIntercept, 0, n);
+
+        n = 0;
+        for (int k=0; k<numBreakpoints; k++)
+        {   pointStart[k] = n;
+            double sum = 0.0;
+            for (int t=0; t<numTerms; t++)
+            {   double y = membership(sets[t], breakpoints[k]);
+                if (y > 0.0)
+                {   pTerm[n] = t;
+                    pMembership[n] = y;
+                    n++;
+                    sum += y;
+                }
+            }
+            if (n - pointStart[k] > 2 || !isOne(sum))
+                isRuspini = false;
+        }
+        pointStart[numBreakpoints] = n;
+        pointTerm = new int[n];
+        pointMembership = new double[n];
+        System.arraycopy(pTerm, 0, pointTerm, 0, n);
+        System.arraycopy(pMembership, 0, pointMembership, 0, n);
+        ruspini = isRuspini;
+
+        // evenly spaced breakpoints let the region be found without a search
+        double space = 0.0;
+        if (numBreakpoints > 1)
+        {   space = (breakpoints[numBreakpoints-1] - breakpoints[0])/(numBreakpoints-1);
+            for (int k=1; k<numBreakpoints; k++)
+               if (Math.abs(breakpoints[k] - breakpoints[k-1] - space) > Parameters.FUZZY_TOLERANCE)
+               {  space = 0.0;
+                  break;
+               }
+        }
+        spacing = space;
+    }
+
+    /** 
+     * the membership value of a term set at x (an empty set has none) 
+     */
+    private static double membership(FuzzySet fs, double x)
+    {
+        double y = fs.getMembership(x);
+        return (y < 0.0) ? 0.0 : y;
+    }
+
+    private static boolean isOne(double sum)
+    {
+        return Math.abs(sum - 1.0) <= Parameters.FUZZY_TOLERANCE;
+    }
+
+    /**
+     * Finds x in the table. Returns k if x is in region k (before breakpoint k) or
+     * -(k+1) if x is exactly at breakpoint k.
+     */
+    int locate(double x)
+    {
+        int numBreakpoints = breakpoints.length;
+
+        // find index, the first breakpoint >= x
+        int index;
+        if (ruspini && spacing > 0.0)
+        {   // guess from the spacing and correct for any rounding; the guess is only
+            // made for evenly spaced breakpoints (spacing is 0.0 otherwise) since then
+            // it is at most one place out and the loops below take at most one step 
+            // (they would still find index for uneven breakpoints, but by a linear walk)
+            index = (int)Math.ceil((x - breakpoints[0])/spacing);
+            if (index < 0) index = 0;
+            else if (index > numBreakpoints) index = numBreakpoints;
+            while (index > 0 && breakpoints[index-1] >= x) index--;
+            while (index < numBreakpoints && breakpoints[index] < x) index++;
+        }
+        else
+        {   int low = 0, high = numBreakpoints;
+            while (low < high)
+            {   int mid = (low + high) >>> 1;
+                if (breakpoints[mid] < x) low = mid + 1;
+                else                      high = mid;
+            }
+            index = low;
+        }
+
+        if (index < numBreakpoints && breakpoints[index] == x)
+            return -(index+1);
+        return index;
+    }
+
+    /**
+     * Sets out[t] to the membership value of x in set t, for each of the sets.
+     * All of out is cleared first since it may hold anything.
+     */
+    void fuzzify(double x, double[] out)
+    {
+        for (int t=0; t<numTerms; t++)
+            out[t] = 0.0;
+        if (breakpoints.length == 0) return;
+
+        int index = locate(x);
+        if (index < 0)
+        {   // exactly at a breakpoint
+            index = -index-1;
+            for (int i=pointStart[index]; i<pointStart[index+1]; i++)
+                out[pointTerm[i]] = pointMembership[i];
+        }
+        else
+        {   // in the region before breakpoint index
+            for (int i=regionStart[index]; i<regionStart[index+1]; i++)
+                out[regionTerm[i]] = regionIntercept[i] + regionSlope[i]*x;
+        }
+    }
+
+    /**
+     * Sets out[t][column] to the membership value of x in set t, for each of the sets.
+     * Used to fill the membership values for a column of x values. Only the terms 
+     * that were not zero at the previous location are cleared, since the values of
+     * the others are already zero; so just a few values are written when there 
+     * are many terms.
+     *
+     * @param previous the location returned when the column was last filled, or
+     *        UNKNOWN_LOCATION to clear all of the column's values
+     * @return the location of x (see locate), to pass to the next call for the column
+     */
+    int fuzzify(double x, double[][] out, int column, int previous)
+    {
+        if (previous == UNKNOWN_LOCATION)
+        {   for (int t=0; t<numTerms; t++)
+                out[t][column] = 0.0;
+        }
+        else if (previous < 0)
+        {   int k = -previous-1;
+            for (int i=pointStart[k]; i<pointStart[k+1]; i++)
+                out[pointTerm[i]][column] = 0.0;
+        }
+        else
+        {   for (int i=regionStart[previous]; i<regionStart[previous+1]; i++)
+                out[regionTerm[i]][column] = 0.0;
+        }
+        if (breakpoints.length == 0) return UNKNOWN_LOCATION;
+
+        int location = locate(x);
+        if (location < 0)
+        {   int index = -location-1;
+            for (int i=pointStart[index]; i<pointStart[index+1]; i++)
+                out[pointTerm[i]][column] = pointMembership[i];
+        }
+        else
+        {   for (int i=regionStart[location]; i<regionStart[location+1]; i++)
+                out[regionTerm[i]][column] = regionIntercept[i] + regionSlope[i]*x;
+        }
+        return location;
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+import java.lang.ref.WeakReference;
+import java.util.Vector;
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counters of the objects allocated by FuzzyJ and the size of the fuzzy sets that 
+ * set operations produce, to find the expressions and rule executors that create 
+ * the most garbage and check that changes made to reduce it work. When enabled they
+ * count:
+ * <ul>
+ * <li> the FuzzySets created (of any class), the SetPoints allocated and the 
+ *      FuzzyValueVectors created;
+ * <li> the set operations done, by type: union, intersection and sum of two sets
+ *      (FuzzySet.fuzzyUnion, fuzzyIntersection, fuzzySum), modifiers applied 
+ *      through the Modifiers class (including those of linguistic expressions), 
+ *      clipping (FuzzySet.horizontalIntersection, as done by the Mamdani and 
+ *      Tsukamoto executors) and scaling (FuzzySet.fuzzyScale, as done by the 
+ *      Larsen executor);
+ * <li> the number of points in the sets those operations produced: the mean 
+ *      and the largest (a PowerFuzzySet produced by a modifier only finds its
+ *      points when they are first needed, so it is not counted).
+ * </ul>
+ * The counters are off by default, when counting costs a test of a flag. When they
+ * are on each thread counts in its own counters, with no synchronization; 
+ * snapshot adds up the counters of all of the threads and snapshotCurrentThread
+ * gives those of the calling thread. Only a thread writes to its own counters: 
+ * resetCounts marks them all out of date, and each thread sets its counters to 0
+ * the next time it counts something (until then they are not included in a 
+ * snapshot). Counts made while a snapshot or reset is being done on another thread 
+ * may or may not be included in it. The counters can also be 
+ * read and reset through JMX once registerMBean has been called. For example,
+ * <pre><code>
+ *    FuzzyAllocationCounters.setCounting(true);
+ *    FuzzyAllocationCounters.resetCounts();
+ *    ... fire the rules
+ *    FuzzyAllocationCounters.Snapshot counts = FuzzyAllocationCounters.snapshot();
+ *    System.out.println(counts);
+ * </code></pre>
+ *
+ * @see FuzzyAllocationCountersMBean
+ */
+public class FuzzyAllocationCounters implements FuzzyAllocationCountersMBean
+{
+    /** An operation type: the union of two sets */
+    public static final int UNION = 0;
+    /** An operation type: the intersection of two sets */
+    public static final int INTERSECTION = 1;
+    /** An operation type: the sum of two sets */
+    public static final int SUM = 2;
+    /** An operation type: a modifier applied to a set */
+    public static final int MODIFIER = 3;
+    /** An operation type: a set clipped at a membership value */
+    public static final int CLIP = 4;
+    /** An operation type: a set scaled to a membership value */
+    public static final int SCALE = 5;
+
+    /** The names of the operation types */
+    public static final String[] OPERATION_NAMES = 
+        {"union", "intersection", "sum", "modifier", "clip", "scale"};
+
+    /** The name the MBean is registered under */
+    public static final String MBEAN_NAME = "nrc.fuzzy:type=AllocationCounters";
+
+    /** True when the counters are counting; tested before anything is counted */
+    static volatile boolean enabled = false;
+
+    /**
+     * The counts of one thread (or, added together, of all threads).
+     */
+    public static class Snapshot
+    {
+        long fuzzySets;
+        long setPoints;
+        long fuzzyValueVectors;
+        long setsProduced;
+        long pointsProduced;
+        long maximumPoints;
+        long[] operations = new long[OPERATION_NAMES.length];
+
+        Snapshot()
+        {
+        }
+
+        void add( Snapshot s )
+        {
+            fuzzySets += s.fuzzySets;
+            setPoints += s.setPoints;
+            fuzzyValueVectors += s.fuzzyValueVectors;
+            setsProduced += s.setsProduced;
+            pointsProduced += s.pointsProduced;
+            maximumPoints = Math.max(maximumPoints, s.maximumPoints);
+            for (int i=0; i<operations.length; i++)
+                operations[i] += s.operations[i];
+        }
+
+        void clear()
+        {
+            fuzzySets = setPoints = fuzzyValueVectors = 0;
+            setsProduced = pointsProduced = maximumPoints = 0;
+            for (int i=0; i<operations.length; i++)
+                operations[i] = 0;
+        }
+
+        /** @return the number of FuzzySets created */
+        public long getFuzzySetsCreated() { return fuzzySets; }
+
+        /** @return the number of SetPoints allocated */
+        public long getSetPointsAllocated() { return setPoints; }
+
+        /** @return the number of FuzzyValueVectors created */
+        public long getFuzzyValueVectorsCreated() { return fuzzyValueVectors; }
+
+        /** @return the number of sets produced by set operations */
+        public long getSetsProduced() { return setsProduced; }
+
+        /** @return the total number of points in the sets produced by set operations */
+        public long getPointsProduced() { return pointsProduced; }
+
+        /** @return the mean number of points in the sets produced by set operations
+         *          (0 if there were none) */
+        public double getAveragePointsPerSet() 
+        { 
+            return (setsProduced == 0) ? 0.0 : (double)pointsProduced/setsProduced; 
+        }
+
+        /** @return the largest number of points in a set produced by a set operation */
+        public long getMaximumPointsPerSet() { return maximumPoints; }
+
+        /**
+         * Get the number of operations of a type done.
+         *
+         * @param type the type: UNION, INTERSECTION, SUM, MODIFIER, CLIP or SCALE
+         * @return the number of operations
+         */
+        public long getOperations( int type ) { return operations[type]; }
+
+        /**
+         * Describe the counts.
+         *
+         * @return the description
+         */
+        public String toString()
+        {
+            StringBuffer sb = new StringBuffer();
+            sb.append("FuzzySets ").append(fuzzySets);
+            sb.append(", SetPoints ").append(setPoints);
+            sb.append(", FuzzyValueVectors ").append(fuzzyValueVectors);
+            sb.append(", sets produced ").append(setsProduced);
+            sb.append(" (mean points ").append(Math.round(getAveragePointsPerSet()*10.0)/10.0);
+            sb.append(", max ").append(maximumPoints).append(")");
+            for (int i=0; i<operations.length; i++)
+                sb.append(", ").append(OPERATION_NAMES[i]).append(" ").append(operations[i]);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The counters of a thread, kept until the thread has ended and its counts
+     * have been added to those of the ended threads.
+     */
+    private static class ThreadCounts extends Snapshot
+    {
+        WeakReference thread = new WeakReference(Thread.currentThread());
+        /** the number of resets done when the counts were last set to 0 */
+        int resets = FuzzyAllocationCounters.resets;
+    }
+
+    /** the number of times resetCounts has been called */
+    private static volatile int resets = 0;
+
+    /** the counters of each thread that has counted something */
+    private static Vector threadCounts = new Vector();
+
+    /** the counts of the threads that have ended */
+    private static Snapshot endedThreads = new Snapshot();
+
+    private static ThreadLocal counts = new ThreadLocal()
+        {   protected Object initialValue()
+            {   ThreadCounts c = new ThreadCounts();
+                register(c);
+                return c;
+            }
+        };
+
+    private static FuzzyAllocationCounters mbean = null;
+
+    /**
+     * The counters are used through the static methods; an instance is only 
+     * created to register as the MBean.
+     */
+    private FuzzyAllocationCounters()
+    {
+    }
+
+    /**
+     * Start or stop counting.
+     *
+     * @param on true to start counting, false to stop
+     */
+    public static void setCounting( boolean on )
+    {
+        enabled = on;
+    }
+
+    /**
+     * Find out if the counters are counting.
+     *
+     * @return true if they are
+     */
+    public static boolean isCounting()
+    {
+        return enabled;
+    }
+
+    private static Snapshot current()
+    {
+        ThreadCounts c = (ThreadCounts)counts.get();
+        if (c.resets != resets)
+        {   c.clear();
+            c.resets = resets;
+        }
+        return c;
+    }
+
+    /** Add the counters of a thread, first dropping those of the threads that have ended */
+    private static synchronized void register( ThreadCounts c )
+    {
+        pruneEndedThreads();
+        threadCounts.addElement(c);
+    }
+
+    /** 
+     * Add the counts of the threads that have ended to endedThreads and drop their 
+     * counters. Called holding the lock.
+     */
+    private static void pruneEndedThreads()
+    {
+        for (int i=threadCounts.size()-1; i>=0; i--)
+        {   ThreadCounts c = (ThreadCounts)threadCounts.elementAt(i);
+            Thread t = (Thread)c.thread.get();
+            if (t == null || !t.isAlive())
+            {   if (c.resets == resets)
+                    endedThreads.add(c);
+                threadCounts.removeElementAt(i);
+            }
+        }
+    }
+
+    /** Count a FuzzySet created */
+    static void fuzzySetCreated()
+    {
+        current().fuzzySets++;
+    }
+
+    /** Count a SetPoint allocated */
+    static void setPointAllocated()
+    {
+        current().setPoints++;
+    }
+
+    /** Count a FuzzyValueVector created */
+    static void fuzzyValueVectorCreated()
+    {
+        current().fuzzyValueVectors++;
+    }
+
+    /** Count an operation and the size of the set it produced (which may be null, or
+     *  a PowerFuzzySet whose points have not been found yet) */
+    static void operation( int type, FuzzySet result )
+    {
+        Snapshot c = current();
+        c.operations[type]++;
+        if (result != null && result.set != null)
+        {   int n = result.numPoints;
+            c.setsProduced++;
+            c.pointsProduced += n;
+            if (n > c.maximumPoints)
+                c.maximumPoints = n;
+        }
+    }
+
+    /** Count a modifier applied to a set, returning the modified set */
+    static FuzzySet modified( FuzzySet result )
+    {
+        if (enabled)
+            operation(MODIFIER, result);
+        return result;
+    }
+
+    /** Count a modifier applied to a FuzzyValue, returning the modified value */
+    static FuzzyValue modified( FuzzyValue result )
+    {
+        if (enabled)
+            operation(MODIFIER, (result == null) ? null : result.getFuzzySet());
+        return result;
+    }
+
+    /**
+     * Get the counts of all of the threads, added together.
+     *
+     * @return the counts
+     */
+    public static synchronized Snapshot snapshot()
+    {
+        Snapshot total = new Snapshot();
+        pruneEndedThreads();
+        total.add(endedThreads);
+        for (int i=threadCounts.size()-1; i>=0; i--)
+        {   ThreadCounts c = (ThreadCounts)threadCounts.elementAt(i);
+            if (c.resets == resets)
+                total.add(c);
+        }
+        return total;
+    }
+
+    /**
+     * Get the counts of the calling thread.
+     *
+     * @return the counts
+     */
+    public static Snapshot snapshotCurrentThread()
+    {
+        Snapshot s = new Snapshot();
+        s.add(current());
+        return s;
+    }
+
+    /**
+     * Set all of the counts, of all of the threads, to 0. The counters of the other
+     * threads are not changed here but are no longer included in a snapshot; each
+     * thread sets its own counters to 0 the next time it counts something.
+     */
+    public static synchronized void resetCounts()
+    {
+        endedThreads.clear();
+        resets++;
+    }
+
+    /**
+     * Register the counters with the platform MBean server, under the name 
+     * MBEAN_NAME, if they have not been registered already.
+     *
+     * @return the name they are registered under
+     * @exception JMException if they cannot be registered
+     */
+    public static synchronized ObjectName registerMBean() throws JMException
+    {
+        ObjectName name = new ObjectName(MBEAN_NAME);
+        if (mbean == null)
+        {   mbean = new FuzzyAllocationCounters();
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+        }
+        return name;
+    }
+
+    /*
+     * The methods of the MBean
+     */
+
+    public boolean isEnabled() { return isCounting(); }
+
+    public void setEnabled( boolean enabled ) { setCounting(enabled); }
+
+    public long getFuzzySetsCreated() { return snapshot().getFuzzySetsCreated(); }
+
+    public long getSetPointsAllocated() { return snapshot().getSetPointsAllocated(); }
+
+    public long getFuzzyValueVectorsCreated() { return snapshot().getFuzzyValueVectorsCreated(); }
+
+    public long getSetsProduced() { return snapshot().getSetsProduced(); }
+
+    public double getAveragePointsPerSet() { return snapshot().getAveragePointsPerSet(); }
+
+    public long getMaximumPointsPerSet() { return snapshot().getMaximumPointsPerSet(); }
+
+    public long getUnions() { return snapshot().getOperations(UNION); }
+
+    public long getIntersections() { return snapshot().getOperations(INTERSECTION); }
+
+    public long getSums() { return snapshot().getOperations(SUM); }
+
+    public long getModifiers() { return snapshot().getOperations(MODIFIER); }
+
+    public long getClips() { return snapshot().getOperations(CLIP); }
+
+    public long getScales() { return snapshot().getOperations(SCALE); }
+
+    public void reset() { resetCounts(); }
+}
@@ -0,0 +1,63 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+/**
+ * The management interface of the FuzzyAllocationCounters, registered with the 
+ * platform MBean server by FuzzyAllocationCounters.registerMBean. The counts are
+ * those of all threads, as given by FuzzyAllocationCounters.snapshot.
+ *
+ * @see FuzzyAllocationCounters
+ */
+public interface FuzzyAllocationCountersMBean
+{
+    /** @return true if the counters are counting */
+    public boolean isEnabled();
+
+    /** @param enabled true to start counting, false to stop */
+    public void setEnabled( boolean enabled );
+
+    /** @return the number of FuzzySets created */
+    public long getFuzzySetsCreated();
+
+    /** @return the number of SetPoints allocated */
+    public long getSetPointsAllocated();
+
+    /** @return the number of FuzzyValueVectors created */
+    public long getFuzzyValueVectorsCreated();
+
+    /** @return the number of sets produced by set operations */
+    public long getSetsProduced();
+
+    /** @return the mean number of points in the sets produced by set operations */
+    public double getAveragePointsPerSet();
+
+    /** @return the largest number of points in a set produced by a set operation */
+    public long getMaximumPointsPerSet();
+
+    /** @return the number of unions done */
+    public long getUnions();
+
+    /** @return the number of intersections done */
+    public long getIntersections();
+
+    /** @return the number of sums done */
+    public long getSums();
+
+    /** @return the number of modifiers applied */
+    public long getModifiers();
+
+    /** @return the number of sets clipped (horizontal intersections) */
+    public long getClips();
+
+    /** @return the number of sets scaled */
+    public long getScales();
+
+    /** Set all of the counts to 0. */
+    public void reset();
+}
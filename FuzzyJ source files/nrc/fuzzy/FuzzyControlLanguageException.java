@@ -0,0 +1,49 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+
+/**
+ * An exception that is raised when a Fuzzy Control Language (IEC 61131-7) function
+ * block cannot be loaded: it has a syntax error, refers to a variable or term that
+ * is not defined, or uses a method (such as the OR operator ASUM) that FuzzyJ 
+ * rules do not support.
+ *
+ * @see FuzzyControlLanguageLoader
+ */
+public class FuzzyControlLanguageException extends FuzzyException 
+                                           implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private int lineNumber;
+
+    public FuzzyControlLanguageException(String message)
+    {
+        this(message, 0);
+    }
+
+    public FuzzyControlLanguageException(String message, int lineNumber)
+    {
+        super((lineNumber > 0) ? "line " + lineNumber + ": " + message : message);
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Get the number of the line of the FCL source where the problem was found.
+     *
+     * @return the line number (the first line is 1), or 0 if it is not known
+     */
+    public int getLineNumber()
+    {
+        return lineNumber;
+    }
+}
@@ -0,0 +1,911 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Hashtable;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+/**
+ * Loads a fuzzy controller written in the Fuzzy Control Language (FCL) of 
+ * IEC 61131-7, giving a FuzzyControlLanguageModel with its FuzzyVariables, 
+ * FuzzyRules and the FuzzyRuleBatches that evaluate them. The source is read as a 
+ * stream, one token at a time. For example,
+ * <pre><code>
+ *    FUNCTION_BLOCK shower
+ *    VAR_INPUT  temperature : REAL; flow : REAL; END_VAR
+ *    VAR_OUTPUT valve : REAL; END_VAR
+ *
+ *    FUZZIFY temperature
+ *       RANGE := (0 .. 60);
+ *       TERM cold := (0, 1) (20, 1) (35, 0);
+ *       TERM ok   := TRIANGLE 30 35 40;
+ *       TERM hot  := (35, 0) (50, 1) (60, 1);
+ *    END_FUZZIFY
+ *    ...
+ *    DEFUZZIFY valve
+ *       TERM close := TRAPEZOID -1 -1 -0.5 0;
+ *       TERM hold  := TRIANGLE -0.2 0 0.2;
+ *       TERM open  := TRAPEZOID 0 0.5 1 1;
+ *       METHOD : COG;
+ *       DEFAULT := 0;
+ *    END_DEFUZZIFY
+ *
+ *    RULEBLOCK temperature_control
+ *       AND : MIN;  ACT : MIN;  ACCU : MAX;
+ *       RULE 1 : IF temperature IS cold AND flow IS NOT low THEN valve IS open;
+ *       RULE 2 : IF temperature IS hot OR flow IS high THEN valve IS close;
+ *    END_RULEBLOCK
+ *    END_FUNCTION_BLOCK
+ * </code></pre>
+ * The parts of FCL that are supported are:
+ * <ul>
+ * <li> VAR_INPUT and VAR_OUTPUT declarations (the types are not used);
+ * <li> FUZZIFY and DEFUZZIFY blocks with terms given as points 
+ *      <code>(x, y) (x, y) ...</code> (a FuzzySet), as a single number (a 
+ *      SingletonFuzzySet) or as <code>TRIANGLE a b c</code> (a TriangleFuzzySet), 
+ *      <code>TRAPEZOID a b c d</code> (a TrapezoidFuzzySet) or 
+ *      <code>GAUSS mean deviation</code> (a GaussianFuzzySet), and an optional 
+ *      <code>RANGE := (min .. max)</code> that is the universe of discourse of the 
+ *      variable (without it the universe of discourse just covers the terms);
+ * <li> in DEFUZZIFY blocks, METHOD COG (FuzzyRuleBatch.MOMENT_DEFUZZIFY) or COA 
+ *      (CENTER_OF_AREA_DEFUZZIFY), DEFAULT (a number, or NC for none, when 
+ *      Double.NaN is the output if no rule fires) and ACCU;
+ * <li> RULEBLOCKs, with the operators AND (MIN, the MinimumAntecedentCombineOperator,
+ *      or PROD, the ProductAntecedentCombineOperator), OR (MAX), ACT (MIN, the 
+ *      MamdaniMinMaxMinRuleExecutor, or PROD, the LarsenProductMaxMinRuleExecutor)
+ *      and ACCU (MAX, the union of the rule outputs); 
+ * <li> rules whose conditions combine <code>variable IS term</code> with AND, OR
+ *      and parentheses. The term may be any FuzzyJ linguistic expression of the 
+ *      variable's terms, such as <code>NOT low</code> or <code>very cold</code>.
+ *      A condition with OR becomes a FuzzyRule for each alternative (with the
+ *      maximum as the OR operator and for accumulation this gives the same result).
+ *      A rule may have several conclusions separated by commas, and a 
+ *      <code>WITH</code> weight of 1.
+ * </ul>
+ * Anything else (such as the COGS, LM and RM methods, the BDIF, ASUM and BSUM 
+ * operators, BSUM accumulation and rule weights other than 1) raises a 
+ * FuzzyControlLanguageException, as do syntax errors. Comments may be written
+ * between (* and *) or after //. Only the first function block of a source is loaded.
+ * <p>
+ * load(File, File) keeps the models it loads in a cache directory, as a 
+ * FuzzyRuleBaseSnapshot and a properties file named for the SHA-256 hash of the 
+ * FCL source, and loads the snapshot instead of the source when the source has not 
+ * changed.
+ *
+ * @see FuzzyControlLanguageModel
+ * @see FuzzyRuleBatch
+ */
+public class FuzzyControlLanguageLoader
+{
+    // the kinds of token
+    private static final int END = 0;
+    private static final int WORD = 1;
+    private static final int NUMBER = 2;
+    private static final int SYMBOL = 3;
+
+    private PushbackReader in;
+    private int line = 1;
+    private int type;
+    private String text;
+    private double number;
+
+    private String name = "";
+    private Vector inputNames = new Vector();
+    private Vector outputNames = new Vector();
+    /** the FuzzyVariables defined, by name */
+    private Hashtable variables = new Hashtable();
+    /** the METHOD and DEFAULT of each output, by name */
+    private Hashtable methods = new Hashtable();
+    private Hashtable defaults = new Hashtable();
+    private Vector rules = new Vector();
+    /** the FuzzyValues of the rules, by variable and expression, so each is made once */
+    private Hashtable values = new Hashtable();
+
+    private FuzzyControlLanguageLoader(Reader reader)
+    {
+        in = new PushbackReader(reader, 2);
+    }
+
+    /**
+     * Load the first function block of an FCL source.
+     *
+     * @param reader the source
+     * @return the model
+     * @exception IOException if the source cannot be read
+     * @exception FuzzyException if the source is not valid FCL or uses a part of
+     *        FCL that is not supported (a FuzzyControlLanguageException), or the 
+     *        variables or rules it defines are not valid
+     */
+    public static FuzzyControlLanguageModel load(Reader reader) throws IOException, FuzzyException
+    {
+        return new FuzzyControlLanguageLoader(reader).parse();
+    }
+
+    /**
+     * Load the first function block of an FCL file.
+     *
+     * @param file the file
+     * @return the model
+     * @exception IOException if the file cannot be read
+     * @exception FuzzyException if the source is not valid FCL or uses a part of
+     *        FCL that is not supported (a FuzzyControlLanguageException), or the 
+     *        variables or rules it defines are not valid
+     */
+    public static FuzzyControlLanguageModel load(File file) throws IOException, FuzzyException
+    {
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try
+        {   return load(reader);
+        }
+        finally
+        {   reader.close();
+        }
+    }
+
+    /**
+     * Load the first function block of an FCL file, using the model kept in a cache 
+     * directory if the file has not changed since it was cached. A model loaded 
+     * from the source is written to the cache (creating the directory if need be);
+     * the cache is only an optimization, so if it cannot be written the model is 
+     * still returned.
+     *
+     * @param file the file
+     * @param cacheDirectory the directory that holds the cached models
+     * @return the model
+     * @exception IOException if the file cannot be read
+     * @exception FuzzyException if the source is not valid FCL or uses a part of
+     *        FCL that is not supported (a FuzzyControlLanguageException), or the 
+     *        variables or rules it defines are not valid
+     */
+    public static FuzzyControlLanguageModel load(File file, File cacheDirectory) 
+        throws IOException, FuzzyException
+    {
+        String key = hash(file);
+        File snapshotFile = new File(cacheDirectory, key + ".fzs");
+        File propertiesFile = new File(cacheDirectory, key + ".properties");
+        if (snapshotFile.exists() && propertiesFile.exists())
+        {   try
+            {   return loadCached(snapshotFile, propertiesFile);
+            }
+            catch (Exception e)
+            {   // a damaged or out of date cache entry; load the source and replace it
+            }
+        }
+        FuzzyControlLanguageModel model = load(file);
+        try
+        {   cache(model, snapshotFile, propertiesFile);
+        }
+        catch (Exception e)
+        {   // the model is loaded; it will be cached the next time if it can be
+        }
+        return model;
+    }
+
+    /** The SHA-256 hash of a file, in hexadecimal. */
+    private static String hash(File file) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {   digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {   throw new IOException(e.toString());
+        }
+        InputStream stream = new FileInputStream(file);
+        try
+        {   byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) > 0)
+                digest.update(buffer, 0, n);
+        }
+        finally
+        {   stream.close();
+        }
+        byte[] bytes = digest.digest();
+        StringBuffer sb = new StringBuffer();
+        for (int i=0; i<bytes.length; i++)
+            sb.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        return sb.toString();
+    }
+
+    /** Write a model to the cache; the snapshot is written last since its presence marks a complete entry. */
+    private static void cache(FuzzyControlLanguageModel model, File snapshotFile, File propertiesFile)
+        throws IOException
+    {
+        FuzzyVariable[] inputs = model.getInputVariables();
+        FuzzyVariable[] outputs = model.getOutputVariables();
+        int[] methods = model.getDefuzzifyMethods();
+        double[] defaults = model.getDefaultValues();
+        Properties properties = new Properties();
+        properties.setProperty("name", model.getName());
+        properties.setProperty("inputs", String.valueOf(inputs.length));
+        StringBuffer methodList = new StringBuffer(), defaultList = new StringBuffer();
+        for (int o=0; o<outputs.length; o++)
+        {   methodList.append((o == 0) ? "" : ",").append(methods[o]);
+            defaultList.append((o == 0) ? "" : ",").append(defaults[o]);
+        }
+        properties.setProperty("methods", methodList.toString());
+        properties.setProperty("defaults", defaultList.toString());
+
+        FuzzyRuleBaseEncoder encoder = new FuzzyRuleBaseEncoder();
+        for (int v=0; v<inputs.length; v++)
+            encoder.addFuzzyVariable(inputs[v]);
+        for (int v=0; v<outputs.length; v++)
+            encoder.addFuzzyVariable(outputs[v]);
+        encoder.addFuzzyRules(model.getFuzzyRules());
+
+        File directory = snapshotFile.getParentFile();
+        directory.mkdirs();
+        File temporary = File.createTempFile("fcl", ".tmp", directory);
+        try
+        {   OutputStream out = new FileOutputStream(temporary);
+            try
+            {   properties.store(out, "FuzzyJ FCL model cache");
+            }
+            finally
+            {   out.close();
+            }
+            replace(temporary, propertiesFile);
+        }
+        finally
+        {   temporary.delete();  // if it was not renamed
+        }
+        temporary = File.createTempFile("fcl", ".tmp", directory);
+        try
+        {   FuzzyRuleBaseSnapshot.write(encoder, temporary);
+            replace(temporary, snapshotFile);
+        }
+        finally
+        {   temporary.delete();
+        }
+    }
+
+    private static void replace(File temporary, File file) throws IOException
+    {
+        file.delete();
+        if (!temporary.renameTo(file))
+        {   temporary.delete();
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    private static FuzzyControlLanguageModel loadCached(File snapshotFile, File propertiesFile)
+        throws IOException, FuzzyException
+    {
+        Properties properties = new Properties();
+        InputStream stream = new FileInputStream(propertiesFile);
+        try
+        {   properties.load(stream);
+        }
+        finally
+        {   stream.close();
+        }
+        FuzzyRuleBaseSnapshot snapshot = FuzzyRuleBaseSnapshot.open(snapshotFile);
+        FuzzyVariable[] variables = snapshot.getFuzzyVariables();
+        int numInputs = Integer.parseInt(properties.getProperty("inputs"));
+        StringTokenizer methodList = new StringTokenizer(properties.getProperty("methods"), ",");
+        StringTokenizer defaultList = new StringTokenizer(properties.getProperty("defaults"), ",");
+        int numOutputs = variables.length - numInputs;
+        FuzzyVariable[] inputs = new FuzzyVariable[numInputs];
+        FuzzyVariable[] outputs = new FuzzyVariable[numOutputs];
+        System.arraycopy(variables, 0, inputs, 0, numInputs);
+        System.arraycopy(variables, numInputs, outputs, 0, numOutputs);
+        int[] methods = new int[numOutputs];
+        double[] defaults = new double[numOutputs];
+        for (int o=0; o<numOutputs; o++)
+        {   methods[o] = Integer.parseInt(methodList.nextToken());
+            defaults[o] = Double.parseDouble(defaultList.nextToken());
+        }
+        return new FuzzyControlLanguageModel(properties.getProperty("name"), inputs, outputs, 
+                                             snapshot.getFuzzyRules(), methods, defaults);
+    }
+
+    /** Parse the first function block. */
+    private FuzzyControlLanguageModel parse() throws IOException, FuzzyException
+    {
+        next();
+        expectWord("FUNCTION_BLOCK");
+        if (type == WORD && !isSectionKeyword())
+        {   name = text;
+            next();
+        }
+        while (!isWord("END_FUNCTION_BLOCK"))
+        {   if (type == END)
+                throw error("END_FUNCTION_BLOCK expected");
+            if (isWord("VAR_INPUT"))
+                parseVariables(inputNames);
+            else if (isWord("VAR_OUTPUT"))
+                parseVariables(outputNames);
+            else if (isWord("VAR"))
+                parseVariables(new Vector());
+            else if (isWord("FUZZIFY"))
+                parseFuzzify();
+            else if (isWord("DEFUZZIFY"))
+                parseDefuzzify();
+            else if (isWord("RULEBLOCK"))
+                parseRuleBlock();
+            else
+                throw error("VAR_INPUT, VAR_OUTPUT, FUZZIFY, DEFUZZIFY or RULEBLOCK expected, found " + text);
+        }
+
+        FuzzyVariable[] inputs = new FuzzyVariable[inputNames.size()];
+        for (int v=0; v<inputs.length; v++)
+            if ((inputs[v] = (FuzzyVariable)variables.get(inputNames.elementAt(v))) == null)
+                throw error("Input " + inputNames.elementAt(v) + " has no FUZZIFY block");
+        FuzzyVariable[] outputs = new FuzzyVariable[outputNames.size()];
+        int[] outputMethods = new int[outputs.length];
+        double[] outputDefaults = new double[outputs.length];
+        for (int v=0; v<outputs.length; v++)
+        {   Object outputName = outputNames.elementAt(v);
+            if ((outputs[v] = (FuzzyVariable)variables.get(outputName)) == null)
+                throw error("Output " + outputName + " has no DEFUZZIFY block");
+            outputMethods[v] = ((Integer)methods.get(outputName)).intValue();
+            outputDefaults[v] = ((Double)defaults.get(outputName)).doubleValue();
+        }
+        FuzzyRule[] ruleArray = new FuzzyRule[rules.size()];
+        rules.copyInto(ruleArray);
+        return new FuzzyControlLanguageModel(name, inputs, outputs, ruleArray, outputMethods, outputDefaults);
+    }
+
+    private boolean isSectionKeyword()
+    {
+        return isWord("VAR_INPUT") || isWord("VAR_OUTPUT") || isWord("VAR") || isWord("FUZZIFY") ||
+               isWord("DEFUZZIFY") || isWord("RULEBLOCK") || isWord("END_FUNCTION_BLOCK");
+    }
+
+    /** VAR_INPUT, VAR_OUTPUT or VAR: name : type ; ... END_VAR */
+    private void parseVariables(Vector names) throws IOException, FuzzyException
+    {
+        next();
+        while (!isWord("END_VAR"))
+        {   String variableName = identifier();
+            if (inputNames.contains(variableName) || outputNames.contains(variableName))
+                throw error("Variable " + variableName + " is declared twice");
+            names.addElement(variableName);
+            expectSymbol(":");
+            // the type, and anything else up to the ;
+            while (!isSymbol(";"))
+            {   if (type == END)
+                    throw error("; expected");
+                next();
+            }
+            next();
+        }
+        next();
+    }
+
+    /** FUZZIFY name { TERM ... | RANGE ... } END_FUZZIFY */
+    private void parseFuzzify() throws IOException, FuzzyException
+    {
+        next();
+        String variableName = identifier();
+        if (!inputNames.contains(variableName))
+            throw error(variableName + " is not an input variable");
+        Vector termNames = new Vector(), termSets = new Vector();
+        double[] range = null;
+        while (!isWord("END_FUZZIFY"))
+        {   if (isWord("TERM"))
+                parseTerm(termNames, termSets);
+            else if (isWord("RANGE"))
+                range = parseRange();
+            else
+                throw error("TERM, RANGE or END_FUZZIFY expected, found " + text);
+        }
+        defineVariable(variableName, termNames, termSets, range);
+        next();
+    }
+
+    /** DEFUZZIFY name { TERM ... | RANGE ... | METHOD ... | DEFAULT ... | ACCU ... } END_DEFUZZIFY */
+    private void parseDefuzzify() throws IOException, FuzzyException
+    {
+        next();
+        String variableName = identifier();
+        if (!outputNames.contains(variableName))
+            throw error(variableName + " is not an output variable");
+        Vector termNames = new Vector(), termSets = new Vector();
+        double[] range = null;
+        int method = FuzzyRuleBatch.MOMENT_DEFUZZIFY;
+        double defaultValue = Double.NaN;
+        while (!isWord("END_DEFUZZIFY"))
+        {   if (isWord("TERM"))
+                parseTerm(termNames, termSets);
+            else if (isWord("RANGE"))
+                range = parseRange();
+            else if (isWord("METHOD"))
+            {   String m = operator();
+                if (m.equalsIgnoreCase("COG"))
+                    method = FuzzyRuleBatch.MOMENT_DEFUZZIFY;
+                else if (m.equalsIgnoreCase("COA"))
+                    method = FuzzyRuleBatch.CENTER_OF_AREA_DEFUZZIFY;
+                else
+                    throw error("Defuzzification method " + m + " is not supported (only COG and COA are)");
+            }
+            else if (isWord("DEFAULT"))
+            {   next();
+                expectSymbol(":=");
+                if (isWord("NC"))
+                {   defaultValue = Double.NaN;
+                    next();
+                }
+                else
+                    defaultValue = number();
+                expectSymbol(";");
+            }
+            else if (isWord("ACCU"))
+                checkAccumulation(operator());
+            else
+                throw error("TERM, RANGE, METHOD, DEFAULT, ACCU or END_DEFUZZIFY expected, found " + text);
+        }
+        defineVariable(variableName, termNames, termSets, range);
+        methods.put(variableName, Integer.valueOf(method));
+        defaults.put(variableName, Double.valueOf(defaultValue));
+        next();
+    }
+
+    /** TERM name := membership ; */
+    private void parseTerm(Vector termNames, Vector termSets) throws IOException, FuzzyException
+    {
+        next();
+        String termName = identifier();
+        expectSymbol(":=");
+        FuzzySet fs;
+        try
+        {   fs = parseMembership(termName);
+        }
+        catch (FuzzyControlLanguageException e)
+        {   throw e;
+        }
+        catch (FuzzyException e)
+        {   throw error("Invalid membership function of term " + termName + ": " + e.getMessage());
+        }
+        expectSymbol(";");
+        termNames.addElement(termName);
+        termSets.addElement(fs);
+    }
+
+    private FuzzySet parseMembership(String termName) throws IOException, FuzzyException
+    {
+        FuzzySet fs;
+        if (isSymbol("("))
+        {   Vector points = new Vector();
+            while (isSymbol("("))
+            {   next();
+                double x = number();
+                expectSymbol(",");
+                double y = number();
+                expectSymbol(")");
+                points.addElement(new SetPoint(x, y));
+            }
+            SetPoint[] setPoints = new SetPoint[points.size()];
+            points.copyInto(setPoints);
+            fs = new FuzzySet(setPoints, setPoints.length);
+        }
+        else if (type == NUMBER)
+            fs = new SingletonFuzzySet(number());
+        else if (isWord("TRIANGLE") || isWord("TRIAN"))
+        {   next();
+            fs = new TriangleFuzzySet(number(), number(), number());
+        }
+        else if (isWord("TRAPEZOID") || isWord("TRAPE"))
+        {   next();
+            fs = new TrapezoidFuzzySet(number(), number(), number(), number());
+        }
+        else if (isWord("GAUSS") || isWord("GAUSSIAN"))
+        {   next();
+            fs = new GaussianFuzzySet(number(), number());
+        }
+        else
+            throw error("Membership function of term " + termName + " expected, found " + describe());
+        return fs;
+    }
+
+    /** RANGE := ( min .. max ) ; */
+    private double[] parseRange() throws IOException, FuzzyException
+    {
+        next();
+        expectSymbol(":=");
+        expectSymbol("(");
+        double[] range = {number(), 0.0};
+        expectSymbol("..");
+        range[1] = number();
+        expectSymbol(")");
+        expectSymbol(";");
+        return range;
+    }
+
+    /** Create a variable from its terms; its universe of discourse is the range given or covers the terms. */
+    private void defineVariable(String variableName, Vector termNames, Vector termSets, double[] range)
+        throws FuzzyException
+    {
+        if (variables.get(variableName) != null)
+            throw error("Variable " + variableName + " is defined twice");
+        double min, max;
+        if (range != null)
+        {   min = range[0];
+            max = range[1];
+        }
+        else
+        {   min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            for (int t=0; t<termSets.size(); t++)
+            {   FuzzySet fs = (FuzzySet)termSets.elementAt(t);
+                if (fs.size() > 0)
+                {   min = Math.min(min, fs.getX(0));
+                    max = Math.max(max, fs.getX(fs.size()-1));
+                }
+            }
+            if (min > max)
+                throw error("Variable " + variableName + " has no RANGE and no terms");
+            if (min == max)
+                max = min + 1.0;
+        }
+        try
+        {   FuzzyVariable fvar = new FuzzyVariable(variableName, min, max, "");
+            for (int t=0; t<termNames.size(); t++)
+                fvar.addTerm((String)termNames.elementAt(t), (FuzzySet)termSets.elementAt(t));
+            variables.put(variableName, fvar);
+        }
+        catch (FuzzyException e)
+        {   throw error("Cannot define variable " + variableName + ": " + e.getMessage());
+        }
+    }
+
+    /** RULEBLOCK name { AND ... | OR ... | ACT ... | ACCU ... | RULE ... } END_RULEBLOCK */
+    private void parseRuleBlock() throws IOException, FuzzyException
+    {
+        next();
+        String blockName = "";
+        if (type == WORD && !isWord("AND") && !isWord("OR") && !isWord("ACT") && 
+            !isWord("ACCU") && !isWord("RULE") && !isWord("END_RULEBLOCK"))
+            blockName = identifier();
+        AntecedentCombineOperator andOperator = new MinimumAntecedentCombineOperator();
+        String orOperator = "MAX";
+        FuzzyRuleExecutor executor = new MamdaniMinMaxMinRuleExecutor();
+        while (!isWord("END_RULEBLOCK"))
+        {   if (isWord("AND"))
+            {   String op = operator();
+                if (op.equalsIgnoreCase("MIN"))
+                    andOperator = new MinimumAntecedentCombineOperator();
+                else if (op.equalsIgnoreCase("PROD"))
+                    andOperator = new ProductAntecedentCombineOperator();
+                else
+                    throw error("AND operator " + op + " is not supported (only MIN and PROD are)");
+            }
+            else if (isWord("OR"))
+                orOperator = operator();
+            else if (isWord("ACT"))
+            {   String op = operator();
+                if (op.equalsIgnoreCase("MIN"))
+                    executor = new MamdaniMinMaxMinRuleExecutor();
+                else if (op.equalsIgnoreCase("PROD"))
+                    executor = new LarsenProductMaxMinRuleExecutor();
+                else
+                    throw error("Activation method " + op + " is not supported (only MIN and PROD are)");
+            }
+            else if (isWord("ACCU"))
+                checkAccumulation(operator());
+            else if (isWord("RULE"))
+                parseRule(blockName, andOperator, orOperator, executor);
+            else
+                throw error("AND, OR, ACT, ACCU, RULE or END_RULEBLOCK expected, found " + text);
+        }
+        next();
+    }
+
+    private void checkAccumulation(String op) throws FuzzyControlLanguageException
+    {
+        if (!op.equalsIgnoreCase("MAX"))
+            throw error("Accumulation method " + op + " is not supported (only MAX is)");
+    }
+
+    /** RULE name : IF condition THEN conclusion { , conclusion } [ WITH weight ] ; */
+    private void parseRule(String blockName, AntecedentCombineOperator andOperator, 
+                           String orOperator, FuzzyRuleExecutor executor)
+        throws IOException, FuzzyException
+    {
+        next();
+        if (type != WORD && type != NUMBER)
+            throw error("Rule name expected, found " + text);
+        String ruleName = (blockName.length() > 0 ? blockName + "." : "") + text;
+        next();
+        expectSymbol(":");
+        expectWord("IF");
+        int orLine = line;
+        Vector alternatives = parseDisjunction();
+        if (alternatives.size() > 1 && !orOperator.equalsIgnoreCase("MAX"))
+            throw new FuzzyControlLanguageException("OR operator " + orOperator + " is not supported (only MAX is)", orLine);
+        expectWord("THEN");
+        Vector conclusions = new Vector();
+        conclusions.addElement(parseTest(outputNames));
+        while (isSymbol(",") || isWord("AND"))
+        {   next();
+            conclusions.addElement(parseTest(outputNames));
+        }
+        if (isWord("WITH"))
+        {   next();
+            if (number() != 1.0)
+                throw error("Rule weights other than 1 are not supported");
+        }
+        expectSymbol(";");
+
+        for (int a=0; a<alternatives.size(); a++)
+        {   Vector antecedents = (Vector)alternatives.elementAt(a);
+            FuzzyRule rule = new FuzzyRule(executor, andOperator);
+            rule.setName(ruleName);
+            for (int i=0; i<antecedents.size(); i++)
+                rule.addAntecedent((FuzzyValue)antecedents.elementAt(i));
+            for (int i=0; i<conclusions.size(); i++)
+                rule.addConclusion((FuzzyValue)conclusions.elementAt(i));
+            rules.addElement(rule);
+        }
+    }
+
+    // A condition is parsed into its alternatives (disjunctive normal form): a 
+    // Vector of alternatives, each a Vector of the FuzzyValues that must all match
+
+    private Vector parseDisjunction() throws IOException, FuzzyException
+    {
+        Vector alternatives = parseConjunction();
+        while (isWord("OR"))
+        {   next();
+            Vector more = parseConjunction();
+            for (int i=0; i<more.size(); i++)
+                alternatives.addElement(more.elementAt(i));
+        }
+        return alternatives;
+    }
+
+    private Vector parseConjunction() throws IOException, FuzzyException
+    {
+        Vector alternatives = parseFactor();
+        while (isWord("AND"))
+        {   next();
+            Vector right = parseFactor();
+            Vector product = new Vector();
+            for (int i=0; i<alternatives.size(); i++)
+                for (int j=0; j<right.size(); j++)
+                {   Vector both = (Vector)((Vector)alternatives.elementAt(i)).clone();
+                    Vector more = (Vector)right.elementAt(j);
+                    for (int k=0; k<more.size(); k++)
+                        both.addElement(more.elementAt(k));
+                    product.addElement(both);
+                }
+            alternatives = product;
+        }
+        return alternatives;
+    }
+
+    private Vector parseFactor() throws IOException, FuzzyException
+    {
+        if (isSymbol("("))
+        {   next();
+            Vector alternatives = parseDisjunction();
+            expectSymbol(")");
+            return alternatives;
+        }
+        Vector alternative = new Vector();
+        alternative.addElement(parseTest(inputNames));
+        Vector alternatives = new Vector();
+        alternatives.addElement(alternative);
+        return alternatives;
+    }
+
+    /** variable IS expression, where the variable must be one of those named */
+    private FuzzyValue parseTest(Vector names) throws IOException, FuzzyException
+    {
+        String variableName = identifier();
+        FuzzyVariable fvar = (FuzzyVariable)variables.get(variableName);
+        if (fvar == null || !names.contains(variableName))
+            throw error(variableName + " is not a defined " + (names == inputNames ? "input" : "output") + " variable");
+        expectWord("IS");
+        StringBuffer expression = new StringBuffer();
+        while (type == WORD && !isWord("AND") && !isWord("OR") && !isWord("THEN") && !isWord("WITH"))
+        {   expression.append((expression.length() == 0) ? "" : " ").append(text);
+            next();
+        }
+        if (expression.length() == 0)
+            throw error("Term expected after " + variableName + " IS");
+        String key = variableName + " " + expression.toString().toLowerCase();
+        FuzzyValue fval = (FuzzyValue)values.get(key);
+        if (fval == null)
+        {   if (expression.indexOf(" ") < 0 && fvar.findTerm(expression.toString()) == null)
+                throw error(expression + " is not a term of " + variableName);
+            try
+            {   fval = new FuzzyValue(fvar, expression.toString());
+            }
+            catch (FuzzyException e)
+            {   throw error("Invalid term " + expression + " of " + variableName + ": " + e.getMessage());
+            }
+            values.put(key, fval);
+        }
+        return fval;
+    }
+
+    /** : name ; (the operator or method of an AND, OR, ACT, ACCU or METHOD) */
+    private String operator() throws IOException, FuzzyException
+    {
+        next();
+        expectSymbol(":");
+        String op = identifier();
+        expectSymbol(";");
+        return op;
+    }
+
+    private String identifier() throws IOException, FuzzyException
+    {
+        if (type != WORD)
+            throw error("Name expected, found " + describe());
+        String s = text;
+        next();
+        return s;
+    }
+
+    private double number() throws IOException, FuzzyException
+    {
+        if (type != NUMBER)
+            throw error("Number expected, found " + describe());
+        double d = number;
+        next();
+        return d;
+    }
+
+    private void expectWord(String word) throws IOException, FuzzyException
+    {
+        if (!isWord(word))
+            throw error(word + " expected, found " + describe());
+        next();
+    }
+
+    private void expectSymbol(String symbol) throws IOException, FuzzyException
+    {
+        if (!isSymbol(symbol))
+            throw error(symbol + " expected, found " + describe());
+        next();
+    }
+
+    private boolean isWord(String word)
+    {
+        return type == WORD && text.equalsIgnoreCase(word);
+    }
+
+    private boolean isSymbol(String symbol)
+    {
+        return type == SYMBOL && text.equals(symbol);
+    }
+
+    private String describe()
+    {
+        return (type == END) ? "end of input" : text;
+    }
+
+    private FuzzyControlLanguageException error(String message)
+    {
+        return new FuzzyControlLanguageException(message, line);
+    }
+
+    /** Read the next token, skipping white space and comments. */
+    private void next() throws IOException, FuzzyException
+    {
+        int c = skipSpace();
+        StringBuffer sb = new StringBuffer();
+        if (c < 0)
+        {   type = END;
+            text = "";
+        }
+        else if (Character.isLetter((char)c) || c == '_')
+        {   while (c >= 0 && (Character.isLetterOrDigit((char)c) || c == '_'))
+            {   sb.append((char)c);
+                c = read();
+            }
+            unread(c);
+            type = WORD;
+            text = sb.toString();
+        }
+        else if (Character.isDigit((char)c) || 
+                 ((c == '-' || c == '+' || c == '.') && isDigitNext()))
+        {   sb.append((char)c);
+            while ((c = read()) >= 0 && Character.isDigit((char)c))
+                sb.append((char)c);
+            if (c == '.' && isDigitNext())
+            {   sb.append('.');
+                while ((c = read()) >= 0 && Character.isDigit((char)c))
+                    sb.append((char)c);
+            }
+            if (c == 'e' || c == 'E')
+            {   sb.append((char)c);
+                c = read();
+                if (c == '-' || c == '+')
+                {   sb.append((char)c);
+                    c = read();
+                }
+                while (c >= 0 && Character.isDigit((char)c))
+                {   sb.append((char)c);
+                    c = read();
+                }
+            }
+            unread(c);
+            type = NUMBER;
+            text = sb.toString();
+            try
+            {   number = Double.parseDouble(text);
+            }
+            catch (NumberFormatException e)
+            {   throw error("Invalid number " + text);
+            }
+        }
+        else
+        {   type = SYMBOL;
+            int d = read();
+            if ((c == ':' && d == '=') || (c == '.' && d == '.'))
+                text = "" + (char)c + (char)d;
+            else
+            {   unread(d);
+                text = "" + (char)c;
+            }
+        }
+    }
+
+    /** Skip white space and comments, returning the first character after them (or -1). */
+    private int skipSpace() throws IOException, FuzzyException
+    {
+        while (true)
+        {   int c = read();
+            if (c < 0 || !Character.isWhitespace((char)c))
+            {   int d = read();
+                if (c == '(' && d == '*')
+                {   int startLine = line;
+                    int previous = 0;
+                    while ((c = read()) != ')' || previous != '*')
+                    {   if (c < 0)
+                            throw new FuzzyControlLanguageException("Comment is not closed", startLine);
+                        previous = c;
+                    }
+                }
+                else if (c == '/' && d == '/')
+                {   while ((c = read()) >= 0 && c != '\n')
+                        ;
+                }
+                else
+                {   unread(d);
+                    return c;
+                }
+            }
+        }
+    }
+
+    private boolean isDigitNext() throws IOException
+    {
+        int d = read();
+        unread(d);
+        return d >= 0 && Character.isDigit((char)d);
+    }
+
+    private int read() throws IOException
+    {
+        int c = in.read();
+        if (c == '\n')
+            line++;
+        return c;
+    }
+
+    private void unread(int c) throws IOException
+    {
+        if (c < 0)
+            return;
+        if (c == '\n')
+            line--;
+        in.unread(c);
+    }
+}
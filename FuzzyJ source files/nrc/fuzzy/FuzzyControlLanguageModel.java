@@ -0,0 +1,300 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+import java.util.Vector;
+
+/**
+ * A fuzzy controller loaded from a Fuzzy Control Language (IEC 61131-7) function
+ * block by a FuzzyControlLanguageLoader, ready to run. It holds the input and output
+ * FuzzyVariables of the function block, the FuzzyRules of its rule blocks and, for
+ * each defuzzification method used by the outputs, a FuzzyRuleBatch for the rules 
+ * that conclude about those outputs, so a record of crisp inputs is evaluated 
+ * without creating any objects. The inputs and outputs are indexed in the order 
+ * they were declared in the VAR_INPUT and VAR_OUTPUT sections.
+ * <p>
+ * When no rule fires for an output the output is its DEFAULT value, or Double.NaN
+ * if the function block gave no DEFAULT or gave NC (no change).
+ * <p>
+ * Like a FuzzyRuleBatch, a model holds the arrays it works in and so it must not be
+ * used by more than one thread at a time; the variables and rules can be used to 
+ * build another model (with the constructor) for each thread.
+ *
+ * @see FuzzyControlLanguageLoader
+ * @see FuzzyRuleBatch
+ */
+public class FuzzyControlLanguageModel
+{
+    private String name;
+    private FuzzyVariable[] inputVariables;
+    private FuzzyVariable[] outputVariables;
+    private FuzzyRule[] rules;
+    private int[] defuzzifyMethods;
+    private double[] defaultValues;
+
+    /** a batch for each defuzzification method used, and the outputs it has */
+    private FuzzyRuleBatch[] batches;
+    private int[][] batchOutputs;
+
+    /** the columns of one record, reused by evaluate */
+    private double[][] recordInputs;
+    private double[][][] recordOutputs;
+
+    /**
+     * Create a model from its variables and rules.
+     *
+     * @param name the name of the function block
+     * @param inputVariables the input variables
+     * @param outputVariables the output variables
+     * @param rules the rules; every antecedent must be a FuzzyValue of an input
+     *        variable and every conclusion one of an output variable
+     * @param defuzzifyMethods the method used to defuzzify each output, 
+     *        FuzzyRuleBatch.MOMENT_DEFUZZIFY or FuzzyRuleBatch.CENTER_OF_AREA_DEFUZZIFY
+     * @param defaultValues the value of each output when no rule fires for it (which 
+     *        may be Double.NaN)
+     * @exception FuzzyRuleException if the rules cannot be run by a FuzzyRuleBatch
+     */
+    public FuzzyControlLanguageModel(String name, FuzzyVariable[] inputVariables, 
+                                     FuzzyVariable[] outputVariables, FuzzyRule[] rules, 
+                                     int[] defuzzifyMethods, double[] defaultValues)
+        throws FuzzyRuleException
+    {
+        if (defuzzifyMethods.length != outputVariables.length || 
+            defaultValues.length != outputVariables.length)
+            throw new FuzzyRuleException("There must be a defuzzify method and default value for each output variable");
+        this.name = name;
+        this.inputVariables = inputVariables.clone();
+        this.outputVariables = outputVariables.clone();
+        this.rules = rules.clone();
+        this.defuzzifyMethods = defuzzifyMethods.clone();
+        this.defaultValues = defaultValues.clone();
+
+        // the outputs with each method, and the rules that conclude about them
+        Vector methodBatches = new Vector();
+        Vector methodOutputs = new Vector();
+        int[] methods = {FuzzyRuleBatch.MOMENT_DEFUZZIFY, FuzzyRuleBatch.CENTER_OF_AREA_DEFUZZIFY};
+        for (int m=0; m<methods.length; m++)
+        {   Vector outputs = new Vector();
+            for (int o=0; o<outputVariables.length; o++)
+                if (defuzzifyMethods[o] == methods[m])
+                    outputs.addElement(Integer.valueOf(o));
+            if (outputs.size() == 0)
+                continue;
+            int[] outputIndexes = new int[outputs.size()];
+            FuzzyVariable[] batchVariables = new FuzzyVariable[outputs.size()];
+            for (int i=0; i<outputIndexes.length; i++)
+            {   outputIndexes[i] = ((Integer)outputs.elementAt(i)).intValue();
+                batchVariables[i] = outputVariables[outputIndexes[i]];
+            }
+            Vector batchRules = new Vector();
+            for (int r=0; r<rules.length; r++)
+            {   int n = conclusionsAbout(rules[r], batchVariables);
+                if (n == rules[r].conclusionsSize())
+                    batchRules.addElement(rules[r]);
+                else if (n > 0)
+                    batchRules.addElement(partOf(rules[r], batchVariables));
+            }
+            FuzzyRule[] ruleArray = new FuzzyRule[batchRules.size()];
+            batchRules.copyInto(ruleArray);
+            methodBatches.addElement(new FuzzyRuleBatch(ruleArray, inputVariables, batchVariables, 
+                                                        methods[m]));
+            methodOutputs.addElement(outputIndexes);
+        }
+        for (int r=0; r<rules.length; r++)
+            if (conclusionsAbout(rules[r], outputVariables) < rules[r].conclusionsSize())
+                throw new FuzzyRuleException("Rule " + rules[r].getName() + " has a conclusion that is not an output variable");
+        batches = new FuzzyRuleBatch[methodBatches.size()];
+        methodBatches.copyInto(batches);
+        batchOutputs = new int[methodOutputs.size()][];
+        methodOutputs.copyInto(batchOutputs);
+
+        recordInputs = new double[inputVariables.length][1];
+        recordOutputs = new double[batches.length][][];
+        for (int b=0; b<batches.length; b++)
+            recordOutputs[b] = new double[batchOutputs[b].length][1];
+    }
+
+    /** The number of the conclusions of a rule that are values of the variables. */
+    private static int conclusionsAbout(FuzzyRule rule, FuzzyVariable[] variables)
+    {
+        int n = 0;
+        for (int c=0; c<rule.conclusionsSize(); c++)
+            if (isOneOf(rule.conclusionAt(c).getFuzzyVariable(), variables))
+                n++;
+        return n;
+    }
+
+    private static boolean isOneOf(FuzzyVariable fvar, FuzzyVariable[] variables)
+    {
+        for (int v=0; v<variables.length; v++)
+            if (variables[v] == fvar)
+                return true;
+        return false;
+    }
+
+    /** A copy of a rule with only the conclusions that are values of the variables. */
+    private static FuzzyRule partOf(FuzzyRule rule, FuzzyVariable[] variables)
+    {
+        FuzzyRule part = new FuzzyRule(rule.getRuleExecutor(), rule.getAntecedentCombineOperator());
+        part.setName(rule.getName());
+        for (int a=0; a<rule.antecedentsSize(); a++)
+            part.addAntecedent(rule.antecedentAt(a));
+        for (int c=0; c<rule.conclusionsSize(); c++)
+            if (isOneOf(rule.conclusionAt(c).getFuzzyVariable(), variables))
+                part.addConclusion(rule.conclusionAt(c));
+        return part;
+    }
+
+    /**
+     * Evaluate the model for one record of crisp inputs.
+     *
+     * @param inputs the value of each input variable, in the order of getInputVariables
+     * @param outputs an array to hold the value of each output variable, in the 
+     *        order of getOutputVariables
+     * @exception XValueOutsideUODException if an input is outside the universe of 
+     *        discourse of its variable
+     */
+    public void evaluate(double[] inputs, double[] outputs) throws XValueOutsideUODException
+    {
+        for (int v=0; v<inputs.length; v++)
+            recordInputs[v][0] = inputs[v];
+        for (int b=0; b<batches.length; b++)
+        {   batches[b].execute(recordInputs, recordOutputs[b], 0, 1);
+            for (int i=0; i<batchOutputs[b].length; i++)
+            {   int o = batchOutputs[b][i];
+                double value = recordOutputs[b][i][0];
+                outputs[o] = Double.isNaN(value) ? defaultValues[o] : value;
+            }
+        }
+    }
+
+    /**
+     * Evaluate the model for the records from <code>from</code> to 
+     * <code>from+count-1</code> of the input columns, writing the results to the 
+     * same records of the output columns (the layout used by FuzzyRuleBatch).
+     *
+     * @param inputs one column of crisp values for each input variable
+     * @param outputs one column for each output variable to hold the results
+     * @param from the first record to evaluate
+     * @param count the number of records to evaluate
+     * @exception XValueOutsideUODException if an input is outside the universe of 
+     *        discourse of its variable
+     */
+    public void evaluate(double[][] inputs, double[][] outputs, int from, int count)
+        throws XValueOutsideUODException
+    {
+        for (int b=0; b<batches.length; b++)
+        {   double[][] columns = new double[batchOutputs[b].length][];
+            for (int i=0; i<columns.length; i++)
+                columns[i] = outputs[batchOutputs[b][i]];
+            batches[b].execute(inputs, columns, from, count);
+            for (int i=0; i<columns.length; i++)
+            {   double defaultValue = defaultValues[batchOutputs[b][i]];
+                if (Double.isNaN(defaultValue))
+                    continue;
+                for (int j=from; j<from+count; j++)
+                    if (Double.isNaN(columns[i][j]))
+                        columns[i][j] = defaultValue;
+            }
+        }
+    }
+
+    /**
+     * Get the name of the function block.
+     *
+     * @return the name (empty if the function block was not named)
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Get the input variables, in the order they were declared.
+     *
+     * @return the input variables
+     */
+    public FuzzyVariable[] getInputVariables()
+    {
+        return inputVariables.clone();
+    }
+
+    /**
+     * Get the output variables, in the order they were declared.
+     *
+     * @return the output variables
+     */
+    public FuzzyVariable[] getOutputVariables()
+    {
+        return outputVariables.clone();
+    }
+
+    /**
+     * Find the index of an input variable by its name.
+     *
+     * @param name the name of the variable
+     * @return the index, or -1 if there is no input with that name
+     */
+    public int getInputIndex(String name)
+    {
+        for (int v=0; v<inputVariables.length; v++)
+            if (inputVariables[v].getName().equals(name))
+                return v;
+        return -1;
+    }
+
+    /**
+     * Find the index of an output variable by its name.
+     *
+     * @param name the name of the variable
+     * @return the index, or -1 if there is no output with that name
+     */
+    public int getOutputIndex(String name)
+    {
+        for (int v=0; v<outputVariables.length; v++)
+            if (outputVariables[v].getName().equals(name))
+                return v;
+        return -1;
+    }
+
+    /**
+     * Get the rules. A rule of the function block whose condition uses OR is 
+     * made into several FuzzyRules, one for each alternative, with the same name 
+     * (the name of the rule block, a dot and the name of the rule).
+     *
+     * @return the rules
+     */
+    public FuzzyRule[] getFuzzyRules()
+    {
+        return rules.clone();
+    }
+
+    /**
+     * Get the method used to defuzzify each output.
+     *
+     * @return FuzzyRuleBatch.MOMENT_DEFUZZIFY or CENTER_OF_AREA_DEFUZZIFY for each
+     *         output, in the order of getOutputVariables
+     */
+    public int[] getDefuzzifyMethods()
+    {
+        return defuzzifyMethods.clone();
+    }
+
+    /**
+     * Get the value of each output when no rule fires for it.
+     *
+     * @return the default values (Double.NaN for none), in the order of 
+     *         getOutputVariables
+     */
+    public double[] getDefaultValues()
+    {
+        return defaultValues.clone();
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+package nrc.fuzzy;
+
+import java.util.*;
+
+/**
+ * A FuzzyControlSurface is a precomputed table of the outputs of a set of rules 
+ * (a FuzzyRuleBatch) over a grid of the universes of discourse of the input variables.
+ * Controllers such as the inverted pendulum (error and angular velocity to current) 
+ * or the truck backer-upper (position and angle to change of angle) fire the same
+ * rules at every step; with a control surface the rules are fired once for each grid
+ * point when the surface is built and at run time an output is found by multilinear
+ * interpolation between the grid points around the inputs (bilinear for two inputs). 
+ * <p>
+ * The grid starts with evenly spaced points and is refined where the surface curves
+ * sharply: the rules are fired at the middle of each interval between grid points along
+ * each input axis and, where interpolation misses the result by more than the tolerance, 
+ * a grid line is added through the middle of the interval. This is repeated until the 
+ * tolerance is met everywhere it is checked, the intervals have been halved the
+ * maximum number of times (where the outputs change very steeply, as near the edges 
+ * of a region where no rule fires, halving may never meet the tolerance) or the grid 
+ * would have more than MAX_GRID_POINTS points. The largest interpolation error found 
+ * at the middles of the intervals and at the centers of the cells of the final grid 
+ * is reported by getErrorBound. 
+ * It is an estimate of the error (between the checked points the error can be larger
+ * when the surface changes abruptly), measured against the FuzzyRuleBatch.
+ * <p>
+ * Where no rule fires at a grid point the table holds Double.NaN and the outputs
+ * interpolated from that grid point are Double.NaN; these points are not used in 
+ * the error estimate. The interval of an axis that was not refined is found with 
+ * a multiplication; the grid lines of a refined axis are found through a table of 
+ * evenly spaced bins. A FuzzyControlSurface is not changed after it is built, so it 
+ * can be used by many threads at once.
+ * <p>
+ * For example,
+ * <pre><code>
+ *    FuzzyRuleBatch rules = new FuzzyRuleBatch(pendulumRules, 
+ *                                              new FuzzyVariable[] {errorFVar, omegaFVar},
+ *                                              new FuzzyVariable[] {currentFVar});
+ *    FuzzyControlSurface surface = new FuzzyControlSurface(rules, 21, 0.001);
+ *    ...
+ *    double current = surface.getValue(error, omega);
+ * </code></pre>
+ *
+ * @see FuzzyRuleBatch
+ */
+public class FuzzyControlSurface
+{
+    /** The default number of times that an interval of the initial grid can be halved */
+    public static final int DEFAULT_MAX_REFINEMENTS = 4;
+    /** The most points that a grid can have */
+    public static final int MAX_GRID_POINTS = 1 << 22;
+
+    private FuzzyVariable[] inputVariables;
+    private FuzzyVariable[] outputVariables;
+    /** the x values of the grid lines along each input axis: [input][point] */
+    private double[][] axes;
+    /** the distance in the table between neighbouring grid points along each axis */
+    private int[] strides;
+    /** 
+     * the interval of each axis that holds the start of each of a number of evenly 
+     * spaced bins (so an interval is found without searching the axis): [input][bin] 
+     */
+    private int[][] bins;
+    private double[] binScale;
+    /** the outputs at the grid points: [output][grid point] */
+    private double[][] table;
+    private double errorBound;
+
+    /**
+     * Build a control surface with the same number of initial points along each axis
+     * and the default maximum number of refinements.
+     *
+     * @param rules the rules to tabulate
+     * @param initialPoints the number of evenly spaced points along each input axis
+     *        before the grid is refined (at least 2)
+     * @param tolerance the largest interpolation error wanted
+     * @exception FuzzyException if the arguments are not valid
+     */
+    public FuzzyControlSurface(FuzzyRuleBatch rules, int initialPoints, double tolerance)
+        throws FuzzyException
+    {
+        this(rules, sameForEachInput(rules, initialPoints), tolerance, DEFAULT_MAX_REFINEMENTS);
+    }
+
+    private static int[] sameForEachInput(FuzzyRuleBatch rules, int initialPoints)
+    {
+        int[] points = new int[rules.getInputVariables().length];
+        Arrays.fill(points, initialPoints);
+        return points;
+    }
+
+    /**
+     * Build a control surface.
+     *
+     * @param rules the rules to tabulate
+     * @param initialPoints the number of evenly spaced points along each input axis
+     *        before the grid is refined (at least 2 for each input)
+     * @param tolerance the largest interpolation error wanted; 0.0 to use 
+     *        the initial grid without refining it
+     * @param maxRefinements the most times that an interval of the initial grid may be 
+     *        halved
+     * @exception FuzzyException if the arguments are not valid
+     */
+    public FuzzyControlSurface(FuzzyRuleBatch rules, int[] initialPoints, double tolerance,
+                               int maxRefinements)
+        throws FuzzyException
+    {
+        inputVariables = rules.getInputVariables();
+        outputVariables = rules.getOutputVariables();
+        int numInputs = inputVariables.length;
+        if (numInputs == 0 || initialPoints.length != numInputs)
+           throw new FuzzyRuleException("FuzzyControlSurface needs the number of initial points for each of at least one input");
+        if (!(tolerance >= 0.0))
+           throw new FuzzyRuleException("FuzzyControlSurface tolerance must not be negative");
+        long size = 1;
+        for (int v=0; v<numInputs; v++)
+        {   if (initialPoints[v] < 2)
+               throw new FuzzyRuleException("FuzzyControlSurface needs at least 2 initial points along each axis");
+            size *= initialPoints[v];
+        }
+        if (size > MAX_GRID_POINTS)
+           throw new FuzzyRuleException("FuzzyControlSurface initial grid has more than " + MAX_GRID_POINTS + " points");
+
+        axes = new double[numInputs][];
+        for (int v=0; v<numInputs; v++)
+        {   double min = inputVariables[v].getMinUOD();
+            double max = inputVariables[v].getMaxUOD();
+            int n = initialPoints[v];
+            axes[v] = new double[n];
+            for (int i=0; i<n; i++)
+                axes[v][i] = min + (max - min)*i/(n - 1);
+            axes[v][n-1] = max;
+        }
+        
+        for (int refinement=0; ; refinement++)
+        {   buildTable(rules);
+            // the largest interpolation error in the middle of each interval on each axis
+            double[][] intervalErrors = new double[numInputs][];
+            for (int v=0; v<numInputs; v++)
+                intervalErrors[v] = new double[axes[v].length - 1];
+            errorBound = checkIntervals(rules, intervalErrors);
+            if (tolerance <= 0.0 || errorBound <= tolerance || refinement >= maxRefinements)
+                break;
+            
+            // add grid lines through the middle of the intervals that missed
+            double[][] refined = new double[numInputs][];
+            size = 1;
+            for (int v=0; v<numInputs; v++)
+            {   double[] axis = axes[v];
+                double[] newAxis = new double[2*axis.length - 1];
+                int n = 0;
+                for (int i=0; i<axis.length-1; i++)
+                {   newAxis[n++] = axis[i];
+                    double middle = (axis[i] + axis[i+1])/2.0;
+                    if (intervalErrors[v][i] > tolerance && middle > axis[i] && middle < axis[i+1])
+                        newAxis[n++] = middle;
+                }
+                newAxis[n++] = axis[axis.length-1];
+                refined[v] = new double[n];
+                System.arraycopy(newAxis, 0, refined[v], 0, n);
+                size *= n;
+            }
+            if (size > MAX_GRID_POINTS || sameSize(refined, axes))
+                break;
+            axes = refined;
+        }
+        buildBins(initialPoints);
+        errorBound = Math.max(errorBound, checkCells(rules));
+    }
+
+    /**
+     * Divide each axis that was refined into evenly spaced bins no wider than its 
+     * narrowest interval, so that a bin holds at most one grid point (other than at 
+     * its start). The intervals of the other axes are found directly.
+     */
+    private void buildBins(int[] initialPoints)
+    {
+        bins = new int[axes.length][];
+        binScale = new double[axes.length];
+        for (int v=0; v<axes.length; v++)
+        {   double[] axis = axes[v];
+            int n = axis.length;
+            double range = axis[n-1] - axis[0];
+            if (n == initialPoints[v])
+            {   binScale[v] = (n - 1)/range;
+                continue;
+            }
+            double narrowest = range;
+            for (int i=0; i<n-1; i++)
+                narrowest = Math.min(narrowest, axis[i+1] - axis[i]);
+            int numBins = (int)Math.min(MAX_GRID_POINTS, Math.ceil(range/narrowest));
+            binScale[v] = numBins/range;
+            bins[v] = new int[numBins + 1];
+            int i = 0;
+            for (int k=0; k<=numBins; k++)
+            {   double x = axis[0] + k/binScale[v];
+                while (i < n-2 && axis[i+1] <= x) 
+                    i++;
+                bins[v][k] = i;
+            }
+        }
+    }
+
+    private static boolean sameSize(double[][] a, double[][] b)
+    {
+        for (int v=0; v<a.length; v++)
+            if (a[v].length != b[v].length) return false;
+        return true;
+    }
+
+    /**
+     * Fire the rules at every grid point.
+     */
+    private void buildTable(FuzzyRuleBatch rules)
+        throws XValueOutsideUODException
+    {
+        int numInputs = axes.length;
+        strides = new int[numInputs];
+        int size = 1;
+        for (int v=numInputs-1; v>=0; v--)
+        {   strides[v] = size;
+            size *= axes[v].length;
+        }
+        double[][] inputs = new double[numInputs][size];
+        for (int p=0; p<size; p++)
+            for (int v=0; v<numInputs; v++)
+                inputs[v][p] = axes[v][(p/strides[v]) % axes[v].length];
+        table = new double[outputVariables.length][size];
+        rules.execute(inputs, table);
+    }
+
+    /**
+     * Fire the rules in the middle of every interval along each axis (with the other inputs
+     * at grid points), record the largest error of each interval and return the 
+     * largest error of all.
+     */
+    private double checkIntervals(FuzzyRuleBatch rules, double[][] intervalErrors)
+        throws XValueOutsideUODException
+    {
+        int numInputs = axes.length;
+        int size = table[0].length;
+        double maxError = 0.0;
+        for (int v=0; v<numInputs; v++)
+        {   int n = axes[v].length;
+            // the grid points that are not the last along axis v
+            int count = size/n*(n - 1);
+            double[][] inputs = new double[numInputs][count];
+            int[] lower = new int[count];
+            int c = 0;
+            for (int p=0; p<size; p++)
+            {   int i = (p/strides[v]) % n;
+                if (i == n-1) continue;
+                for (int w=0; w<numInputs; w++)
+                    inputs[w][c] = axes[w][(p/strides[w]) % axes[w].length];
+                inputs[v][c] = (axes[v][i] + axes[v][i+1])/2.0;
+                lower[c++] = p;
+            }
+            double[][] outputs = new double[outputVariables.length][count];
+            rules.execute(inputs, outputs);
+            for (c=0; c<count; c++)
+            {   int p = lower[c];
+                int i = (p/strides[v]) % n;
+                for (int o=0; o<outputVariables.length; o++)
+                {   double interpolated = (table[o][p] + table[o][p + strides[v]])/2.0;
+                    double error = Math.abs(outputs[o][c] - interpolated);
+                    if (error > intervalErrors[v][i]) // false when NaN
+                    {   intervalErrors[v][i] = error;
+                        if (error > maxError) maxError = error;
+                    }
+                }
+            }
+        }
+        return maxError;
+    }
+
+    /**
+     * Fire the rules at the center of every cell of the grid and return the largest
+     * interpolation error.
+     */
+    private double checkCells(FuzzyRuleBatch rules)
+        throws FuzzyException
+    {
+        int numInputs = axes.length;
+        int count = 1;
+        for (int v=0; v<numInputs; v++)
+            count *= axes[v].length - 1;
+        double[][] inputs = new double[numInputs][count];
+        for (int c=0; c<count; c++)
+        {   int rest = c;
+            for (int v=numInputs-1; v>=0; v--)
+            {   int i = rest % (axes[v].length - 1);
+                rest /= axes[v].length - 1;
+                inputs[v][c] = (axes[v][i] + axes[v][i+1])/2.0;
+            }
+        }
+        double[][] outputs = new double[outputVariables.length][count];
+        rules.execute(inputs, outputs);
+        
+        double maxError = 0.0;
+        double[] point = new double[numInputs];
+        double[] interpolated = new double[outputVariables.length];
+        for (int c=0; c<count; c++)
+        {   for (int v=0; v<numInputs; v++)
+                point[v] = inputs[v][c];
+            getValues(point, interpolated);
+            for (int o=0; o<outputVariables.length; o++)
+            {   double error = Math.abs(outputs[o][c] - interpolated[o]);
+                if (error > maxError) maxError = error;
+            }
+        }
+        return maxError;
+    }
+
+    /**
+     * Returns the FuzzyVariables of the inputs, in order.
+     *
+     * @return an array with the input FuzzyVariables
+     */
+    public FuzzyVariable[] getInputVariables()
+    {
+        return inputVariables.clone();
+    }
+
+    /**
+     * Returns the FuzzyVariables of the outputs, in order.
+     *
+     * @return an array with the output FuzzyVariables
+     */
+    public FuzzyVariable[] getOutputVariables()
+    {
+        return outputVariables.clone();
+    }
+
+    /**
+     * Returns the estimated largest error of the interpolated outputs (see the
+     * description of the class).
+     *
+     * @return the largest interpolation error found when the surface was built
+     */
+    public double getErrorBound()
+    {
+        return errorBound;
+    }
+
+    /**
+     * Returns the x values of the grid lines along an input axis.
+     *
+     * @param input the index of the input variable
+     * @return the x values of the grid points along the axis, in increasing order
+     */
+    public double[] getGridPoints(int input)
+    {
+        return axes[input].clone();
+    }
+
+    /**
+     * Returns the number of points in the grid (the size of the table for each output).
+     *
+     * @return the number of grid points
+     */
+    public int getGridSize()
+    {
+        return table[0].length;
+    }
+
+    /**
+     * Find the interpolated outputs for a set of inputs.
+     *
+     * @param inputs the crisp value of each input variable
+     * @param outputs an array to hold the value of each output variable
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     * @exception FuzzyException if there is not one input value for each input variable 
+     *        or the outputs array does not have one element for each output variable
+     */
+    public void getValues(double[] inputs, double[] outputs)
+        throws FuzzyException
+    {
+        checkInputs(inputs);
+        if (outputs.length != outputVariables.length)
+           throw new FuzzyRuleException("FuzzyControlSurface has " + outputVariables.length + 
+                                        " outputs, not " + outputs.length);
+        for (int o=0; o<outputs.length; o++)
+            outputs[o] = interpolate(table[o], inputs, 0, 0);
+    }
+
+    /**
+     * Find the interpolated value of the first output for a set of inputs.
+     *
+     * @param inputs the crisp value of each input variable
+     * @return the value of the first output variable
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     * @exception FuzzyException if there is not one input value for each input variable
+     */
+    public double getValue(double[] inputs)
+        throws FuzzyException
+    {
+        checkInputs(inputs);
+        return interpolate(table[0], inputs, 0, 0);
+    }
+
+    /**
+     * Find the interpolated value of the first output of a surface with two inputs 
+     * (bilinear interpolation).
+     *
+     * @param x the crisp value of the first input variable
+     * @param y the crisp value of the second input variable
+     * @return the value of the first output variable
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     * @exception FuzzyException if the surface does not have two inputs
+     */
+    public double getValue(double x, double y)
+        throws FuzzyException
+    {
+        if (axes.length != 2)
+           throw new FuzzyRuleException("FuzzyControlSurface has " + axes.length + " inputs, not 2");
+        checkUOD(0, x);
+        checkUOD(1, y);
+        double[] xAxis = axes[0], yAxis = axes[1];
+        int i = locate(0, x);
+        int j = locate(1, y);
+        double tx = (x - xAxis[i])/(xAxis[i+1] - xAxis[i]);
+        double ty = (y - yAxis[j])/(yAxis[j+1] - yAxis[j]);
+        double[] t = table[0];
+        int p = i*strides[0] + j;
+        double low = t[p] + ty*(t[p+1] - t[p]);
+        p += strides[0];
+        double high = t[p] + ty*(t[p+1] - t[p]);
+        return low + tx*(high - low);
+    }
+
+    private void checkInputs(double[] inputs)
+        throws FuzzyException
+    {
+        if (inputs.length != axes.length)
+           throw new FuzzyRuleException("FuzzyControlSurface has " + axes.length + 
+                                        " inputs, not " + inputs.length);
+        for (int v=0; v<inputs.length; v++)
+            checkUOD(v, inputs[v]);
+    }
+
+    private void checkUOD(int v, double x)
+        throws XValueOutsideUODException
+    {
+        double[] axis = axes[v];
+        if (!(x >= axis[0] && x <= axis[axis.length-1]))
+           throw new XValueOutsideUODException("Input value " + x + " is outside the Universe of Discourse of " + 
+                                               inputVariables[v].getName());
+    }
+
+    /**
+     * The index of the interval of axis v that holds x (x must be in the range
+     * of the axis).
+     */
+    private int locate(int v, double x)
+    {
+        double[] axis = axes[v];
+        if (bins[v] == null)
+        {   int i = (int)((x - axis[0])*binScale[v]);
+            return (i < axis.length-2) ? i : axis.length-2;
+        }
+        int i = bins[v][(int)((x - axis[0])*binScale[v])];
+        if (i < axis.length-2 && axis[i+1] <= x)
+        {   i++;
+            // only when rounding puts a second grid point in the bin
+            while (i < axis.length-2 && axis[i+1] <= x)
+                i++;
+        }
+        return i;
+    }
+
+    /**
+     * Interpolate along the axes from input v on, within the part of the table that 
+     * starts at offset (the grid points of the inputs before v are fixed).
+     */
+    private double interpolate(double[] t, double[] inputs, int v, int offset)
+    {
+        double[] axis = axes[v];
+        double x = inputs[v];
+        int i = locate(v, x);
+        double tx = (x - axis[i])/(axis[i+1] - axis[i]);
+        int p = offset + i*strides[v];
+        double low, high;
+        if (v == axes.length-1)
+        {   low = t[p];
+            high = t[p+1];
+        }
+        else
+        {   low = interpolate(t, inputs, v+1, p);
+            high = interpolate(t, inputs, v+1, p + strides[v]);
+        }
+        return low + tx*(high - low);
+    }
+}
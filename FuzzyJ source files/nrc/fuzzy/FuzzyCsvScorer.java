@@ -0,0 +1,858 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Vector;
+import java.util.concurrent.*;
+
+/**
+ * Scores a CSV file with a FuzzyControlLanguageModel: for each row of input values 
+ * it writes a row with the defuzzified values of the model's outputs. The file is 
+ * streamed from end to end, so its size is not limited by memory:
+ * <ul>
+ * <li> the rows are read through an NIO channel into a large buffer and the input 
+ *      columns are parsed into blocks of rows (4096 by default), with the numbers
+ *      parsed directly from the bytes rather than through Strings;
+ * <li> each block is evaluated by the FuzzyRuleBatches of the model on a pool of
+ *      worker threads (each thread has its own copy of the model);
+ * <li> the results are written, in the order of the input rows, by a writer thread.
+ *      Only a fixed number of blocks (twice the number of workers, plus 2) exist, 
+ *      so the reader waits for the writer rather than filling memory.
+ * </ul>
+ * The first row of the input must be a header that names its columns; a column 
+ * whose name is the name of one of the model's input variables gives the values 
+ * of that variable (the other columns are ignored). The output starts with a header 
+ * naming the output variables, and with setKeepInput each input row is written 
+ * before its outputs. A row that has an empty, non-numeric or out of range (outside 
+ * the universe of discourse) input value is scored as Double.NaN for every 
+ * output and counted as invalid. Fields may be enclosed in double quotes (but may
+ * not contain line breaks).
+ * <p>
+ * From the command line:
+ * <pre>
+ *    java nrc.fuzzy.FuzzyCsvScorer -model file.fcl [-cache directory] [-threads n] 
+ *         [-block rows] [-delimiter c] [-keep] [-precision digits] input.csv output.csv
+ * </pre>
+ * The model is loaded from an FCL file (through the cache directory if one is given,
+ * see FuzzyControlLanguageLoader); - for the input or output reads from standard 
+ * input or writes to standard output. The number of rows scored, the invalid rows 
+ * and the rows per second are reported on standard error every 5 seconds and at 
+ * the end.
+ *
+ * @see FuzzyControlLanguageModel
+ * @see FuzzyRuleBatch
+ */
+public class FuzzyCsvScorer
+{
+    /** The default number of rows in a block. */
+    public static final int DEFAULT_BLOCK_ROWS = 4096;
+    /** The default number of decimal places written for the outputs. */
+    public static final int DEFAULT_PRECISION = 6;
+
+    static final int READ_BUFFER_SIZE = 8 << 20;
+    static final int WRITE_BUFFER_SIZE = 1 << 20;
+    static final long PROGRESS_INTERVAL = 5000000000L;
+
+    /** the powers of 10 that are exact doubles */
+    private static final double[] POWERS_OF_10 = new double[23];
+    static 
+    {   POWERS_OF_10[0] = 1.0;
+        for (int i=1; i<POWERS_OF_10.length; i++)
+            POWERS_OF_10[i] = POWERS_OF_10[i-1]*10.0;
+    }
+
+    private FuzzyControlLanguageModel model;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int blockRows = DEFAULT_BLOCK_ROWS;
+    private byte delimiter = ',';
+    private boolean keepInput = false;
+    private int precision = DEFAULT_PRECISION;
+    private PrintStream progress = null;
+
+    private volatile long rowsScored;
+    private volatile long invalidRows;
+    private long nanos;
+
+    /**
+     * Create a scorer for a model. The model itself is not used to score rows; each
+     * worker thread makes its own copy.
+     *
+     * @param model the model
+     */
+    public FuzzyCsvScorer(FuzzyControlLanguageModel model)
+    {
+        this.model = model;
+    }
+
+    /**
+     * Set the number of worker threads (by default the number of processors).
+     *
+     * @param threads the number of threads (at least 1)
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Set the number of rows in a block (DEFAULT_BLOCK_ROWS by default).
+     *
+     * @param rows the number of rows (at least 1)
+     */
+    public void setBlockRows(int rows)
+    {
+        blockRows = Math.max(1, rows);
+    }
+
+    /**
+     * Set the character that separates the fields (a comma by default).
+     *
+     * @param c the delimiter, which must be an ASCII character
+     */
+    public void setDelimiter(char c)
+    {
+        if (c > 127)
+            throw new IllegalArgumentException("The delimiter must be an ASCII character");
+        delimiter = (byte)c;
+    }
+
+    /**
+     * Set whether each input row is written before its outputs (it is not by default).
+     *
+     * @param keep true to write the input rows
+     */
+    public void setKeepInput(boolean keep)
+    {
+        keepInput = keep;
+    }
+
+    /**
+     * Set the number of decimal places written for the outputs (DEFAULT_PRECISION
+     * by default); trailing zeros are not written.
+     *
+     * @param digits the number of decimal places (0 to 15)
+     */
+    public void setPrecision(int digits)
+    {
+        precision = Math.max(0, Math.min(15, digits));
+    }
+
+    /**
+     * Set a stream to report progress on every 5 seconds, or null (the default)
+     * for no reports.
+     *
+     * @param out the stream
+     */
+    public void setProgress(PrintStream out)
+    {
+        progress = out;
+    }
+
+    /**
+     * Get the number of rows scored by the last call of score.
+     *
+     * @return the number of rows
+     */
+    public long getRows()
+    {
+        return rowsScored;
+    }
+
+    /**
+     * Get the number of rows scored by the last call of score that had an input 
+     * that was empty, not a number or outside the universe of discourse of its
+     * variable.
+     *
+     * @return the number of invalid rows
+     */
+    public long getInvalidRows()
+    {
+        return invalidRows;
+    }
+
+    /**
+     * Get the rate at which the last call of score scored rows.
+     *
+     * @return the rows per second
+     */
+    public double getRowsPerSecond()
+    {
+        return (nanos == 0) ? 0.0 : rowsScored*1e9/nanos;
+    }
+
+    /** A block of rows on its way through the pipeline. */
+    private class Block
+    {
+        double[][] inputs;
+        double[][] outputs;
+        boolean[] invalid;
+        int count;
+        // the input rows, when they are kept: row r is lines[lineStart[r] .. lineStart[r+1]-1]
+        byte[] lines;
+        int[] lineStart;
+
+        Block(int numInputs, int numOutputs)
+        {
+            inputs = new double[numInputs][blockRows];
+            outputs = new double[numOutputs][blockRows];
+            invalid = new boolean[blockRows];
+            if (keepInput)
+            {   lines = new byte[blockRows*64];
+                lineStart = new int[blockRows+1];
+            }
+        }
+    }
+
+    /**
+     * Score the rows read from one channel, writing the results to another. The
+     * channels are not closed.
+     *
+     * @param in the channel to read the CSV input from
+     * @param out the channel to write the results to
+     * @return the number of rows scored
+     * @exception IOException if the input cannot be read, does not have a column
+     *        for each input variable, or the output cannot be written
+     * @exception FuzzyException if a worker's copy of the model cannot be made
+     */
+    public long score(ReadableByteChannel in, final WritableByteChannel out) 
+        throws IOException, FuzzyException
+    {
+        final FuzzyVariable[] inputVariables = model.getInputVariables();
+        final FuzzyVariable[] outputVariables = model.getOutputVariables();
+        final int[] methods = model.getDefuzzifyMethods();
+        final double[] defaults = model.getDefaultValues();
+        final FuzzyRule[] rules = model.getFuzzyRules();
+        long start = System.nanoTime();
+        rowsScored = 0;
+        invalidRows = 0;
+
+        Reader reader = new Reader(in);
+        if (!reader.nextLine())
+            throw new IOException("The input has no header");
+        int[] columnInput = mapColumns(reader.fields(), inputVariables);
+
+        final Writer writer = new Writer(out);
+        if (keepInput)
+        {   writer.put(reader.data, reader.lineStart, reader.lineEnd);
+            writer.put(delimiter);
+        }
+        for (int o=0; o<outputVariables.length; o++)
+        {   if (o > 0) 
+                writer.put(delimiter);
+            writer.put(outputVariables[o].getName());
+        }
+        writer.put((byte)'\n');
+
+        // each worker thread has its own copy of the model
+        final ThreadLocal models = new ThreadLocal();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {   public Thread newThread(Runnable r)
+                {   Thread t = new Thread(r, "FuzzyCsvScorer worker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        final BlockingQueue free = new ArrayBlockingQueue(2*threads + 2);
+        for (int b=0; b<2*threads + 2; b++)
+            free.add(new Block(inputVariables.length, outputVariables.length));
+        final BlockingQueue results = new LinkedBlockingQueue();
+        final Future end = new FutureTask(new Callable() { public Object call() { return null; } });
+        ((FutureTask)end).run();
+
+        WriterThread writerThread = new WriterThread(writer, results, free, start);
+        writerThread.start();
+        try
+        {   while (writerThread.failure == null)
+            {   final Block block = (Block)free.take();
+                if (!reader.readBlock(block, columnInput))
+                {   free.add(block);
+                    break;
+                }
+                results.add(workers.submit(new Callable()
+                    {   public Object call() throws FuzzyException
+                        {   FuzzyControlLanguageModel m = (FuzzyControlLanguageModel)models.get();
+                            if (m == null)
+                            {   m = new FuzzyControlLanguageModel(model.getName(), inputVariables, 
+                                                                  outputVariables, rules, methods, defaults);
+                                models.set(m);
+                            }
+                            evaluate(m, inputVariables, block);
+                            return block;
+                        }
+                    }));
+            }
+        }
+        catch (InterruptedException e)
+        {   throw new InterruptedIOException();
+        }
+        finally
+        {   // the writer finishes the blocks already read, even if reading failed
+            results.add(end);
+            boolean interrupted = false;
+            while (writerThread.isAlive())
+            {   try
+                {   writerThread.join();
+                }
+                catch (InterruptedException e)
+                {   interrupted = true;
+                }
+            }
+            workers.shutdownNow();
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        nanos = System.nanoTime() - start;
+        if (writerThread.failure instanceof IOException)
+            throw (IOException)writerThread.failure;
+        if (writerThread.failure instanceof FuzzyException)
+            throw (FuzzyException)writerThread.failure;
+        if (writerThread.failure instanceof RuntimeException)
+            throw (RuntimeException)writerThread.failure;
+        if (writerThread.failure != null)
+            throw new IOException(writerThread.failure.toString());
+        if (progress != null)
+            progress.println(report());
+        return rowsScored;
+    }
+
+    /** The rows scored, invalid rows and rows per second, for progress reports. */
+    private String report()
+    {
+        long elapsed = (nanos > 0) ? nanos : 1;
+        return rowsScored + " rows scored (" + invalidRows + " invalid) in " + 
+               Math.round(elapsed/1e6)/1000.0 + " s, " + Math.round(rowsScored*1e9/elapsed) + " rows/s";
+    }
+
+    /** The input variable of each column of the header, or -1 if it is not one. */
+    private static int[] mapColumns(Vector names, FuzzyVariable[] inputVariables) throws IOException
+    {
+        int[] columnInput = new int[names.size()];
+        boolean[] found = new boolean[inputVariables.length];
+        for (int c=0; c<columnInput.length; c++)
+        {   columnInput[c] = -1;
+            String name = ((String)names.elementAt(c)).replace("\uFEFF", "").trim();
+            for (int v=0; v<inputVariables.length && columnInput[c] < 0; v++)
+                if (!found[v] && inputVariables[v].getName().equals(name))
+                {   columnInput[c] = v;
+                    found[v] = true;
+                }
+        }
+        for (int c=0; c<columnInput.length; c++)
+        {   String name = ((String)names.elementAt(c)).replace("\uFEFF", "").trim();
+            for (int v=0; v<inputVariables.length && columnInput[c] < 0; v++)
+                if (!found[v] && inputVariables[v].getName().equalsIgnoreCase(name))
+                {   columnInput[c] = v;
+                    found[v] = true;
+                }
+        }
+        for (int v=0; v<inputVariables.length; v++)
+            if (!found[v])
+                throw new IOException("The input has no column for the input variable " + inputVariables[v].getName());
+        return columnInput;
+    }
+
+    /** Score a block with a worker's model; rows with an invalid input give NaN outputs. */
+    private void evaluate(FuzzyControlLanguageModel m, FuzzyVariable[] inputVariables, Block block)
+        throws XValueOutsideUODException
+    {
+        for (int v=0; v<inputVariables.length; v++)
+        {   double min = inputVariables[v].getMinUOD();
+            double max = inputVariables[v].getMaxUOD();
+            double[] column = block.inputs[v];
+            for (int r=0; r<block.count; r++)
+                if (!(column[r] >= min && column[r] <= max))  // also true for NaN
+                {   block.invalid[r] = true;
+                    column[r] = min;
+                }
+        }
+        m.evaluate(block.inputs, block.outputs, 0, block.count);
+        for (int r=0; r<block.count; r++)
+            if (block.invalid[r])
+                for (int o=0; o<block.outputs.length; o++)
+                    block.outputs[o][r] = Double.NaN;
+    }
+
+    /** Writes the blocks, in order, as their results become available. */
+    private class WriterThread extends Thread
+    {
+        Writer writer;
+        BlockingQueue results, free;
+        long start;
+        volatile Throwable failure = null;
+        byte[] number = new byte[32];
+
+        WriterThread(Writer writer, BlockingQueue results, BlockingQueue free, long start)
+        {
+            super("FuzzyCsvScorer writer");
+            this.writer = writer;
+            this.results = results;
+            this.free = free;
+            this.start = start;
+        }
+
+        public void run()
+        {
+            long lastReport = start;
+            try
+            {   while (true)
+                {   Future result = (Future)results.take();
+                    Block block;
+                    try
+                    {   block = (Block)result.get();
+                    }
+                    catch (ExecutionException e)
+                    {   if (failure == null)
+                            failure = e.getCause();
+                        continue;
+                    }
+                    if (block == null)
+                        break;
+                    if (failure == null)
+                    {   try
+                        {   write(block);
+                        }
+                        catch (Throwable t)
+                        {   failure = t;
+                        }
+                    }
+                    block.count = 0;
+                    free.add(block);
+                    long now = System.nanoTime();
+                    if (progress != null && now - lastReport > PROGRESS_INTERVAL)
+                    {   nanos = now - start;
+                        progress.println(report());
+                        lastReport = now;
+                    }
+                }
+                if (failure == null)
+                    writer.flush();
+            }
+            catch (Throwable t)
+            {   if (failure == null)
+                    failure = t;
+            }
+        }
+
+        void write(Block block) throws IOException
+        {
+            int invalid = 0;
+            for (int r=0; r<block.count; r++)
+            {   if (keepInput)
+                {   writer.put(block.lines, block.lineStart[r], block.lineStart[r+1]);
+                    writer.put(delimiter);
+                }
+                for (int o=0; o<block.outputs.length; o++)
+                {   if (o > 0) 
+                        writer.put(delimiter);
+                    int n = format(block.outputs[o][r], precision, number);
+                    writer.put(number, 0, n);
+                }
+                writer.put((byte)'\n');
+                if (block.invalid[r])
+                {   invalid++;
+                    block.invalid[r] = false;
+                }
+            }
+            invalidRows += invalid;
+            rowsScored += block.count;
+        }
+    }
+
+    /** Reads the lines of the input, and the input values of their rows. */
+    private class Reader
+    {
+        ReadableByteChannel channel;
+        byte[] data = new byte[READ_BUFFER_SIZE];
+        int filled = 0;
+        boolean eof = false;
+        /** the current line is data[lineStart .. lineEnd-1] (without the line end) */
+        int lineStart = 0, lineEnd = 0, next = 0;
+        long lineNumber = 0;
+
+        Reader(ReadableByteChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        /** Move to the next line, reading more of the input if need be; false at the end. */
+        boolean nextLine() throws IOException
+        {
+            int i = next;
+            while (true)
+            {   while (i < filled && data[i] != '\n')
+                    i++;
+                if (i < filled || eof)
+                    break;
+                // the line is not all in the buffer: move it to the start and read more
+                int kept = filled - next;
+                if (next == 0 && kept == data.length)
+                {   byte[] bigger = new byte[2*data.length];
+                    System.arraycopy(data, 0, bigger, 0, kept);
+                    data = bigger;
+                }
+                else
+                    System.arraycopy(data, next, data, 0, kept);
+                i -= next;
+                next = 0;
+                filled = kept;
+                int n = channel.read(ByteBuffer.wrap(data, filled, data.length - filled));
+                if (n < 0)
+                    eof = true;
+                else
+                    filled += n;
+            }
+            if (next >= filled)
+                return false;
+            lineStart = next;
+            lineEnd = i;
+            next = (i < filled) ? i + 1 : filled;
+            if (lineEnd > lineStart && data[lineEnd-1] == '\r')
+                lineEnd--;
+            lineNumber++;
+            return true;
+        }
+
+        /** The fields of the current line, as Strings (for the header). */
+        Vector fields()
+        {
+            Vector fields = new Vector();
+            int from = lineStart;
+            while (true)
+            {   int to = fieldEnd(from);
+                int a = from, b = to;
+                if (b - a >= 2 && data[a] == '"' && data[b-1] == '"')
+                {   a++; 
+                    b--; 
+                }
+                fields.addElement(new String(data, a, b - a, java.nio.charset.StandardCharsets.UTF_8).replace("\"\"", "\""));
+                if (to >= lineEnd)
+                    return fields;
+                from = to + 1;
+            }
+        }
+
+        /** The end of the field that starts at from (a delimiter or the end of the line). */
+        int fieldEnd(int from)
+        {
+            boolean quoted = false;
+            int i = from;
+            while (i < lineEnd && (quoted || data[i] != delimiter))
+            {   if (data[i] == '"')
+                    quoted = !quoted;
+                i++;
+            }
+            return i;
+        }
+
+        /** Fill a block with the input values of the next rows; false if there are none. */
+        boolean readBlock(Block block, int[] columnInput) throws IOException
+        {
+            int r = 0;
+            int size = 0;
+            while (r < blockRows && nextLine())
+            {   if (lineEnd == lineStart && eof && next >= filled)
+                    break;  // a blank last line
+                for (int v=0; v<block.inputs.length; v++)
+                    block.inputs[v][r] = Double.NaN;
+                int from = lineStart;
+                for (int c=0; c<columnInput.length; c++)
+                {   int to = fieldEnd(from);
+                    if (columnInput[c] >= 0)
+                        block.inputs[columnInput[c]][r] = parseDouble(data, from, to);
+                    if (to >= lineEnd)
+                        break;
+                    from = to + 1;
+                }
+                if (keepInput)
+                {   int length = lineEnd - lineStart;
+                    if (size + length > block.lines.length)
+                    {   byte[] bigger = new byte[Math.max(2*block.lines.length, size + length)];
+                        System.arraycopy(block.lines, 0, bigger, 0, size);
+                        block.lines = bigger;
+                    }
+                    System.arraycopy(data, lineStart, block.lines, size, length);
+                    block.lineStart[r] = size;
+                    size += length;
+                    block.lineStart[r+1] = size;
+                }
+                r++;
+            }
+            block.count = r;
+            return r > 0;
+        }
+    }
+
+    /** Buffers the output and writes it to the channel. */
+    private static class Writer
+    {
+        WritableByteChannel channel;
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+        Writer(WritableByteChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        void put(byte b) throws IOException
+        {
+            if (!buffer.hasRemaining())
+                flush();
+            buffer.put(b);
+        }
+
+        void put(byte[] bytes, int from, int to) throws IOException
+        {
+            while (from < to)
+            {   if (!buffer.hasRemaining())
+                    flush();
+                int n = Math.min(to - from, buffer.remaining());
+                buffer.put(bytes, from, n);
+                from += n;
+            }
+        }
+
+        void put(String s) throws IOException
+        {
+            byte[] bytes = s.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            put(bytes, 0, bytes.length);
+        }
+
+        void flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Parse a decimal number from bytes, such as <code>-12.5</code> or 
+     * <code>1.5e-3</code>, optionally with spaces around it and in double quotes. 
+     * Numbers of up to 15 significant digits with exponents up to 22 (nearly all 
+     * numbers written to CSV files) are converted without creating any objects, 
+     * with the same result as Double.parseDouble; others are passed to 
+     * Double.parseDouble.
+     *
+     * @param b the bytes
+     * @param from the index of the first byte
+     * @param to the index after the last byte
+     * @return the number, or Double.NaN if the bytes are empty or not a number
+     */
+    static double parseDouble(byte[] b, int from, int to)
+    {
+        while (from < to && (b[from] == ' ' || b[from] == '\t'))
+            from++;
+        while (to > from && (b[to-1] == ' ' || b[to-1] == '\t'))
+            to--;
+        if (to - from >= 2 && b[from] == '"' && b[to-1] == '"')
+        {   from++;
+            to--;
+        }
+        if (from >= to)
+            return Double.NaN;
+
+        int i = from;
+        boolean negative = false;
+        if (b[i] == '-' || b[i] == '+')
+        {   negative = (b[i] == '-');
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0, exponent = 0;
+        boolean anyDigits = false;
+        for (; i < to && b[i] >= '0' && b[i] <= '9'; i++)
+        {   anyDigits = true;
+            if (mantissa != 0 || b[i] != '0')
+            {   if (digits < 18) mantissa = mantissa*10 + (b[i] - '0');
+                else exponent++;
+                digits++;
+            }
+        }
+        if (i < to && b[i] == '.')
+        {   for (i++; i < to && b[i] >= '0' && b[i] <= '9'; i++)
+            {   anyDigits = true;
+                if (mantissa != 0 || b[i] != '0')
+                {   if (digits < 18) 
+                    {   mantissa = mantissa*10 + (b[i] - '0');
+                        exponent--;
+                    }
+                    digits++;
+                }
+                else
+                    exponent--;
+            }
+        }
+        if (anyDigits && i < to && (b[i] == 'e' || b[i] == 'E'))
+        {   i++;
+            boolean negativeExponent = false;
+            if (i < to && (b[i] == '-' || b[i] == '+'))
+            {   negativeExponent = (b[i] == '-');
+                i++;
+            }
+            int e = 0;
+            boolean anyExponentDigits = false;
+            for (; i < to && b[i] >= '0' && b[i] <= '9'; i++)
+            {   anyExponentDigits = true;
+                if (e < 100000) e = e*10 + (b[i] - '0');
+            }
+            if (!anyExponentDigits)
+                anyDigits = false;
+            exponent += negativeExponent ? -e : e;
+        }
+        if (anyDigits && i == to && digits <= 15 && exponent >= -22 && exponent <= 22)
+        {   // the mantissa and the power of 10 are exact, so one operation rounds correctly
+            double d = (exponent >= 0) ? mantissa*POWERS_OF_10[exponent] : mantissa/POWERS_OF_10[-exponent];
+            return negative ? -d : d;
+        }
+        if (anyDigits && i == to && mantissa == 0)
+            return negative ? -0.0 : 0.0;
+        try
+        {   return Double.parseDouble(new String(b, from, to - from, java.nio.charset.StandardCharsets.ISO_8859_1));
+        }
+        catch (NumberFormatException e)
+        {   return Double.NaN;
+        }
+    }
+
+    /**
+     * Format a number with at most the given number of decimal places (without 
+     * trailing zeros) into bytes, without creating any objects for numbers less
+     * than 1e15 in magnitude.
+     *
+     * @param d the number
+     * @param precision the number of decimal places (0 to 15)
+     * @param out the array to write to (32 bytes is enough)
+     * @return the number of bytes written
+     */
+    static int format(double d, int precision, byte[] out)
+    {
+        if (Double.isNaN(d))
+            return put("NaN", out);
+        double scale = POWERS_OF_10[precision];
+        double scaled = Math.abs(d)*scale;
+        if (Double.isInfinite(d) || Math.abs(d) >= 1e15 || scaled >= 9e18)
+            return put(Double.toString(d), out);
+        long units = Math.round(scaled);
+        long whole = units/(long)scale;
+        long fraction = units%(long)scale;
+        int n = 0;
+        if (d < 0 && units != 0)
+            out[n++] = '-';
+        n = putDigits(whole, out, n);
+        if (fraction != 0)
+        {   int places = precision;
+            while (fraction%10 == 0)
+            {   fraction /= 10;
+                places--;
+            }
+            out[n++] = '.';
+            for (int p=places-1; p>=0; p--)
+            {   out[n+p] = (byte)('0' + fraction%10);
+                fraction /= 10;
+            }
+            n += places;
+        }
+        return n;
+    }
+
+    private static int putDigits(long value, byte[] out, int n)
+    {
+        int start = n;
+        do
+        {   out[n++] = (byte)('0' + value%10);
+            value /= 10;
+        } while (value != 0);
+        for (int i=start, j=n-1; i<j; i++, j--)
+        {   byte t = out[i];
+            out[i] = out[j];
+            out[j] = t;
+        }
+        return n;
+    }
+
+    private static int put(String s, byte[] out)
+    {
+        for (int i=0; i<s.length(); i++)
+            out[i] = (byte)s.charAt(i);
+        return s.length();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        String modelFile = null, cacheDirectory = null, inputFile = null, outputFile = null;
+        int threads = 0, blockRows = 0, precision = -1;
+        char delimiter = ',';
+        boolean keep = false;
+        for (int i=0; i<args.length; i++)
+        {   if (args[i].equals("-model") && i+1 < args.length)
+                modelFile = args[++i];
+            else if (args[i].equals("-cache") && i+1 < args.length)
+                cacheDirectory = args[++i];
+            else if (args[i].equals("-threads") && i+1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-block") && i+1 < args.length)
+                blockRows = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-delimiter") && i+1 < args.length)
+                delimiter = args[++i].equals("\\t") ? '\t' : args[i].charAt(0);
+            else if (args[i].equals("-precision") && i+1 < args.length)
+                precision = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-keep"))
+                keep = true;
+            else if (inputFile == null && (!args[i].startsWith("-") || args[i].equals("-")))
+                inputFile = args[i];
+            else if (outputFile == null && (!args[i].startsWith("-") || args[i].equals("-")))
+                outputFile = args[i];
+            else
+            {   modelFile = null;
+                break;
+            }
+        }
+        if (modelFile == null || inputFile == null || outputFile == null)
+        {   System.err.println("Usage: FuzzyCsvScorer -model file.fcl [-cache directory] [-threads n] [-block rows] [-delimiter c] [-keep] [-precision digits] input.csv output.csv");
+            System.exit(1);
+        }
+
+        FuzzyControlLanguageModel model = (cacheDirectory == null) 
+            ? FuzzyControlLanguageLoader.load(new File(modelFile))
+            : FuzzyControlLanguageLoader.load(new File(modelFile), new File(cacheDirectory));
+        FuzzyCsvScorer scorer = new FuzzyCsvScorer(model);
+        if (threads > 0) scorer.setThreads(threads);
+        if (blockRows > 0) scorer.setBlockRows(blockRows);
+        if (precision >= 0) scorer.setPrecision(precision);
+        scorer.setDelimiter(delimiter);
+        scorer.setKeepInput(keep);
+        scorer.setProgress(System.err);
+
+        ReadableByteChannel in = inputFile.equals("-") ? Channels.newChannel(System.in)
+                                 : FileChannel.open(new File(inputFile).toPath(), StandardOpenOption.READ);
+        WritableByteChannel out = outputFile.equals("-") ? Channels.newChannel(System.out)
+                                  : FileChannel.open(new File(outputFile).toPath(), StandardOpenOption.CREATE, 
+                                                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try
+        {   scorer.score(in, out);
+        }
+        catch (IOException e)
+        {   System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        finally
+        {   in.close();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+import jdk.jfr.*;
+
+/**
+ * The Java Flight Recorder (JFR) events recorded by FuzzyJ, so that latency spikes
+ * in a service that does fuzzy inference can be matched with the rules, linguistic
+ * expressions or fuzzy sets that caused them, from a recording (for example, one 
+ * started with -XX:StartFlightRecording) rather than with a profiler attached. 
+ * The events are in the category FuzzyJ:
+ * <ul>
+ * <li> nrc.fuzzy.InferenceCycle - a cycle of inference by a FuzzyRuleBatch (one call of
+ *      execute, for any number of records), an IncrementalFuzzyInference or a 
+ *      FuzzyInferenceGraph;
+ * <li> nrc.fuzzy.RuleExecution - an execution (firing) of a FuzzyRule that took longer
+ *      than a threshold (1 ms unless the recording settings give another), with the 
+ *      name of the rule, its DOF (degree of fulfillment) and the number of points in 
+ *      its outputs;
+ * <li> nrc.fuzzy.ExpressionParse - the parse of a linguistic expression when a FuzzyValue 
+ *      is created from one, with the variable, the expression and the number of points
+ *      in the fuzzy set produced;
+ * <li> nrc.fuzzy.ModifierExpansion - an expansion of a fuzzy set by ModifierFunction.expandSet
+ *      before a modifier is applied, with the number of points before and after;
+ * <li> nrc.fuzzy.jess.PreAssertion - the fuzzy processing of a fact being asserted by the
+ *      FuzzyRete of FuzzyJess (firing the fuzzy rule of the activation and global 
+ *      contribution).
+ * </ul>
+ * When no recording is enabled for an event the code that would record it does 
+ * no more than create and test the event.
+ *
+ * @see FuzzyInferenceListener
+ */
+public final class FuzzyFlightRecorderEvents
+{
+    private FuzzyFlightRecorderEvents()
+    {
+    }
+
+    /**
+     * A cycle of inference by a FuzzyRuleBatch, IncrementalFuzzyInference or 
+     * FuzzyInferenceGraph.
+     */
+    @Name("nrc.fuzzy.InferenceCycle")
+    @Label("Fuzzy Inference Cycle")
+    @Category("FuzzyJ")
+    @Description("A cycle of inference by a FuzzyRuleBatch, IncrementalFuzzyInference or FuzzyInferenceGraph")
+    @StackTrace(false)
+    public static class InferenceCycle extends Event
+    {
+        @Label("Engine")
+        @Description("The class doing the inference")
+        public String engine;
+
+        @Label("Rules")
+        @Description("The number of rules (the number of stages of a FuzzyInferenceGraph)")
+        public int rules;
+
+        @Label("Rules Skipped")
+        @Description("The rules (stages) that did not need to be fired again because their inputs had not changed")
+        public int rulesSkipped;
+
+        @Label("Records")
+        @Description("The number of records of inputs")
+        public int records;
+    }
+
+    /**
+     * An execution (firing) of a FuzzyRule that took longer than the threshold.
+     */
+    @Name("nrc.fuzzy.RuleExecution")
+    @Label("Fuzzy Rule Execution")
+    @Category("FuzzyJ")
+    @Description("An execution (firing) of a FuzzyRule")
+    @Threshold("1 ms")
+    public static class RuleExecution extends Event
+    {
+        @Label("Rule")
+        @Description("The name of the rule, if it has one")
+        public String rule;
+
+        @Label("Executor")
+        public String executor;
+
+        @Label("Antecedents")
+        public int antecedents;
+
+        @Label("DOF")
+        @Description("The degree of fulfillment of the rule (NaN if the executor does not give it)")
+        public double dof;
+
+        @Label("Output Points")
+        @Description("The number of points in the fuzzy sets of the outputs")
+        public int outputPoints;
+    }
+
+    /**
+     * The parse of a linguistic expression.
+     */
+    @Name("nrc.fuzzy.ExpressionParse")
+    @Label("Linguistic Expression Parse")
+    @Category("FuzzyJ")
+    @Description("The parse of a linguistic expression to create a FuzzyValue")
+    public static class ExpressionParse extends Event
+    {
+        @Label("Variable")
+        public String variable;
+
+        @Label("Expression")
+        public String expression;
+
+        @Label("Points")
+        @Description("The number of points in the fuzzy set produced (0 if the expression is invalid)")
+        public int points;
+    }
+
+    /**
+     * An expansion of a fuzzy set by ModifierFunction.expandSet.
+     */
+    @Name("nrc.fuzzy.ModifierExpansion")
+    @Label("Modifier Expansion")
+    @Category("FuzzyJ")
+    @Description("The expansion of a fuzzy set by ModifierFunction.expandSet before a modifier is applied")
+    @StackTrace(false)
+    public static class ModifierExpansion extends Event
+    {
+        @Label("Points Before")
+        public int pointsBefore;
+
+        @Label("Points After")
+        public int pointsAfter;
+
+        @Label("Precision Control")
+        @Description("The precision control type: 1 for DELTA_X, 2 for DELTA_Y, 3 for NUMBER_OF_POINTS")
+        public int precisionControlType;
+    }
+
+    /**
+     * The fuzzy processing of a fact asserted by a FuzzyRete.
+     */
+    @Name("nrc.fuzzy.jess.PreAssertion")
+    @Label("Fuzzy Pre-assertion Processing")
+    @Category("FuzzyJ")
+    @Description("The fuzzy processing of a fact being asserted by a FuzzyRete")
+    public static class PreAssertion extends Event
+    {
+        @Label("Fact")
+        @Description("The name of the template of the fact")
+        public String fact;
+
+        @Label("Rule")
+        @Description("The defrule firing, if the fact was asserted by a rule")
+        public String rule;
+
+        @Label("Fuzzy Values")
+        @Description("The number of fuzzy values in the fact")
+        public int fuzzyValues;
+
+        @Label("DOF")
+        @Description("The degree of fulfillment of the fuzzy matches of the rule (NaN if there were none)")
+        public double dof;
+
+        @Label("Global Contribution")
+        @Description("True if the fact was combined with an existing fact")
+        public boolean globalContribution;
+
+        @Label("Points")
+        @Description("The number of points in the fuzzy sets of the fact")
+        public int points;
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A FuzzyInferenceGraph chains sets of rules (FuzzyRuleStages) so that the outputs of
+ * one stage are the inputs of others; for example a stage that concludes a "risk" 
+ * FuzzyVariable from several measurements, and a stage that decides an action from the
+ * risk and other inputs. The stages are linked by their FuzzyVariables: a stage that 
+ * has an antecedent for a variable that is the conclusion of another stage depends on 
+ * that stage. The other input variables of the stages are the inputs of the graph and
+ * are given values with setInput.
+ * <p>
+ * The fuzzy outputs of a stage are passed to the stages that depend on it without
+ * being defuzzified; the value of any variable (to defuzzify, for example) is found
+ * with getValue. If none of the rules of a stage with a conclusion for a variable 
+ * fire the variable has no value (getValue returns null) and the rules of other 
+ * stages with an antecedent for it do not fire.
+ * <p>
+ * The stages are fired in a topological order; a stage that depends on itself through
+ * other stages is an error that is reported when the graph is executed. Each stage 
+ * is at a level one more than the highest level of the stages it depends on. Only the
+ * stages whose inputs changed since the last execution are fired, so after setting one 
+ * input only the stages that depend on it (directly or through other stages) are 
+ * fired again. The outputs of a stage that is fired again are compared with its 
+ * previous outputs (with FuzzySet.equals) and the stages that depend on an output 
+ * are only fired if it changed. When an ExecutorService is set with setExecutorService 
+ * the stages to be fired at each level (which cannot depend on each other) are fired 
+ * in parallel.
+ * <p>
+ * For example,
+ * <pre><code>
+ *    FuzzyInferenceGraph graph = new FuzzyInferenceGraph();
+ *    graph.addStage(new FuzzyRuleStage("risk", riskRules));       // exposure, volatility -> risk
+ *    graph.addStage(new FuzzyRuleStage("liquidity", liqRules));   // volume, spread -> liquidity
+ *    graph.addStage(new FuzzyRuleStage("action", actionRules));   // risk, liquidity -> position
+ *    graph.setInput(exposureFVar, 0.4);
+ *    ...
+ *    graph.execute();
+ *    double position = graph.getValue(positionFVar).momentDefuzzify();
+ *    graph.setInput(spreadFVar, 0.02);  // only the liquidity and action stages
+ *    graph.execute();                   // are fired again
+ * </code></pre>
+ * A FuzzyInferenceGraph must only be used by one thread at a time.
+ *
+ * @see FuzzyRuleStage
+ */
+public class FuzzyInferenceGraph
+{
+    /** the stages in the order they were added */
+    private Vector stages = new Vector();
+    /** the index of the stage that concludes each variable (Integer by FuzzyVariable) */
+    private Hashtable producers = new Hashtable();
+    /** the values of the variables (FuzzyValue by FuzzyVariable) */
+    private Hashtable values = new Hashtable();
+    /** the crisp value last given to each input variable by setInput (Double by FuzzyVariable) */
+    private Hashtable crispInputs = new Hashtable();
+    /** the stages whose inputs changed since they were last fired */
+    private boolean[] changed = new boolean[0];
+    private ExecutorService executorService;
+
+    // The order in which the stages are fired, worked out when first needed 
+    // after a stage is added
+    private boolean ordered;
+    /** the indexes of the stages at each level: [level][stage] */
+    private int[][] levels;
+    /** the indexes of the stages with an antecedent for each output of each stage: [stage][output][stage] */
+    private int[][][] dependents;
+
+    private int stagesFired;
+    private int stagesSkipped;
+
+    /**
+     * Create an empty FuzzyInferenceGraph.
+     */
+    public FuzzyInferenceGraph()
+    {
+    }
+
+    /**
+     * Add a stage to the graph. It is fired the next time the graph is executed.
+     *
+     * @param stage the stage to add
+     * @exception FuzzyRuleException if the stage is already in the graph, or another 
+     *        stage of the graph has one of its rules or concludes one of its output variables
+     */
+    public void addStage(FuzzyRuleStage stage)
+        throws FuzzyRuleException
+    {
+        if (stages.contains(stage))
+           throw new FuzzyRuleException("FuzzyInferenceGraph already has the stage " + stage.getName());
+        FuzzyRule[] rules = stage.getRules();
+        for (int s=0; s<stages.size(); s++)
+        {   FuzzyRule[] otherRules = ((FuzzyRuleStage)stages.elementAt(s)).getRules();
+            for (int r=0; r<rules.length; r++)
+                for (int i=0; i<otherRules.length; i++)
+                    if (rules[r] == otherRules[i])
+                       throw new FuzzyRuleException("FuzzyInferenceGraph stages " + stage.getName() + " and " + 
+                                                    ((FuzzyRuleStage)stages.elementAt(s)).getName() + " share a rule");
+        }
+        FuzzyVariable[] outputs = stage.getOutputVariables();
+        for (int o=0; o<outputs.length; o++)
+            if (producers.containsKey(outputs[o]))
+               throw new FuzzyRuleException("FuzzyInferenceGraph stages " + stage.getName() + " and " + 
+                                            ((FuzzyRuleStage)stages.elementAt(((Integer)producers.get(outputs[o])).intValue())).getName() +
+                                            " both conclude " + outputs[o].getName());
+
+        int index = stages.size();
+        stages.addElement(stage);
+        for (int o=0; o<outputs.length; o++)
+        {   producers.put(outputs[o], Integer.valueOf(index));
+            values.remove(outputs[o]);
+            crispInputs.remove(outputs[o]);
+        }
+        boolean[] newChanged = new boolean[index+1];
+        System.arraycopy(changed, 0, newChanged, 0, index);
+        newChanged[index] = true;
+        changed = newChanged;
+        ordered = false;
+    }
+
+    /**
+     * Returns the stages of the graph in the order in which they are fired.
+     *
+     * @return an array with the stages
+     * @exception FuzzyRuleException if a stage depends on itself through other stages
+     */
+    public FuzzyRuleStage[] getStages()
+        throws FuzzyRuleException
+    {
+        order();
+        FuzzyRuleStage[] result = new FuzzyRuleStage[stages.size()];
+        int i = 0;
+        for (int l=0; l<levels.length; l++)
+            for (int s=0; s<levels[l].length; s++)
+                result[i++] = (FuzzyRuleStage)stages.elementAt(levels[l][s]);
+        return result;
+    }
+
+    /**
+     * Returns the input variables of the graph: the input variables of the stages 
+     * that are not concluded by any stage.
+     *
+     * @return an array with the input FuzzyVariables
+     */
+    public FuzzyVariable[] getInputVariables()
+    {
+        Vector inputs = new Vector();
+        for (int s=0; s<stages.size(); s++)
+        {   FuzzyVariable[] stageInputs = ((FuzzyRuleStage)stages.elementAt(s)).getInputVariables();
+            for (int v=0; v<stageInputs.length; v++)
+                if (!producers.containsKey(stageInputs[v]) && !inputs.contains(stageInputs[v]))
+                    inputs.addElement(stageInputs[v]);
+        }
+        FuzzyVariable[] result = new FuzzyVariable[inputs.size()];
+        inputs.copyInto(result);
+        return result;
+    }
+
+    /**
+     * Sets the ExecutorService used to fire the stages of a level in parallel. If it 
+     * is null (the default) the stages are fired one at a time by the thread that 
+     * executes the graph.
+     *
+     * @param executorService the ExecutorService to fire the stages with, or null
+     */
+    public void setExecutorService(ExecutorService executorService)
+    {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Returns the ExecutorService used to fire the stages of a level in parallel.
+     *
+     * @return the ExecutorService, or null if the stages are fired one at a time
+     */
+    public ExecutorService getExecutorService()
+    {
+        return executorService;
+    }
+
+    /**
+     * Sets the value of an input variable of the graph. The stages that depend on it 
+     * are fired the next time the graph is executed.
+     *
+     * @param fval the value of the input
+     * @exception FuzzyRuleException if the variable of the value is concluded by a stage
+     */
+    public void setInput(FuzzyValue fval)
+        throws FuzzyRuleException
+    {
+        FuzzyVariable fvar = fval.getFuzzyVariable();
+        if (producers.containsKey(fvar))
+           throw new FuzzyRuleException("FuzzyInferenceGraph variable " + fvar.getName() + 
+                                        " is concluded by a stage and cannot be set as an input");
+        crispInputs.remove(fvar);
+        values.put(fvar, fval);
+        inputChanged(fvar);
+    }
+
+    /**
+     * Sets the value of an input variable of the graph to a crisp value (a 
+     * SingletonFuzzySet). If the crisp value is the same as the one last set the 
+     * stages that depend on it are not fired again; otherwise they are fired the 
+     * next time the graph is executed.
+     *
+     * @param fvar the input variable
+     * @param x the crisp value of the input
+     * @exception FuzzyException if the variable is concluded by a stage or the value 
+     *        is outside its universe of discourse
+     */
+    public void setInput(FuzzyVariable fvar, double x)
+        throws FuzzyException
+    {
+        if (producers.containsKey(fvar))
+           throw new FuzzyRuleException("FuzzyInferenceGraph variable " + fvar.getName() + 
+                                        " is concluded by a stage and cannot be set as an input");
+        if (!(x >= fvar.getMinUOD() && x <= fvar.getMaxUOD()))
+           throw new XValueOutsideUODException("Input value " + x + 
+                                               " is outside the Universe of Discourse of " + fvar.getName());
+        Double previous = (Double)crispInputs.get(fvar);
+        if (previous != null && previous.doubleValue() == x)
+            return;
+        values.put(fvar, new FuzzyValue(fvar, new SingletonFuzzySet(x)));
+        crispInputs.put(fvar, Double.valueOf(x));
+        inputChanged(fvar);
+    }
+
+    /**
+     * Mark the stages with an antecedent for a variable as changed.
+     */
+    private void inputChanged(FuzzyVariable fvar)
+    {
+        for (int s=0; s<stages.size(); s++)
+        {   FuzzyVariable[] inputs = ((FuzzyRuleStage)stages.elementAt(s)).getInputVariables();
+            for (int v=0; v<inputs.length; v++)
+                if (inputs[v] == fvar)
+                    changed[s] = true;
+        }
+    }
+
+    /**
+     * Returns the value of a variable of the graph: the value set for an input, or 
+     * the output of the stage that concludes the variable when the graph was last
+     * executed.
+     *
+     * @param fvar the variable
+     * @return the value of the variable, or null if it has no value
+     */
+    public FuzzyValue getValue(FuzzyVariable fvar)
+    {
+        return (FuzzyValue)values.get(fvar);
+    }
+
+    /**
+     * Fire all of the stages the next time the graph is executed.
+     */
+    public void reset()
+    {
+        Arrays.fill(changed, true);
+    }
+
+    /**
+     * Fire the stages whose inputs changed since the graph was last executed, and 
+     * then the stages whose inputs are changed by them, in a topological order.
+     *
+     * @exception FuzzyException if a stage depends on itself through other stages or 
+     *        a stage cannot be fired 
+     */
+    public void execute()
+        throws FuzzyException
+    {
+        FuzzyFlightRecorderEvents.InferenceCycle event = new FuzzyFlightRecorderEvents.InferenceCycle();
+        event.begin();
+        order();
+        stagesFired = 0;
+        stagesSkipped = 0;
+        int[] toFire = new int[stages.size()];
+        for (int l=0; l<levels.length; l++)
+        {   int n = 0;
+            for (int i=0; i<levels[l].length; i++)
+            {   int s = levels[l][i];
+                if (changed[s])
+                    toFire[n++] = s;
+                else
+                    stagesSkipped++;
+            }
+            if (n == 0) continue;
+
+            FuzzyValue[][] outputs = new FuzzyValue[n][];
+            if (executorService == null || n == 1)
+            {   for (int i=0; i<n; i++)
+                    outputs[i] = fire(toFire[i]);
+            }
+            else
+                fireInParallel(toFire, n, outputs);
+            for (int i=0; i<n; i++)
+                setOutputs(toFire[i], outputs[i]);
+            stagesFired += n;
+        }
+        event.end();
+        if (event.shouldCommit())
+        {   event.engine = "FuzzyInferenceGraph";
+            event.rules = stages.size();
+            event.rulesSkipped = stagesSkipped;
+            event.records = 1;
+            event.commit();
+        }
+    }
+
+    /**
+     * Fire stage s with the current values of its inputs.
+     */
+    private FuzzyValue[] fire(int s)
+        throws FuzzyException
+    {
+        return ((FuzzyRuleStage)stages.elementAt(s)).execute(stageInputs(s));
+    }
+
+    private FuzzyValue[] stageInputs(int s)
+    {
+        FuzzyVariable[] inputVariables = ((FuzzyRuleStage)stages.elementAt(s)).getInputVariables();
+        FuzzyValue[] inputs = new FuzzyValue[inputVariables.length];
+        for (int v=0; v<inputVariables.length; v++)
+            inputs[v] = (FuzzyValue)values.get(inputVariables[v]);
+        return inputs;
+    }
+
+    /**
+     * Fire the first n stages of toFire (which do not depend on each other) with 
+     * the ExecutorService.
+     */
+    private void fireInParallel(int[] toFire, int n, FuzzyValue[][] outputs)
+        throws FuzzyException
+    {
+        Future[] futures = new Future[n];
+        for (int i=0; i<n; i++)
+        {   final FuzzyRuleStage stage = (FuzzyRuleStage)stages.elementAt(toFire[i]);
+            final FuzzyValue[] inputs = stageInputs(toFire[i]);
+            futures[i] = executorService.submit(new Callable<FuzzyValue[]>()
+                {   public FuzzyValue[] call() throws FuzzyException
+                    {   return stage.execute(inputs);
+                    }
+                });
+        }
+        // wait for all of the stages before reporting a problem so none is still running
+        FuzzyException problem = null;
+        for (int i=0; i<n; i++)
+           try
+           {   outputs[i] = (FuzzyValue[])futures[i].get();
+           }
+           catch (ExecutionException e)
+           {   Throwable cause = e.getCause();
+               if (cause instanceof RuntimeException)
+                  throw (RuntimeException)cause;
+               if (cause instanceof Error)
+                  throw (Error)cause;
+               if (problem == null)
+                  problem = (FuzzyException)cause;
+           }
+           catch (InterruptedException e)
+           {   Thread.currentThread().interrupt();
+               for (int j=i; j<n; j++)
+                   futures[j].cancel(true);
+               throw new FuzzyRuleException("FuzzyInferenceGraph was interrupted while firing stages");
+           }
+        if (problem != null)
+           throw problem;
+    }
+
+    /**
+     * Store the outputs of stage s, marking the stages with an antecedent for an output
+     * as changed if it changed.
+     */
+    private void setOutputs(int s, FuzzyValue[] outputs)
+    {
+        FuzzyVariable[] outputVariables = ((FuzzyRuleStage)stages.elementAt(s)).getOutputVariables();
+        for (int o=0; o<outputs.length; o++)
+        {   FuzzyValue previous = (FuzzyValue)values.get(outputVariables[o]);
+            boolean same = (previous == null) ? outputs[o] == null
+                                              : outputs[o] != null && previous.getFuzzySet().equals(outputs[o].getFuzzySet());
+            if (same) continue;
+            if (outputs[o] == null)
+                values.remove(outputVariables[o]);
+            else
+                values.put(outputVariables[o], outputs[o]);
+            for (int i=0; i<dependents[s][o].length; i++)
+                changed[dependents[s][o][i]] = true;
+        }
+        changed[s] = false;
+    }
+
+    /**
+     * Work out the levels of the stages and the stages that depend on each output.
+     */
+    private void order()
+        throws FuzzyRuleException
+    {
+        if (ordered) return;
+        int numStages = stages.size();
+
+        dependents = new int[numStages][][];
+        int[] numDependedOn = new int[numStages];
+        for (int s=0; s<numStages; s++)
+        {   FuzzyVariable[] outputs = ((FuzzyRuleStage)stages.elementAt(s)).getOutputVariables();
+            dependents[s] = new int[outputs.length][];
+            for (int o=0; o<outputs.length; o++)
+            {   Vector users = new Vector();
+                for (int d=0; d<numStages; d++)
+                {   FuzzyVariable[] inputs = ((FuzzyRuleStage)stages.elementAt(d)).getInputVariables();
+                    for (int v=0; v<inputs.length; v++)
+                        if (inputs[v] == outputs[o])
+                            users.addElement(Integer.valueOf(d));
+                }
+                dependents[s][o] = new int[users.size()];
+                for (int i=0; i<users.size(); i++)
+                    dependents[s][o][i] = ((Integer)users.elementAt(i)).intValue();
+            }
+        }
+        
+        // the number of (distinct) stages that each stage depends on
+        boolean[][] dependsOn = new boolean[numStages][numStages];
+        for (int s=0; s<numStages; s++)
+            for (int o=0; o<dependents[s].length; o++)
+                for (int i=0; i<dependents[s][o].length; i++)
+                {   int d = dependents[s][o][i];
+                    if (!dependsOn[d][s])
+                    {   dependsOn[d][s] = true;
+                        numDependedOn[d]++;
+                    }
+                }
+
+        // take the stages that depend on no stage not yet taken, a level at a time
+        Vector levelList = new Vector();
+        int taken = 0;
+        int[] current = new int[numStages];
+        int n = 0;
+        for (int s=0; s<numStages; s++)
+            if (numDependedOn[s] == 0) 
+                current[n++] = s;
+        while (n > 0)
+        {   int[] thisLevel = new int[n];
+            System.arraycopy(current, 0, thisLevel, 0, n);
+            levelList.addElement(thisLevel);
+            taken += n;
+            n = 0;
+            for (int i=0; i<thisLevel.length; i++)
+                for (int d=0; d<numStages; d++)
+                    if (dependsOn[d][thisLevel[i]] && --numDependedOn[d] == 0)
+                        current[n++] = d;
+        }
+        if (taken < numStages)
+        {   StringBuffer names = new StringBuffer();
+            for (int s=0; s<numStages; s++)
+                if (numDependedOn[s] > 0)
+                    names.append((names.length() == 0) ? "" : ", ").append(((FuzzyRuleStage)stages.elementAt(s)).getName());
+            throw new FuzzyRuleException("FuzzyInferenceGraph stages depend on themselves through a cycle: " + names);
+        }
+        levels = new int[levelList.size()][];
+        levelList.copyInto(levels);
+        ordered = true;
+    }
+
+    /**
+     * Returns the number of stages fired the last time the graph was executed.
+     *
+     * @return the number of stages fired
+     */
+    public int getStagesFired()
+    {
+        return stagesFired;
+    }
+
+    /**
+     * Returns the number of stages that were not fired (because their inputs had not 
+     * changed) the last time the graph was executed.
+     *
+     * @return the number of stages not fired
+     */
+    public int getStagesSkipped()
+    {
+        return stagesSkipped;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+/**
+ * A FuzzyInferenceListener is told about the steps of fuzzy inference as they happen,
+ * so that the cost and behaviour of a rule base can be measured while it runs: which 
+ * rules match and how well, how long matching, firing, aggregation (global 
+ * contribution) and defuzzification take, and how large the fuzzy sets they produce are.
+ * A listener is installed for all rules with FuzzyRule.setInferenceListener and is told:
+ * <ul>
+ * <li> ruleMatched, by the MamdaniMinMaxMinRuleExecutor, LarsenProductMaxMinRuleExecutor
+ *      and TsukamotoRuleExecutor, when they have the DOF (degree of fulfillment) of a rule;
+ * <li> ruleExecuted, by FuzzyRule.execute, when a rule has been fired and its outputs 
+ *      produced (the time includes the matching);
+ * <li> aggregated, by the FuzzyRete of FuzzyJess, when it has combined the fuzzy values
+ *      of a fact with those of an existing fact (global contribution);
+ * <li> defuzzified, by the defuzzification methods of FuzzyValue.
+ * </ul>
+ * The times are in nanoseconds (System.nanoTime). When no listener is installed none
+ * of these calls are made and no times are taken.
+ * <p>
+ * The methods are called on the thread doing the inference, in the middle of it, 
+ * so they should be quick and must not change the rule, fuzzy values or sets 
+ * that they are given. If rules are fired on several threads the methods can be 
+ * called on those threads at the same time.
+ *
+ * @see FuzzyInferenceStatistics
+ * @see FuzzyRule#setInferenceListener
+ */
+public interface FuzzyInferenceListener
+{
+    /**
+     * Called when the DOF (degree of fulfillment) of a rule has been found: how well
+     * the inputs of the rule match its antecedents.
+     *
+     * @param rule the rule, or null when the executor was given the antecedents, 
+     *             conclusions and inputs rather than a rule
+     * @param degree the DOF of the rule (0 if the rule does not match its inputs at all)
+     * @param nanos the time taken to find the DOF; 0 when the executor used the DOF
+     *              it kept from the last firing because the antecedents and inputs did not change
+     */
+    public void ruleMatched( FuzzyRule rule, double degree, long nanos );
+
+    /**
+     * Called when a rule has been executed (fired).
+     *
+     * @param rule the rule
+     * @param outputs the output FuzzyValues of the rule
+     * @param nanos the time taken to execute the rule, including the matching
+     */
+    public void ruleExecuted( FuzzyRule rule, FuzzyValueVector outputs, long nanos );
+
+    /**
+     * Called when fuzzy values have been combined to give the result of several rule
+     * firings (for example, the global contribution done by FuzzyJess when a fact with
+     * fuzzy values is asserted and an equivalent fact exists).
+     *
+     * @param result the combined FuzzyValue
+     * @param nanos the time taken to combine the values
+     */
+    public void aggregated( FuzzyValue result, long nanos );
+
+    /**
+     * Called when a FuzzyValue has been defuzzified.
+     *
+     * @param value the FuzzyValue
+     * @param result the defuzzified (crisp) value
+     * @param nanos the time taken to defuzzify the value
+     */
+    public void defuzzified( FuzzyValue value, double result, long nanos );
+}
@@ -0,0 +1,588 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+import java.util.concurrent.*;
+
+/**
+ * A FuzzyInferenceProcessor is a <code>java.util.concurrent.Flow.Processor</code> that 
+ * fires a set of rules for each record (an array with a crisp value for each input 
+ * variable) that it receives and publishes an array with the defuzzified value of each
+ * output variable, in the order that the records were received. It can be placed in a
+ * stream of sensor readings from any Flow.Publisher:
+ * <pre><code>
+ *    FuzzyRuleBatch rules = new FuzzyRuleBatch(pendulumRules, 
+ *                                              new FuzzyVariable[] {errorFVar, omegaFVar},
+ *                                              new FuzzyVariable[] {currentFVar});
+ *    FuzzyInferenceProcessor controller = 
+ *        new FuzzyInferenceProcessor(rules, 64, 2, TimeUnit.MILLISECONDS);
+ *    sensors.subscribe(controller);      // publishes double[] {error, omega}
+ *    controller.subscribe(actuator);     // receives double[] {current}
+ * </code></pre>
+ * The records are collected into micro-batches that are fired together, column by 
+ * column. A micro-batch is fired when it holds the batch size number of records or 
+ * when its first record has waited for the latency budget, whichever comes first, 
+ * so a slow stream is not held up waiting for a batch to fill. 
+ * <p>
+ * The processor requests records from its publisher a micro-batch at a time: it asks
+ * for the batch size number of records when it subscribes and for as many more as it
+ * has published after each micro-batch is fired. The results are published with 
+ * SubmissionPublisher.submit, which blocks while a subscriber's buffer is full, so a 
+ * slow subscriber slows the requests for records (backpressure). The results are 
+ * published without holding the lock that guards the micro-batch and the statistics,
+ * so the statistics can be read (even by a subscriber) while a submit is blocked. The
+ * number of records waiting for the current micro-batch is returned by getPendingCount
+ * and the number of results waiting to be consumed by the slowest subscriber by 
+ * estimateMaximumLag. The time from the arrival of the first record of each 
+ * micro-batch until its rules were fired is returned by getLastBatchLatency, 
+ * getMaximumBatchLatency and getAverageBatchLatency.
+ * <p>
+ * The rules can be given as a FuzzyRuleBatch or as a list of FuzzyRules. A 
+ * FuzzyRuleBatch fires a micro-batch column by column and forms the union of the rule
+ * outputs exactly, so its results are those of firing the rules one record at a time 
+ * and defuzzifying the union of their outputs, up to rounding (see FuzzyRuleBatch). 
+ * It only accepts rules with the Mamdani, Larsen or Tsukamoto rule executor. FuzzyRules
+ * can use any rule executor but are slower: they are fired for each record of a 
+ * micro-batch with FuzzyRule.execute(FuzzyValueVector) as a FuzzyRuleStage fires them,
+ * with each crisp input as a SingletonFuzzySet, and the union of their outputs is 
+ * defuzzified with the moment (center of gravity) method.
+ * <p>
+ * An output is Double.NaN if no rule with a conclusion for it fires. If a record has
+ * an input outside the universe of discourse of its variable (or has too few values) 
+ * the results of the records before it in its micro-batch are published, the 
+ * subscription to the publisher is cancelled and the processor is closed exceptionally
+ * with the exception (as with SubmissionPublisher.closeExceptionally, subscribers may 
+ * be told of the exception before they have consumed all of the results). When the 
+ * publisher completes, the records of the last micro-batch are fired and published 
+ * and the processor is closed.
+ *
+ * @see FuzzyRuleBatch
+ * @see FuzzyRuleStage
+ */
+public class FuzzyInferenceProcessor extends SubmissionPublisher<double[]>
+    implements Flow.Processor<double[], double[]>
+{
+    /** The default number of records in a micro-batch */
+    public static final int DEFAULT_BATCH_SIZE = FuzzyRuleBatch.BLOCK_SIZE;
+
+    private FuzzyRuleBatch batch;
+    private FuzzyRuleStage stage;
+    /** the index of the record value for each input of the stage */
+    private int[] stageInput;
+    /** the index in the outputs of the stage of each output */
+    private int[] stageOutput;
+    private FuzzyVariable[] inputVariables;
+    private FuzzyVariable[] outputVariables;
+    private int batchSize;
+    private long maxLatencyNanos;
+
+    /** guards the micro-batch and the statistics; the records and the timer can fire a micro-batch */
+    private final Object lock = new Object();
+    /** 
+     * held (before the lock) while a micro-batch is fired and published, so the
+     * micro-batches are published in order; the lock is not held while publishing
+     */
+    private final Object publishLock = new Object();
+    private Flow.Subscription subscription;
+    private boolean done;
+    /** the records of the current micro-batch: [input][record] */
+    private double[][] inputs;
+    private double[][] outputs;
+    private int count;
+    private long firstArrival;
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> timeout;
+
+    private long batches;
+    private long records;
+    private long lastBatchLatency;
+    private long maxBatchLatency;
+    private long totalBatchLatency;
+
+    /**
+     * Create a processor that fires the rules of a FuzzyRuleBatch.
+     *
+     * @param rules the rules to fire
+     * @param batchSize the most records in a micro-batch
+     * @param maxLatency the longest that the first record of a micro-batch waits for
+     *        the micro-batch to fill
+     * @param unit the TimeUnit of maxLatency
+     * @exception FuzzyRuleException if the batchSize is less than 1 or maxLatency is negative
+     */
+    public FuzzyInferenceProcessor(FuzzyRuleBatch rules, int batchSize, long maxLatency, TimeUnit unit)
+        throws FuzzyRuleException
+    {
+        batch = rules;
+        initialize(rules.getInputVariables(), rules.getOutputVariables(), batchSize, maxLatency, unit);
+    }
+
+    /**
+     * Create a processor that fires a set of FuzzyRules with FuzzyRule.execute(FuzzyValueVector).
+     *
+     * @param rules the rules to fire; they must not be fired elsewhere while the processor
+     *        is in use
+     * @param inputVariables the FuzzyVariables of the values of the records, in order;
+     *        every antecedent of the rules must be a FuzzyValue of one of these variables
+     * @param outputVariables the FuzzyVariables of the values of the results, in order
+     * @param batchSize the most records in a micro-batch
+     * @param maxLatency the longest that the first record of a micro-batch waits for
+     *        the micro-batch to fill
+     * @param unit the TimeUnit of maxLatency
+     * @exception FuzzyRuleException if a rule has an antecedent for a variable that is not
+     *        an input or no conclusions, or the batchSize is less than 1 or maxLatency is negative
+     */
+    public FuzzyInferenceProcessor(FuzzyRule[] rules, FuzzyVariable[] inputVariables, 
+                                   FuzzyVariable[] outputVariables, 
+                                   int batchSize, long maxLatency, TimeUnit unit)
+        throws FuzzyRuleException
+    {
+        stage = new FuzzyRuleStage("FuzzyInferenceProcessor", rules);
+        FuzzyVariable[] stageInputs = stage.getInputVariables();
+        stageInput = new int[stageInputs.length];
+        for (int v=0; v<stageInputs.length; v++)
+        {   stageInput[v] = indexOf(inputVariables, stageInputs[v]);
+            if (stageInput[v] < 0)
+               throw new FuzzyRuleException("FuzzyInferenceProcessor rule antecedent variable " + 
+                                            stageInputs[v].getName() + " is not an input variable");
+        }
+        FuzzyVariable[] stageOutputs = stage.getOutputVariables();
+        stageOutput = new int[outputVariables.length];
+        for (int o=0; o<outputVariables.length; o++)
+            stageOutput[o] = indexOf(stageOutputs, outputVariables[o]);
+        initialize(inputVariables.clone(), outputVariables.clone(), 
+                   batchSize, maxLatency, unit);
+    }
+
+    private void initialize(FuzzyVariable[] inputVariables, FuzzyVariable[] outputVariables, 
+                            int batchSize, long maxLatency, TimeUnit unit)
+        throws FuzzyRuleException
+    {
+        if (batchSize < 1)
+           throw new FuzzyRuleException("FuzzyInferenceProcessor batch size must be at least 1");
+        if (maxLatency < 0)
+           throw new FuzzyRuleException("FuzzyInferenceProcessor latency budget must not be negative");
+        this.inputVariables = inputVariables;
+        this.outputVariables = outputVariables;
+        this.batchSize = batchSize;
+        maxLatencyNanos = unit.toNanos(maxLatency);
+        inputs = new double[inputVariables.length][batchSize];
+        outputs = new double[outputVariables.length][batchSize];
+    }
+
+    private static int indexOf(FuzzyVariable[] variables, FuzzyVariable fvar)
+    {
+        for (int i=0; i<variables.length; i++)
+            if (variables[i] == fvar) return i;
+        return -1;
+    }
+
+    /**
+     * Returns the FuzzyVariables of the values of the records, in order.
+     *
+     * @return an array with the input FuzzyVariables
+     */
+    public FuzzyVariable[] getInputVariables()
+    {
+        return inputVariables.clone();
+    }
+
+    /**
+     * Returns the FuzzyVariables of the values of the results, in order.
+     *
+     * @return an array with the output FuzzyVariables
+     */
+    public FuzzyVariable[] getOutputVariables()
+    {
+        return outputVariables.clone();
+    }
+
+    /**
+     * Returns the most records in a micro-batch.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Returns the longest that the first record of a micro-batch waits for the 
+     * micro-batch to fill.
+     *
+     * @param unit the TimeUnit of the result
+     * @return the latency budget
+     */
+    public long getLatencyBudget(TimeUnit unit)
+    {
+        return unit.convert(maxLatencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Called by the publisher of the records when the processor subscribes to it; 
+     * requests the first micro-batch of records. A processor can only subscribe to 
+     * one publisher, so a second subscription is cancelled.
+     *
+     * @param subscription the subscription to the publisher
+     */
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+        synchronized (lock)
+        {   if (this.subscription != null || done)
+            {   subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        subscription.request(batchSize);
+    }
+
+    /**
+     * Called by the publisher with the next record; fires the micro-batch if it is full.
+     *
+     * @param record the crisp value of each input variable
+     */
+    public void onNext(double[] record)
+    {
+        synchronized (publishLock)
+        {   FiredBatch fired = null;
+            synchronized (lock)
+            {   if (done) return;
+                if (record.length < inputVariables.length)
+                {   fail(new FuzzyRuleException("FuzzyInferenceProcessor record has " + record.length + 
+                                                " values but there are " + inputVariables.length + " input variables"));
+                    return;
+                }
+                for (int v=0; v<inputVariables.length; v++)
+                    inputs[v][count] = record[v];
+                if (count++ == 0)
+                {   firstArrival = System.nanoTime();
+                    if (count < batchSize)
+                        startTimer();
+                }
+                if (count == batchSize)
+                    fired = fireBatch();
+            }
+            publish(fired);
+        }
+    }
+
+    /**
+     * Called by the publisher when it fails; fires the current micro-batch and closes
+     * the processor exceptionally.
+     *
+     * @param throwable the problem
+     */
+    public void onError(Throwable throwable)
+    {
+        synchronized (publishLock)
+        {   FiredBatch fired;
+            synchronized (lock)
+            {   if (done) return;
+                fired = fireBatch();
+            }
+            publish(fired);
+            synchronized (lock)
+            {   if (done) return;
+                finish();
+            }
+        }
+        closeExceptionally(throwable);
+    }
+
+    /**
+     * Called by the publisher when it has no more records; fires the current micro-batch 
+     * and closes the processor.
+     */
+    public void onComplete()
+    {
+        synchronized (publishLock)
+        {   FiredBatch fired;
+            synchronized (lock)
+            {   if (done) return;
+                fired = fireBatch();
+            }
+            publish(fired);
+            synchronized (lock)
+            {   if (done) return;
+                finish();
+            }
+        }
+        close();
+    }
+
+    /**
+     * Wait for the latency budget and then fire the micro-batch if it is still the 
+     * same one.
+     */
+    private void startTimer()
+    {
+        if (timer == null)
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+                {   public Thread newThread(Runnable r)
+                    {   Thread t = new Thread(r, "FuzzyInferenceProcessor timer");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        final long arrival = firstArrival;
+        timeout = timer.schedule(new Runnable()
+            {   public void run()
+                {   synchronized (publishLock)
+                    {   FiredBatch fired = null;
+                        synchronized (lock)
+                        {   if (!done && count > 0 && firstArrival == arrival)
+                                fired = fireBatch();
+                        }
+                        publish(fired);
+                    }
+                }
+            }, maxLatencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** The results of a micro-batch that has been fired, waiting to be published. */
+    private static class FiredBatch
+    {
+        double[][] results;
+        int fired;
+        FuzzyException problem;
+        Flow.Subscription subscription;
+    }
+
+    /**
+     * Fire the rules for the records of the micro-batch and update the statistics. 
+     * Called holding the publication lock and the lock; the results are published 
+     * (by publish) after the lock is released.
+     *
+     * @return the results, or null if the micro-batch is empty
+     */
+    private FiredBatch fireBatch()
+    {
+        int n = count;
+        if (n == 0) return null;
+        if (timeout != null)
+        {   timeout.cancel(false);
+            timeout = null;
+        }
+
+        int published = 0;
+        FuzzyException problem = null;
+        try
+        {   execute(0, n);
+            published = n;
+        }
+        catch (FuzzyException e)
+        {   problem = e;
+            // find the record with the problem; the results of those before it are published
+            try
+            {   for (; published<n; published++)
+                    execute(published, 1);
+            }
+            catch (FuzzyException e2)
+            {
+            }
+        }
+        FiredBatch fired = new FiredBatch();
+        fired.results = new double[published][];
+        for (int i=0; i<published; i++)
+        {   double[] result = new double[outputVariables.length];
+            for (int o=0; o<outputVariables.length; o++)
+                result[o] = outputs[o][i];
+            fired.results[i] = result;
+        }
+        fired.fired = n;
+        fired.problem = problem;
+        fired.subscription = subscription;
+        count = 0;
+
+        long latency = System.nanoTime() - firstArrival;
+        batches++;
+        records += published;
+        lastBatchLatency = latency;
+        totalBatchLatency += latency;
+        if (latency > maxBatchLatency) maxBatchLatency = latency;
+
+        if (problem != null)
+            finish();
+        return fired;
+    }
+
+    /**
+     * Publish the results of a micro-batch and request as many more records, or
+     * if a record had a problem cancel the subscription and close the processor
+     * exceptionally. Called holding the publication lock but not the lock, since
+     * submit blocks while a subscriber's buffer is full.
+     */
+    private void publish(FiredBatch fired)
+    {
+        if (fired == null) return;
+        for (int i=0; i<fired.results.length; i++)
+            submit(fired.results[i]);
+        if (fired.problem != null)
+        {   fired.subscription.cancel();
+            closeExceptionally(fired.problem);
+        }
+        else
+            fired.subscription.request(fired.fired);
+    }
+
+    /**
+     * Fire the rules for the records from <code>from</code> to <code>from+n-1</code> 
+     * of the micro-batch.
+     */
+    private void execute(int from, int n)
+        throws FuzzyException
+    {
+        if (batch != null)
+            batch.execute(inputs, outputs, from, n);
+        else
+            executeStage(from, n);
+    }
+
+    /**
+     * Fire the rules of the stage for the records from <code>from</code> to
+     * <code>from+n-1</code> of the micro-batch, one record at a time.
+     */
+    private void executeStage(int from, int n)
+        throws FuzzyException
+    {
+        FuzzyValue[][] values = new FuzzyValue[inputVariables.length][];
+        for (int v=0; v<inputVariables.length; v++)
+        {   values[v] = new FuzzyValue[n];
+            double min = inputVariables[v].getMinUOD();
+            double max = inputVariables[v].getMaxUOD();
+            for (int i=0; i<n; i++)
+            {   double x = inputs[v][from+i];
+                if (!(x >= min && x <= max))
+                   throw new XValueOutsideUODException("Input value " + x + 
+                                                       " is outside the Universe of Discourse of " + 
+                                                       inputVariables[v].getName());
+                values[v][i] = new FuzzyValue(inputVariables[v], new SingletonFuzzySet(x));
+            }
+        }
+
+        FuzzyValue[] stageInputs = new FuzzyValue[stageInput.length];
+        for (int i=0; i<n; i++)
+        {   for (int v=0; v<stageInput.length; v++)
+                stageInputs[v] = values[stageInput[v]][i];
+            FuzzyValue[] results = stage.execute(stageInputs);
+            for (int o=0; o<outputVariables.length; o++)
+            {   FuzzyValue result = (stageOutput[o] < 0) ? null : results[stageOutput[o]];
+                double x = Double.NaN;
+                if (result != null)
+                   try
+                   {   x = result.momentDefuzzify();
+                   }
+                   catch (InvalidDefuzzifyException e)
+                   {   // the union has no area
+                   }
+                outputs[o][from+i] = x;
+            }
+        }
+    }
+
+    /**
+     * Cancel the subscription and close the processor exceptionally. Called holding the lock.
+     */
+    private void fail(Throwable problem)
+    {
+        finish();
+        if (subscription != null)
+            subscription.cancel();
+        closeExceptionally(problem);
+    }
+
+    /**
+     * Stop accepting records and stop the timer. Called holding the lock.
+     */
+    private void finish()
+    {
+        done = true;
+        if (timer != null)
+            timer.shutdownNow();
+    }
+
+    /**
+     * Returns the number of records waiting in the current micro-batch.
+     *
+     * @return the number of records not yet fired
+     */
+    public int getPendingCount()
+    {
+        synchronized (lock)
+        {   return count;
+        }
+    }
+
+    /**
+     * Returns the number of micro-batches fired.
+     *
+     * @return the number of micro-batches
+     */
+    public long getBatchCount()
+    {
+        synchronized (lock)
+        {   return batches;
+        }
+    }
+
+    /**
+     * Returns the number of records whose rules have been fired (their results
+     * have been published or are being published).
+     *
+     * @return the number of records
+     */
+    public long getRecordCount()
+    {
+        synchronized (lock)
+        {   return records;
+        }
+    }
+
+    /**
+     * Returns the time from the arrival of the first record of the last micro-batch 
+     * until its rules were fired.
+     *
+     * @param unit the TimeUnit of the result
+     * @return the latency of the last micro-batch
+     */
+    public long getLastBatchLatency(TimeUnit unit)
+    {
+        synchronized (lock)
+        {   return unit.convert(lastBatchLatency, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns the longest time from the arrival of the first record of a micro-batch 
+     * until its rules were fired.
+     *
+     * @param unit the TimeUnit of the result
+     * @return the largest latency of a micro-batch
+     */
+    public long getMaximumBatchLatency(TimeUnit unit)
+    {
+        synchronized (lock)
+        {   return unit.convert(maxBatchLatency, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns the average time from the arrival of the first record of a micro-batch 
+     * until its rules were fired.
+     *
+     * @param unit the TimeUnit of the result
+     * @return the average latency of the micro-batches, or 0 if none have been fired
+     */
+    public long getAverageBatchLatency(TimeUnit unit)
+    {
+        synchronized (lock)
+        {   return (batches == 0) ? 0 : unit.convert(totalBatchLatency/batches, TimeUnit.NANOSECONDS);
+        }
+    }
+}
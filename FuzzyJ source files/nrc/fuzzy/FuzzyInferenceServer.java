@@ -0,0 +1,1157 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.*;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP server, on the loopback interface only, that evaluates 
+ * FuzzyControlLanguageModels for other programs on the same machine, so that they
+ * can share one copy of a model rather than each loading (and warming up) its own. 
+ * It uses only the HTTP server of the JDK (com.sun.net.httpserver).
+ * <p>
+ * Each model has a thread of its own that evaluates the requests for it. The thread
+ * takes the requests that are waiting (waiting up to 200 microseconds, by default, 
+ * for more to arrive) and evaluates all of their rows as one block with the 
+ * model's FuzzyRuleBatches, up to 1024 rows at a time by default. Requests from many
+ * clients are so coalesced into micro-batches, and since the model is only used by 
+ * its thread it needs no locking.
+ * <p>
+ * The requests are:
+ * <ul>
+ * <li> <code>GET /models</code> - the models, with their statistics (see below);
+ * <li> <code>GET /models/<i>name</i></code> - a model's inputs, with their universes
+ *      of discourse, its outputs and its statistics;
+ * <li> <code>POST /models/<i>name</i>/evaluate</code> - evaluate rows of crisp inputs,
+ *      given in the order of the model's inputs. As JSON 
+ *      (<code>{"inputs":[[20.5,12],[30,8]]}</code>) the result is
+ *      <code>{"outputs":[[0.12,0],[-0.3,0.05]]}</code>, with null for an output that 
+ *      has no value. With <code>?fuzzy=true</code> the result also has, for each 
+ *      row, the fuzzy value of each output as a list of [x, y] points 
+ *      (<code>"fuzzyOutputs":[{"valve":[[-1,0],[0,1],...]},...]</code>), which 
+ *      takes much longer to work out than the crisp value. With the content type
+ *      <code>application/octet-stream</code> the request is the number of rows and
+ *      the number of inputs (as 4 byte integers) and the inputs of each row in turn
+ *      (as 8 byte doubles, all big-endian, as written by a DataOutputStream), and the
+ *      result is the number of rows and of outputs and the outputs of each row in
+ *      the same form;
+ * <li> <code>POST /models/<i>name</i>/reload</code> - load a model again from its 
+ *      FCL file;
+ * <li> <code>PUT /models/<i>name</i></code> - add a model, or replace one, from the
+ *      FCL source in the body of the request;
+ * <li> <code>DELETE /models/<i>name</i></code> - remove a model (the requests 
+ *      waiting for it are still evaluated).
+ * </ul>
+ * Only requests addressed to the loopback interface by name (a Host header of
+ * localhost, 127.0.0.1 or [::1]) are answered, and only from pages of the same
+ * hosts (if there is an Origin header), so that a web page cannot reach the server 
+ * through the user's browser by giving its own host name the loopback address. The 
+ * requests that change the models (PUT, DELETE and reload) are refused unless the 
+ * server has an administration token (see setAdminToken), and then must give it in
+ * a header <code>Authorization: Bearer <i>token</i></code>.
+ * <p>
+ * The crisp outputs are rounded to 0, or to the ends of the output's universe of 
+ * discourse, when they are within 1e-12 of the width of the universe of them, so 
+ * that the rounding errors of the defuzzification (such as -4.27e-19 for 0) are
+ * not passed on.
+ * <p>
+ * A model is replaced without dropping any requests: the block being evaluated 
+ * finishes with the old model and the requests that are waiting are evaluated with
+ * the new one. The header X-Model-Generation of a result tells which version of 
+ * a model (counting from 1) evaluated it. Errors are reported with a status of 400 
+ * (a request that is not valid, such as one with an input outside its universe of 
+ * discourse), 403 (a request that is refused, see above), 404 (no such model), 405 
+ * or 503 (the server is stopping or the model was removed), and a body of 
+ * <code>{"error":"..."}</code>.
+ * <p>
+ * The statistics of a model are the number of requests, rows, blocks and errors, 
+ * the mean number of rows in a block, the requests and rows per second since the 
+ * model was added, and the 50th, 90th and 99th percentiles and maximum of the 
+ * latency (the time from a request arriving at the model's queue to its result 
+ * being ready) in microseconds.
+ * <p>
+ * The JDK's server writes a reply's headers and body separately, so without 
+ * TCP_NODELAY the body waits for the client's delayed acknowledgement (some 40 ms).
+ * A program that creates a server should set the system property 
+ * sun.net.httpserver.nodelay to true before it creates the first HttpServer (the 
+ * JDK reads it only once); main does so unless it is already set.
+ * <p>
+ * From the command line:
+ * <pre>
+ *    java nrc.fuzzy.FuzzyInferenceServer [-port n] [-cache directory] [-batch rows]
+ *         [-delay microseconds] [-threads n] [-token-file file] name=file.fcl ...
+ * </pre>
+ * which serves the models in the FCL files with the names given (loading them 
+ * through the cache directory if there is one, see FuzzyControlLanguageLoader). 
+ * -threads is the number of threads that handle HTTP requests (32 by default); a
+ * request holds its thread until it is evaluated, so this limits the number of 
+ * requests that can be coalesced. -token-file gives a file whose first line is the
+ * administration token; without it the models cannot be changed through HTTP.
+ *
+ * @see FuzzyControlLanguageModel
+ * @see FuzzyRuleBatch
+ */
+public class FuzzyInferenceServer
+{
+    /** The default port. */
+    public static final int DEFAULT_PORT = 8771;
+    /** The default maximum number of rows in a block. */
+    public static final int DEFAULT_MAX_BATCH_ROWS = 1024;
+    /** The default time, in microseconds, to wait for more requests to add to a block. */
+    public static final long DEFAULT_MAX_DELAY = 200;
+    /** The default number of threads that handle HTTP requests. */
+    public static final int DEFAULT_THREADS = 32;
+
+    /** the largest number of values accepted in a request */
+    static final int MAX_REQUEST_VALUES = 1 << 24;
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private Hashtable models = new Hashtable();
+    private int maxBatchRows = DEFAULT_MAX_BATCH_ROWS;
+    private long maxDelayNanos = DEFAULT_MAX_DELAY*1000;
+    private File cacheDirectory = null;
+    private byte[] adminToken = null;
+
+    /**
+     * Create a server on a port of the loopback interface. It does not answer
+     * requests until start is called.
+     *
+     * @param port the port, or 0 for any free port
+     * @param threads the number of threads that handle HTTP requests
+     * @exception IOException if the port cannot be opened
+     */
+    public FuzzyInferenceServer(int port, int threads) throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        handlers = Executors.newFixedThreadPool(Math.max(1, threads));
+        server.setExecutor(handlers);
+        server.createContext("/models", new HttpHandler()
+            {   public void handle(HttpExchange exchange) throws IOException
+                {   FuzzyInferenceServer.this.handle(exchange);
+                }
+            });
+    }
+
+    /**
+     * Set the largest number of rows evaluated as one block (a request with more 
+     * rows than this is evaluated as a block of its own).
+     *
+     * @param rows the number of rows
+     */
+    public void setMaxBatchRows(int rows)
+    {
+        maxBatchRows = Math.max(1, rows);
+    }
+
+    /**
+     * Set the longest time to wait for more requests to add to a block.
+     *
+     * @param microseconds the time, 0 to only add the requests already waiting
+     */
+    public void setMaxDelay(long microseconds)
+    {
+        maxDelayNanos = Math.max(0, microseconds)*1000;
+    }
+
+    /**
+     * Set a directory to cache the models loaded from FCL files in (see 
+     * FuzzyControlLanguageLoader.load(File, File)).
+     *
+     * @param directory the directory, or null for no cache
+     */
+    public void setCacheDirectory(File directory)
+    {
+        cacheDirectory = directory;
+    }
+
+    /**
+     * Set the token that the requests that change the models (PUT, DELETE and 
+     * reload) must give, in a header <code>Authorization: Bearer <i>token</i></code>.
+     *
+     * @param token the token, or null (the default) to refuse all such requests
+     */
+    public void setAdminToken(String token)
+    {
+        try
+        {   adminToken = (token == null) ? null : token.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e) // cannot happen, UTF-8 is always supported
+        {   adminToken = null;
+        }
+    }
+
+    /**
+     * Get the port the server is listening on.
+     *
+     * @return the port
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Start answering requests.
+     */
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * Stop the server, letting the requests being handled finish (for up to the
+     * given time) before the models' threads are stopped.
+     *
+     * @param seconds the longest time to wait for requests to finish
+     */
+    public void stop(int seconds)
+    {
+        server.stop(seconds);
+        handlers.shutdown();
+        synchronized (models)
+        {   for (Enumeration e = models.elements(); e.hasMoreElements(); )
+                ((ServedModel)e.nextElement()).interrupt();
+            models.clear();
+        }
+    }
+
+    /**
+     * Add a model, loaded from an FCL file, or replace the model with the same name
+     * (without dropping any of its requests).
+     *
+     * @param name the name of the model in requests
+     * @param file the FCL file
+     * @exception IOException if the file cannot be read
+     * @exception FuzzyException if the file is not a valid FCL function block
+     */
+    public void addModel(String name, File file) throws IOException, FuzzyException
+    {
+        FuzzyControlLanguageModel model = (cacheDirectory == null) 
+            ? FuzzyControlLanguageLoader.load(file)
+            : FuzzyControlLanguageLoader.load(file, cacheDirectory);
+        install(name, model, file);
+    }
+
+    /**
+     * Add a model, or replace the model with the same name (without dropping any of 
+     * its requests).
+     *
+     * @param name the name of the model in requests
+     * @param model the model, which must not be used by anything else
+     */
+    public void addModel(String name, FuzzyControlLanguageModel model)
+    {
+        install(name, model, null);
+    }
+
+    /**
+     * Load a model again from the FCL file it was loaded from, replacing it without
+     * dropping any of its requests. If the file cannot be loaded the model is not 
+     * changed.
+     *
+     * @param name the name of the model
+     * @exception IOException if there is no such model, it was not loaded from a 
+     *        file, or the file cannot be read
+     * @exception FuzzyException if the file is not a valid FCL function block
+     */
+    public void reloadModel(String name) throws IOException, FuzzyException
+    {
+        ServedModel served = (ServedModel)models.get(name);
+        if (served == null)
+            throw new FileNotFoundException("There is no model " + name);
+        File file = served.current.file;
+        if (file == null)
+            throw new IOException("The model " + name + " was not loaded from a file");
+        addModel(name, file);
+    }
+
+    /**
+     * Remove a model. The requests waiting for it are still evaluated.
+     *
+     * @param name the name of the model
+     */
+    public void removeModel(String name)
+    {
+        ServedModel served = (ServedModel)models.remove(name);
+        if (served != null)
+            served.retire();
+    }
+
+    /**
+     * Get a model's description and statistics, as JSON.
+     *
+     * @param name the name of the model
+     * @return the JSON, or null if there is no such model
+     */
+    public String getStatistics(String name)
+    {
+        ServedModel served = (ServedModel)models.get(name);
+        return (served == null) ? null : served.describe(true);
+    }
+
+    private void install(String name, FuzzyControlLanguageModel model, File file)
+    {
+        synchronized (models)
+        {   ServedModel served = (ServedModel)models.get(name);
+            if (served == null)
+            {   served = new ServedModel(name);
+                served.current = new ModelVersion(model, 1, file);
+                served.start();
+                models.put(name, served);
+            }
+            else  // the model's thread reads the current version once for each block
+                served.current = new ModelVersion(model, served.current.generation + 1, file);
+        }
+    }
+
+    /** A version of a served model: the model, its generation and the file it was loaded from. */
+    private static class ModelVersion
+    {
+        final FuzzyControlLanguageModel model;
+        final int generation;
+        final File file;
+
+        ModelVersion(FuzzyControlLanguageModel model, int generation, File file)
+        {
+            this.model = model;
+            this.generation = generation;
+            this.file = file;
+        }
+    }
+
+    /** A request to evaluate rows with a model. */
+    private static class Request
+    {
+        double[][] rows;
+        boolean fuzzy;
+        double[][] outputs;
+        FuzzyValue[][] fuzzyOutputs;
+        FuzzyControlLanguageModel model;
+        int generation;
+        String error;
+        boolean unavailable;
+        long arrived;
+        CountDownLatch done = new CountDownLatch(1);
+    }
+
+    /** A model being served, with the thread that evaluates its requests. */
+    private class ServedModel extends Thread
+    {
+        String name;
+        volatile ModelVersion current;
+        volatile boolean retired = false;
+        LinkedBlockingQueue queue = new LinkedBlockingQueue();
+        Request pending = null;
+        Statistics statistics = new Statistics();
+
+        /** the columns of a block */
+        double[][] inputs = new double[0][0];
+        double[][] outputs = new double[0][0];
+
+        ServedModel(String name)
+        {
+            super("FuzzyInferenceServer " + name);
+            setDaemon(true);
+            this.name = name;
+        }
+
+        void retire()
+        {
+            retired = true;
+            queue.add(new Request());  // wakes the thread
+        }
+
+        /** Queue a request and wait for it to be evaluated. */
+        void evaluate(Request request) throws InterruptedException
+        {
+            request.arrived = System.nanoTime();
+            queue.add(request);
+            while (!request.done.await(1, TimeUnit.SECONDS))
+                if (!isAlive())
+                {   request.error = "The model " + name + " was removed";
+                    request.unavailable = true;
+                    return;
+                }
+        }
+
+        /** The model's name, generation, inputs and outputs and, if full, its statistics as JSON. */
+        String describe(boolean full)
+        {
+            ModelVersion version = current;
+            FuzzyControlLanguageModel m = version.model;
+            StringBuffer sb = new StringBuffer("{\"name\":").append(string(name));
+            sb.append(",\"generation\":").append(version.generation);
+            if (version.file != null)
+                sb.append(",\"file\":").append(string(version.file.getPath()));
+            FuzzyVariable[] inputVariables = m.getInputVariables();
+            sb.append(",\"inputs\":[");
+            for (int v=0; v<inputVariables.length; v++)
+            {   sb.append((v == 0) ? "" : ",");
+                if (full)
+                    sb.append("{\"name\":").append(string(inputVariables[v].getName()))
+                      .append(",\"min\":").append(number(inputVariables[v].getMinUOD()))
+                      .append(",\"max\":").append(number(inputVariables[v].getMaxUOD())).append('}');
+                else
+                    sb.append(string(inputVariables[v].getName()));
+            }
+            FuzzyVariable[] outputVariables = m.getOutputVariables();
+            sb.append("],\"outputs\":[");
+            for (int o=0; o<outputVariables.length; o++)
+                sb.append((o == 0) ? "" : ",").append(string(outputVariables[o].getName()));
+            sb.append("],\"statistics\":").append(statistics.toJson());
+            return sb.append('}').toString();
+        }
+
+        public void run()
+        {
+            Vector batch = new Vector();
+            try
+            {   while (!(retired && queue.isEmpty() && pending == null))
+                {   // the first request waits as long as it must, the others only until the deadline
+                    Request first = (pending != null) ? pending : (Request)queue.take();
+                    pending = null;
+                    if (first.rows == null)
+                        continue;
+                    batch.addElement(first);
+                    int rows = first.rows.length;
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (rows < maxBatchRows)
+                    {   long wait = deadline - System.nanoTime();
+                        Request next = (Request)((wait > 0) ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll());
+                        if (next == null)
+                            break;
+                        if (next.rows == null)
+                            continue;
+                        if (rows + next.rows.length > maxBatchRows)
+                        {   pending = next;
+                            break;
+                        }
+                        batch.addElement(next);
+                        rows += next.rows.length;
+                    }
+                    evaluate(batch, current);
+                    batch.removeAllElements();
+                }
+            }
+            catch (InterruptedException e)
+            {   // the server is stopping: fail the requests that will not be evaluated
+                if (pending != null)
+                    batch.addElement(pending);
+                queue.drainTo(batch);
+                for (int i=0; i<batch.size(); i++)
+                {   Request request = (Request)batch.elementAt(i);
+                    request.error = "The server is stopping";
+                    request.unavailable = true;
+                    request.done.countDown();
+                }
+            }
+        }
+
+        /** Evaluate the rows of the requests in a block as one block, with one version of the model. */
+        void evaluate(Vector batch, ModelVersion version)
+        {
+            FuzzyControlLanguageModel model = version.model;
+            FuzzyVariable[] inputVariables = model.getInputVariables();
+            FuzzyVariable[] outputVariables = model.getOutputVariables();
+            int numOutputs = outputVariables.length;
+            int rows = 0;
+            for (int i=0; i<batch.size(); i++)
+            {   Request request = (Request)batch.elementAt(i);
+                request.model = model;
+                request.generation = version.generation;
+                request.error = check(request.rows, inputVariables);
+                if (request.error == null)
+                    rows += request.rows.length;
+            }
+            if (inputs.length != inputVariables.length || inputs.length > 0 && inputs[0].length < rows)
+                inputs = new double[inputVariables.length][Math.max(rows, maxBatchRows)];
+            if (outputs.length != numOutputs || outputs.length > 0 && outputs[0].length < rows)
+                outputs = new double[numOutputs][Math.max(rows, maxBatchRows)];
+
+            int r = 0;
+            for (int i=0; i<batch.size(); i++)
+            {   Request request = (Request)batch.elementAt(i);
+                if (request.error != null)
+                    continue;
+                for (int j=0; j<request.rows.length; j++, r++)
+                    for (int v=0; v<inputVariables.length; v++)
+                        inputs[v][r] = request.rows[j][v];
+            }
+            String error = null;
+            try
+            {   if (rows > 0)
+                    model.evaluate(inputs, outputs, 0, rows);
+            }
+            catch (Exception e)
+            {   error = e.toString();
+            }
+
+            r = 0;
+            long now = System.nanoTime();
+            for (int i=0; i<batch.size(); i++)
+            {   Request request = (Request)batch.elementAt(i);
+                if (request.error == null && error != null)
+                    request.error = error;
+                if (request.error == null)
+                {   request.outputs = new double[request.rows.length][numOutputs];
+                    for (int j=0; j<request.rows.length; j++, r++)
+                        for (int o=0; o<numOutputs; o++)
+                            request.outputs[j][o] = snap(outputs[o][r], outputVariables[o]);
+                    if (request.fuzzy)
+                    {   try
+                        {   request.fuzzyOutputs = fuzzyOutputs(model, request.rows);
+                        }
+                        catch (FuzzyException e)
+                        {   request.error = e.toString();
+                        }
+                    }
+                }
+                statistics.record(request.rows.length, request.error != null, System.nanoTime() - request.arrived);
+                request.done.countDown();
+            }
+            statistics.recordBatch();
+        }
+    }
+
+    /** Check that each row has a value, within its universe of discourse, for each input. */
+    static String check(double[][] rows, FuzzyVariable[] inputVariables)
+    {
+        for (int j=0; j<rows.length; j++)
+        {   if (rows[j].length != inputVariables.length)
+                return "Row " + j + " has " + rows[j].length + " inputs rather than " + inputVariables.length;
+            for (int v=0; v<inputVariables.length; v++)
+                if (!(rows[j][v] >= inputVariables[v].getMinUOD() && rows[j][v] <= inputVariables[v].getMaxUOD()))
+                    return "Input " + inputVariables[v].getName() + " of row " + j + " (" + rows[j][v] + 
+                           ") is outside its universe of discourse";
+        }
+        return null;
+    }
+
+    /**
+     * Round an output to 0, or to an end of the universe of discourse of its 
+     * variable, if it is within 1e-12 of the width of the universe of it.
+     */
+    static double snap(double d, FuzzyVariable fvar)
+    {
+        double min = fvar.getMinUOD(), max = fvar.getMaxUOD();
+        double tolerance = 1.0e-12*(max - min);
+        if (Math.abs(d) <= tolerance)
+            return 0.0;
+        if (Math.abs(d - min) <= tolerance)
+            return min;
+        if (Math.abs(d - max) <= tolerance)
+            return max;
+        return d;
+    }
+
+    /**
+     * The fuzzy value of each output of each row: the union of the conclusions of 
+     * the rules fired with the crisp inputs, or null for an output that no rule 
+     * concluded about.
+     */
+    static FuzzyValue[][] fuzzyOutputs(FuzzyControlLanguageModel model, double[][] rows) throws FuzzyException
+    {
+        FuzzyVariable[] inputVariables = model.getInputVariables();
+        FuzzyVariable[] outputVariables = model.getOutputVariables();
+        FuzzyRule[] rules = model.getFuzzyRules();
+        FuzzyValue[][] results = new FuzzyValue[rows.length][outputVariables.length];
+        FuzzyValue[] crisp = new FuzzyValue[inputVariables.length];
+        for (int j=0; j<rows.length; j++)
+        {   for (int v=0; v<inputVariables.length; v++)
+                crisp[v] = new FuzzyValue(inputVariables[v], new SingletonFuzzySet(rows[j][v]));
+            for (int i=0; i<rules.length; i++)
+            {   FuzzyValueVector ruleInputs = new FuzzyValueVector(rules[i].antecedentsSize());
+                for (int a=0; a<rules[i].antecedentsSize(); a++)
+                {   FuzzyVariable fvar = rules[i].antecedentAt(a).getFuzzyVariable();
+                    for (int v=0; v<inputVariables.length; v++)
+                        if (inputVariables[v] == fvar)
+                            ruleInputs.addFuzzyValue(crisp[v]);
+                }
+                FuzzyValueVector conclusions = rules[i].execute(ruleInputs);
+                for (int c=0; c<conclusions.size(); c++)
+                {   FuzzyValue fval = conclusions.fuzzyValueAt(c);
+                    for (int o=0; o<outputVariables.length; o++)
+                        if (outputVariables[o] == fval.getFuzzyVariable())
+                            results[j][o] = (results[j][o] == null) ? fval : results[j][o].fuzzyUnion(fval);
+                }
+            }
+        }
+        return results;
+    }
+
+    /** The counts and latencies of the requests for a model. */
+    static class Statistics
+    {
+        static final int SUB_BUCKETS = 8;
+
+        long started = System.nanoTime();
+        long requests, rows, batches, errors;
+        long maximum;
+        /** latencies in microseconds; each power of 2 has SUB_BUCKETS buckets */
+        long[] counts = new long[64*SUB_BUCKETS];
+
+        synchronized void record(int rowCount, boolean error, long nanos)
+        {
+            requests++;
+            rows += rowCount;
+            if (error)
+                errors++;
+            long micros = Math.max(0, nanos/1000);
+            counts[bucket(micros)]++;
+            if (micros > maximum)
+                maximum = micros;
+        }
+
+        synchronized void recordBatch()
+        {
+            batches++;
+        }
+
+        static int bucket(long value)
+        {
+            if (value < SUB_BUCKETS)
+                return (int)value;
+            int e = 63 - Long.numberOfLeadingZeros(value);
+            return (e-2)*SUB_BUCKETS + (int)((value >>> (e-3)) & (SUB_BUCKETS-1));
+        }
+
+        /** The largest value in a bucket. */
+        static long bucketMaximum(int b)
+        {
+            if (b < SUB_BUCKETS)
+                return b;
+            int e = b/SUB_BUCKETS + 2;
+            long sub = b%SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (e-3)) - 1;
+        }
+
+        /** A percentile of the latencies, in microseconds (to within 12.5%). */
+        synchronized long percentile(double percent)
+        {
+            long rank = Math.max(1, (long)Math.ceil(requests*percent/100.0));
+            long seen = 0;
+            for (int b=0; b<counts.length; b++)
+            {   seen += counts[b];
+                if (seen >= rank)
+                    return Math.min(maximum, bucketMaximum(b));
+            }
+            return maximum;
+        }
+
+        synchronized String toJson()
+        {
+            double seconds = Math.max(1e-9, (System.nanoTime() - started)/1e9);
+            return "{\"requests\":" + requests + ",\"rows\":" + rows + ",\"batches\":" + batches + 
+                   ",\"errors\":" + errors + 
+                   ",\"rowsPerBatch\":" + ((batches == 0) ? 0.0 : Math.round(10.0*rows/batches)/10.0) +
+                   ",\"requestsPerSecond\":" + Math.round(10.0*requests/seconds)/10.0 + 
+                   ",\"rowsPerSecond\":" + Math.round(10.0*rows/seconds)/10.0 + 
+                   ",\"latencyMicros\":{\"p50\":" + percentile(50.0) + ",\"p90\":" + percentile(90.0) + 
+                   ",\"p99\":" + percentile(99.0) + ",\"max\":" + maximum + "}}";
+        }
+    }
+
+    /** Handle a request to /models. */
+    void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {   URI uri = exchange.getRequestURI();
+            String path = uri.getPath();
+            String method = exchange.getRequestMethod();
+            String[] parts = path.substring(1).split("/");
+            if (!isLoopbackHost(exchange.getRequestHeaders().getFirst("Host")) ||
+                !isLoopbackOrigin(exchange.getRequestHeaders().getFirst("Origin")))
+            {   reply(exchange, 403, error("Only requests to localhost are answered"));
+                return;
+            }
+            boolean changesModel = (parts.length == 2 && (method.equals("PUT") || method.equals("DELETE"))) ||
+                                   (parts.length == 3 && parts[2].equals("reload") && method.equals("POST"));
+            if (changesModel && !isAdmin(exchange.getRequestHeaders().getFirst("Authorization")))
+            {   reply(exchange, 403, error((adminToken == null) ? "The models cannot be changed through HTTP"
+                                                                : "The administration token is missing or wrong"));
+                return;
+            }
+            if (parts.length == 1)
+            {   if (!method.equals("GET"))
+                    reply(exchange, 405, error("Use GET"));
+                else
+                    reply(exchange, 200, describeModels());
+                return;
+            }
+            String name = parts[1];
+            ServedModel served = (ServedModel)models.get(name);
+            if (parts.length == 2 && method.equals("PUT"))
+            {   FuzzyControlLanguageModel model = FuzzyControlLanguageLoader.load(
+                    new InputStreamReader(exchange.getRequestBody(), "UTF-8"));
+                addModel(name, model);
+                reply(exchange, 200, getStatistics(name));
+                return;
+            }
+            if (served == null)
+            {   reply(exchange, 404, error("There is no model " + name));
+                return;
+            }
+            if (parts.length == 2)
+            {   if (method.equals("DELETE"))
+                {   removeModel(name);
+                    reply(exchange, 200, "{\"removed\":" + string(name) + "}");
+                }
+                else if (!method.equals("GET"))
+                    reply(exchange, 405, error("Use GET, PUT or DELETE"));
+                else
+                    reply(exchange, 200, served.describe(true));
+            }
+            else if (parts.length == 3 && parts[2].equals("reload"))
+            {   if (!method.equals("POST"))
+                    reply(exchange, 405, error("Use POST"));
+                else
+                {   reloadModel(name);
+                    reply(exchange, 200, getStatistics(name));
+                }
+            }
+            else if (parts.length == 3 && parts[2].equals("evaluate"))
+            {   if (!method.equals("POST"))
+                    reply(exchange, 405, error("Use POST"));
+                else
+                    evaluate(exchange, served, uri.getQuery());
+            }
+            else
+                reply(exchange, 404, error("Unknown request " + path));
+        }
+        catch (FileNotFoundException e)
+        {   reply(exchange, 404, error(e.getMessage()));
+        }
+        catch (Exception e)
+        {   reply(exchange, 400, error(e.getMessage() == null ? e.toString() : e.getMessage()));
+        }
+        finally
+        {   exchange.close();
+        }
+    }
+
+    /** Whether a Host header names the loopback interface (with or without a port). */
+    static boolean isLoopbackHost(String host)
+    {
+        if (host == null)
+            return false;
+        host = host.trim().toLowerCase();
+        int colon = host.lastIndexOf(':');
+        if (colon > host.lastIndexOf(']'))
+        {   for (int k=colon+1; k<host.length(); k++)
+                if (host.charAt(k) < '0' || host.charAt(k) > '9')
+                    return false;
+            host = host.substring(0, colon);
+        }
+        return host.equals("localhost") || host.equals("127.0.0.1") || host.equals("[::1]");
+    }
+
+    /** Whether an Origin header, if there is one, is a page on the loopback interface. */
+    static boolean isLoopbackOrigin(String origin)
+    {
+        if (origin == null)
+            return true;
+        origin = origin.trim().toLowerCase();
+        int scheme = origin.indexOf("://");
+        if (scheme < 0 || !(origin.startsWith("http") && (scheme == 4 || scheme == 5 && origin.charAt(4) == 's')))
+            return false;
+        return isLoopbackHost(origin.substring(scheme + 3));
+    }
+
+    /** Whether an Authorization header gives the administration token. */
+    private boolean isAdmin(String authorization) throws UnsupportedEncodingException
+    {
+        if (adminToken == null || authorization == null || !authorization.startsWith("Bearer "))
+            return false;
+        return MessageDigest.isEqual(adminToken, authorization.substring(7).trim().getBytes("UTF-8"));
+    }
+
+    /** Evaluate the rows of a request with a model and send the results. */
+    private void evaluate(HttpExchange exchange, ServedModel served, String query) 
+        throws IOException, InterruptedException
+    {
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        boolean binary = (type != null && type.startsWith("application/octet-stream"));
+        Request request = new Request();
+        request.fuzzy = (query != null && query.indexOf("fuzzy=true") >= 0);
+        if (binary && request.fuzzy)
+            throw new IOException("Fuzzy outputs are only given as JSON");
+        request.rows = binary ? readBinary(exchange.getRequestBody()) : readJson(exchange.getRequestBody());
+        served.evaluate(request);
+        if (request.error != null)
+        {   reply(exchange, request.unavailable ? 503 : 400, error(request.error));
+            return;
+        }
+        exchange.getResponseHeaders().set("X-Model-Generation", String.valueOf(request.generation));
+        if (binary)
+        {   int numOutputs = request.model.getOutputVariables().length;
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, 8 + 8L*request.outputs.length*numOutputs);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(exchange.getResponseBody()));
+            out.writeInt(request.outputs.length);
+            out.writeInt(numOutputs);
+            for (int j=0; j<request.outputs.length; j++)
+                for (int o=0; o<numOutputs; o++)
+                    out.writeDouble(request.outputs[j][o]);
+            out.flush();
+            return;
+        }
+        StringBuffer sb = new StringBuffer("{\"outputs\":[");
+        for (int j=0; j<request.outputs.length; j++)
+        {   sb.append((j == 0) ? "[" : ",[");
+            for (int o=0; o<request.outputs[j].length; o++)
+                sb.append((o == 0) ? "" : ",").append(number(request.outputs[j][o]));
+            sb.append(']');
+        }
+        sb.append(']');
+        if (request.fuzzy)
+        {   FuzzyVariable[] outputVariables = request.model.getOutputVariables();
+            sb.append(",\"fuzzyOutputs\":[");
+            for (int j=0; j<request.fuzzyOutputs.length; j++)
+            {   sb.append((j == 0) ? "{" : ",{");
+                for (int o=0; o<outputVariables.length; o++)
+                {   sb.append((o == 0) ? "" : ",").append(string(outputVariables[o].getName())).append(":[");
+                    FuzzyValue fval = request.fuzzyOutputs[j][o];
+                    for (int p=0; fval != null && p<fval.size(); p++)
+                        sb.append((p == 0) ? "[" : ",[").append(number(fval.getX(p))).append(',')
+                          .append(number(fval.getY(p))).append(']');
+                    sb.append(']');
+                }
+                sb.append('}');
+            }
+            sb.append(']');
+        }
+        sb.append('}');
+        reply(exchange, 200, sb.toString());
+    }
+
+    /** The rows of a binary request. */
+    static double[][] readBinary(InputStream stream) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        int numRows = in.readInt();
+        int numInputs = in.readInt();
+        if (numInputs <= 0)
+            throw new IOException("A request must have at least one input");
+        if (numRows < 0 || numRows > MAX_REQUEST_VALUES || (long)numRows*numInputs > MAX_REQUEST_VALUES)
+            throw new IOException("A request may have at most " + MAX_REQUEST_VALUES + " values");
+        double[][] rows = new double[numRows][numInputs];
+        for (int j=0; j<numRows; j++)
+            for (int v=0; v<numInputs; v++)
+                rows[j][v] = in.readDouble();
+        return rows;
+    }
+
+    /** The rows of a JSON request, <code>{"inputs":[[...],...]}</code>. */
+    static double[][] readJson(InputStream stream) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = stream.read(buffer)) > 0)
+        {   bytes.write(buffer, 0, n);
+            if (bytes.size() > 8L*MAX_REQUEST_VALUES)
+                throw new IOException("The request is too large");
+        }
+        Object value = new JsonReader(bytes.toByteArray()).read();
+        if (!(value instanceof Hashtable) || !(((Hashtable)value).get("inputs") instanceof Vector))
+            throw new IOException("The request must be an object with an array of inputs");
+        Vector list = (Vector)((Hashtable)value).get("inputs");
+        double[][] rows = new double[list.size()][];
+        for (int j=0; j<rows.length; j++)
+        {   if (!(list.elementAt(j) instanceof Vector))
+                throw new IOException("Each row of inputs must be an array of numbers");
+            Vector row = (Vector)list.elementAt(j);
+            rows[j] = new double[row.size()];
+            for (int v=0; v<rows[j].length; v++)
+            {   if (!(row.elementAt(v) instanceof Double))
+                    throw new IOException("Each row of inputs must be an array of numbers");
+                rows[j][v] = ((Double)row.elementAt(v)).doubleValue();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads a JSON value: an object becomes a Hashtable, an array a Vector, a number 
+     * a Double, a string a String, true and false Booleans and null a null.
+     */
+    static class JsonReader
+    {
+        byte[] b;
+        int i = 0;
+
+        JsonReader(byte[] bytes)
+        {
+            b = bytes;
+        }
+
+        Object read() throws IOException
+        {
+            Object value = value();
+            skipSpace();
+            if (i < b.length)
+                throw error("Unexpected text after the value");
+            return value;
+        }
+
+        IOException error(String message)
+        {
+            return new IOException(message + " at offset " + i + " of the request");
+        }
+
+        void skipSpace()
+        {
+            while (i < b.length && (b[i] == ' ' || b[i] == '\t' || b[i] == '\n' || b[i] == '\r'))
+                i++;
+        }
+
+        void expect(char c) throws IOException
+        {
+            skipSpace();
+            if (i >= b.length || b[i] != c)
+                throw error("Expected " + c);
+            i++;
+        }
+
+        Object value() throws IOException
+        {
+            skipSpace();
+            if (i >= b.length)
+                throw error("Expected a value");
+            byte c = b[i];
+            if (c == '{')
+            {   Hashtable object = new Hashtable();
+                i++;
+                skipSpace();
+                if (i < b.length && b[i] == '}')
+                {   i++;
+                    return object;
+                }
+                do
+                {   skipSpace();
+                    if (i >= b.length || b[i] != '"')
+                        throw error("Expected a name");
+                    String key = string();
+                    expect(':');
+                    Object value = value();
+                    if (value != null)
+                        object.put(key, value);
+                    skipSpace();
+                } while (i < b.length && b[i++] == ',');
+                if (b[i-1] != '}')
+                    throw error("Expected }");
+                return object;
+            }
+            if (c == '[')
+            {   Vector array = new Vector();
+                i++;
+                skipSpace();
+                if (i < b.length && b[i] == ']')
+                {   i++;
+                    return array;
+                }
+                do
+                {   array.addElement(value());
+                    skipSpace();
+                } while (i < b.length && b[i++] == ',');
+                if (b[i-1] != ']')
+                    throw error("Expected ]");
+                return array;
+            }
+            if (c == '"')
+                return string();
+            if (word("true"))
+                return Boolean.TRUE;
+            if (word("false"))
+                return Boolean.FALSE;
+            if (word("null"))
+                return null;
+            int start = i;
+            while (i < b.length && (b[i] >= '0' && b[i] <= '9' || b[i] == '-' || b[i] == '+' || 
+                                    b[i] == '.' || b[i] == 'e' || b[i] == 'E'))
+                i++;
+            double d = FuzzyCsvScorer.parseDouble(b, start, i);
+            if (i == start || Double.isNaN(d))
+                throw error("Expected a value");
+            return Double.valueOf(d);
+        }
+
+        boolean word(String w)
+        {
+            if (i + w.length() > b.length)
+                return false;
+            for (int k=0; k<w.length(); k++)
+                if (b[i+k] != w.charAt(k))
+                    return false;
+            i += w.length();
+            return true;
+        }
+
+        String string() throws IOException
+        {
+            i++;
+            ByteArrayOutputStream s = new ByteArrayOutputStream();
+            while (i < b.length && b[i] != '"')
+            {   if (b[i] == '\\' && i+1 < b.length)
+                {   i++;
+                    switch (b[i])
+                    {   case 'n': s.write('\n'); break;
+                        case 't': s.write('\t'); break;
+                        case 'r': s.write('\r'); break;
+                        case 'b': s.write('\b'); break;
+                        case 'f': s.write('\f'); break;
+                        case 'u': 
+                            if (i+4 >= b.length)
+                                throw error("Bad escape");
+                            byte[] utf8 = String.valueOf((char)Integer.parseInt(new String(b, i+1, 4, "ISO-8859-1"), 16)).getBytes("UTF-8");
+                            s.write(utf8, 0, utf8.length);
+                            i += 4;
+                            break;
+                        default: s.write(b[i]);
+                    }
+                }
+                else
+                    s.write(b[i]);
+                i++;
+            }
+            if (i >= b.length)
+                throw error("Unterminated string");
+            i++;
+            return new String(s.toByteArray(), "UTF-8");
+        }
+    }
+
+    /** The models and their statistics, as JSON. */
+    private String describeModels()
+    {
+        StringBuffer sb = new StringBuffer("{\"models\":[");
+        synchronized (models)
+        {   boolean first = true;
+            for (Enumeration e = models.elements(); e.hasMoreElements(); first = false)
+                sb.append(first ? "" : ",").append(((ServedModel)e.nextElement()).describe(false));
+        }
+        return sb.append("]}").toString();
+    }
+
+    /** JSON for a double, null if it is not a number. */
+    static String number(double d)
+    {
+        if (Double.isNaN(d) || Double.isInfinite(d))
+            return "null";
+        if (d == Math.rint(d) && Math.abs(d) < 1e15)
+            return String.valueOf((long)d);
+        return String.valueOf(d);
+    }
+
+    /** JSON for a string. */
+    static String string(String s)
+    {
+        StringBuffer sb = new StringBuffer("\"");
+        for (int k=0; k<s.length(); k++)
+        {   char c = s.charAt(k);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < ' ')
+                sb.append("\\u").append(Integer.toHexString(0x10000 | c).substring(1));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    static String error(String message)
+    {
+        return "{\"error\":" + string(message) + "}";
+    }
+
+    static void reply(HttpExchange exchange, int status, String json) throws IOException
+    {
+        byte[] body = json.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.flush();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int port = DEFAULT_PORT, threads = DEFAULT_THREADS, batchRows = DEFAULT_MAX_BATCH_ROWS;
+        long delay = DEFAULT_MAX_DELAY;
+        String cacheDirectory = null, tokenFile = null;
+        Vector names = new Vector(), files = new Vector();
+        for (int i=0; i<args.length; i++)
+        {   if (args[i].equals("-port") && i+1 < args.length)
+                port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-threads") && i+1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-batch") && i+1 < args.length)
+                batchRows = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-delay") && i+1 < args.length)
+                delay = Long.parseLong(args[++i]);
+            else if (args[i].equals("-cache") && i+1 < args.length)
+                cacheDirectory = args[++i];
+            else if (args[i].equals("-token-file") && i+1 < args.length)
+                tokenFile = args[++i];
+            else if (args[i].indexOf('=') > 0 && !args[i].startsWith("-"))
+            {   names.addElement(args[i].substring(0, args[i].indexOf('=')));
+                files.addElement(args[i].substring(args[i].indexOf('=') + 1));
+            }
+            else
+            {   names.removeAllElements();
+                break;
+            }
+        }
+        if (names.size() == 0)
+        {   System.err.println("Usage: FuzzyInferenceServer [-port n] [-cache directory] [-batch rows] [-delay microseconds] [-threads n] [-token-file file] name=file.fcl ...");
+            System.exit(1);
+        }
+
+        // see the class description; this must be set before the first HttpServer is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        FuzzyInferenceServer server = new FuzzyInferenceServer(port, threads);
+        server.setMaxBatchRows(batchRows);
+        if (tokenFile != null)
+        {   BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tokenFile), "UTF-8"));
+            try
+            {   String token = reader.readLine();
+                if (token == null || token.trim().length() == 0)
+                {   System.err.println("The token file " + tokenFile + " is empty");
+                    System.exit(1);
+                }
+                server.setAdminToken(token.trim());
+            }
+            finally
+            {   reader.close();
+            }
+        }
+        server.setMaxDelay(delay);
+        if (cacheDirectory != null)
+            server.setCacheDirectory(new File(cacheDirectory));
+        for (int m=0; m<names.size(); m++)
+            server.addModel((String)names.elementAt(m), new File((String)files.elementAt(m)));
+        server.start();
+        System.out.println("Serving " + names.size() + " model(s) on http://" + 
+                           InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort() + "/models");
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A FuzzyInferenceListener that keeps statistics of the rules fired, so that the rules
+ * that cost the most, or that never fire, can be found when tuning or pruning a rule base.
+ * For each rule it counts:
+ * <ul>
+ * <li> the executions (firings) of the rule and the time they took;
+ * <li> the times the DOF (degree of fulfillment) of the rule was found, the time 
+ *      that took, and the number of those times that the DOF was greater than 0 (the 
+ *      rule matched);
+ * <li> a histogram of the DOFs: the number that were 0 and the number in each tenth
+ *      of the range above 0, (0, 0.1], (0.1, 0.2], ... (0.9, 1.0];
+ * <li> the number of points in the fuzzy sets of the outputs.
+ * </ul>
+ * Rules that have a name (FuzzyRule.setName) are counted by name, so the rules created 
+ * by FuzzyJess for each firing of a defrule are counted together under the name of the 
+ * defrule; other rules are counted separately. DOFs found by an executor that was given 
+ * the antecedents, conclusions and inputs rather than a rule are counted under the 
+ * name "(no rule)". The number of aggregations (global contributions) and 
+ * defuzzifications, the time they took and the size of the aggregated sets are also kept.
+ * <p>
+ * The statistics can be updated by several threads at the same time. For example,
+ * <pre><code>
+ *    FuzzyInferenceStatistics statistics = new FuzzyInferenceStatistics();
+ *    FuzzyRule.setInferenceListener(statistics);
+ *    ... fire the rules
+ *    FuzzyRule.setInferenceListener(null);
+ *    statistics.printReport(System.out);
+ * </code></pre>
+ *
+ * @see FuzzyInferenceListener
+ */
+public class FuzzyInferenceStatistics implements FuzzyInferenceListener
+{
+    /** The number of buckets in the histogram of the DOFs of a rule */
+    public static final int DEGREE_BUCKETS = 11;
+
+    /** The name under which DOFs found without a rule are counted */
+    public static final String NO_RULE = "(no rule)";
+
+    /**
+     * The statistics kept for one rule (or the rules with one name).
+     */
+    public static class RuleStatistics
+    {
+        Object rule;
+        long executions = 0;
+        long executionNanos = 0;
+        long matchings = 0;
+        long matches = 0;
+        long matchNanos = 0;
+        long[] degreeCounts = new long[DEGREE_BUCKETS];
+        long outputs = 0;
+        long outputSetSize = 0;
+        int maximumOutputSetSize = 0;
+
+        RuleStatistics( Object rule )
+        {
+            this.rule = rule;
+        }
+
+        /** Get the name of the rule, or the rule if it has no name.
+         *
+         * @return the name (a String) or the FuzzyRule
+         */
+        public Object getRule() { return rule; }
+
+        /** Get the number of times the rule was executed (fired).
+         *
+         * @return the number of executions
+         */
+        public long getExecutions() { return executions; }
+
+        /** Get the total time taken to execute the rule (including the matching).
+         *
+         * @return the time in nanoseconds
+         */
+        public long getExecutionNanos() { return executionNanos; }
+
+        /** Get the number of times the DOF of the rule was found.
+         *
+         * @return the number of times
+         */
+        public long getMatchings() { return matchings; }
+
+        /** Get the number of times the DOF of the rule was greater than 0.
+         *
+         * @return the number of times the rule matched
+         */
+        public long getMatches() { return matches; }
+
+        /** Get the total time taken to find the DOF of the rule.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getMatchNanos() { return matchNanos; }
+
+        /**
+         * Get the histogram of the DOFs of the rule: element 0 is the number of DOFs
+         * that were 0 and element i (1 to 10) the number in ((i-1)/10, i/10].
+         *
+         * @return a copy of the histogram
+         */
+        public long[] getDegreeHistogram() { return degreeCounts.clone(); }
+
+        /** Get the number of output FuzzyValues produced by the rule.
+         *
+         * @return the number of outputs
+         */
+        public long getOutputs() { return outputs; }
+
+        /** Get the total number of points in the fuzzy sets of the outputs of the rule.
+         *
+         * @return the number of points
+         */
+        public long getOutputSetSize() { return outputSetSize; }
+
+        /** Get the largest number of points in the fuzzy set of an output of the rule.
+         *
+         * @return the number of points
+         */
+        public int getMaximumOutputSetSize() { return maximumOutputSetSize; }
+    }
+
+    /** the RuleStatistics of each rule (or rule name) */
+    private Hashtable ruleStatistics = new Hashtable();
+
+    /** the rules (or rule names) in the order they were first seen */
+    private Vector rules = new Vector();
+
+    private long aggregations = 0;
+    private long aggregationNanos = 0;
+    private long aggregatedSetSize = 0;
+    private long defuzzifications = 0;
+    private long defuzzificationNanos = 0;
+
+    /**
+     * Create an empty set of statistics.
+     */
+    public FuzzyInferenceStatistics()
+    {
+    }
+
+    /** Get the statistics of a rule, creating them if it has not been seen before */
+    private RuleStatistics statisticsFor( FuzzyRule rule )
+    {
+        Object key = (rule == null) ? NO_RULE : 
+                     (rule.getName() == null) ? (Object)rule : rule.getName();
+        RuleStatistics stats = (RuleStatistics)ruleStatistics.get(key);
+        if (stats == null)
+        {   stats = new RuleStatistics(key);
+            ruleStatistics.put(key, stats);
+            rules.addElement(key);
+        }
+        return stats;
+    }
+
+    public synchronized void ruleMatched( FuzzyRule rule, double degree, long nanos )
+    {
+        RuleStatistics stats = statisticsFor(rule);
+        stats.matchings++;
+        stats.matchNanos += nanos;
+        if (degree > 0.0)
+        {   stats.matches++;
+            stats.degreeCounts[Math.max(1, Math.min(DEGREE_BUCKETS-1, (int)Math.ceil(degree*10.0)))]++;
+        }
+        else
+            stats.degreeCounts[0]++;
+    }
+
+    public synchronized void ruleExecuted( FuzzyRule rule, FuzzyValueVector outputs, long nanos )
+    {
+        RuleStatistics stats = statisticsFor(rule);
+        stats.executions++;
+        stats.executionNanos += nanos;
+        for (int i=0; i<outputs.size(); i++)
+        {   int size = outputs.fuzzyValueAt(i).size();
+            stats.outputs++;
+            stats.outputSetSize += size;
+            if (size > stats.maximumOutputSetSize)
+                stats.maximumOutputSetSize = size;
+        }
+    }
+
+    public synchronized void aggregated( FuzzyValue result, long nanos )
+    {
+        aggregations++;
+        aggregationNanos += nanos;
+        aggregatedSetSize += result.size();
+    }
+
+    public synchronized void defuzzified( FuzzyValue value, double result, long nanos )
+    {
+        defuzzifications++;
+        defuzzificationNanos += nanos;
+    }
+
+    /**
+     * Get the statistics of each rule seen, in the order the rules were first seen.
+     *
+     * @return the statistics of the rules
+     */
+    public synchronized RuleStatistics[] getRuleStatistics()
+    {
+        RuleStatistics[] stats = new RuleStatistics[rules.size()];
+        for (int i=0; i<stats.length; i++)
+        {   RuleStatistics s = (RuleStatistics)ruleStatistics.get(rules.elementAt(i));
+            RuleStatistics copy = new RuleStatistics(s.rule);
+            copy.executions = s.executions;
+            copy.executionNanos = s.executionNanos;
+            copy.matchings = s.matchings;
+            copy.matches = s.matches;
+            copy.matchNanos = s.matchNanos;
+            copy.degreeCounts = s.degreeCounts.clone();
+            copy.outputs = s.outputs;
+            copy.outputSetSize = s.outputSetSize;
+            copy.maximumOutputSetSize = s.maximumOutputSetSize;
+            stats[i] = copy;
+        }
+        return stats;
+    }
+
+    /** Get the number of aggregations (global contributions) done.
+     *
+     * @return the number of aggregations
+     */
+    public synchronized long getAggregations() { return aggregations; }
+
+    /** Get the total time taken by aggregations.
+     *
+     * @return the time in nanoseconds
+     */
+    public synchronized long getAggregationNanos() { return aggregationNanos; }
+
+    /** Get the total number of points in the fuzzy sets produced by aggregations.
+     *
+     * @return the number of points
+     */
+    public synchronized long getAggregatedSetSize() { return aggregatedSetSize; }
+
+    /** Get the number of defuzzifications done.
+     *
+     * @return the number of defuzzifications
+     */
+    public synchronized long getDefuzzifications() { return defuzzifications; }
+
+    /** Get the total time taken by defuzzifications.
+     *
+     * @return the time in nanoseconds
+     */
+    public synchronized long getDefuzzificationNanos() { return defuzzificationNanos; }
+
+    /**
+     * Forget all of the statistics kept.
+     */
+    public synchronized void clear()
+    {
+        ruleStatistics.clear();
+        rules.removeAllElements();
+        aggregations = 0;
+        aggregationNanos = 0;
+        aggregatedSetSize = 0;
+        defuzzifications = 0;
+        defuzzificationNanos = 0;
+    }
+
+    /**
+     * Print a report of the statistics: a line for each rule with its executions, 
+     * matches, times (in microseconds), mean output set size and DOF histogram, 
+     * followed by the totals for matching, execution, aggregation and defuzzification.
+     * Rules that were executed but never matched are marked with a '*'.
+     *
+     * @param out the stream to print the report to
+     */
+    public synchronized void printReport( PrintStream out )
+    {
+        RuleStatistics[] stats = getRuleStatistics();
+        long matchNanos = 0, executionNanos = 0;
+        out.println("  executions     matches    match us     exec us  set size  DOF histogram (0, (0,.1] ... (.9,1])  rule");
+        for (int i=0; i<stats.length; i++)
+        {   RuleStatistics s = stats[i];
+            matchNanos += s.matchNanos;
+            executionNanos += s.executionNanos;
+            StringBuffer line = new StringBuffer();
+            line.append(pad(String.valueOf(s.executions), 12));
+            line.append(pad(String.valueOf(s.matches), 12));
+            line.append(pad(String.valueOf(s.matchNanos/1000), 12));
+            line.append(pad(String.valueOf(s.executionNanos/1000), 12));
+            line.append(pad((s.outputs == 0) ? "-" : String.valueOf(s.outputSetSize/s.outputs), 10));
+            line.append("  ");
+            for (int b=0; b<DEGREE_BUCKETS; b++)
+                line.append(b == 0 ? "" : " ").append(s.degreeCounts[b]);
+            line.append((s.matches == 0 && s.matchings > 0) ? "  * " : "    ");
+            line.append(s.rule instanceof FuzzyRule ? "rule@" + Integer.toHexString(System.identityHashCode(s.rule))
+                                                    : s.rule.toString());
+            out.println(line.toString());
+        }
+        out.println("matching: " + matchNanos/1000 + " us, execution: " + executionNanos/1000 + 
+                    " us, aggregation: " + aggregations + " in " + aggregationNanos/1000 + 
+                    " us, defuzzification: " + defuzzifications + " in " + defuzzificationNanos/1000 + " us");
+    }
+
+    private static String pad( String s, int width )
+    {
+        StringBuffer sb = new StringBuffer();
+        for (int i=s.length(); i<width; i++)
+            sb.append(' ');
+        return sb.append(s).toString();
+    }
+}
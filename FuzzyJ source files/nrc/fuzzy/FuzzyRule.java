@@ -233,6 +233,12 @@ import java.lang.reflect.*;
 
 public class FuzzyRule implements Serializable
 {
+    /**
+     * The serialVersionUID of the class before rules had names, so that rules
+     * serialized by earlier versions can still be read (they have no name).
+     */
+    private static final long serialVersionUID = 898666913618395870L;
+
     /** A vector of FuzzyValues that represent the antecedents in the rule */
     private FuzzyValueVector antecedents;
     
@@ -277,6 +283,14 @@ public class FuzzyRule implements Serializable
      */
     private boolean antecedentCombineOperatorChanged;
     
+    /** An optional name for the rule (null if it has none) */
+    private String name = null;
+
+    /** The listener told about each rule execution, or null if there is none.
+     *  It is checked before any time is taken so that inference costs nothing
+     *  extra when no listener is installed. */
+    static volatile FuzzyInferenceListener inferenceListener = null;
+
     /**
      * Create a FuzzyRule with a default FuzzyRuleExecutor. Currently the initial
      * default executor is the MamdaniMinMaxMinRuleExecutor. This can be changed with the method 
@@ -841,6 +855,52 @@ public class FuzzyRule implements Serializable
         return defaultAntecedentCombineOperator;
     }
 
+    /**
+     * Set the listener that is told about the matching, execution (firing), 
+     * aggregation and defuzzification done by all rules, for example a
+     * FuzzyInferenceStatistics to count the firings of each rule. When no listener
+     * is installed (the default) the rules are fired without any extra work.
+     *
+     * @param listener the listener, or null to remove the current listener
+     * @see FuzzyInferenceListener
+     */
+    public static void setInferenceListener( FuzzyInferenceListener listener )
+    {
+        inferenceListener = listener;
+    }
+
+    /**
+     * Get the listener that is told about the execution of rules.
+     *
+     * @return the listener, or null if there is none
+     */
+    public static FuzzyInferenceListener getInferenceListener( )
+    {
+        return inferenceListener;
+    }
+
+    /**
+     * Set the name of the rule. The name is not used in firing the rule; it 
+     * identifies the rule, for example in the statistics kept by a
+     * FuzzyInferenceStatistics.
+     *
+     * @param name the name of the rule, or null for none
+     */
+    public void setName( String name )
+    {
+        this.name = name;
+    }
+
+    /**
+     * Get the name of the rule.
+     *
+     * @return the name of the rule, or null if it has none
+     */
+    public String getName( )
+    {
+        return name;
+    }
+
     /**
      * Test to see if the rule antecedents match the rule inputs
      * with enough overlap to ensure rule will fire with meaninful
@@ -969,11 +1029,18 @@ public class FuzzyRule implements Serializable
     public FuzzyValueVector execute()
         throws IncompatibleRuleInputsException
     {
+        FuzzyInferenceListener listener = inferenceListener;
+        FuzzyFlightRecorderEvents.RuleExecution event = new FuzzyFlightRecorderEvents.RuleExecution();
+        event.begin();
+        long start = (listener == null) ? 0 : System.nanoTime();
         FuzzyValueVector fvv = executor.execute( this );
         // once the rule is executed with its rule executor any state
         // saved will be OK until something changes (this relies
         // on each rule having its own copy of a rule executor!!!)
         setAllChangedFlagsFalse();
+        if (listener != null)
+            listener.ruleExecuted(this, fvv, System.nanoTime() - start);
+        recordExecution(event, executor, fvv);
         return fvv;
     }
                
@@ -999,7 +1066,15 @@ public class FuzzyRule implements Serializable
         // associated with the rule, any state saved in the rule executor
         // will not be valid
         setAllChangedFlagsTrue();
-        return exec.execute( this );
+        FuzzyInferenceListener listener = inferenceListener;
+        FuzzyFlightRecorderEvents.RuleExecution event = new FuzzyFlightRecorderEvents.RuleExecution();
+        event.begin();
+        long start = (listener == null) ? 0 : System.nanoTime();
+        FuzzyValueVector fvv = exec.execute( this );
+        if (listener != null)
+            listener.ruleExecuted(this, fvv, System.nanoTime() - start);
+        recordExecution(event, exec, fvv);
+        return fvv;
     }
       
     
@@ -1012,6 +1087,12 @@ public class FuzzyRule implements Serializable
      * output FuzzyValues determined by the rule execution. In this case the rule
      * is fired using a specified set of inputs rather than those associated
      * with the rule.
+     * <p>
+     * With the rule executors of the library this only reads the rule, so several
+     * threads may fire the same rule at once with different inputs, as long as
+     * the rule itself is not changed meanwhile. The degree of fulfillment kept by
+     * the executor (and given to a flight recording) is then that of whichever
+     * firing stored it last.
      *
      * @param inputs The rule is executed with the specified inputs (rather than with
      *               the inputs currently associated with the rule)
@@ -1027,7 +1108,7 @@ public class FuzzyRule implements Serializable
         // associated with the rule are used, any state saved in the rule executor
         // will not be valid
         setAllChangedFlagsTrue();
-        return executor.execute( this.getAntecedents(), this.getConclusions(), inputs );
+        return executeWithInputs( executor, inputs );
     }
                
     /**
@@ -1056,7 +1137,44 @@ public class FuzzyRule implements Serializable
         // associated with the rule are used, any state saved in the rule executor
         // will not be valid
         setAllChangedFlagsTrue();
-        return exec.execute( this.getAntecedents(), this.getConclusions(), inputs );
+        return executeWithInputs( exec, inputs );
+    }
+
+    /**
+     * Execute the rule with an executor and a set of inputs rather than those 
+     * of the rule, telling the inference listener (if there is one).
+     */
+    private FuzzyValueVector executeWithInputs( FuzzyRuleExecutor exec, FuzzyValueVector inputs )
+        throws IncompatibleRuleInputsException
+    {
+        FuzzyInferenceListener listener = inferenceListener;
+        FuzzyFlightRecorderEvents.RuleExecution event = new FuzzyFlightRecorderEvents.RuleExecution();
+        event.begin();
+        long start = (listener == null) ? 0 : System.nanoTime();
+        FuzzyValueVector fvv = exec.executeWithInputs( this, inputs );
+        if (listener != null)
+            listener.ruleExecuted(this, fvv, System.nanoTime() - start);
+        recordExecution(event, exec, fvv);
+        return fvv;
+    }
+
+    /**
+     * Record a RuleExecution event for a firing of the rule, if the flight recorder
+     * is recording them and the firing took longer than their threshold.
+     */
+    private void recordExecution( FuzzyFlightRecorderEvents.RuleExecution event, 
+                                  FuzzyRuleExecutor exec, FuzzyValueVector outputs )
+    {
+        event.end();
+        if (!event.shouldCommit())
+            return;
+        event.rule = name;
+        event.executor = exec.getClass().getName();
+        event.antecedents = antecedents.size();
+        event.dof = exec.getDegreeOfFulfillment();
+        for (int i=0; i<outputs.size(); i++)
+            event.outputPoints += outputs.fuzzyValueAt(i).size();
+        event.commit();
     }
       
     /**
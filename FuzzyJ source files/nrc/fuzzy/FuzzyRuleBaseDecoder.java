@@ -0,0 +1,392 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+import java.util.Vector;
+
+/**
+ * Reads the FuzzySets, FuzzyValues, FuzzyVariables and FuzzyRules written by a 
+ * FuzzyRuleBaseEncoder. The objects are read when the decoder is created. Those
+ * that were added to the encoder are returned, in the order they were added, by
+ * getFuzzySets, getFuzzyValues, getFuzzyVariables and getFuzzyRules; getFuzzyVariable
+ * finds any variable that was read (including those of the values and rules) by
+ * its name.
+ * <p>
+ * The objects read refer to each other as the objects written did: the rules that
+ * used the same FuzzyValue use the same FuzzyValue, the values of a variable use the
+ * variable read (and a value that was a term of its variable is that term), and the 
+ * values that used the same set object share one set. The sets that were frozen 
+ * (such as those of the terms) are frozen, and frozen sets with the same points are
+ * read as one set; sets that were not frozen are never shared by values that did not
+ * share them, so changing one cannot change another. Each rule gets its own
+ * rule executor, as it does when it is constructed.
+ * <p>
+ * The data are checked as they are read, so that data that were not written by an
+ * encoder cause an exception rather than a huge allocation: each count is checked
+ * against the length of the rest of the data, and an executor or operator that was
+ * written with Java serialization is only read if it (and everything it holds) is
+ * an executor, operator or modifier of the nrc.fuzzy package, within the limits of
+ * MAX_SERIALIZED_DEPTH, MAX_SERIALIZED_ARRAY and MAX_SERIALIZED_REFERENCES.
+ *
+ * @see FuzzyRuleBaseEncoder
+ */
+public class FuzzyRuleBaseDecoder
+{
+    private FuzzySet[] sets;
+    private FuzzyVariable[] variables;
+    private FuzzyValue[] values;
+    private FuzzyRule[] rules;
+
+    private Vector rootSets = new Vector();
+    private Vector rootValues = new Vector();
+    private Vector rootVariables = new Vector();
+    private Vector rootRules = new Vector();
+
+    /** The most levels of nested objects in a serialized rule executor or operator. */
+    static final int MAX_SERIALIZED_DEPTH = 20;
+    /** The longest array in a serialized rule executor or operator. */
+    static final int MAX_SERIALIZED_ARRAY = 10000;
+    /** The most objects in a serialized rule executor or operator. */
+    static final int MAX_SERIALIZED_REFERENCES = 10000;
+
+    /**
+     * Only lets the rule executors, antecedent combine operators and modifiers of 
+     * the library (and the primitive values, strings and arrays of them that they hold)
+     * be read from the serialized form of a rule executor or operator, so that a rule
+     * base cannot make the decoder create objects of any other class.
+     */
+    static final ObjectInputFilter SERIALIZED_FILTER = new ObjectInputFilter()
+        {   public Status checkInput(FilterInfo info)
+            {   if (info.depth() > MAX_SERIALIZED_DEPTH ||
+                    info.arrayLength() > MAX_SERIALIZED_ARRAY ||
+                    info.references() > MAX_SERIALIZED_REFERENCES)
+                    return Status.REJECTED;
+                Class<?> c = info.serialClass();
+                if (c == null)
+                    return Status.UNDECIDED;
+                while (c.isArray())
+                    c = c.getComponentType();
+                if (c.isPrimitive() || c == String.class)
+                    return Status.ALLOWED;
+                if (c.getName().startsWith("nrc.fuzzy.") &&
+                    (FuzzyRuleExecutor.class.isAssignableFrom(c) ||
+                     AntecedentCombineOperator.class.isAssignableFrom(c) ||
+                     ModifierFunction.class.isAssignableFrom(c)))
+                    return Status.ALLOWED;
+                return Status.REJECTED;
+            }
+        };
+
+    /**
+     * Read the objects written by a FuzzyRuleBaseEncoder from a stream. The stream
+     * is read to its end (so that each count read can be checked against the length
+     * of the rest of the data before anything is allocated for it) and is not closed.
+     *
+     * @param in the stream to read
+     * @exception IOException if the stream cannot be read, does not hold data written
+     *       by a FuzzyRuleBaseEncoder or was written with a later version of the format
+     * @exception FuzzyException if the data do not describe valid sets, variables or
+     *       values
+     */
+    public FuzzyRuleBaseDecoder(InputStream in) throws IOException, FuzzyException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            bytes.write(buffer, 0, n);
+        read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    /**
+     * Read the objects written by a FuzzyRuleBaseEncoder to a byte array.
+     *
+     * @param data the bytes written
+     * @exception IOException if the bytes were not written by a FuzzyRuleBaseEncoder 
+     *       or were written with a later version of the format
+     * @exception FuzzyException if the data do not describe valid sets, variables or
+     *       values
+     */
+    public FuzzyRuleBaseDecoder(byte[] data) throws IOException, FuzzyException
+    {
+        read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    private void read(DataInputStream data) throws IOException, FuzzyException
+    {
+        if (data.readInt() != FuzzyRuleBaseEncoder.MAGIC)
+            throw new StreamCorruptedException("Not a FuzzyJ rule base");
+        int version = data.readUnsignedShort();
+        if (version > FuzzyRuleBaseEncoder.FORMAT_VERSION)
+            throw new IOException("Rule base format version " + version + 
+                                  " is not supported (the latest supported is " + 
+                                  FuzzyRuleBaseEncoder.FORMAT_VERSION + ")");
+
+        sets = new FuzzySet[readTableSize(data)];
+        for (int s=0; s<sets.length; s++)
+            sets[s] = readSet(data);
+
+        variables = new FuzzyVariable[readTableSize(data)];
+        for (int v=0; v<variables.length; v++)
+        {   String name = data.readUTF();
+            String units = readString(data);
+            double min = data.readDouble();
+            FuzzyVariable fvar = new FuzzyVariable(name, min, data.readDouble(), units);
+            int numTerms = readCount(data);
+            for (int t=0; t<numTerms; t++)
+                fvar.addTerm(data.readUTF(), set(readCount(data)));
+            variables[v] = fvar;
+        }
+
+        values = new FuzzyValue[readTableSize(data)];
+        for (int i=0; i<values.length; i++)
+        {   FuzzyVariable fvar = variable(readCount(data));
+            int term = readCount(data);
+            if (term != 0)
+            {   String[] termNames = fvar.getTermNames();
+                if (term < 0 || term > termNames.length)
+                    throw new StreamCorruptedException("Invalid term index " + (term-1));
+                values[i] = fvar.findTerm(termNames[term-1]);
+            }
+            else
+            {   values[i] = new FuzzyValue(fvar, set(readCount(data)));
+                values[i].setLinguisticExpression(readString(data));
+            }
+        }
+
+        rules = new FuzzyRule[readTableSize(data)];
+        for (int r=0; r<rules.length; r++)
+        {   String name = readString(data);
+            FuzzyRule rule = new FuzzyRule(readExecutor(data), readOperator(data));
+            rule.setName(name);
+            int n = readCount(data);
+            for (int i=0; i<n; i++)
+                rule.addAntecedent(value(readCount(data)));
+            n = readCount(data);
+            for (int i=0; i<n; i++)
+                rule.addConclusion(value(readCount(data)));
+            n = readCount(data);
+            for (int i=0; i<n; i++)
+                rule.addInput(value(readCount(data)));
+            rules[r] = rule;
+        }
+
+        int numRoots = readCount(data);
+        for (int i=0; i<numRoots; i++)
+        {   int kind = data.readUnsignedByte();
+            int index = readCount(data);
+            switch (kind)
+            {   case FuzzyRuleBaseEncoder.ROOT_SET:      rootSets.addElement(set(index)); break;
+                case FuzzyRuleBaseEncoder.ROOT_VALUE:    rootValues.addElement(value(index)); break;
+                case FuzzyRuleBaseEncoder.ROOT_VARIABLE: rootVariables.addElement(variable(index)); break;
+                case FuzzyRuleBaseEncoder.ROOT_RULE:     rootRules.addElement(rule(index)); break;
+                default: throw new StreamCorruptedException("Invalid object kind " + kind);
+            }
+        }
+    }
+
+    /** Read a set, filling in its points directly since they were checked when written. */
+    private static FuzzySet readSet(DataInputStream data) throws IOException, FuzzyException
+    {
+        int n = readCount(data);
+        int flags = data.readUnsignedByte();
+        checkRemaining(data, 16L*n, "Set of " + n + " points");
+        FuzzySet fs = new FuzzySet(n);
+        double[] x = new double[n];
+        for (int i=0; i<n; i++)
+            x[i] = data.readDouble();
+        for (int i=0; i<n; i++)
+            fs.set[i] = new SetPoint(x[i], data.readDouble());
+        fs.numPoints = n;
+        int i = fs.checkXValueOrder();
+        if (i >= 0)
+            throw new XValuesOutOfOrderException(fs.set[i].x, fs.set[i+1].x);
+        fs.simplified = (flags & 2) != 0;
+        if ((flags & 1) != 0)
+            fs.freeze();
+        return fs;
+    }
+
+    static FuzzyRuleExecutor readExecutor(DataInputStream data) throws IOException
+    {
+        int code = data.readUnsignedByte();
+        if (code == FuzzyRuleBaseEncoder.SERIALIZED)
+            return (FuzzyRuleExecutor)readSerialized(data);
+        if (code > FuzzyRuleBaseEncoder.EXECUTOR_CLASSES.length)
+            throw new StreamCorruptedException("Invalid rule executor code " + code);
+        switch (code)
+        {   case 1:  return new MamdaniMinMaxMinRuleExecutor();
+            case 2:  return new LarsenProductMaxMinRuleExecutor();
+            default: return new TsukamotoRuleExecutor();
+        }
+    }
+
+    static AntecedentCombineOperator readOperator(DataInputStream data) throws IOException
+    {
+        int code = data.readUnsignedByte();
+        if (code == FuzzyRuleBaseEncoder.SERIALIZED)
+            return (AntecedentCombineOperator)readSerialized(data);
+        if (code > FuzzyRuleBaseEncoder.OPERATOR_CLASSES.length)
+            throw new StreamCorruptedException("Invalid antecedent combine operator code " + code);
+        switch (code)
+        {   case 1:  return new MinimumAntecedentCombineOperator();
+            case 2:  return new ProductAntecedentCombineOperator();
+            default: return new CompensatoryAndAntecedentCombineOperator(data.readDouble());
+        }
+    }
+
+    private static Object readSerialized(DataInputStream data) throws IOException
+    {
+        int n = readCount(data);
+        checkRemaining(data, n, "Serialized object of " + n + " bytes");
+        byte[] bytes = new byte[n];
+        data.readFully(bytes);
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        ois.setObjectInputFilter(SERIALIZED_FILTER);
+        try
+        {   return ois.readObject();
+        }
+        catch (ClassNotFoundException e)
+        {   throw new InvalidClassException(e.getMessage());
+        }
+    }
+
+    /** 
+     * Check that the rest of the data (which must come from a byte array or a buffer,
+     * so that available gives all of it) holds at least a number of bytes, before
+     * anything is allocated for what they hold.
+     */
+    static void checkRemaining(DataInputStream data, long bytes, String what) throws IOException
+    {
+        if (bytes > data.available())
+            throw new StreamCorruptedException(what + " is longer than the rest of the data");
+    }
+
+    /** Read the number of objects of a table, each of which takes at least one byte. */
+    private static int readTableSize(DataInputStream data) throws IOException
+    {
+        int n = readCount(data);
+        checkRemaining(data, n, "Table of " + n + " objects");
+        return n;
+    }
+
+    static String readString(DataInputStream data) throws IOException
+    {
+        return data.readBoolean() ? data.readUTF() : null;
+    }
+
+    /** Read a count or index written by FuzzyRuleBaseEncoder.writeCount. */
+    static int readCount(DataInputStream data) throws IOException
+    {
+        int n = 0;
+        for (int shift=0; shift<32; shift+=7)
+        {   int b = data.readUnsignedByte();
+            n |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {   if (n < 0)
+                    break;
+                return n;
+            }
+        }
+        throw new StreamCorruptedException("Invalid count");
+    }
+
+    private FuzzySet set(int index) throws StreamCorruptedException
+    {
+        if (index < 0 || index >= sets.length)
+            throw new StreamCorruptedException("Invalid set index " + index);
+        return sets[index];
+    }
+
+    private FuzzyVariable variable(int index) throws StreamCorruptedException
+    {
+        if (index < 0 || index >= variables.length)
+            throw new StreamCorruptedException("Invalid variable index " + index);
+        return variables[index];
+    }
+
+    private FuzzyValue value(int index) throws StreamCorruptedException
+    {
+        if (index < 0 || index >= values.length)
+            throw new StreamCorruptedException("Invalid value index " + index);
+        return values[index];
+    }
+
+    private FuzzyRule rule(int index) throws StreamCorruptedException
+    {
+        if (index < 0 || index >= rules.length)
+            throw new StreamCorruptedException("Invalid rule index " + index);
+        return rules[index];
+    }
+
+    /**
+     * Get the FuzzySets that were added to the encoder.
+     *
+     * @return the sets, in the order they were added
+     */
+    public FuzzySet[] getFuzzySets()
+    {
+        FuzzySet[] result = new FuzzySet[rootSets.size()];
+        rootSets.copyInto(result);
+        return result;
+    }
+
+    /**
+     * Get the FuzzyValues that were added to the encoder.
+     *
+     * @return the values, in the order they were added
+     */
+    public FuzzyValue[] getFuzzyValues()
+    {
+        FuzzyValue[] result = new FuzzyValue[rootValues.size()];
+        rootValues.copyInto(result);
+        return result;
+    }
+
+    /**
+     * Get the FuzzyVariables that were added to the encoder.
+     *
+     * @return the variables, in the order they were added
+     */
+    public FuzzyVariable[] getFuzzyVariables()
+    {
+        FuzzyVariable[] result = new FuzzyVariable[rootVariables.size()];
+        rootVariables.copyInto(result);
+        return result;
+    }
+
+    /**
+     * Get the FuzzyRules that were added to the encoder.
+     *
+     * @return the rules, in the order they were added
+     */
+    public FuzzyRule[] getFuzzyRules()
+    {
+        FuzzyRule[] result = new FuzzyRule[rootRules.size()];
+        rootRules.copyInto(result);
+        return result;
+    }
+
+    /**
+     * Find a FuzzyVariable that was read, whether or not it was added to the 
+     * encoder itself, by its name.
+     *
+     * @param name the name of the variable
+     * @return the variable, or null if none was read with that name
+     */
+    public FuzzyVariable getFuzzyVariable(String name)
+    {
+        for (int v=0; v<variables.length; v++)
+            if (variables[v].getName().equals(name))
+                return variables[v];
+        return null;
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+/**
+ * Writes FuzzySets, FuzzyValues, FuzzyVariables and FuzzyRules in a compact binary 
+ * format that is read back by FuzzyRuleBaseDecoder. It is much smaller and faster
+ * to read than Java serialization of the same objects, which writes a class descriptor
+ * and an object for each SetPoint and, for each FuzzyVariable, the Hashtable of its
+ * terms with each term's FuzzyValue pointing back to the variable. Rule bases that are
+ * sent between programs or cached in files can be written this way.
+ * <p>
+ * The objects to be written are added to an encoder (along with all of the objects
+ * they refer to: a rule brings its antecedents, conclusions and inputs, a FuzzyValue 
+ * its FuzzyVariable and a FuzzyVariable its terms) and then written as a graph, 
+ * each object once, referring to the others by their index:
+ * <ul>
+ * <li> the fuzzy sets, each as its number of points followed by its x values and 
+ *      then its y values as packed doubles. Each set object is written once, and
+ *      frozen sets (such as those of terms) with the same points are written once,
+ *      so the set of a term is not repeated for each rule that uses the term. Sets
+ *      that are not frozen can be changed, so two of them are never merged even 
+ *      if they have the same points;
+ * <li> the fuzzy variables: name, units, universe of discourse and terms (the name 
+ *      of each term and the index of its set);
+ * <li> the fuzzy values: the index of the variable and either the index of one of its
+ *      terms or the index of a set and the linguistic expression;
+ * <li> the rules: name, rule executor, antecedent combine operator and the indexes of
+ *      the antecedents, conclusions and inputs;
+ * <li> the indexes of the objects that were added to the encoder, in the order 
+ *      they were added.
+ * </ul>
+ * The data start with a 4 byte marker and a format version number (FORMAT_VERSION),
+ * which the decoder checks. Counts and indexes are written as variable length 
+ * integers (7 bits to a byte) so most take a single byte.
+ * <p>
+ * The points of a set are written, not the way it was made, so a set of a 
+ * subclass such as TriangleFuzzySet or GaussianFuzzySet is read back as a 
+ * FuzzySet with the same points. The rule executors and antecedent combine 
+ * operators supplied with FuzzyJ are written as a code (with the gamma of a 
+ * CompensatoryAndAntecedentCombineOperator); any other executor or operator is 
+ * written with Java serialization, and the decoder only reads it back if it is one 
+ * of the nrc.fuzzy package (see FuzzyRuleBaseDecoder). For example,
+ * <pre><code>
+ *    FuzzyRuleBaseEncoder encoder = new FuzzyRuleBaseEncoder();
+ *    for (int i=0; i&lt;rules.length; i++)
+ *        encoder.addFuzzyRule(rules[i]);
+ *    byte[] data = encoder.toByteArray();
+ *    ...
+ *    FuzzyRuleBaseDecoder decoder = new FuzzyRuleBaseDecoder(data);
+ *    FuzzyRule[] copies = decoder.getFuzzyRules();
+ *    FuzzyVariable angle = decoder.getFuzzyVariable("angle");
+ * </code></pre>
+ * An encoder is not synchronized.
+ *
+ * @see FuzzyRuleBaseDecoder
+ */
+public class FuzzyRuleBaseEncoder
+{
+    /** The marker at the start of the data ("FZJB"). */
+    public static final int MAGIC = 0x465A4A42;
+
+    /** The version of the format written. */
+    public static final int FORMAT_VERSION = 1;
+
+    /** The kinds of the objects added to an encoder (the roots of the graph). */
+    static final int ROOT_SET = 0;
+    static final int ROOT_VALUE = 1;
+    static final int ROOT_VARIABLE = 2;
+    static final int ROOT_RULE = 3;
+
+    /** The code of an executor or operator written with Java serialization. */
+    static final int SERIALIZED = 0;
+
+    /** The rule executors written as a code (their index plus 1). */
+    static final Class[] EXECUTOR_CLASSES = 
+        {MamdaniMinMaxMinRuleExecutor.class, LarsenProductMaxMinRuleExecutor.class,
+         TsukamotoRuleExecutor.class};
+
+    /** The antecedent combine operators written as a code (their index plus 1). */
+    static final Class[] OPERATOR_CLASSES = 
+        {MinimumAntecedentCombineOperator.class, ProductAntecedentCombineOperator.class,
+         CompensatoryAndAntecedentCombineOperator.class};
+
+    // the objects of the graph in the order they will be written, and 
+    // their indexes (also written by FuzzyRuleBaseSnapshot)
+    Vector sets = new Vector();
+    private IdentityHashMap setIndexes = new IdentityHashMap();
+    private Hashtable setsByPoints = new Hashtable();
+    Vector variables = new Vector();
+    private IdentityHashMap variableIndexes = new IdentityHashMap();
+    Vector values = new Vector();
+    private IdentityHashMap valueIndexes = new IdentityHashMap();
+    Vector rules = new Vector();
+    private IdentityHashMap ruleIndexes = new IdentityHashMap();
+
+    // the objects added: kind (ROOT_SET ...) and index
+    Vector rootKinds = new Vector();
+    Vector rootIndexes = new Vector();
+
+    /**
+     * Create an encoder with no objects added to it.
+     */
+    public FuzzyRuleBaseEncoder()
+    {
+    }
+
+    /**
+     * Add a FuzzySet to be written.
+     *
+     * @param fs the set
+     */
+    public void addFuzzySet(FuzzySet fs)
+    {
+        addRoot(ROOT_SET, setIndex(fs));
+    }
+
+    /**
+     * Add a FuzzyValue to be written, along with its FuzzyVariable.
+     *
+     * @param fval the value
+     */
+    public void addFuzzyValue(FuzzyValue fval)
+    {
+        addRoot(ROOT_VALUE, valueIndex(fval));
+    }
+
+    /**
+     * Add a FuzzyVariable to be written, along with its terms.
+     *
+     * @param fvar the variable
+     */
+    public void addFuzzyVariable(FuzzyVariable fvar)
+    {
+        addRoot(ROOT_VARIABLE, variableIndex(fvar));
+    }
+
+    /**
+     * Add a FuzzyRule to be written, along with its antecedents, conclusions
+     * and inputs.
+     *
+     * @param rule the rule
+     */
+    public void addFuzzyRule(FuzzyRule rule)
+    {
+        Integer index = (Integer)ruleIndexes.get(rule);
+        if (index == null)
+        {   FuzzyValueVector[] parts = {rule.getAntecedents(), rule.getConclusions(), rule.getInputs()};
+            for (int p=0; p<parts.length; p++)
+                for (int i=0; i<parts[p].size(); i++)
+                    valueIndex(parts[p].fuzzyValueAt(i));
+            index = Integer.valueOf(rules.size());
+            rules.addElement(rule);
+            ruleIndexes.put(rule, index);
+        }
+        addRoot(ROOT_RULE, index.intValue());
+    }
+
+    /**
+     * Add FuzzyRules to be written.
+     *
+     * @param rules the rules
+     */
+    public void addFuzzyRules(FuzzyRule[] rules)
+    {
+        for (int i=0; i<rules.length; i++)
+            addFuzzyRule(rules[i]);
+    }
+
+    /**
+     * Write the objects that have been added to the encoder. The stream is not 
+     * closed.
+     *
+     * @param out the stream to write to
+     * @exception IOException if the stream cannot be written or an executor or 
+     *        operator cannot be serialized
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeShort(FORMAT_VERSION);
+
+        writeCount(data, sets.size());
+        for (int s=0; s<sets.size(); s++)
+        {   FuzzySet fs = (FuzzySet)sets.elementAt(s);
+            int n = fs.numPoints;
+            writeCount(data, n);
+            data.writeByte((fs.isFrozen() ? 1 : 0) | (fs.simplified ? 2 : 0));
+            for (int i=0; i<n; i++)
+                data.writeDouble(fs.set[i].x);
+            for (int i=0; i<n; i++)
+                data.writeDouble(fs.set[i].y);
+        }
+
+        writeCount(data, variables.size());
+        for (int v=0; v<variables.size(); v++)
+            writeVariable(data, (FuzzyVariable)variables.elementAt(v));
+
+        writeCount(data, values.size());
+        for (int i=0; i<values.size(); i++)
+        {   FuzzyValue fval = (FuzzyValue)values.elementAt(i);
+            FuzzyVariable fvar = fval.getFuzzyVariable();
+            writeCount(data, variableIndex(fvar));
+            int term = termIndex(fvar, fval);
+            // 0 for a value with its own set, else 1 + the index of the term
+            writeCount(data, term + 1);
+            if (term < 0)
+            {   writeCount(data, setIndex(fval.getFuzzySet()));
+                writeString(data, fval.getLinguisticExpression());
+            }
+        }
+
+        writeCount(data, rules.size());
+        for (int r=0; r<rules.size(); r++)
+            writeRule(data, (FuzzyRule)rules.elementAt(r));
+
+        writeCount(data, rootKinds.size());
+        for (int i=0; i<rootKinds.size(); i++)
+        {   data.writeByte(((Integer)rootKinds.elementAt(i)).intValue());
+            writeCount(data, ((Integer)rootIndexes.elementAt(i)).intValue());
+        }
+        data.flush();
+    }
+
+    /**
+     * Write the objects that have been added to the encoder to a byte array.
+     *
+     * @return the bytes written
+     * @exception IOException if an executor or operator cannot be serialized
+     */
+    public byte[] toByteArray() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out);
+        return out.toByteArray();
+    }
+
+    /** Write a variable: name, units, universe of discourse and terms. */
+    void writeVariable(DataOutputStream data, FuzzyVariable fvar) throws IOException
+    {
+        data.writeUTF(fvar.getName());
+        writeString(data, fvar.getUnits());
+        data.writeDouble(fvar.getMinUOD());
+        data.writeDouble(fvar.getMaxUOD());
+        String[] termNames = fvar.getTermNames();
+        writeCount(data, termNames.length);
+        for (int t=0; t<termNames.length; t++)
+        {   FuzzyValue term = fvar.findTerm(termNames[t]);
+            // the linguistic expression of a term is its name as it was given
+            data.writeUTF(term.getLinguisticExpression());
+            writeCount(data, setIndex(term.getFuzzySet()));
+        }
+    }
+
+    /** Write a rule: name, executor, operator and the indexes of its values. */
+    void writeRule(DataOutputStream data, FuzzyRule rule) throws IOException
+    {
+        writeString(data, rule.getName());
+        writeExecutor(data, rule.getRuleExecutor());
+        writeOperator(data, rule.getAntecedentCombineOperator());
+        writeValues(data, rule.getAntecedents());
+        writeValues(data, rule.getConclusions());
+        writeValues(data, rule.getInputs());
+    }
+
+    private void addRoot(int kind, int index)
+    {
+        rootKinds.addElement(Integer.valueOf(kind));
+        rootIndexes.addElement(Integer.valueOf(index));
+    }
+
+    /** 
+     * The index of a set, adding it to the sets to be written if it is new. A frozen
+     * set with the same points as one already added shares its index; a set that is
+     * not frozen is only the same as itself, since the decoded sets must not be
+     * shared by values that could change them separately.
+     */
+    int setIndex(FuzzySet fs)
+    {
+        fs.ensurePoints();
+        Integer index = (Integer)setIndexes.get(fs);
+        if (index == null)
+        {   SetKey key = fs.isFrozen() ? new SetKey(fs) : null;
+            if (key != null)
+                index = (Integer)setsByPoints.get(key);
+            if (index == null)
+            {   index = Integer.valueOf(sets.size());
+                sets.addElement(fs);
+                if (key != null)
+                    setsByPoints.put(key, index);
+            }
+            setIndexes.put(fs, index);
+        }
+        return index.intValue();
+    }
+
+    /** The index of a variable, adding it and its terms if it is new. */
+    int variableIndex(FuzzyVariable fvar)
+    {
+        Integer index = (Integer)variableIndexes.get(fvar);
+        if (index == null)
+        {   index = Integer.valueOf(variables.size());
+            variables.addElement(fvar);
+            variableIndexes.put(fvar, index);
+            String[] termNames = fvar.getTermNames();
+            for (int t=0; t<termNames.length; t++)
+                setIndex(fvar.findTerm(termNames[t]).getFuzzySet());
+        }
+        return index.intValue();
+    }
+
+    /** The index of a value, adding it and its variable if it is new. */
+    private int valueIndex(FuzzyValue fval)
+    {
+        Integer index = (Integer)valueIndexes.get(fval);
+        if (index == null)
+        {   FuzzyVariable fvar = fval.getFuzzyVariable();
+            variableIndex(fvar);
+            if (termIndex(fvar, fval) < 0)
+                setIndex(fval.getFuzzySet());
+            index = Integer.valueOf(values.size());
+            values.addElement(fval);
+            valueIndexes.put(fval, index);
+        }
+        return index.intValue();
+    }
+
+    /** The index of the term of a variable that a value is, or -1 if it is not one. */
+    static int termIndex(FuzzyVariable fvar, FuzzyValue fval)
+    {
+        String[] termNames = fvar.getTermNames();
+        for (int t=0; t<termNames.length; t++)
+            if (fvar.findTerm(termNames[t]) == fval)
+                return t;
+        return -1;
+    }
+
+    private void writeValues(DataOutputStream data, FuzzyValueVector fvv) throws IOException
+    {
+        writeCount(data, fvv.size());
+        for (int i=0; i<fvv.size(); i++)
+            writeCount(data, valueIndex(fvv.fuzzyValueAt(i)));
+    }
+
+    private static void writeExecutor(DataOutputStream data, FuzzyRuleExecutor exec) throws IOException
+    {
+        for (int c=0; c<EXECUTOR_CLASSES.length; c++)
+            if (exec.getClass() == EXECUTOR_CLASSES[c])
+            {   data.writeByte(c + 1);
+                return;
+            }
+        writeSerialized(data, exec);
+    }
+
+    private static void writeOperator(DataOutputStream data, AntecedentCombineOperator op) throws IOException
+    {
+        for (int c=0; c<OPERATOR_CLASSES.length; c++)
+            if (op.getClass() == OPERATOR_CLASSES[c])
+            {   data.writeByte(c + 1);
+                if (op instanceof CompensatoryAndAntecedentCombineOperator)
+                    data.writeDouble(((CompensatoryAndAntecedentCombineOperator)op).getGamma());
+                return;
+            }
+        writeSerialized(data, op);
+    }
+
+    private static void writeSerialized(DataOutputStream data, Object obj) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(obj);
+        oos.close();
+        data.writeByte(SERIALIZED);
+        writeCount(data, bytes.size());
+        bytes.writeTo(data);
+    }
+
+    /** Write a string that may be null. */
+    static void writeString(DataOutputStream data, String s) throws IOException
+    {
+        data.writeBoolean(s != null);
+        if (s != null)
+            data.writeUTF(s);
+    }
+
+    /** Write a count or index (not negative) in as few bytes as it needs, 7 bits to a byte. */
+    static void writeCount(DataOutputStream data, int n) throws IOException
+    {
+        while ((n & ~0x7F) != 0)
+        {   data.writeByte((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        data.writeByte(n);
+    }
+
+    /** The points of a frozen set, used to find frozen sets that are the same. */
+    private static class SetKey
+    {
+        double[] points;
+        int hash;
+
+        SetKey(FuzzySet fs)
+        {
+            int n = fs.numPoints;
+            points = new double[2*n];
+            for (int i=0; i<n; i++)
+            {   points[2*i] = fs.set[i].x;
+                points[2*i+1] = fs.set[i].y;
+            }
+            hash = java.util.Arrays.hashCode(points);
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof SetKey))
+                return false;
+            SetKey other = (SetKey)obj;
+            return java.util.Arrays.equals(points, other.points);
+        }
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Vector;
+
+/**
+ * A rule base, fully built, written to a file that is memory mapped when it is 
+ * opened, so that a program can start using a large rule base without first 
+ * building every FuzzyVariable and its terms and parsing every linguistic 
+ * expression. The file holds the objects added to a FuzzyRuleBaseEncoder (and 
+ * those they refer to) as they are after they were built: the points of each set 
+ * (the result of any linguistic expressions and modifiers, so nothing is parsed
+ * or expanded again), the terms of each variable along with the breakpoint table 
+ * that FuzzyVariable.fuzzify uses, and the rules.
+ * <p>
+ * Opening a snapshot maps the file (with FileChannel.map) and checks its header; 
+ * nothing else is read. Objects are built from the mapped file the first time
+ * they are asked for, and kept: asking for a rule builds that rule, its 
+ * FuzzyValues and their variables, and asking for a variable builds it and its 
+ * terms. The fixed size tables at the start of the file give the position of 
+ * each object, so the time taken to get a rule or variable does not depend on 
+ * the size of the rule base. The points of a set are read in bulk through a 
+ * DoubleBuffer view of the mapped file. For example,
+ * <pre><code>
+ *    FuzzyRuleBaseEncoder encoder = new FuzzyRuleBaseEncoder();
+ *    encoder.addFuzzyRules(rules);
+ *    FuzzyRuleBaseSnapshot.write(encoder, new File("rules.fzs"));
+ *    ...
+ *    FuzzyRuleBaseSnapshot snapshot = FuzzyRuleBaseSnapshot.open(new File("rules.fzs"));
+ *    FuzzyVariable angle = snapshot.getFuzzyVariable("angle");
+ *    FuzzyRule rule = snapshot.getFuzzyRule(0);
+ * </code></pre>
+ * The objects built are shared in the same way as those read by a 
+ * FuzzyRuleBaseDecoder. The methods of a snapshot are synchronized, so one can
+ * be used by several threads.
+ *
+ * @see FuzzyRuleBaseEncoder
+ * @see FuzzyRuleBaseDecoder
+ */
+public class FuzzyRuleBaseSnapshot
+{
+    /** The marker at the start of a snapshot file ("FZJS"). */
+    public static final int MAGIC = 0x465A4A53;
+
+    /** The version of the format written. */
+    public static final int FORMAT_VERSION = 1;
+
+    /** the sizes of the header and of an entry in each of the tables that follow it */
+    static final int HEADER_SIZE = 32;
+    static final int SET_ENTRY_SIZE = 12;
+    static final int VARIABLE_ENTRY_SIZE = 12;
+    static final int VALUE_ENTRY_SIZE = 16;
+    static final int RULE_ENTRY_SIZE = 4;
+    static final int ROOT_ENTRY_SIZE = 8;
+
+    private MappedByteBuffer buffer;
+    private int numSets, numVariables, numValues, numRules, numRoots;
+    // the positions of the tables
+    private int setTable, variableTable, valueTable, ruleTable, rootTable;
+
+    // the objects built so far
+    private FuzzySet[] sets;
+    private FuzzyVariable[] variables;
+    private FuzzyValue[] values;
+    private FuzzyRule[] rules;
+
+    /**
+     * Write the objects added to an encoder to a snapshot file.
+     * <p>
+     * The file is laid out as a header (the marker, version and the number of
+     * sets, variables, values, rules and objects added), then a table of
+     * fixed size entries for each of those, then the data the entries point to:
+     * <ul>
+     * <li> a set: its number of points and flags in its entry, and the position of its 
+     *      x values then its y values (doubles, 8 byte aligned);
+     * <li> a variable: the hash code of its name and the positions of its description
+     *      (as written by FuzzyRuleBaseEncoder) and of its breakpoint table;
+     * <li> a value: the indexes of its variable, term (-1 if it is not a term) and
+     *      set and the position of its linguistic expression (-1 if none);
+     * <li> a rule: the position of its description (as written by FuzzyRuleBaseEncoder);
+     * <li> an object added: its kind and index.
+     * </ul>
+     *
+     * @param encoder the encoder the objects were added to
+     * @param file the file to write
+     * @exception IOException if the file cannot be written or an executor or 
+     *        operator cannot be serialized
+     */
+    public static void write(FuzzyRuleBaseEncoder encoder, File file) throws IOException
+    {
+        int numSets = encoder.sets.size();
+        int numVariables = encoder.variables.size();
+        int numValues = encoder.values.size();
+        int numRules = encoder.rules.size();
+        int numRoots = encoder.rootKinds.size();
+        int tablesSize = numSets*SET_ENTRY_SIZE + numVariables*VARIABLE_ENTRY_SIZE + 
+                         numValues*VALUE_ENTRY_SIZE + numRules*RULE_ENTRY_SIZE + 
+                         numRoots*ROOT_ENTRY_SIZE;
+        int dataStart = align(HEADER_SIZE + tablesSize);
+
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream(HEADER_SIZE + tablesSize);
+        DataOutputStream tables = new DataOutputStream(tableBytes);
+        ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(dataBytes);
+
+        tables.writeInt(MAGIC);
+        tables.writeInt(FORMAT_VERSION);
+        tables.writeInt(numSets);
+        tables.writeInt(numVariables);
+        tables.writeInt(numValues);
+        tables.writeInt(numRules);
+        tables.writeInt(numRoots);
+        tables.writeInt(0);
+
+        for (int s=0; s<numSets; s++)
+        {   FuzzySet fs = (FuzzySet)encoder.sets.elementAt(s);
+            pad(data);
+            tables.writeInt(dataStart + data.size());
+            tables.writeInt(fs.numPoints);
+            tables.writeInt((fs.isFrozen() ? 1 : 0) | (fs.simplified ? 2 : 0));
+            for (int i=0; i<fs.numPoints; i++)
+                data.writeDouble(fs.set[i].x);
+            for (int i=0; i<fs.numPoints; i++)
+                data.writeDouble(fs.set[i].y);
+        }
+
+        for (int v=0; v<numVariables; v++)
+        {   FuzzyVariable fvar = (FuzzyVariable)encoder.variables.elementAt(v);
+            tables.writeInt(fvar.getName().hashCode());
+            tables.writeInt(dataStart + data.size());
+            encoder.writeVariable(data, fvar);
+            pad(data);
+            tables.writeInt(dataStart + data.size());
+            writeTable(data, fvar.getFuzzificationTable());
+        }
+
+        for (int i=0; i<numValues; i++)
+        {   FuzzyValue fval = (FuzzyValue)encoder.values.elementAt(i);
+            FuzzyVariable fvar = fval.getFuzzyVariable();
+            int term = FuzzyRuleBaseEncoder.termIndex(fvar, fval);
+            tables.writeInt(encoder.variableIndex(fvar));
+            tables.writeInt(term);
+            tables.writeInt((term < 0) ? encoder.setIndex(fval.getFuzzySet()) : -1);
+            String expression = fval.getLinguisticExpression();
+            if (term >= 0 || expression == null)
+                tables.writeInt(-1);
+            else
+            {   tables.writeInt(dataStart + data.size());
+                data.writeUTF(expression);
+            }
+        }
+
+        for (int r=0; r<numRules; r++)
+        {   tables.writeInt(dataStart + data.size());
+            encoder.writeRule(data, (FuzzyRule)encoder.rules.elementAt(r));
+        }
+
+        for (int i=0; i<numRoots; i++)
+        {   tables.writeInt(((Integer)encoder.rootKinds.elementAt(i)).intValue());
+            tables.writeInt(((Integer)encoder.rootIndexes.elementAt(i)).intValue());
+        }
+        while (tables.size() < dataStart)
+            tables.writeByte(0);
+
+        OutputStream out = new FileOutputStream(file);
+        try
+        {   tableBytes.writeTo(out);
+            dataBytes.writeTo(out);
+        }
+        finally
+        {   out.close();
+        }
+    }
+
+    /**
+     * Open a snapshot file. The file is mapped and its header is checked; the 
+     * objects are built as they are asked for.
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @exception IOException if the file cannot be mapped, is not a snapshot or
+     *       was written with a later version of the format
+     */
+    public static FuzzyRuleBaseSnapshot open(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {   FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            return new FuzzyRuleBaseSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally
+        {   raf.close();
+        }
+    }
+
+    private FuzzyRuleBaseSnapshot(MappedByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new StreamCorruptedException("Not a FuzzyJ rule base snapshot");
+        int version = buffer.getInt(4);
+        if (version > FORMAT_VERSION)
+            throw new IOException("Rule base snapshot format version " + version + 
+                                  " is not supported (the latest supported is " + 
+                                  FORMAT_VERSION + ")");
+        numSets = buffer.getInt(8);
+        numVariables = buffer.getInt(12);
+        numValues = buffer.getInt(16);
+        numRules = buffer.getInt(20);
+        numRoots = buffer.getInt(24);
+        if (numSets < 0 || numVariables < 0 || numValues < 0 || numRules < 0 || numRoots < 0 ||
+            HEADER_SIZE + (long)numSets*SET_ENTRY_SIZE + (long)numVariables*VARIABLE_ENTRY_SIZE + 
+            (long)numValues*VALUE_ENTRY_SIZE + (long)numRules*RULE_ENTRY_SIZE + 
+            (long)numRoots*ROOT_ENTRY_SIZE > buffer.capacity())
+            throw new StreamCorruptedException("Rule base snapshot is truncated");
+        setTable = HEADER_SIZE;
+        variableTable = setTable + numSets*SET_ENTRY_SIZE;
+        valueTable = variableTable + numVariables*VARIABLE_ENTRY_SIZE;
+        ruleTable = valueTable + numValues*VALUE_ENTRY_SIZE;
+        rootTable = ruleTable + numRules*RULE_ENTRY_SIZE;
+        sets = new FuzzySet[numSets];
+        variables = new FuzzyVariable[numVariables];
+        values = new FuzzyValue[numValues];
+        rules = new FuzzyRule[numRules];
+    }
+
+    /**
+     * Get the number of rules in the snapshot.
+     *
+     * @return the number of rules
+     */
+    public int getNumberOfRules()
+    {
+        return numRules;
+    }
+
+    /**
+     * Get a rule, building it (and its values and variables) if it has not
+     * been asked for before. The rules are numbered in the order they were
+     * first added to the encoder.
+     *
+     * @param index the index of the rule (0 to getNumberOfRules()-1)
+     * @return the rule
+     * @exception IOException if the snapshot is not valid
+     * @exception FuzzyException if the snapshot does not describe valid sets,
+     *       variables or values
+     */
+    public synchronized FuzzyRule getFuzzyRule(int index) throws IOException, FuzzyException
+    {
+        if (index < 0 || index >= numRules)
+            throw new StreamCorruptedException("Invalid rule index " + index);
+        if (rules[index] == null)
+        {   DataInputStream data = dataAt(buffer.getInt(ruleTable + index*RULE_ENTRY_SIZE));
+            String name = FuzzyRuleBaseDecoder.readString(data);
+            FuzzyRule rule = new FuzzyRule(FuzzyRuleBaseDecoder.readExecutor(data), 
+                                           FuzzyRuleBaseDecoder.readOperator(data));
+            rule.setName(name);
+            int n = FuzzyRuleBaseDecoder.readCount(data);
+            for (int i=0; i<n; i++)
+                rule.addAntecedent(value(FuzzyRuleBaseDecoder.readCount(data)));
+            n = FuzzyRuleBaseDecoder.readCount(data);
+            for (int i=0; i<n; i++)
+                rule.addConclusion(value(FuzzyRuleBaseDecoder.readCount(data)));
+            n = FuzzyRuleBaseDecoder.readCount(data);
+            for (int i=0; i<n; i++)
+                rule.addInput(value(FuzzyRuleBaseDecoder.readCount(data)));
+            rules[index] = rule;
+        }
+        return rules[index];
+    }
+
+    /**
+     * Find a variable in the snapshot (whether or not it was added to the encoder 
+     * itself) by its name, building it if it has not been asked for before.
+     *
+     * @param name the name of the variable
+     * @return the variable, or null if there is none with that name
+     * @exception IOException if the snapshot is not valid
+     * @exception FuzzyException if the snapshot does not describe a valid variable
+     */
+    public synchronized FuzzyVariable getFuzzyVariable(String name) throws IOException, FuzzyException
+    {
+        int hash = name.hashCode();
+        for (int v=0; v<numVariables; v++)
+            if (buffer.getInt(variableTable + v*VARIABLE_ENTRY_SIZE) == hash &&
+                dataAt(buffer.getInt(variableTable + v*VARIABLE_ENTRY_SIZE + 4)).readUTF().equals(name))
+                return variable(v);
+        return null;
+    }
+
+    /**
+     * Get the rules that were added to the encoder, building any that have not 
+     * been asked for before.
+     *
+     * @return the rules, in the order they were added
+     * @exception IOException if the snapshot is not valid
+     * @exception FuzzyException if the snapshot does not describe valid sets,
+     *       variables or values
+     */
+    public synchronized FuzzyRule[] getFuzzyRules() throws IOException, FuzzyException
+    {
+        Vector roots = roots(FuzzyRuleBaseEncoder.ROOT_RULE);
+        FuzzyRule[] result = new FuzzyRule[roots.size()];
+        roots.copyInto(result);
+        return result;
+    }
+
+    /**
+     * Get the variables that were added to the encoder, building any that have not 
+     * been asked for before.
+     *
+     * @return the variables, in the order they were added
+     * @exception IOException if the snapshot is not valid
+     * @exception FuzzyException if the snapshot does not describe valid variables
+     */
+    public synchronized FuzzyVariable[] getFuzzyVariables() throws IOException, FuzzyException
+    {
+        Vector roots = roots(FuzzyRuleBaseEncoder.ROOT_VARIABLE);
+        FuzzyVariable[] result = new FuzzyVariable[roots.size()];
+        roots.copyInto(result);
+        return result;
+    }
+
+    /**
+     * Get the values that were added to the encoder, building any that have not 
+     * been asked for before.
+     *
+     * @return the values, in the order they were added
+     * @exception IOException if the snapshot is not valid
+     * @exception FuzzyException if the snapshot does not describe valid values
+     */
+    public synchronized FuzzyValue[] getFuzzyValues() throws IOException, FuzzyException
+    {
+        Vector roots = roots(FuzzyRuleBaseEncoder.ROOT_VALUE);
+        FuzzyValue[] result = new FuzzyValue[roots.size()];
+        roots.copyInto(result);
+        return result;
+    }
+
+    /**
+     * Get the sets that were added to the encoder, building any that have not 
+     * been asked for before.
+     *
+     * @return the sets, in the order they were added
+     * @exception IOException if the snapshot is not valid
+     * @exception FuzzyException if the snapshot does not describe valid sets
+     */
+    public synchronized FuzzySet[] getFuzzySets() throws IOException, FuzzyException
+    {
+        Vector roots = roots(FuzzyRuleBaseEncoder.ROOT_SET);
+        FuzzySet[] result = new FuzzySet[roots.size()];
+        roots.copyInto(result);
+        return result;
+    }
+
+    /** The objects of one kind that were added to the encoder. */
+    private Vector roots(int kind) throws IOException, FuzzyException
+    {
+        Vector roots = new Vector();
+        for (int i=0; i<numRoots; i++)
+        {   int entry = rootTable + i*ROOT_ENTRY_SIZE;
+            if (buffer.getInt(entry) != kind)
+                continue;
+            int index = buffer.getInt(entry + 4);
+            switch (kind)
+            {   case FuzzyRuleBaseEncoder.ROOT_SET:      roots.addElement(set(index)); break;
+                case FuzzyRuleBaseEncoder.ROOT_VALUE:    roots.addElement(value(index)); break;
+                case FuzzyRuleBaseEncoder.ROOT_VARIABLE: roots.addElement(variable(index)); break;
+                default:                                 roots.addElement(getFuzzyRule(index)); break;
+            }
+        }
+        return roots;
+    }
+
+    private FuzzySet set(int index) throws IOException, FuzzyException
+    {
+        if (index < 0 || index >= numSets)
+            throw new StreamCorruptedException("Invalid set index " + index);
+        if (sets[index] == null)
+        {   int entry = setTable + index*SET_ENTRY_SIZE;
+            int n = buffer.getInt(entry + 4);
+            int flags = buffer.getInt(entry + 8);
+            DoubleBuffer points = doublesAt(buffer.getInt(entry), 2*n);
+            double[] x = new double[n];
+            points.get(x);
+            FuzzySet fs = new FuzzySet(n);
+            for (int i=0; i<n; i++)
+                fs.set[i] = new SetPoint(x[i], points.get());
+            fs.numPoints = n;
+            int i = fs.checkXValueOrder();
+            if (i >= 0)
+                throw new XValuesOutOfOrderException(fs.set[i].x, fs.set[i+1].x);
+            fs.simplified = (flags & 2) != 0;
+            if ((flags & 1) != 0)
+                fs.freeze();
+            sets[index] = fs;
+        }
+        return sets[index];
+    }
+
+    private FuzzyVariable variable(int index) throws IOException, FuzzyException
+    {
+        if (index < 0 || index >= numVariables)
+            throw new StreamCorruptedException("Invalid variable index " + index);
+        if (variables[index] == null)
+        {   int entry = variableTable + index*VARIABLE_ENTRY_SIZE;
+            DataInputStream data = dataAt(buffer.getInt(entry + 4));
+            String name = data.readUTF();
+            String units = FuzzyRuleBaseDecoder.readString(data);
+            double min = data.readDouble();
+            FuzzyVariable fvar = new FuzzyVariable(name, min, data.readDouble(), units);
+            int numTerms = FuzzyRuleBaseDecoder.readCount(data);
+            for (int t=0; t<numTerms; t++)
+                fvar.addTerm(data.readUTF(), set(FuzzyRuleBaseDecoder.readCount(data)));
+            fvar.setFuzzificationTable(readTable(buffer.getInt(entry + 8)));
+            variables[index] = fvar;
+        }
+        return variables[index];
+    }
+
+    private FuzzyValue value(int index) throws IOException, FuzzyException
+    {
+        if (index < 0 || index >= numValues)
+            throw new StreamCorruptedException("Invalid value index " + index);
+        if (values[index] == null)
+        {   int entry = valueTable + index*VALUE_ENTRY_SIZE;
+            FuzzyVariable fvar = variable(buffer.getInt(entry));
+            int term = buffer.getInt(entry + 4);
+            if (term >= 0)
+            {   String[] termNames = fvar.getTermNames();
+                if (term >= termNames.length)
+                    throw new StreamCorruptedException("Invalid term index " + term);
+                values[index] = fvar.findTerm(termNames[term]);
+            }
+            else
+            {   FuzzyValue fval = new FuzzyValue(fvar, set(buffer.getInt(entry + 8)));
+                int expression = buffer.getInt(entry + 12);
+                fval.setLinguisticExpression((expression < 0) ? null : dataAt(expression).readUTF());
+                values[index] = fval;
+            }
+        }
+        return values[index];
+    }
+
+    /** Write the arrays of a breakpoint table, 8 byte aligned. */
+    private static void writeTable(DataOutputStream data, FuzzificationTable table) throws IOException
+    {
+        data.writeInt(table.numTerms);
+        data.writeInt(table.ruspini ? 1 : 0);
+        data.writeDouble(table.spacing);
+        writeDoubles(data, table.breakpoints);
+        writeInts(data, table.regionStart);
+        writeInts(data, table.regionTerm);
+        writeDoubles(data, table.regionSlope);
+        writeDoubles(data, table.regionIntercept);
+        writeInts(data, table.pointStart);
+        writeInts(data, table.pointTerm);
+        writeDoubles(data, table.pointMembership);
+    }
+
+    private FuzzificationTable readTable(int position) throws IOException
+    {
+        if (position < 0 || position + 16L > buffer.capacity())
+            throw new StreamCorruptedException("Rule base snapshot is truncated");
+        int numTerms = buffer.getInt(position);
+        boolean ruspini = buffer.getInt(position + 4) != 0;
+        double spacing = buffer.getDouble(position + 8);
+        int[] at = {position + 16};
+        double[] breakpoints = readDoubles(at);
+        int[] regionStart = readInts(at);
+        int[] regionTerm = readInts(at);
+        double[] regionSlope = readDoubles(at);
+        double[] regionIntercept = readDoubles(at);
+        int[] pointStart = readInts(at);
+        int[] pointTerm = readInts(at);
+        double[] pointMembership = readDoubles(at);
+        return new FuzzificationTable(numTerms, breakpoints, regionStart, regionTerm, 
+                                      regionSlope, regionIntercept, pointStart, pointTerm, 
+                                      pointMembership, ruspini, spacing);
+    }
+
+    // an array is written as its length (as 8 bytes so the values stay aligned) and 
+    // its values, padded to a multiple of 8 bytes
+
+    private static void writeDoubles(DataOutputStream data, double[] a) throws IOException
+    {
+        data.writeLong(a.length);
+        for (int i=0; i<a.length; i++)
+            data.writeDouble(a[i]);
+    }
+
+    private static void writeInts(DataOutputStream data, int[] a) throws IOException
+    {
+        data.writeLong(a.length);
+        for (int i=0; i<a.length; i++)
+            data.writeInt(a[i]);
+        pad(data);
+    }
+
+    private double[] readDoubles(int[] at) throws IOException
+    {
+        int n = arrayLength(at[0], 8);
+        double[] a = new double[n];
+        doublesAt(at[0] + 8, n).get(a);
+        at[0] += 8 + 8*n;
+        return a;
+    }
+
+    private int[] readInts(int[] at) throws IOException
+    {
+        int n = arrayLength(at[0], 4);
+        int[] a = new int[n];
+        IntBuffer ints = ((ByteBuffer)buffer.duplicate().position(at[0] + 8)).asIntBuffer();
+        ints.get(a);
+        at[0] += align(8 + 4*n);
+        return a;
+    }
+
+    /** 
+     * Read the length of an array written at a position, checking that the values
+     * (of a number of bytes each) are all in the file before the array is allocated.
+     */
+    private int arrayLength(int position, int size) throws IOException
+    {
+        if (position < 0 || position + 8L > buffer.capacity())
+            throw new StreamCorruptedException("Rule base snapshot is truncated");
+        long n = buffer.getLong(position);
+        if (n < 0 || n > (buffer.capacity() - position - 8L)/size)
+            throw new StreamCorruptedException("Rule base snapshot is truncated");
+        return (int)n;
+    }
+
+    /** A view of n doubles of the mapped file. */
+    private DoubleBuffer doublesAt(int position, int n) throws IOException
+    {
+        if (n < 0 || position < 0 || position + 8L*n > buffer.capacity())
+            throw new StreamCorruptedException("Rule base snapshot is truncated");
+        ByteBuffer b = buffer.duplicate();
+        b.position(position);
+        b.limit(position + 8*n);
+        return b.asDoubleBuffer();
+    }
+
+    /** A stream reading the mapped file from a position. */
+    private DataInputStream dataAt(int position) throws IOException
+    {
+        if (position < 0 || position >= buffer.capacity())
+            throw new StreamCorruptedException("Rule base snapshot is truncated");
+        final ByteBuffer b = buffer.duplicate();
+        b.position(position);
+        return new DataInputStream(new InputStream()
+            {   public int read()
+                {   return b.hasRemaining() ? (b.get() & 0xFF) : -1;
+                }
+
+                public int read(byte[] bytes, int off, int len)
+                {   if (len == 0) 
+                        return 0;
+                    if (!b.hasRemaining())
+                        return -1;
+                    len = Math.min(len, b.remaining());
+                    b.get(bytes, off, len);
+                    return len;
+                }
+
+                public int available()
+                {   return b.remaining();
+                }
+            });
+    }
+
+    private static void pad(DataOutputStream data) throws IOException
+    {
+        while ((data.size() & 7) != 0)
+            data.writeByte(0);
+    }
+
+    private static int align(int n)
+    {
+        return (n + 7) & ~7;
+    }
+}
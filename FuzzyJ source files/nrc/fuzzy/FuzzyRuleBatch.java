@@ -0,0 +1,912 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+import java.util.*;
+
+/**
+ * A FuzzyRuleBatch fires a set of FuzzyRules over many records of crisp input values
+ * at once, such as when scoring a large data set offline. The inputs are given as 
+ * columns, one array of double values for each input FuzzyVariable, and the 
+ * defuzzified results are written to output columns, one array for each output 
+ * FuzzyVariable. 
+ * <p>
+ * Firing the rules for a single record in the usual way means creating a FuzzyValue
+ * for each crisp input (for example, 
+ * <code>new FuzzyValue(errorFVar, new TriangleFuzzySet(error, error, error))</code>), 
+ * testing each rule for a match, executing the rules that match, forming the union of 
+ * their outputs and defuzzifying the result. The FuzzyRuleBatch gives the same 
+ * results, but it prepares everything it can when it is constructed and
+ * creates no objects as the records are processed:
+ * <ul>
+ * <li>the antecedent fuzzy sets for each input variable are merged into one
+ *     breakpoint table (as is done by FuzzyVariable.fuzzify) and the membership 
+ *     values of the inputs are found a block of records at a time, column by column;
+ * <li>the degree of fulfillment (DOF) of each rule is then calculated for the whole 
+ *     block in tight loops over the arrays of membership values, and is set to 0.0
+ *     if the rule does not match its inputs (see FuzzyValue.getMatchThreshold);
+ * <li>the x values of the points of the conclusion fuzzy sets of each output variable
+ *     are merged into one table, and the straight line that each conclusion follows 
+ *     between each pair of them is found, so the union of the rule outputs for a 
+ *     record is formed from those lines and defuzzified in reused arrays.
+ * </ul>
+ * The rules must use the MamdaniMinMaxMinRuleExecutor (the conclusions are clipped at the 
+ * DOF) or the LarsenProductMaxMinRuleExecutor (the conclusions are scaled to the DOF), 
+ * and the rule's AntecedentCombineOperator is used to calculate the DOF. 
+ * The outputs are defuzzified with the moment (centre of gravity) or 
+ * center of area method. The union is exact: between two of the x values of the table
+ * each clipped or scaled conclusion is a straight line (with a corner where a line 
+ * reaches the clipping level), so the union is the upper edge of those lines, and its
+ * points, including those where two conclusions cross, are found by solving for the 
+ * crossings. The results are therefore those of the FuzzyValue defuzzify methods, up to 
+ * rounding. If no rule fires for a record (or the union of the outputs has no area) 
+ * the output is Double.NaN.
+ * <p>
+ * The rules for an output variable may instead all use the TsukamotoRuleExecutor. Then
+ * the output is the average of the x values at which the conclusions have the DOFs of 
+ * their rules, weighted by the DOFs (the same result as the weightedAverageDefuzzify
+ * method of the FuzzyValueVector of the rule outputs). The x values of monotonic conclusion sets, such as SFuzzySets and ZFuzzySets,
+ * are found with a table of the inverse of the membership function, built when the 
+ * FuzzyRuleBatch is constructed.
+ * <p>
+ * The rules, their antecedents and conclusions are copied when the FuzzyRuleBatch 
+ * is constructed, so later changes to the rules are not seen. A FuzzyRuleBatch holds the 
+ * arrays it works in and so it must not be used by more than one thread at a time.
+ * <p>
+ * For example,
+ * <pre><code>
+ *    FuzzyRuleBatch batch = new FuzzyRuleBatch(rules, 
+ *                                              new FuzzyVariable[] {errorFVar, omegaFVar},
+ *                                              new FuzzyVariable[] {currentFVar});
+ *    double[][] inputs = {errors, omegas};   // one array per input variable
+ *    double[][] outputs = {new double[errors.length]};
+ *    batch.execute(inputs, outputs);
+ * </code></pre>
+ *
+ * @see FuzzyRule
+ * @see FuzzyVariable#fuzzify(double, double[])
+ * @see MamdaniMinMaxMinRuleExecutor
+ * @see LarsenProductMaxMinRuleExecutor
+ */
+public class FuzzyRuleBatch
+{
+    /** Defuzzify the outputs using the moment (centre of gravity) method */
+    public static final int MOMENT_DEFUZZIFY = 0;
+    /** Defuzzify the outputs using the center of area method */
+    public static final int CENTER_OF_AREA_DEFUZZIFY = 1;
+    
+    /** The number of records whose memberships and DOFs are calculated together */
+    static final int BLOCK_SIZE = 256;
+
+    /** how the conclusions of a rule are limited by its DOF */
+    static final int CLIP = 0;  // Mamdani
+    static final int SCALE = 1; // Larsen
+    static final int INVERT = 2; // Tsukamoto
+    /** how the DOF of a rule is calculated */
+    static final int MINIMUM = 0;
+    static final int PRODUCT = 1;
+    static final int OTHER = 2;
+
+    // The rules as prepared by the constructor; these are never changed after that,
+    // so they are shared by the copies made with FuzzyRuleBatch(FuzzyRuleBatch)
+    FuzzyVariable[] inputVariables;
+    FuzzyVariable[] outputVariables;
+    int defuzzifyMethod;
+
+    /** the distinct antecedent sets of each input variable: [input][set] */
+    FuzzySet[][] inputSets;
+    /** the antecedent sets of each input variable, merged */
+    FuzzificationTable[] inputTables;
+
+    int numRules;
+    /** the input and set (in the inputSets) of each antecedent: [rule][antecedent] */
+    int[][] antecedentInput;
+    int[][] antecedentSet;
+    int[] ruleCombine;
+    AntecedentCombineOperator[] ruleCombineOperator;
+    int[] ruleExecution;
+
+    /** the x values of the points of the conclusions of each output, and the ends
+     *  of its universe of discourse: [output][x]. Interval j is from x j to x j+1. */
+    private double[][] unionX;
+    /** the conclusions of the rules for each output: [output][conclusion] */
+    int[][] conclusionRule;
+    /** the line each conclusion follows in each interval: [output][conclusion][interval] */
+    private double[][][] conclusionSlope;
+    private double[][][] conclusionIntercept;
+    /** the first and last intervals in which each conclusion is not zero */
+    private int[][] conclusionFirst;
+    private int[][] conclusionLast;
+    private double[][] conclusionMaxY;
+    /** the most conclusions of any output */
+    private int maxConclusions;
+    /** the outputs whose rules use the TsukamotoRuleExecutor, and for each of their 
+     *  conclusions a frozen copy of the set and the inverse of its membership function */
+    boolean[] weightedAverageOutput;
+    private FuzzySet[][] conclusionSet;
+    private MembershipInverse[][] conclusionInverse;
+
+    // The arrays that the records are processed in
+    /** the membership values for a block: [input][antecedent set][record] */
+    private double[][][] memberships;
+    /** where each membership column was last found in its table: [input][record] */
+    private int[][] locations;
+    /** the values passed to an OTHER AntecedentCombineOperator: [rule][antecedent] */
+    private double[][] matchValues;
+    /** the DOF of each rule for a block: [rule][record] */
+    private double[][] dof;
+    /** the union of the rule outputs for a record */
+    private Union union;
+
+    /**
+     * Create a FuzzyRuleBatch for a set of rules using the moment defuzzification method.
+     *
+     * @param rules the rules to fire
+     * @param inputVariables the FuzzyVariables of the input columns; every
+     *        antecedent of the rules must be a FuzzyValue of one of these variables
+     * @param outputVariables the FuzzyVariables of the output columns; every
+     *        conclusion of the rules must be a FuzzyValue of one of these variables
+     * @exception FuzzyRuleException if a rule has an antecedent or a conclusion for a
+     *        variable that is not an input or output, or if it does not use the Mamdani,
+     *        Larsen or Tsukamoto rule executor
+     */
+    public FuzzyRuleBatch(FuzzyRule[] rules, FuzzyVariable[] inputVariables, 
+                          FuzzyVariable[] outputVariables)
+        throws FuzzyRuleException
+    {
+        this(rules, inputVariables, outputVariables, MOMENT_DEFUZZIFY);
+    }
+
+    /**
+     * Create a FuzzyRuleBatch for a set of rules.
+     *
+     * @param rules the rules to fire
+     * @param inputVariables the FuzzyVariables of the input columns; every
+     *        antecedent of the rules must be a FuzzyValue of one of these variables
+     * @param outputVariables the FuzzyVariables of the output columns; every
+     *        conclusion of the rules must be a FuzzyValue of one of these variables
+     * @param defuzzifyMethod MOMENT_DEFUZZIFY or CENTER_OF_AREA_DEFUZZIFY
+     * @exception FuzzyRuleException if a rule has an antecedent or a conclusion for a
+     *        variable that is not an input or output, or if it does not use the Mamdani,
+     *        Larsen or Tsukamoto rule executor, or if an output has conclusions of both
+     *        Tsukamoto and other rules, or if the defuzzifyMethod is not valid
+     */
+    public FuzzyRuleBatch(FuzzyRule[] rules, FuzzyVariable[] inputVariables, 
+                          FuzzyVariable[] outputVariables, int defuzzifyMethod)
+        throws FuzzyRuleException
+    {
+        if (defuzzifyMethod != MOMENT_DEFUZZIFY && defuzzifyMethod != CENTER_OF_AREA_DEFUZZIFY)
+           throw new FuzzyRuleException("FuzzyRuleBatch defuzzify method must be MOMENT_DEFUZZIFY or CENTER_OF_AREA_DEFUZZIFY");
+
+        this.inputVariables = inputVariables.clone();
+        this.outputVariables = outputVariables.clone();
+        this.defuzzifyMethod = defuzzifyMethod;
+        numRules = rules.length;
+        
+        // the distinct antecedent sets of each input variable
+        Vector[] inputSets = new Vector[inputVariables.length];
+        for (int v=0; v<inputVariables.length; v++)
+            inputSets[v] = new Vector();
+        antecedentInput = new int[numRules][];
+        antecedentSet = new int[numRules][];
+        ruleCombine = new int[numRules];
+        ruleCombineOperator = new AntecedentCombineOperator[numRules];
+        ruleExecution = new int[numRules];
+        
+        for (int r=0; r<numRules; r++)
+        {   FuzzyRule rule = rules[r];
+            FuzzyRuleExecutor executor = rule.getRuleExecutor();
+            if (executor instanceof MamdaniMinMaxMinRuleExecutor)
+                ruleExecution[r] = CLIP;
+            else if (executor instanceof LarsenProductMaxMinRuleExecutor)
+                ruleExecution[r] = SCALE;
+            else if (executor instanceof TsukamotoRuleExecutor)
+                ruleExecution[r] = INVERT;
+            else
+                throw new FuzzyRuleException("FuzzyRuleBatch requires rules that use the MamdaniMinMaxMinRuleExecutor, LarsenProductMaxMinRuleExecutor or TsukamotoRuleExecutor");
+                
+            ruleCombineOperator[r] = rule.getAntecedentCombineOperator();
+            ruleCombine[r] = combineCode(ruleCombineOperator[r]);
+
+            int numAntecedents = rule.antecedentsSize();
+            antecedentInput[r] = new int[numAntecedents];
+            antecedentSet[r] = new int[numAntecedents];
+            for (int a=0; a<numAntecedents; a++)
+            {   FuzzyValue antecedent = rule.antecedentAt(a);
+                int v = indexOf(inputVariables, antecedent.getFuzzyVariable());
+                if (v < 0)
+                   throw new FuzzyRuleException("FuzzyRuleBatch rule antecedent variable " + 
+                                                antecedent.getFuzzyVariable().getName() + " is not an input variable");
+                antecedentInput[r][a] = v;
+                antecedentSet[r][a] = setIndex(inputSets[v], antecedent.getFuzzySet());
+            }
+        }
+
+        this.inputSets = new FuzzySet[inputVariables.length][];
+        inputTables = new FuzzificationTable[inputVariables.length];
+        for (int v=0; v<inputVariables.length; v++)
+        {   FuzzySet[] sets = new FuzzySet[inputSets[v].size()];
+            inputSets[v].copyInto(sets);
+            this.inputSets[v] = sets;
+            inputTables[v] = new FuzzificationTable(sets);
+        }
+
+        // the lines of the conclusions of the rules for each output
+        unionX = new double[outputVariables.length][];
+        conclusionRule = new int[outputVariables.length][];
+        conclusionSlope = new double[outputVariables.length][][];
+        conclusionIntercept = new double[outputVariables.length][][];
+        conclusionFirst = new int[outputVariables.length][];
+        conclusionLast = new int[outputVariables.length][];
+        conclusionMaxY = new double[outputVariables.length][];
+        Vector[] outputConclusions = new Vector[outputVariables.length];
+        for (int o=0; o<outputVariables.length; o++)
+            outputConclusions[o] = new Vector();
+        for (int r=0; r<numRules; r++)
+            for (int c=0; c<rules[r].conclusionsSize(); c++)
+            {   FuzzyValue conclusion = rules[r].conclusionAt(c);
+                int o = indexOf(outputVariables, conclusion.getFuzzyVariable());
+                if (o < 0)
+                   throw new FuzzyRuleException("FuzzyRuleBatch rule conclusion variable " + 
+                                                conclusion.getFuzzyVariable().getName() + " is not an output variable");
+                outputConclusions[o].addElement(new int[] {r, c});
+            }
+        weightedAverageOutput = new boolean[outputVariables.length];
+        conclusionSet = new FuzzySet[outputVariables.length][];
+        conclusionInverse = new MembershipInverse[outputVariables.length][];
+        for (int o=0; o<outputVariables.length; o++)
+        {   int n = outputConclusions[o].size();
+            int numInverted = 0;
+            for (int k=0; k<n; k++)
+                if (ruleExecution[((int[])outputConclusions[o].elementAt(k))[0]] == INVERT)
+                    numInverted++;
+            if (numInverted > 0 && numInverted < n)
+               throw new FuzzyRuleException("FuzzyRuleBatch output variable " + outputVariables[o].getName() + 
+                                            " has conclusions of both Tsukamoto and other rules");
+            weightedAverageOutput[o] = (numInverted > 0);
+            conclusionSet[o] = new FuzzySet[n];
+            conclusionInverse[o] = new MembershipInverse[n];
+            conclusionRule[o] = new int[n];
+            conclusionFirst[o] = new int[n];
+            conclusionLast[o] = new int[n];
+            conclusionMaxY[o] = new double[n];
+            FuzzySet[] sets = new FuzzySet[n];
+            for (int k=0; k<n; k++)
+            {   int[] rc = (int[])outputConclusions[o].elementAt(k);
+                sets[k] = rules[rc[0]].conclusionAt(rc[1]).getFuzzySet();
+            }
+            unionX[o] = unionX(sets, outputVariables[o].getMinUOD(), outputVariables[o].getMaxUOD());
+            int numIntervals = unionX[o].length - 1;
+            conclusionSlope[o] = new double[n][numIntervals];
+            conclusionIntercept[o] = new double[n][numIntervals];
+            if (n > maxConclusions) maxConclusions = n;
+            for (int k=0; k<n; k++)
+            {   int[] rc = (int[])outputConclusions[o].elementAt(k);
+                FuzzySet fs = sets[k];
+                int first = numIntervals, last = -1;
+                for (int j=0; j<numIntervals; j++)
+                {   // the set is a straight line between the x values; find it away from 
+                    // the ends since the set may have a vertical edge at either
+                    double width = unionX[o][j+1] - unionX[o][j];
+                    double xa = unionX[o][j] + 0.25*width, xb = unionX[o][j] + 0.75*width;
+                    double ya = Math.max(0.0, fs.getMembership(xa));
+                    double yb = Math.max(0.0, fs.getMembership(xb));
+                    if (ya > 0.0 || yb > 0.0)
+                    {   double slope = (yb - ya)/(xb - xa);
+                        conclusionSlope[o][k][j] = slope;
+                        conclusionIntercept[o][k][j] = ya - slope*xa;
+                        if (first == numIntervals) first = j;
+                        last = j;
+                    }
+                }
+                conclusionRule[o][k] = rc[0];
+                conclusionFirst[o][k] = first;
+                conclusionLast[o][k] = last;
+                conclusionMaxY[o][k] = fs.getMaxY();
+                if (weightedAverageOutput[o])
+                {   conclusionSet[o][k] = new FuzzySet(fs).freeze();
+                    conclusionInverse[o][k] = MembershipInverse.create(conclusionSet[o][k]);
+                }
+            }
+        }
+        allocateWorkArrays();
+    }
+
+    /**
+     * Create a FuzzyRuleBatch for the same rules as another one. The two share the
+     * prepared rules but each has its own arrays to work in.
+     */
+    FuzzyRuleBatch(FuzzyRuleBatch batch)
+    {
+        inputVariables = batch.inputVariables;
+        outputVariables = batch.outputVariables;
+        defuzzifyMethod = batch.defuzzifyMethod;
+        inputSets = batch.inputSets;
+        inputTables = batch.inputTables;
+        numRules = batch.numRules;
+        antecedentInput = batch.antecedentInput;
+        antecedentSet = batch.antecedentSet;
+        ruleCombine = batch.ruleCombine;
+        ruleCombineOperator = batch.ruleCombineOperator;
+        ruleExecution = batch.ruleExecution;
+        unionX = batch.unionX;
+        conclusionRule = batch.conclusionRule;
+        conclusionSlope = batch.conclusionSlope;
+        conclusionIntercept = batch.conclusionIntercept;
+        conclusionFirst = batch.conclusionFirst;
+        conclusionLast = batch.conclusionLast;
+        conclusionMaxY = batch.conclusionMaxY;
+        maxConclusions = batch.maxConclusions;
+        weightedAverageOutput = batch.weightedAverageOutput;
+        conclusionSet = batch.conclusionSet;
+        conclusionInverse = batch.conclusionInverse;
+        allocateWorkArrays();
+    }
+
+    private void allocateWorkArrays()
+    {
+        memberships = new double[inputVariables.length][][];
+        locations = new int[inputVariables.length][BLOCK_SIZE];
+        for (int v=0; v<inputVariables.length; v++)
+        {   memberships[v] = new double[inputSets[v].length][BLOCK_SIZE];
+            Arrays.fill(locations[v], FuzzificationTable.UNKNOWN_LOCATION);
+        }
+        matchValues = new double[numRules][];
+        for (int r=0; r<numRules; r++)
+            matchValues[r] = new double[antecedentInput[r].length];
+        dof = new double[numRules][BLOCK_SIZE];
+        union = new Union();
+    }
+
+    /**
+     * The sorted, distinct x values of the points of the sets that are inside the
+     * universe of discourse, and the ends of the universe of discourse.
+     */
+    private static double[] unionX(FuzzySet[] sets, double min, double max)
+    {
+        int total = 2;
+        for (int k=0; k<sets.length; k++)
+            total += sets[k].size();
+        double[] all = new double[total];
+        total = 0;
+        all[total++] = min;
+        all[total++] = max;
+        for (int k=0; k<sets.length; k++)
+            for (int i=0; i<sets[k].size(); i++)
+            {   double x = sets[k].getX(i);
+                if (x > min && x < max)
+                    all[total++] = x;
+            }
+        Arrays.sort(all, 0, total);
+        int n = 0;
+        for (int i=0; i<total; i++)
+            if (n == 0 || all[i] != all[n-1])
+                all[n++] = all[i];
+        double[] x = new double[n];
+        System.arraycopy(all, 0, x, 0, n);
+        return x;
+    }
+
+    // The preparation of the antecedents and the calculation of the DOFs are also
+    // used by the other classes that fire the rules from the tables of a FuzzyRuleBatch
+
+    /** The index of a FuzzyVariable in an array of them; -1 if it is not there */
+    static int indexOf(FuzzyVariable[] variables, FuzzyVariable fvar)
+    {
+        for (int i=0; i<variables.length; i++)
+            if (variables[i] == fvar) return i;
+        return -1;
+    }
+
+    /** MINIMUM, PRODUCT or OTHER for an AntecedentCombineOperator */
+    static int combineCode(AntecedentCombineOperator op)
+    {
+        if (op instanceof MinimumAntecedentCombineOperator)
+            return MINIMUM;
+        else if (op instanceof ProductAntecedentCombineOperator)
+            return PRODUCT;
+        else
+            return OTHER;
+    }
+
+    /** 
+     * The index of an antecedent set in the distinct sets of its input variable, 
+     * adding it to them if it is not there.
+     */
+    static int setIndex(Vector sets, FuzzySet fs)
+    {
+        int s = sets.indexOf(fs);
+        if (s < 0)
+        {   s = sets.size();
+            sets.addElement(fs);
+        }
+        return s;
+    }
+
+    /**
+     * Calculate the DOF of a rule for a block of records from the membership values 
+     * of its antecedents; 0.0 if an antecedent does not match its input at the 
+     * threshold level.
+     *
+     * @param d the array to hold the DOFs
+     * @param n the number of records in the block
+     * @param memberships the membership values: [input][set][record]
+     * @param input the input of each antecedent of the rule
+     * @param set the set (of its input) of each antecedent of the rule
+     * @param combine MINIMUM, PRODUCT or OTHER
+     * @param op the AntecedentCombineOperator of the rule, used if combine is OTHER
+     * @param values an array, one per antecedent, to pass the values to op in
+     * @param threshold the match threshold (FuzzyValue.getMatchThreshold())
+     */
+    static void calculateDOFs(double[] d, int n, double[][][] memberships, int[] input, int[] set,
+                              int combine, AntecedentCombineOperator op, double[] values,
+                              double threshold)
+    {
+        int numAntecedents = input.length;
+        if (numAntecedents == 0)
+        {   for (int i=0; i<n; i++) d[i] = 1.0;
+            return;
+        }
+
+        System.arraycopy(memberships[input[0]][set[0]], 0, d, 0, n);
+        if (numAntecedents > 1)
+           switch (combine)
+           {   case MINIMUM:
+                  for (int a=1; a<numAntecedents; a++)
+                  {   double[] m = memberships[input[a]][set[a]];
+                      for (int i=0; i<n; i++)
+                          if (m[i] < d[i]) d[i] = m[i];
+                  }
+                  break;
+               case PRODUCT:
+                  for (int a=1; a<numAntecedents; a++)
+                  {   double[] m = memberships[input[a]][set[a]];
+                      for (int i=0; i<n; i++)
+                          d[i] *= m[i];
+                  }
+                  break;
+               default:
+                  for (int i=0; i<n; i++)
+                  {   for (int a=0; a<numAntecedents; a++)
+                          values[a] = memberships[input[a]][set[a]][i];
+                      d[i] = op.execute(values);
+                  }
+           }
+
+        // the rule only fires if every antecedent matches its input (see FuzzyRule.testRuleMatching)
+        for (int a=0; a<numAntecedents; a++)
+        {   double[] m = memberships[input[a]][set[a]];
+            if (threshold == 0.0)
+            {   for (int i=0; i<n; i++)
+                    if (m[i] <= 0.0) d[i] = 0.0;
+            }
+            else
+            {   for (int i=0; i<n; i++)
+                    if (m[i] < threshold) d[i] = 0.0;
+            }
+        }
+    }
+
+    /**
+     * Returns the FuzzyVariables of the input columns, in order.
+     *
+     * @return an array with the input FuzzyVariables
+     */
+    public FuzzyVariable[] getInputVariables()
+    {
+        return inputVariables.clone();
+    }
+
+    /**
+     * Returns the FuzzyVariables of the output columns, in order.
+     *
+     * @return an array with the output FuzzyVariables
+     */
+    public FuzzyVariable[] getOutputVariables()
+    {
+        return outputVariables.clone();
+    }
+
+    /**
+     * Fire the rules for every record in the input columns.
+     *
+     * @param inputs one column of crisp values for each input variable (all of the 
+     *        same length)
+     * @param outputs one column for each output variable, at least as long as the input 
+     *        columns, to hold the defuzzified results
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     */
+    public void execute(double[][] inputs, double[][] outputs)
+        throws XValueOutsideUODException
+    {
+        execute(inputs, outputs, 0, (inputs.length == 0) ? 0 : inputs[0].length);
+    }
+
+    /**
+     * Fire the rules for the records from <code>from</code> to <code>from+count-1</code>
+     * of the input columns, writing the results to the same records of the output columns.
+     *
+     * @param inputs one column of crisp values for each input variable
+     * @param outputs one column for each output variable to hold the defuzzified results
+     * @param from the first record to process
+     * @param count the number of records to process
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     */
+    public void execute(double[][] inputs, double[][] outputs, int from, int count)
+        throws XValueOutsideUODException
+    {
+        FuzzyFlightRecorderEvents.InferenceCycle event = new FuzzyFlightRecorderEvents.InferenceCycle();
+        event.begin();
+        double threshold = FuzzyValue.getMatchThreshold();
+        
+        for (int start=from; start<from+count; start+=BLOCK_SIZE)
+        {   int n = Math.min(BLOCK_SIZE, from + count - start);
+            calculateMemberships(inputs, start, n);
+            calculateDOFs(n, threshold);
+            for (int i=0; i<n; i++)
+                for (int o=0; o<outputVariables.length; o++)
+                    outputs[o][start+i] = unionAndDefuzzify(o, i);
+        }
+        event.end();
+        if (event.shouldCommit())
+        {   event.engine = "FuzzyRuleBatch";
+            event.rules = numRules;
+            event.records = count;
+            event.commit();
+        }
+    }
+
+    /**
+     * Find the membership values of the inputs of a block of records in each of 
+     * the antecedent sets, one column at a time.
+     */
+    private void calculateMemberships(double[][] inputs, int start, int n)
+        throws XValueOutsideUODException
+    {
+        for (int v=0; v<inputVariables.length; v++)
+        {   double[] column = inputs[v];
+            double min = inputVariables[v].getMinUOD();
+            double max = inputVariables[v].getMaxUOD();
+            FuzzificationTable table = inputTables[v];
+            double[][] m = memberships[v];
+            int[] location = locations[v];
+            for (int i=0; i<n; i++)
+            {   double x = column[start+i];
+                if (!(x >= min && x <= max))
+                   throw new XValueOutsideUODException("Input value " + x + " of record " + (start+i) + 
+                                                       " is outside the Universe of Discourse of " + 
+                                                       inputVariables[v].getName());
+                location[i] = table.fuzzify(x, m, i, location[i]);
+            }
+        }
+    }
+
+    /**
+     * Calculate the DOF of each rule for a block of records; 0.0 if 
+     * an antecedent does not match its input at the threshold level.
+     */
+    private void calculateDOFs(int n, double threshold)
+    {
+        for (int r=0; r<numRules; r++)
+            calculateDOFs(dof[r], n, memberships, antecedentInput[r], antecedentSet[r], 
+                          ruleCombine[r], ruleCombineOperator[r], matchValues[r], threshold);
+    }
+
+    /**
+     * Form the union of the outputs of the rules for one output variable and one record 
+     * of the block and defuzzify it.
+     */
+    private double unionAndDefuzzify(int o, int i)
+    {
+        int[] rule = conclusionRule[o];
+        for (int k=0; k<rule.length; k++)
+        {   double h = dof[rule[k]][i];
+            if (h > 0.0) 
+                addToUnion(o, k, h);
+        }
+        return defuzzifyUnion(o);
+    }
+
+    /**
+     * Add the k'th conclusion for output o, limited by the DOF h of its rule, to the union 
+     * of the rule outputs.
+     */
+    void addToUnion(int o, int k, double h)
+    {
+        union.add(o, k, h);
+    }
+
+    /**
+     * Defuzzify the union of the rule outputs for output o and empty it 
+     * for the next record.
+     */
+    double defuzzifyUnion(int o)
+    {
+        double result = union.defuzzify(o);
+        union.clear();
+        return result;
+    }
+
+    /**
+     * The x value at which the k'th conclusion for output o (of a Tsukamoto rule) has 
+     * the membership h; NaN if there is none.
+     */
+    double conclusionX(int o, int k, double h)
+    {
+        MembershipInverse inverse = conclusionInverse[o][k];
+        if (inverse != null)
+            return inverse.getX(h);
+        try
+        {   return conclusionSet[o][k].getXforMembership(h);
+        }
+        catch (NoXValueForMembershipException e)
+        {   return Double.NaN;
+        }
+    }
+
+    /**
+     * The union of the outputs of the rules for one output variable and one record. It 
+     * holds the DOF with which each conclusion was added (the largest, if one is added 
+     * more than once) and the points of the union are found from the lines of the 
+     * conclusions when it is defuzzified. For the outputs of Tsukamoto rules it holds 
+     * the sums for the weighted average instead: the DOFs and the DOFs times the x values.
+     */
+    final class Union
+    {
+        /** the DOF of each conclusion and the conclusions that have been added */
+        double[] level = new double[maxConclusions];
+        int[] added = new int[maxConclusions];
+        int numAdded;
+        double weightSum, weightedXSum;
+        /** the points of the union, found by defuzzify */
+        double[] x = new double[16];
+        double[] y = new double[16];
+        int numPoints;
+        /** the x values at which a clipped conclusion has a corner, in one interval */
+        double[] corners = new double[maxConclusions+2];
+        /** the lines of the conclusions between two corners */
+        double[] lineSlope = new double[maxConclusions];
+        double[] lineIntercept = new double[maxConclusions];
+
+        /**
+         * Add the k'th conclusion for output o, limited by the DOF h of its rule.
+         * As with the TsukamotoRuleExecutor a Tsukamoto conclusion with no x value 
+         * at that membership adds nothing.
+         */
+        void add(int o, int k, double h)
+        {
+            if (weightedAverageOutput[o])
+            {   double x = conclusionX(o, k, h);
+                if (x == x) // not NaN
+                {   weightSum += h;
+                    weightedXSum += h*x;
+                }
+                return;
+            }
+        
+            if (h <= 0.0)
+                return;
+            if (level[k] == 0.0)
+                added[numAdded++] = k;
+            if (h > level[k])
+                level[k] = h;
+        }
+
+        /**
+         * Defuzzify the union for output o; NaN if no rule fired. The union is not changed,
+         * so more conclusions may still be added to it.
+         */
+        double defuzzify(int o)
+        {
+            if (weightedAverageOutput[o])
+                return (weightSum > 0.0) ? weightedXSum/weightSum : Double.NaN;
+
+            double[] bx = unionX[o];
+            int first = bx.length, last = -1;
+            for (int i=0; i<numAdded; i++)
+            {   int k = added[i];
+                if (conclusionFirst[o][k] < first) first = conclusionFirst[o][k];
+                if (conclusionLast[o][k] > last) last = conclusionLast[o][k];
+            }
+            if (last < 0) 
+                return Double.NaN; // no rule fired
+        
+            numPoints = 0;
+            for (int j=first; j<=last; j++)
+            {   // the corners of the clipped conclusions split the interval into parts in 
+                // which every conclusion is a straight line
+                int numCorners = 0;
+                corners[numCorners++] = bx[j];
+                for (int i=0; i<numAdded; i++)
+                {   int k = added[i];
+                    double slope = conclusionSlope[o][k][j];
+                    if (ruleExecution[conclusionRule[o][k]] == CLIP && slope != 0.0 &&
+                        j >= conclusionFirst[o][k] && j <= conclusionLast[o][k])
+                    {   double corner = (level[k] - conclusionIntercept[o][k][j])/slope;
+                        if (corner > bx[j] && corner < bx[j+1])
+                        {   int c = numCorners++;
+                            while (corners[c-1] > corner)
+                            {   corners[c] = corners[c-1];
+                                c--;
+                            }
+                            corners[c] = corner;
+                        }
+                    }
+                }
+                corners[numCorners++] = bx[j+1];
+                
+                for (int c=0; c<numCorners-1; c++)
+                    if (corners[c+1] > corners[c])
+                        addUpperEdge(o, j, corners[c], corners[c+1]);
+            }
+        
+            if (defuzzifyMethod == MOMENT_DEFUZZIFY)
+                return momentDefuzzify(x, y, 0, numPoints-1);
+            else
+                return centerOfAreaDefuzzify(x, y, 0, numPoints-1);
+        }
+
+        /**
+         * Add the points of the upper edge of the lines of the conclusions from x value 
+         * a to b, a part of interval j in which each of them is a straight line. The 
+         * edge starts on the line that is highest at a (the steepest, if more than 
+         * one are) and moves to the next line that crosses it from below until none do.
+         */
+        private void addUpperEdge(int o, int j, double a, double b)
+        {
+            double middle = (a + b)/2.0;
+            int numLines = 0;
+            for (int i=0; i<numAdded; i++)
+            {   int k = added[i];
+                if (j < conclusionFirst[o][k] || j > conclusionLast[o][k])
+                    continue;
+                double slope = conclusionSlope[o][k][j];
+                double intercept = conclusionIntercept[o][k][j];
+                double h = level[k];
+                if (ruleExecution[conclusionRule[o][k]] == CLIP)
+                {   if (slope*middle + intercept >= h)
+                    {   slope = 0.0;
+                        intercept = h;
+                    }
+                }
+                else
+                {   double maxY = conclusionMaxY[o][k];
+                    double scale = (maxY > h) ? h/maxY : 1.0;
+                    slope *= scale;
+                    intercept *= scale;
+                }
+                lineSlope[numLines] = slope;
+                lineIntercept[numLines] = intercept;
+                numLines++;
+            }
+            if (numLines == 0)
+            {   addPoint(a, 0.0);
+                addPoint(b, 0.0);
+                return;
+            }
+
+            int line = 0;
+            for (int i=1; i<numLines; i++)
+            {   double d = (lineSlope[i]*a + lineIntercept[i]) - (lineSlope[line]*a + lineIntercept[line]);
+                if (d > 0.0 || (d == 0.0 && lineSlope[i] > lineSlope[line]))
+                    line = i;
+            }
+            double at = a;
+            addPoint(a, lineSlope[line]*a + lineIntercept[line]);
+            while (true)
+            {   // the line that crosses the current one first, from below
+                int next = -1;
+                double nextAt = b;
+                for (int i=0; i<numLines; i++)
+                    if (lineSlope[i] > lineSlope[line])
+                    {   double cross = (lineIntercept[line] - lineIntercept[i])/(lineSlope[i] - lineSlope[line]);
+                        if (cross < at) cross = at;
+                        if (cross < nextAt || (cross == nextAt && next >= 0 && lineSlope[i] > lineSlope[next]))
+                        {   next = i;
+                            nextAt = cross;
+                        }
+                    }
+                if (next < 0 || nextAt >= b)
+                    break;
+                addPoint(nextAt, lineSlope[line]*nextAt + lineIntercept[line]);
+                line = next;
+                at = nextAt;
+            }
+            addPoint(b, lineSlope[line]*b + lineIntercept[line]);
+        }
+
+        /**
+         * Add a point to the union, unless it is the same as the last one.
+         */
+        private void addPoint(double px, double py)
+        {
+            if (numPoints > 0 && x[numPoints-1] == px && y[numPoints-1] == py)
+                return;
+            if (numPoints == x.length)
+            {   double[] newX = new double[2*numPoints];
+                double[] newY = new double[2*numPoints];
+                System.arraycopy(x, 0, newX, 0, numPoints);
+                System.arraycopy(y, 0, newY, 0, numPoints);
+                x = newX;
+                y = newY;
+            }
+            x[numPoints] = px;
+            y[numPoints] = py;
+            numPoints++;
+        }
+
+        /**
+         * Empty the union.
+         */
+        void clear()
+        {
+            for (int i=0; i<numAdded; i++)
+                level[added[i]] = 0.0;
+            numAdded = 0;
+            weightSum = 0.0;
+            weightedXSum = 0.0;
+        }
+    }
+
+    /**
+     * The centre of gravity of the union, which is straight lines between its points.
+     */
+    private static double momentDefuzzify(double[] x, double[] union, int low, int high)
+    {
+        double area = 0.0, moment = 0.0;
+        for (int j=low; j<high; j++)
+        {   double x0 = x[j], x1 = x[j+1];
+            double y0 = union[j], y1 = union[j+1];
+            double w = x1 - x0;
+            area += w*(y0 + y1)/2.0;
+            moment += w*(y0*(2.0*x0 + x1) + y1*(x0 + 2.0*x1))/6.0;
+        }
+        return (area > 0.0) ? moment/area : Double.NaN;
+    }
+
+    /**
+     * The x value that splits the area of the union in half; the union is straight 
+     * lines between its points. If the halves are separated by a span with no area the
+     * middle of that span is used (as FuzzySet.centerOfAreaDefuzzify does).
+     */
+    private static double centerOfAreaDefuzzify(double[] x, double[] union, int low, int high)
+    {
+        double total = 0.0;
+        for (int j=low; j<high; j++)
+            total += (x[j+1] - x[j])*(union[j] + union[j+1])/2.0;
+        if (total <= 0.0) return Double.NaN;
+
+        double half = total/2.0;
+        double area = 0.0;
+        for (int j=low; j<high; j++)
+        {   double x0 = x[j], x1 = x[j+1];
+            double y0 = union[j], y1 = union[j+1];
+            double w = x1 - x0;
+            double a = w*(y0 + y1)/2.0;
+            if (area + a < half) 
+            {   area += a;
+                continue;
+            }
+            if (Math.abs(area + a - half) <= Parameters.FUZZY_TOLERANCE*total)
+            {   // the left half ends here; if there is a span with no area after it
+                // use the middle of that span
+                int k = j+1;
+                while (k < high && union[k] == 0.0 && union[k+1] == 0.0)
+                    k++;
+                return (x1 + x[k])/2.0;
+            }
+            // area from x0 to x0+t is y0*t + (y1-y0)*t*t/(2w); solve for the rest of the half
+            double target = half - area;
+            double t = 2.0*target/(y0 + Math.sqrt(y0*y0 + 2.0*(y1 - y0)*target/w));
+            return x0 + t;
+        }
+        return x[high];
+    }
+}
@@ -0,0 +1,560 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.net.URI;
+import java.util.*;
+import javax.tools.*;
+
+/**
+ * The FuzzyRuleCompiler turns a set of FuzzyRules into a class generated for those 
+ * rules, a CompiledFuzzyRules. Java source is written with straight-line code for the
+ * rules (the membership function of each antecedent fuzzy set becomes a chain of 
+ * comparisons against its x values, the DOF of a rule is a few comparisons or 
+ * multiplications, and there is one test per conclusion to see if its rule fired), 
+ * compiled in memory with the system Java compiler (javax.tools) and loaded as a 
+ * hidden class that the garbage collector can unload once it is no longer used. 
+ * This lets the JIT compiler treat the rules as ordinary code rather than as data 
+ * to be interpreted.
+ * <p>
+ * The rules must meet the same conditions as those of a FuzzyRuleBatch (the Mamdani, 
+ * Larsen or Tsukamoto rule executor, antecedents on the input variables and conclusions on the 
+ * output variables) and the compiled rules give the same results as the FuzzyRuleBatch.
+ * The verify method fires the compiled rules and the FuzzyRules themselves (with 
+ * FuzzyValues) on random inputs and reports how far apart the results are.
+ * <p>
+ * Compiling needs the Java compiler, which is in the JDK but not in every Java runtime,
+ * and the nrc.fuzzy classes must be on the class path or in a directory or jar 
+ * file that can be found from the location of this class.
+ * <p>
+ * For example,
+ * <pre><code>
+ *    CompiledFuzzyRules compiled = 
+ *        FuzzyRuleCompiler.compile(rules, new FuzzyVariable[] {errorFVar, omegaFVar},
+ *                                  new FuzzyVariable[] {currentFVar});
+ *    double[] out = new double[1];
+ *    compiled.execute(new double[] {error, omega}, out);
+ * </code></pre>
+ *
+ * @see CompiledFuzzyRules
+ * @see FuzzyRuleBatch
+ */
+public class FuzzyRuleCompiler
+{
+    /** The name of the generated class (it is a hidden class so the name need not be unique) */
+    static final String CLASS_NAME = "GeneratedFuzzyRules";
+    
+    // The generated methods are kept small enough to be compiled by the JIT 
+    // (HotSpot will not compile a method of more than 8000 bytes of bytecode)
+    /** the number of rules whose DOFs are calculated in one generated method */
+    private static final int RULES_PER_METHOD = 64;
+    /** the number of conclusions that are tested in one generated method */
+    private static final int CONCLUSIONS_PER_METHOD = 128;
+
+    /**
+     * Compile a set of rules using the moment defuzzification method of the 
+     * FuzzyRuleBatch.
+     *
+     * @param rules the rules to compile
+     * @param inputVariables the FuzzyVariables of the inputs; every antecedent of the 
+     *        rules must be a FuzzyValue of one of these variables
+     * @param outputVariables the FuzzyVariables of the outputs; every conclusion of the 
+     *        rules must be a FuzzyValue of one of these variables
+     * @return the compiled rules
+     * @exception FuzzyRuleException if the rules cannot be used by a FuzzyRuleBatch, or 
+     *        if there is no Java compiler or the generated class cannot be compiled or loaded
+     */
+    public static CompiledFuzzyRules compile(FuzzyRule[] rules, FuzzyVariable[] inputVariables,
+                                             FuzzyVariable[] outputVariables)
+        throws FuzzyRuleException
+    {
+        return compile(rules, inputVariables, outputVariables, FuzzyRuleBatch.MOMENT_DEFUZZIFY);
+    }
+
+    /**
+     * Compile a set of rules.
+     *
+     * @param rules the rules to compile
+     * @param inputVariables the FuzzyVariables of the inputs; every antecedent of the 
+     *        rules must be a FuzzyValue of one of these variables
+     * @param outputVariables the FuzzyVariables of the outputs; every conclusion of the 
+     *        rules must be a FuzzyValue of one of these variables
+     * @param defuzzifyMethod FuzzyRuleBatch.MOMENT_DEFUZZIFY or 
+     *        FuzzyRuleBatch.CENTER_OF_AREA_DEFUZZIFY
+     * @return the compiled rules
+     * @exception FuzzyRuleException if the rules cannot be used by a FuzzyRuleBatch, or 
+     *        if there is no Java compiler or the generated class cannot be compiled or loaded
+     */
+    public static CompiledFuzzyRules compile(FuzzyRule[] rules, FuzzyVariable[] inputVariables,
+                                             FuzzyVariable[] outputVariables, int defuzzifyMethod)
+        throws FuzzyRuleException
+    {
+        FuzzyRuleBatch batch = new FuzzyRuleBatch(rules, inputVariables, outputVariables,
+                                                  defuzzifyMethod);
+        String source = generateSource(batch);
+        byte[] bytes = compileSource(source);
+        try
+        {   MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle constructor = 
+                lookup.findConstructor(lookup.lookupClass(), 
+                                       MethodType.methodType(void.class, FuzzyRuleBatch.class));
+            CompiledFuzzyRules compiled = (CompiledFuzzyRules)constructor.invoke(batch);
+            compiled.source = source;
+            compiled.constructor = constructor;
+            return compiled;
+        }
+        catch (Throwable t)
+        {   throw new FuzzyRuleException("FuzzyRuleCompiler unable to load the compiled rules: " + t);
+        }
+    }
+
+    /**
+     * Write the Java source of the class for the rules of a FuzzyRuleBatch.
+     */
+    static String generateSource(FuzzyRuleBatch batch)
+    {
+        int numInputs = batch.inputVariables.length;
+        int numOutputs = batch.outputVariables.length;
+        // each antecedent set has a place in the array of memberships
+        int[] firstMembership = new int[numInputs];
+        int numMemberships = 0;
+        for (int v=0; v<numInputs; v++)
+        {   firstMembership[v] = numMemberships;
+            numMemberships += batch.inputSets[v].length;
+        }
+        StringBuffer sb = new StringBuffer(4096);
+
+        sb.append("package nrc.fuzzy;\n\n");
+        sb.append("/** Generated by the FuzzyRuleCompiler for " + batch.numRules + " rules */\n");
+        sb.append("final class " + CLASS_NAME + " extends CompiledFuzzyRules\n{\n");
+        sb.append("    /** the membership of each input in each antecedent set */\n");
+        sb.append("    private final double[] m = new double[" + numMemberships + "];\n");
+        sb.append("    /** the DOF of each rule */\n");
+        sb.append("    private final double[] d = new double[" + batch.numRules + "];\n\n");
+        sb.append("    " + CLASS_NAME + "(FuzzyRuleBatch batch)\n    {\n        super(batch);\n    }\n\n");
+
+        // execute
+        int ruleMethods = (batch.numRules + RULES_PER_METHOD - 1)/RULES_PER_METHOD;
+        sb.append("    public void execute(double[] inputs, double[] outputs)\n");
+        sb.append("        throws XValueOutsideUODException\n    {\n");
+        for (int v=0; v<numInputs; v++)
+        {   FuzzyVariable fvar = batch.inputVariables[v];
+            sb.append("        double x" + v + " = inputs[" + v + "];\n");
+            sb.append("        if (!(x" + v + " >= " + literal(fvar.getMinUOD()) + " && x" + v + 
+                      " <= " + literal(fvar.getMaxUOD()) + ")) outside(" + v + ", x" + v + ");\n");
+        }
+        for (int v=0; v<numInputs; v++)
+            for (int s=0; s<batch.inputSets[v].length; s++)
+                sb.append("        m[" + (firstMembership[v] + s) + "] = m" + v + "_" + s + "(x" + v + ");\n");
+        sb.append("        // a membership below t does not match (t is the smallest double\n");
+        sb.append("        // above zero when the match threshold is 0.0)\n");
+        sb.append("        double t = FuzzyValue.getMatchThreshold();\n");
+        sb.append("        if (t == 0.0) t = Double.MIN_VALUE;\n");
+        for (int i=0; i<ruleMethods; i++)
+            sb.append("        rules" + i + "(t);\n");
+        for (int o=0; o<numOutputs; o++)
+        {   int numConclusions = batch.conclusionRule[o].length;
+            for (int i=0; i*CONCLUSIONS_PER_METHOD < numConclusions; i++)
+                sb.append("        output" + o + "_" + i + "();\n");
+            sb.append("        outputs[" + o + "] = defuzzify(" + o + ");\n");
+        }
+        sb.append("    }\n\n");
+
+        // the membership functions of the antecedent sets
+        for (int v=0; v<numInputs; v++)
+            for (int s=0; s<batch.inputSets[v].length; s++)
+                appendMembershipFunction(sb, "m" + v + "_" + s, batch.inputSets[v][s]);
+
+        // the DOFs of the rules
+        for (int i=0; i<ruleMethods; i++)
+        {   sb.append("    private void rules" + i + "(double t)\n    {\n");
+            for (int r=i*RULES_PER_METHOD; r<Math.min(batch.numRules, (i+1)*RULES_PER_METHOD); r++)
+            {   int numAntecedents = batch.antecedentInput[r].length;
+                String[] ms = new String[numAntecedents];
+                for (int a=0; a<numAntecedents; a++)
+                    ms[a] = "m[" + (firstMembership[batch.antecedentInput[r][a]] + batch.antecedentSet[r][a]) + "]";
+                if (numAntecedents == 0)
+                {   sb.append("        d[" + r + "] = 1.0;\n");
+                    continue;
+                }
+                sb.append("        {   double dof = ");
+                switch (batch.ruleCombine[r])
+                {   case FuzzyRuleBatch.MINIMUM:
+                       sb.append(ms[0] + ";\n");
+                       for (int a=1; a<numAntecedents; a++)
+                           sb.append("            if (" + ms[a] + " < dof) dof = " + ms[a] + ";\n");
+                       break;
+                    case FuzzyRuleBatch.PRODUCT:
+                       for (int a=0; a<numAntecedents; a++)
+                           sb.append((a == 0 ? "" : "*") + ms[a]);
+                       sb.append(";\n");
+                       break;
+                    default:
+                       sb.append("0.0;\n            double[] values = matchValues[" + r + "];\n");
+                       for (int a=0; a<numAntecedents; a++)
+                           sb.append("            values[" + a + "] = " + ms[a] + ";\n");
+                       sb.append("            dof = combine(" + r + ", values);\n");
+                }
+                sb.append("            if (");
+                for (int a=0; a<numAntecedents; a++)
+                    sb.append((a == 0 ? "" : " || ") + ms[a] + " < t");
+                sb.append(") dof = 0.0;\n");
+                sb.append("            d[" + r + "] = dof;\n        }\n");
+            }
+            sb.append("    }\n\n");
+        }
+
+        // the conclusions of the rules that fired
+        for (int o=0; o<numOutputs; o++)
+        {   int[] conclusionRule = batch.conclusionRule[o];
+            for (int i=0; i*CONCLUSIONS_PER_METHOD < conclusionRule.length; i++)
+            {   sb.append("    private void output" + o + "_" + i + "()\n    {\n");
+                for (int k=i*CONCLUSIONS_PER_METHOD; 
+                     k<Math.min(conclusionRule.length, (i+1)*CONCLUSIONS_PER_METHOD); k++)
+                    sb.append("        if (d[" + conclusionRule[k] + "] > 0.0) fire(" + o + ", " + 
+                              k + ", d[" + conclusionRule[k] + "]);\n");
+                sb.append("    }\n\n");
+            }
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Write a static method that gives the same membership values as 
+     * FuzzySet.getMembership for the set.
+     */
+    private static void appendMembershipFunction(StringBuffer sb, String name, FuzzySet fs)
+    {
+        sb.append("    private static double " + name + "(double x)\n    {\n");
+        int n = fs.size();
+        if (n == 0)
+            sb.append("        return -1.0;\n");
+        else
+        {   int i = 0;
+            while (i < n)
+            {   double xi = fs.getX(i);
+                if (i == 0)
+                    sb.append("        if (x < " + literal(xi) + ") return " + literal(fs.getY(0)) + ";\n");
+                else
+                {   // interpolate from the last point before this x value
+                    double x0 = fs.getX(i-1), y0 = fs.getY(i-1);
+                    double slope = (fs.getY(i) - y0)/(xi - x0);
+                    sb.append("        if (x < " + literal(xi) + ") return " + literal(y0) + 
+                              " + (x - " + literal(x0) + ")*" + literal(slope) + ";\n");
+                }
+                // the maximum y value of the points at this x value
+                double maxY = fs.getY(i++);
+                while (i < n && fs.getX(i) == xi)
+                    maxY = Math.max(maxY, fs.getY(i++));
+                sb.append("        if (x == " + literal(xi) + ") return " + literal(maxY) + ";\n");
+            }
+            sb.append("        return " + literal(fs.getY(n-1)) + ";\n");
+        }
+        sb.append("    }\n\n");
+    }
+
+    /**
+     * A double value as it must be written in Java source to get exactly that value.
+     */
+    private static String literal(double d)
+    {
+        if (Double.isNaN(d)) return "Double.NaN";
+        if (d == Double.POSITIVE_INFINITY) return "Double.POSITIVE_INFINITY";
+        if (d == Double.NEGATIVE_INFINITY) return "Double.NEGATIVE_INFINITY";
+        String s = Double.toString(d);
+        return (d < 0.0) ? "(" + s + ")" : s;
+    }
+
+    /**
+     * Compile the source of the generated class in memory and return its class file.
+     */
+    private static byte[] compileSource(String source)
+        throws FuzzyRuleException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new FuzzyRuleException("FuzzyRuleCompiler requires a Java compiler (javax.tools) and none is available");
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+        JavaFileManager fileManager = 
+            new ForwardingJavaFileManager<StandardJavaFileManager>(compiler.getStandardFileManager(diagnostics, null, null))
+            {   public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                           JavaFileObject.Kind kind, FileObject sibling)
+                {   return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + 
+                                                               kind.extension), kind)
+                    {   public OutputStream openOutputStream()
+                        {   return classFile;
+                        }
+                    };
+                }
+            };
+        JavaFileObject sourceFile = 
+            new SimpleJavaFileObject(URI.create("mem:///nrc/fuzzy/" + CLASS_NAME + ".java"), 
+                                     JavaFileObject.Kind.SOURCE)
+            {   public CharSequence getCharContent(boolean ignoreEncodingErrors)
+                {   return source;
+                }
+            };
+        
+        List<String> options = Arrays.asList(new String[] {"-classpath", classPath(), "-proc:none", "-g:none"});
+        Boolean ok = compiler.getTask(null, fileManager, diagnostics, options, null, 
+                                      Collections.singletonList(sourceFile)).call();
+        if (!ok.booleanValue())
+            throw new FuzzyRuleException("FuzzyRuleCompiler unable to compile the rules: " + 
+                                         diagnostics.getDiagnostics());
+        return classFile.toByteArray();
+    }
+
+    /**
+     * The class path for compiling the generated class: where the nrc.fuzzy 
+     * classes were loaded from followed by the application class path.
+     */
+    private static String classPath()
+    {
+        String classPath = System.getProperty("java.class.path", "");
+        try
+        {   java.security.CodeSource cs = FuzzyRuleCompiler.class.getProtectionDomain().getCodeSource();
+            if (cs != null && cs.getLocation() != null)
+                classPath = new File(cs.getLocation().toURI()).getPath() + File.pathSeparator + classPath;
+        }
+        catch (Exception e)
+        {   // not a file location, so rely on the class path
+        }
+        return classPath;
+    }
+
+    /**
+     * Fire compiled rules and the FuzzyRules they were compiled from on random inputs 
+     * and return the largest difference between their outputs. The FuzzyRules are fired
+     * with FuzzyValues: a FuzzyValue is made for each crisp input (with a TriangleFuzzySet
+     * of zero width) and the rules that match the inputs are executed with their own rule 
+     * executor and AntecedentCombineOperator. The union of the outputs for each output 
+     * variable is then formed independently of fuzzyUnion, as the pointwise maximum of 
+     * the output fuzzy sets: between two adjacent x values of their points each output 
+     * set is a straight line, and the upper edge of those lines, with the points where 
+     * they cross, is found exactly. That union is defuzzified (or for the Tsukamoto rules 
+     * the weighted average of the outputs is found). The inputs of the rules are 
+     * restored when the method is done.
+     * <p>
+     * Both results are exact, so the difference is only that of rounding, and should be
+     * many orders of magnitude smaller than the universes of discourse of the output
+     * variables.
+     *
+     * @param compiled the compiled rules
+     * @param rules the rules that were compiled
+     * @param trials the number of random sets of inputs to try
+     * @param seed the seed for the random inputs, which are uniformly distributed over the
+     *        universe of discourse of each input variable
+     * @return the largest absolute difference between an output of the compiled rules and 
+     *         the output of the FuzzyRules; Double.POSITIVE_INFINITY if one of them was 
+     *         Double.NaN (no rule fired) and the other was not
+     * @exception FuzzyException if the FuzzyRules could not be fired
+     */
+    public static double verify(CompiledFuzzyRules compiled, FuzzyRule[] rules, int trials, long seed)
+        throws FuzzyException
+    {
+        FuzzyVariable[] inputVariables = compiled.batch.inputVariables;
+        FuzzyVariable[] outputVariables = compiled.batch.outputVariables;
+        double[] inputs = new double[inputVariables.length];
+        double[] outputs = new double[outputVariables.length];
+        FuzzyValue[] inputValues = new FuzzyValue[inputVariables.length];
+        Random random = new Random(seed);
+        double maxDifference = 0.0;
+        
+        for (int trial=0; trial<trials; trial++)
+        {   for (int v=0; v<inputVariables.length; v++)
+            {   double min = inputVariables[v].getMinUOD();
+                double max = inputVariables[v].getMaxUOD();
+                double x = Math.min(max, min + (max - min)*random.nextDouble());
+                inputs[v] = x;
+                inputValues[v] = new FuzzyValue(inputVariables[v], new TriangleFuzzySet(x, x, x));
+            }
+            compiled.execute(inputs, outputs);
+            
+            FuzzyValueVector[] results = fireRules(rules, inputVariables, inputValues, outputVariables);
+            for (int o=0; o<outputVariables.length; o++)
+            {   double expected = Double.NaN;
+                if (results[o].size() > 0)
+                   try
+                   {   if (compiled.batch.weightedAverageOutput[o])
+                          expected = results[o].weightedAverageDefuzzify();
+                       else
+                       {   FuzzyValue union = maximumUnion(results[o], outputVariables[o]);
+                           expected = (compiled.batch.defuzzifyMethod == FuzzyRuleBatch.MOMENT_DEFUZZIFY) ?
+                                      union.momentDefuzzify() : union.centerOfAreaDefuzzify();
+                       }
+                   }
+                   catch (InvalidDefuzzifyException e)
+                   {   // no area or weight so no result, as with the compiled rules
+                   }
+                double difference;
+                if (Double.isNaN(expected) || Double.isNaN(outputs[o]))
+                    difference = (Double.isNaN(expected) && Double.isNaN(outputs[o])) ? 
+                                 0.0 : Double.POSITIVE_INFINITY;
+                else
+                    difference = Math.abs(expected - outputs[o]);
+                if (difference > maxDifference) 
+                    maxDifference = difference;
+            }
+        }
+        return maxDifference;
+    }
+
+    /**
+     * The pointwise maximum of the fuzzy sets of some FuzzyValues of a variable. The x 
+     * values of all of their points are merged, and in each interval between two of them 
+     * every set is a straight line, whose values at the ends of the interval are taken
+     * from the points of the set (the values inside the interval where the set has a step
+     * at one of its ends). The upper edge of those lines is followed from one crossing 
+     * to the next.
+     */
+    private static FuzzyValue maximumUnion(FuzzyValueVector values, FuzzyVariable variable)
+        throws FuzzyException
+    {
+        int n = values.size();
+        FuzzySet[] sets = new FuzzySet[n];
+        int numX = 0;
+        for (int i=0; i<n; i++)
+        {   sets[i] = values.fuzzyValueAt(i).getFuzzySet();
+            numX += sets[i].size();
+        }
+        double[] xs = new double[numX];
+        numX = 0;
+        for (int i=0; i<n; i++)
+            for (int j=0; j<sets[i].size(); j++)
+                xs[numX++] = sets[i].getX(j);
+        Arrays.sort(xs);
+        
+        int[] segment = new int[n];   // the last point of each set at or before a
+        Arrays.fill(segment, -1);
+        double[] startY = new double[n];
+        double[] endY = new double[n];
+        double[] slope = new double[n];
+        // each crossing moves to a steeper line, so an interval has at most n+1 points
+        double[] px = new double[numX*(n + 1)];
+        double[] py = new double[px.length];
+        int numPoints = 0;
+        for (int k=0; k+1<numX; k++)
+        {   double a = xs[k], b = xs[k+1];
+            if (b <= a) continue;
+            for (int i=0; i<n; i++)
+            {   FuzzySet set = sets[i];
+                int j = segment[i];
+                while (j+1 < set.size() && set.getX(j+1) <= a)
+                    j++;
+                segment[i] = j;
+                if (j < 0)
+                    startY[i] = endY[i] = set.getY(0);
+                else if (j+1 == set.size())
+                    startY[i] = endY[i] = set.getY(j);
+                else
+                {   double x1 = set.getX(j), x2 = set.getX(j+1);
+                    double y1 = set.getY(j), y2 = set.getY(j+1);
+                    startY[i] = (x1 == a) ? y1 : y1 + (y2 - y1)*(a - x1)/(x2 - x1);
+                    endY[i] = (x2 == b) ? y2 : y1 + (y2 - y1)*(b - x1)/(x2 - x1);
+                }
+                slope[i] = (endY[i] - startY[i])/(b - a);
+            }
+            // start on the highest line at a (the steepest one if they are equal)
+            int line = 0;
+            for (int i=1; i<n; i++)
+                if (startY[i] > startY[line] || (startY[i] == startY[line] && slope[i] > slope[line]))
+                    line = i;
+            double x = a;
+            px[numPoints] = a;
+            py[numPoints++] = startY[line];
+            while (true)
+            {   // the first steeper line to cross the current one; one that crosses
+                // at or (through rounding) before x is already above it
+                int next = -1;
+                double nextX = b;
+                for (int i=0; i<n; i++)
+                    if (slope[i] > slope[line])
+                    {   double c = Math.max(x, a + (startY[line] - startY[i])/(slope[i] - slope[line]));
+                        if (c < nextX || (c == nextX && next >= 0 && slope[i] > slope[next]))
+                        {   nextX = c;
+                            next = i;
+                        }
+                    }
+                if (next < 0 || nextX >= b) break;
+                if (nextX > x)
+                {   x = nextX;
+                    px[numPoints] = x;
+                    py[numPoints++] = startY[line] + slope[line]*(x - a);
+                }
+                line = next;
+            }
+            px[numPoints] = b;
+            py[numPoints++] = endY[line];
+        }
+        
+        // the intervals share their end points, so drop the repeated ones
+        double[] ux = new double[numPoints];
+        double[] uy = new double[numPoints];
+        int numUnion = 0;
+        for (int i=0; i<numPoints; i++)
+        {   if (numUnion > 0 && ux[numUnion-1] == px[i] && uy[numUnion-1] == py[i])
+                continue;
+            ux[numUnion] = px[i];
+            uy[numUnion++] = py[i];
+        }
+        return new FuzzyValue(variable, new FuzzySet(ux, uy, numUnion));
+    }
+
+    /**
+     * Fire the rules with FuzzyValue inputs and return the results for each 
+     * output variable.
+     */
+    private static FuzzyValueVector[] fireRules(FuzzyRule[] rules, FuzzyVariable[] inputVariables, 
+                                          FuzzyValue[] inputValues, FuzzyVariable[] outputVariables)
+        throws FuzzyException
+    {
+        FuzzyValueVector[] results = new FuzzyValueVector[outputVariables.length];
+        for (int o=0; o<outputVariables.length; o++)
+            results[o] = new FuzzyValueVector();
+        for (int r=0; r<rules.length; r++)
+        {   FuzzyRule rule = rules[r];
+            FuzzyValueVector ruleInputs = new FuzzyValueVector(rule.antecedentsSize());
+            for (int a=0; a<rule.antecedentsSize(); a++)
+                for (int v=0; v<inputVariables.length; v++)
+                    if (inputVariables[v] == rule.antecedentAt(a).getFuzzyVariable())
+                       ruleInputs.addFuzzyValue(inputValues[v]);
+            if (!rule.testRuleMatching(ruleInputs))
+                continue;
+
+            // execute() uses the rule's own AntecedentCombineOperator, so set the 
+            // inputs of the rule for now
+            FuzzyValueVector savedInputs = rule.getInputs();
+            FuzzyValueVector conclusions;
+            rule.removeAllInputs();
+            try
+            {   for (int i=0; i<ruleInputs.size(); i++)
+                    rule.addInput(ruleInputs.fuzzyValueAt(i));
+                conclusions = rule.execute();
+            }
+            finally
+            {   rule.removeAllInputs();
+                for (int i=0; i<savedInputs.size(); i++)
+                    rule.addInput(savedInputs.fuzzyValueAt(i));
+            }
+            
+            for (int c=0; c<conclusions.size(); c++)
+            {   FuzzyValue fv = conclusions.fuzzyValueAt(c);
+                for (int o=0; o<outputVariables.length; o++)
+                    if (outputVariables[o] == fv.getFuzzyVariable())
+                       results[o].addFuzzyValue(fv);
+            }
+        }
+        return results;
+    }
+}
@@ -63,4 +63,39 @@ import java.io.*;
 public abstract class FuzzyRuleExecutor implements FuzzyRuleExecutorInterface, 
                         Cloneable, Serializable
 {
+    /**
+     * The serialVersionUID of the class before the inference listener was added,
+     * so that executors serialized by earlier versions can still be read.
+     */
+    private static final long serialVersionUID = 6821951804273797980L;
+
+    /**
+     * Execute a rule with a set of inputs rather than those of the rule. This
+     * does the same as execute(antecedents, conclusions, inputs) with the antecedents
+     * and conclusions of the rule; the executors in this package override it so 
+     * that they can tell the inference listener which rule they matched.
+     *
+     * @param rule the rule that is to be executed (fired)
+     * @param inputs the inputs to use
+     * @return A FuzzyValueVector with the FuzzyValues that represent the
+     *          outputs of the fired rule.
+     * @exception IncompatibleRuleInputsException
+     */
+    FuzzyValueVector executeWithInputs( FuzzyRule rule, FuzzyValueVector inputs )
+        throws IncompatibleRuleInputsException
+    {
+        return execute( rule.getAntecedents(), rule.getConclusions(), inputs );
+    }
+
+    /**
+     * Get the DOF (degree of fulfillment) found the last time the executor
+     * fired a rule: how well the inputs matched the antecedents. Executors
+     * that keep the DOF (such as the MamdaniMinMaxMinRuleExecutor) override this.
+     *
+     * @return the DOF, or NaN if the executor does not keep it
+     */
+    public double getDegreeOfFulfillment()
+    {
+        return Double.NaN;
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+import java.util.*;
+
+/**
+ * A FuzzyRuleStage is a named set of FuzzyRules that is fired as one step of a 
+ * FuzzyInferenceGraph. Its input variables are the FuzzyVariables of the antecedents of 
+ * its rules and its output variables are the FuzzyVariables of their conclusions. 
+ * When the stage is fired each rule that matches its inputs (see 
+ * FuzzyRule.testRuleMatching) is executed with them and the outputs of the rules for 
+ * each output variable are combined with a fuzzy union, as is done for the rules of
+ * the inverted pendulum example. The outputs are not defuzzified so they can be used 
+ * as the (fuzzy) inputs of other stages.
+ * <p>
+ * Firing a stage changes the state kept by its rules, so a rule must only belong to one
+ * stage and a stage must only be fired by one thread at a time.
+ *
+ * @see FuzzyInferenceGraph
+ * @see FuzzyRule
+ */
+public class FuzzyRuleStage
+{
+    private String name;
+    private FuzzyRule[] rules;
+    private FuzzyVariable[] inputVariables;
+    private FuzzyVariable[] outputVariables;
+    /** the index (in the inputVariables) of the input for each antecedent: [rule][antecedent] */
+    private int[][] antecedentInput;
+    /** the index (in the outputVariables) of the output for each conclusion: [rule][conclusion] */
+    private int[][] conclusionOutput;
+
+    /**
+     * Create a stage for a set of rules.
+     *
+     * @param name the name of the stage
+     * @param rules the rules of the stage
+     * @exception FuzzyRuleException if there are no rules, or a rule has no conclusions
+     *        or has an antecedent and a conclusion for the same variable
+     */
+    public FuzzyRuleStage(String name, FuzzyRule[] rules)
+        throws FuzzyRuleException
+    {
+        if (rules.length == 0)
+           throw new FuzzyRuleException("FuzzyRuleStage " + name + " has no rules");
+        this.name = name;
+        this.rules = rules.clone();
+
+        Vector inputs = new Vector();
+        Vector outputs = new Vector();
+        antecedentInput = new int[rules.length][];
+        conclusionOutput = new int[rules.length][];
+        for (int r=0; r<rules.length; r++)
+        {   FuzzyRule rule = rules[r];
+            if (rule.conclusionsSize() == 0)
+               throw new FuzzyRuleException("FuzzyRuleStage " + name + " has a rule with no conclusions");
+            antecedentInput[r] = new int[rule.antecedentsSize()];
+            for (int a=0; a<rule.antecedentsSize(); a++)
+            {   FuzzyVariable fvar = rule.antecedentAt(a).getFuzzyVariable();
+                int v = inputs.indexOf(fvar);
+                if (v < 0)
+                {   v = inputs.size();
+                    inputs.addElement(fvar);
+                }
+                antecedentInput[r][a] = v;
+            }
+            conclusionOutput[r] = new int[rule.conclusionsSize()];
+            for (int c=0; c<rule.conclusionsSize(); c++)
+            {   FuzzyVariable fvar = rule.conclusionAt(c).getFuzzyVariable();
+                int o = outputs.indexOf(fvar);
+                if (o < 0)
+                {   o = outputs.size();
+                    outputs.addElement(fvar);
+                }
+                conclusionOutput[r][c] = o;
+            }
+        }
+        inputVariables = new FuzzyVariable[inputs.size()];
+        inputs.copyInto(inputVariables);
+        outputVariables = new FuzzyVariable[outputs.size()];
+        outputs.copyInto(outputVariables);
+        for (int o=0; o<outputVariables.length; o++)
+            if (inputs.contains(outputVariables[o]))
+               throw new FuzzyRuleException("FuzzyRuleStage " + name + " has rules with antecedents and conclusions for " + 
+                                            outputVariables[o].getName());
+    }
+
+    /**
+     * Returns the name of the stage.
+     *
+     * @return the name of the stage
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the rules of the stage.
+     *
+     * @return an array with the rules of the stage
+     */
+    public FuzzyRule[] getRules()
+    {
+        return rules.clone();
+    }
+
+    /**
+     * Returns the FuzzyVariables of the antecedents of the rules of the stage, in the
+     * order that they first appear in the rules.
+     *
+     * @return an array with the input FuzzyVariables
+     */
+    public FuzzyVariable[] getInputVariables()
+    {
+        return inputVariables.clone();
+    }
+
+    /**
+     * Returns the FuzzyVariables of the conclusions of the rules of the stage, in the
+     * order that they first appear in the rules.
+     *
+     * @return an array with the output FuzzyVariables
+     */
+    public FuzzyVariable[] getOutputVariables()
+    {
+        return outputVariables.clone();
+    }
+
+    /**
+     * Fire the rules of the stage.
+     *
+     * @param inputs a FuzzyValue for each of the input variables (in the order of 
+     *        getInputVariables); a rule with an antecedent for an input that is null 
+     *        does not fire
+     * @return a FuzzyValue for each of the output variables (in the order of
+     *         getOutputVariables): the union of the outputs of the rules that fired, or
+     *         null if none of the rules with a conclusion for the variable fired
+     * @exception FuzzyException if an input is not a FuzzyValue of its variable
+     */
+    public FuzzyValue[] execute(FuzzyValue[] inputs)
+        throws FuzzyException
+    {
+        FuzzyValueVector[] ruleOutputs = new FuzzyValueVector[outputVariables.length];
+        for (int o=0; o<outputVariables.length; o++)
+            ruleOutputs[o] = new FuzzyValueVector();
+
+        for (int r=0; r<rules.length; r++)
+        {   int[] input = antecedentInput[r];
+            FuzzyValueVector ruleInputs = new FuzzyValueVector(input.length);
+            for (int a=0; a<input.length; a++)
+            {   if (inputs[input[a]] == null) break;
+                ruleInputs.addFuzzyValue(inputs[input[a]]);
+            }
+            if (ruleInputs.size() < input.length || !rules[r].testRuleMatching(ruleInputs))
+                continue;
+            FuzzyValueVector results = rules[r].execute(ruleInputs);
+            for (int c=0; c<results.size(); c++)
+                ruleOutputs[conclusionOutput[r][c]].addFuzzyValue(results.fuzzyValueAt(c));
+        }
+
+        FuzzyValue[] outputs = new FuzzyValue[outputVariables.length];
+        for (int o=0; o<outputVariables.length; o++)
+            outputs[o] = ruleOutputs[o].fuzzyUnion();
+        return outputs;
+    }
+
+    /**
+     * Returns the name of the stage and its input and output variables.
+     *
+     * @return a String describing the stage
+     */
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer(name);
+        sb.append(" (");
+        for (int v=0; v<inputVariables.length; v++)
+            sb.append((v == 0) ? "" : ", ").append(inputVariables[v].getName());
+        sb.append(" -> ");
+        for (int o=0; o<outputVariables.length; o++)
+            sb.append((o == 0) ? "" : ", ").append(outputVariables[o].getName());
+        sb.append(")");
+        return sb.toString();
+    }
+}
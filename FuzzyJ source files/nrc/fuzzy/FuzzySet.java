@@ -23,6 +23,7 @@ package nrc.fuzzy;
 
 import java.text.*; 
 import java.io.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A fuzzy set is a mapping of a set of real numbers onto a membership value
@@ -122,6 +123,13 @@ import java.io.*;
 
 public class FuzzySet implements java.lang.Cloneable, Serializable
 {
+    /**
+     * The serialVersionUID of the original form of the class, so that FuzzySets
+     * serialized by earlier versions can still be read (the fields added since
+     * then are given their default values).
+     */
+    private static final long serialVersionUID = -2894748842245278253L;
+
     /**
      * A constant used to flag the Union of FuzzySets operation.
      */
@@ -161,9 +169,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     protected static final int MAX_INITIAL_POINTS = 8;
 
     /**
-     * A constant specifying the amount by which the FuzzySet will be
+     * A constant specifying the minimum amount by which the FuzzySet will be
      * expanded each time an additional point is added and more space
-     * is required to accomodate that point.
+     * is required to accomodate that point. Larger sets grow by doubling
+     * the space so that adding many points one at a time stays efficient.
      */
     protected static final int INCREMENT = 5;
 
@@ -175,6 +184,14 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
     protected static int toStringPrecision;
 
+    /**
+     * Counts of the quick tests for no intersection of two FuzzySets and of those
+     * that rejected the sets (see noIntersectionTest(FuzzySet b, double threshold)). 
+     * LongAdders since the tests may be done by many threads at once.
+     */
+    private static final LongAdder intersectionTests = new LongAdder();
+    private static final LongAdder intersectionRejections = new LongAdder();
+
     /**
      * A Union/Intersection tool object which provides methods required only for
      * Union/Intersection method functionality, and also contains variables to
@@ -184,7 +201,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     /**
      * This is the heart of the FuzzySet, an array of SetPoints which represent
-     * the FuzzySet.
+     * the FuzzySet. It is null while the points of a PowerFuzzySet have not 
+     * been found yet (see ensurePoints).
      */
     protected SetPoint[] set;
 
@@ -208,6 +226,34 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
     protected boolean simplified;
 
+    /** 
+     * The <code>analytic</code> variable is a boolean used to indicate whether 
+     * or not the points of the FuzzySet are still exactly those generated from 
+     * the closed form curve of an AnalyticFuzzySet. It is false for ordinary 
+     * FuzzySets and is cleared whenever points are added to or removed from the set.
+     * It is serialized with the set since it describes the points; a set serialized
+     * before it was added is read as not analytic, so its points are used as they are.
+     */
+    protected boolean analytic = false;
+
+    /** 
+     * The <code>frozen</code> variable is a boolean used to indicate whether 
+     * or not the FuzzySet has been frozen (see the freeze method). The points of
+     * a frozen FuzzySet cannot be changed, so the attributes of the set that would
+     * otherwise require a scan of the points are calculated once, when it is
+     * frozen, and held in the frozenXXX variables. None of these are serialized;
+     * a FuzzySet that is read from a stream is not frozen.
+     */
+    protected transient boolean frozen = false;
+
+    private transient double frozenMinY, frozenMaxY;
+    private transient double frozenSupportLowerBound, frozenSupportUpperBound;
+    private transient double frozenArea;
+    private transient boolean frozenNormal, frozenConvex;
+    private transient int frozenXValueOrder, frozenYValueRange;
+    /** the inverse of the membership function if the set is monotonic, otherwise null */
+    private transient MembershipInverse frozenInverse;
+
     /*
      ***************************************************************************************************
      *
@@ -227,6 +273,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
 
     public FuzzySet(){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.fuzzySetCreated();
         numPoints = 0;
         set = new SetPoint[MAX_INITIAL_POINTS];
         tool = null;
@@ -242,6 +290,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
 
     public FuzzySet(int initMaxSize){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.fuzzySetCreated();
         numPoints = 0;
         set = new SetPoint[initMaxSize];
         tool = null;
@@ -271,6 +321,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public FuzzySet(double[] x, double[] y, int numPoints) throws
         XValuesOutOfOrderException, YValueOutOfRangeException {
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.fuzzySetCreated();
 
 		int i;
         this.numPoints = numPoints;
@@ -310,6 +362,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public FuzzySet(SetPoint[] setPoints, int numPoints) throws
         XValuesOutOfOrderException, YValueOutOfRangeException {
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.fuzzySetCreated();
 
 		int i;
         this.numPoints = numPoints;
@@ -339,7 +393,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
 
     public FuzzySet(FuzzySet newSet){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.fuzzySetCreated();
         
+        newSet.ensurePoints();
         numPoints = newSet.numPoints;
         tool = null;
         set = new SetPoint[numPoints];
@@ -369,6 +426,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public boolean equals(FuzzySet otherSet)
     {
+        ensurePoints();
+        otherSet.ensurePoints();
         if (numPoints != otherSet.numPoints)
            return false;
 
@@ -392,6 +451,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public FuzzySet fuzzyNormalize()
     {
+        ensurePoints();
         double maxY = set[0].y;
         FuzzySet normalSet = new FuzzySet(numPoints);
         normalSet.numPoints = numPoints;
@@ -433,6 +493,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
       
     public FuzzySet fuzzyScale( double yvalue )
     {
+        ensurePoints();
         double maxY = set[0].y;
         FuzzySet scaledSet;
         int i;
@@ -443,6 +504,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
             scaledSet = new FuzzySet(1);
             scaledSet.numPoints = 1;
             scaledSet.set[0] = new SetPoint(set[0].x, 0);
+            if (FuzzyAllocationCounters.enabled)
+                FuzzyAllocationCounters.operation(FuzzyAllocationCounters.SCALE, scaledSet);
             return scaledSet;
         }
 
@@ -452,7 +515,11 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
         }
                         
 		if (maxY <= yvalue)
-			return( new FuzzySet(this) );
+		{	scaledSet = new FuzzySet(this);
+			if (FuzzyAllocationCounters.enabled)
+				FuzzyAllocationCounters.operation(FuzzyAllocationCounters.SCALE, scaledSet);
+			return( scaledSet );
+		}
         
         scaledSet = new FuzzySet(numPoints);
         scaledSet.numPoints = numPoints;
@@ -464,6 +531,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
             scaledSet.set[i] = new SetPoint(set[i].x, scale * set[i].y);
             
         scaledSet.simplifySet();  // probably already simplified ... but just in case
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.operation(FuzzyAllocationCounters.SCALE, scaledSet);
         return( scaledSet );
     }
 
@@ -484,6 +553,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
 
     public FuzzySet fuzzyComplement(){
+        ensurePoints();
         FuzzySet complementSet = new FuzzySet(numPoints);
         complementSet.numPoints = numPoints;
         complementSet.simplified = simplified;
@@ -516,6 +586,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     protected UITools getUITools()
     {
+        // a frozen set may be in use by several threads at once so it
+        // cannot hold the state of an operation; give each one its own
+        if (frozen)
+           return(new UITools());
         if (tool == null)
 	   tool = new UITools();
 
@@ -564,6 +638,22 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
 
     public double maximumOfIntersection(FuzzySet otherSet) {
+        return(maximumOfIntersection(otherSet, false));
+    }
+
+    /**
+     * Does the work for maximumOfIntersection(FuzzySet otherSet). When both sets are
+     * frozen their support bounds and maximum membership values are known, so the 
+     * quick test for no intersection is made first (unless the caller has already 
+     * made it, as FuzzyValue.fuzzyMatch does). Otherwise the test would need scans
+     * of the points that fuzzyIntersectionUnion repeats when it checks for no 
+     * intersection itself, so it is not made.
+     */
+
+    double maximumOfIntersection(FuzzySet otherSet, boolean tested) {
+        if (!tested && this != otherSet && frozen && otherSet.frozen &&
+            noIntersectionTest(this, otherSet, 0.0))
+            return(0.0);
         return(((Double) fuzzyIntersectionUnion(otherSet, MAXMIN)).doubleValue());
     }
 
@@ -625,7 +715,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
 
     public FuzzySet fuzzyIntersection(FuzzySet otherSet) {
-        return((FuzzySet)fuzzyIntersectionUnion(otherSet, INTERSECTION));
+        FuzzySet result = (FuzzySet)fuzzyIntersectionUnion(otherSet, INTERSECTION);
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.operation(FuzzyAllocationCounters.INTERSECTION, result);
+        return(result);
     }
 
     /**
@@ -685,7 +778,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 	 */
 
 	public FuzzySet fuzzyUnion(FuzzySet otherSet) {
-		return((FuzzySet)fuzzyIntersectionUnion(otherSet, UNION));
+		FuzzySet result = (FuzzySet)fuzzyIntersectionUnion(otherSet, UNION);
+		if (FuzzyAllocationCounters.enabled)
+			FuzzyAllocationCounters.operation(FuzzyAllocationCounters.UNION, result);
+		return(result);
 	}
 
 	/**
@@ -726,7 +822,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 	 */
 
 	public FuzzySet fuzzySum(FuzzySet otherSet) {
-		return((FuzzySet)fuzzyIntersectionUnion(otherSet, SUM));
+		FuzzySet result = (FuzzySet)fuzzyIntersectionUnion(otherSet, SUM);
+		if (FuzzyAllocationCounters.enabled)
+			FuzzyAllocationCounters.operation(FuzzyAllocationCounters.SUM, result);
+		return(result);
 	}
 
 	/**
@@ -775,6 +874,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     protected Object fuzzyIntersectionUnion(FuzzySet otherSet, int op) 
     {
+        ensurePoints();
+        otherSet.ensurePoints();
         Object intersection;
         SetPoint intersectPoint;
         SetPoint point;
@@ -879,7 +980,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
         // If there is definitely NO overlap between the 2 fuzzy sets then
         // a simple result can be calculated; for SUM it is the same as the UNION
-        if( noIntersectionTest(otherSet) )
+        // (this is part of the operation so it is not counted as a quick test)
+        if( noIntersection(otherSet) )
         {   if(op == MAXMIN)
                return(new Double(0.0));
             else if(op == UNION || op == SUM) 
@@ -1627,15 +1729,23 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
             }
             else
             {   double slopeAB = (this.current.y - b.previous.y)/(this.current.x - b.previous.x);
-
-                if ((slopeAB <= b.slope && (operation == INTERSECTION || operation == MAXMIN)) ||
+                // A current point that lies on b's line to within rounding is on
+                // both lines. It must be kept: when b crosses this line segment
+                // right at its end, lineSegmentIntersection can miss the crossing
+                // by rounding, and the point would otherwise be dropped.
+                boolean onLine = slopeAB == b.slope ||
+                                 (b.previous.x != b.current.x &&
+                                  Math.abs(b.slope*(this.current.x-b.previous.x)+b.previous.y-this.current.y) < 1.0e-12);
+
+                if (onLine ||
+                    (slopeAB <= b.slope && (operation == INTERSECTION || operation == MAXMIN)) ||
                     (slopeAB >= b.slope && operation == UNION)
                 )
                     pointToStore = this.current;
                 else 
                     pointToStore = null;
 
-                if (slopeAB == b.slope) b.previous = this.current;
+                if (onLine) b.previous = this.current;
             }
             this.moveAheadOnePoint();
 
@@ -1701,6 +1811,30 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
         return( (FuzzySet)this.clone() );
     }
 
+    /**
+     * Returns a copy of this FuzzySet that has its own points and is of the same 
+     * class (so a copy of an analytic set is still analytic), and is not frozen.
+     * It is used to freeze a set that belongs to someone else without changing it.
+     */
+    FuzzySet privateCopy()
+    {
+        ensurePoints();
+        FuzzySet copy;
+        try
+        {   copy = (FuzzySet)this.clone();
+        }
+        catch (CloneNotSupportedException e)
+        {   return( new FuzzySet(this) );
+        }
+        copy.set = new SetPoint[Math.max(numPoints, 1)];
+        for (int i=0; i<numPoints; i++)
+            copy.set[i] = new SetPoint(set[i]);
+        copy.tool = null;
+        copy.frozen = false;
+        copy.frozenInverse = null;
+        return( copy );
+    }
+
     /**
      * Simplifies the array of points by removing any extraneous points
      * from the FuzzySet.  If the following cases
@@ -1724,60 +1858,57 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public void simplifySet()
     {   
+        ensurePoints();
     	if (simplified) return; // if already simplified nothing to do
     	
-        //Case 1:  if two of the same point exist, remove one
-        for(int i=0; i < numPoints-1; i++)
+        // All four cases are handled in a single pass over the points. The points
+        // that are kept are compacted to the front of the array; keep is the number
+        // kept so far. Each new point is compared with the last one or two points kept, 
+        // so a point removed by one case can expose a further removal (for example 
+        // a run of many points with the same y value collapses to its end points).
+        int keep = 0;
+        for (int i=0; i < numPoints; i++)
         {
-            if(set[i].equals(set[i+1]))
-            {
-                shiftArrayLeft(i+1);
-                i--;
+            SetPoint p = set[i];
+
+            //Case 1:  if two of the same point exist, remove one
+            if (keep > 0 && set[keep-1].equals(p))
+                continue;
+
+            while (keep > 1)
+            {   SetPoint a = set[keep-2];
+                SetPoint b = set[keep-1];
+
+                //Case 2:  three points in a vertical vector which all have the same
+                //direction -- the point with the middle y value is removed.
+                //Case 3: three points in a row have the same y value -- the middle 
+                //point is removed
+                if ((a.inVerticalAlignment(b) && b.inVerticalAlignment(p) && sameDirection(a.y, b.y, p.y)) ||
+                    (a.inHorizontalAlignment(b) && b.inHorizontalAlignment(p))
+                   )
+                    keep--;
+                else
+                    break;
             }
-        }
 
-        //Case 2:  deals with the possibility that there exists three points
-        //in a vertical vector which all have the same direction, in which case
-        //the point with the middle y value should be removed.
-        for (int i=0; i < numPoints-2; i++)
-        {
-            if(set[i].inVerticalAlignment(set[i+1]) && set[i+1].inVerticalAlignment(set[i+2]))
-            {
-                if(sameDirection(set[i].y, set[i+1].y, set[i+2].y))
-                {
-                    shiftArrayLeft(i+1);
-                    i--;
-                }
-            }
-        }
+            if (keep > 0 && set[keep-1].equals(p))
+                continue;
 
-        //Case 3: if three points in a row have the same y value, the middle point is removed
-        for (int i=0; i < numPoints-2; i++)
-        {
-            if(set[i].inHorizontalAlignment(set[i+1]) && set[i+1].inHorizontalAlignment(set[i+2]))
-            {
-                shiftArrayLeft(i+1);
-                i--;
-            }
+            set[keep++] = p;
         }
 
         //Case 4: the first or last two points of the array have the same y value, the first
         //or last point, respectively is removed
-        boolean removedPoint = true;
-		while (removedPoint == true && numPoints > 1)
-        {  if (set[0].inHorizontalAlignment(set[1]))
-              shiftArrayLeft(0);
-           else
-            removedPoint = false;
-        }
+        int first = 0;
+        while (keep - first > 1 && set[first].inHorizontalAlignment(set[first+1]))
+            first++;
 
-        removedPoint = true;
-		while (removedPoint == true && numPoints > 1)
-        {  if (set[numPoints-1].inHorizontalAlignment(set[numPoints-2]))
-              numPoints--;
-           else
-           	  removedPoint = false;                
-        }
+        while (keep - first > 1 && set[keep-1].inHorizontalAlignment(set[keep-2]))
+            keep--;
+
+        numPoints = keep - first;
+        if (first > 0)
+            System.arraycopy(set, first, set, 0, numPoints);
         
         trimToSize();
         simplified = true; // identify that FuzzySet has been simplified
@@ -1797,6 +1928,9 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public int checkXValueOrder() 
     {
+        ensurePoints();
+        if (frozen) return(frozenXValueOrder);
+        
         for(int i=0; i<numPoints-1; i++)
         {
             if(set[i].x > set[i+1].x)
@@ -1820,6 +1954,9 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public int checkYValueRange()  
     {
+        ensurePoints();
+        if (frozen) return(frozenYValueRange);
+        
         for(int i=0; i<numPoints; i++)
         {
             if(set[i].y < 0.0)
@@ -1854,6 +1991,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public double getMembership(double X)
     {
+        ensurePoints();
         // have to assume that none of the points between 0 and numPoints-1
         // are null ... if so this is an internal error!
         
@@ -1904,6 +2042,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      * Note that this is most often used to get the X value corresponding to
      * a membership value in a FuzzySet that is strictly increasing from 0.0 to 1.0
      * or strictly decreasing from 1.0 to 0.0 (e.g. an SFuzzySet or a ZFuzzySet).
+     * When such a set is frozen (see freeze) the x value is found with a table built
+     * when the set was frozen, without scanning the points.
      *
      * @param membership  the membership value at which to find the
      *          X value of the FuzzySet
@@ -1915,6 +2055,15 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     public double getXforMembership(double m) 
            throws NoXValueForMembershipException
     {
+        ensurePoints();
+        // a frozen monotonic set has a table of the inverse of its membership function
+        if (frozenInverse != null)
+        {   double x = frozenInverse.getX(m);
+            if (Double.isNaN(x))
+               throw new NoXValueForMembershipException(m);
+            return x;
+        }
+        
     	// make sure that FuzzySet is simplified so we don't have to deal with
     	// horizontal lines as 1st or last line segments
     	simplifySet();
@@ -1973,6 +2122,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     public void confineToXBounds(double lowXBound, double highXBound)
         throws XValuesOutOfOrderException
     {
+        ensurePoints();
         double lowX, lowY, highX, highY;
         if (lowXBound > highXBound)
            throw new XValuesOutOfOrderException(lowXBound, highXBound);
@@ -1980,6 +2130,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
         {   // if entire set is inside do nothing -- most common case likely
             if (set[0].x >= lowXBound && set[numPoints-1].x <= highXBound)
                return;
+            checkNotFrozen();
+            analytic = false; // the points will no longer be those of the curve
                
             // if x values of set are entirely outside the bounds set to rectangular
             // FuzzySet or single point (if all y values are 0.0 inside bounds)
@@ -2010,10 +2162,17 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
             // remember the y value at the lowXBound  position before we start
             // to change the set
             lowY = getMembership(lowXBound);
-            // should probably do a shift left of all points below lowXBound
-            // at once rather than doing removes since they are inefficient
-            while ( set[0].x < lowXBound )
-                removeSetPoint(set[0]);
+            // shift all points below lowXBound out of the set at once
+            int numBelow = 0;
+            while ( set[numBelow].x < lowXBound )
+                numBelow++;
+            if (numBelow > 0)
+            {   numPoints -= numBelow;
+                simplified = false;
+                System.arraycopy(set, numBelow, set, 0, numPoints);
+                for (int k=numPoints; k<numPoints+numBelow; k++)
+                    set[k] = null;
+            }
             // add the 1st 2 points as required ... 
             // if both added add the (lowXBound,0) 1st because insertPoint will add
             // point with same x value at end of all those with that x value
@@ -2026,6 +2185,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
                else
                {   // just add the (lowXBound,0) unless 1st y value already is 0
                    // have to make sure it gets added at the beginning
+                   testArrayLength();
                    shiftArrayRight(0);
                    set[0] = new SetPoint(lowXBound, 0.0);  
                }
@@ -2059,6 +2219,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public int size()
     {
+        ensurePoints();
         return(numPoints);
     }
 
@@ -2075,6 +2236,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public double getX(int i)
     {
+        ensurePoints();
         return(set[i].x);
     }
 
@@ -2091,6 +2253,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public double getY(int i)
     {
+        ensurePoints();
         return(set[i].y);
     }
 
@@ -2103,8 +2266,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public double getMinY()
     {
+        ensurePoints();
         double min;
        
+        if (frozen) return(frozenMinY);
         if (numPoints <= 0) return 0.0;
         
         min = set[0].y;
@@ -2125,14 +2290,64 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public double getMaxY()
     {
+        ensurePoints();
         double max = 0.0;
 
+        if (frozen) return(frozenMaxY);
         for(int i=0; i < numPoints; i++)
            if (set[i].y > max) max = set[i].y;
 
         return((numPoints > 0) ? max : 0.0);
     }
 
+    /**
+     * Returns the lowest x value at which the membership value of the FuzzySet
+     * may be greater than 0.0. All of the support of the set lies between
+     * this value and the value returned by getSupportUpperBound. If the first
+     * point of the set has a membership value greater than 0.0 then the set 
+     * extends to the left without bound and the result is Double.NEGATIVE_INFINITY.
+     * If the FuzzySet is empty or all of its membership values are 0.0 
+     * (no support) returns Double.POSITIVE_INFINITY.
+     *
+     * @return the lower bound of the support of the FuzzySet
+     */
+
+    public double getSupportLowerBound()
+    {
+        ensurePoints();
+        if (frozen) return(frozenSupportLowerBound);
+        
+        for (int i=0; i < numPoints; i++)
+           if (set[i].y > 0.0) 
+              return((i == 0) ? Double.NEGATIVE_INFINITY : set[i-1].x);
+
+        return(Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns the highest x value at which the membership value of the FuzzySet
+     * may be greater than 0.0. All of the support of the set lies between
+     * the value returned by getSupportLowerBound and this value. If the last
+     * point of the set has a membership value greater than 0.0 then the set 
+     * extends to the right without bound and the result is Double.POSITIVE_INFINITY.
+     * If the FuzzySet is empty or all of its membership values are 0.0 
+     * (no support) returns Double.NEGATIVE_INFINITY.
+     *
+     * @return the upper bound of the support of the FuzzySet
+     */
+
+    public double getSupportUpperBound()
+    {
+        ensurePoints();
+        if (frozen) return(frozenSupportUpperBound);
+        
+        for (int i=numPoints-1; i >= 0; i--)
+           if (set[i].y > 0.0) 
+              return((i == numPoints-1) ? Double.POSITIVE_INFINITY : set[i+1].x);
+
+        return(Double.NEGATIVE_INFINITY);
+    }
+
     /**
      * Returns the SetPoint at the specified index in the FuzzySet.
      *
@@ -2144,6 +2359,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
     public SetPoint getPoint(int i)
     {
+        ensurePoints();
         return(set[i]);
     }
 
@@ -2179,6 +2395,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public String toString()
     {
+        ensurePoints();
         NumberFormat nf = NumberFormat.getInstance();
         nf.setMaximumFractionDigits(toStringPrecision);
         StringBuffer fuzzySetString = new StringBuffer(50);
@@ -2274,6 +2491,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public IntervalVector getAlphaCut(boolean cutType, double cut, double minUOD, double maxUOD)
     {
+        ensurePoints();
         if(numPoints == 0)
         {   // empty fuzzy set! Perhaps should just return the empty Interval Vector ... size of zero!!??
             return null;
@@ -2477,9 +2695,107 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public boolean isSimplified()
     {
+        ensurePoints();
         return(simplified);
     }
 
+    /**
+     * Returns true if this FuzzySet is an AnalyticFuzzySet whose points are still
+     * exactly those generated from its curve; in other words, no points have been 
+     * added to or removed from the set since it was constructed.
+     *
+     * @return true if this FuzzySet can be treated as an analytic set
+     */
+
+    public boolean isAnalytic()
+    {
+        return(analytic && this instanceof AnalyticFuzzySet);
+    }
+
+    /**
+     * Makes sure that the points of this FuzzySet have been found. The points of 
+     * a FuzzySet are normally set when it is constructed, but a PowerFuzzySet only
+     * finds them when they are first needed. Every method that uses the points of
+     * a set (its own or another set's) calls this first.
+     */
+
+    final void ensurePoints()
+    {
+        if (set == null)
+            findPoints();
+    }
+
+    /**
+     * Finds the points of a FuzzySet whose points are found when they are first 
+     * needed (see ensurePoints). A FuzzySet always has its points, so there is
+     * nothing to do.
+     */
+
+    void findPoints()
+    {
+    }
+
+    /**
+     * Returns true if this FuzzySet has been frozen (see the freeze method).
+     *
+     * @return true if the points of this FuzzySet can no longer be changed
+     */
+
+    public boolean isFrozen()
+    {
+        return(frozen);
+    }
+
+    /**
+     * Makes this FuzzySet immutable. The set is simplified and from then on
+     * any attempt to add points to, remove points from or confine the set
+     * throws an UnsupportedOperationException. The minimum and maximum membership
+     * values, the support, the area and whether the set is normal or convex are 
+     * calculated once now rather than each time they are asked for. A frozen set
+     * can be shared by many FuzzyValues, rule bases and threads without being
+     * copied; use the FuzzySet(FuzzySet) constructor to get a copy that can be 
+     * changed.
+     * <p>
+     * The fuzzy sets of the terms of a FuzzyVariable are frozen when the terms
+     * are added to the variable (a set given to the variable that is not frozen 
+     * is copied first, so the caller's set can still be changed).
+     *
+     * @return this FuzzySet (now frozen)
+     */
+
+    public FuzzySet freeze()
+    {
+        ensurePoints();
+        if (frozen) return(this);
+        
+        simplifySet();
+        frozenMinY = getMinY();
+        frozenMaxY = getMaxY();
+        frozenSupportLowerBound = getSupportLowerBound();
+        frozenSupportUpperBound = getSupportUpperBound();
+        frozenNormal = isNormal();
+        frozenConvex = (numPoints == 0) || isConvex();
+        frozenXValueOrder = checkXValueOrder();
+        frozenYValueRange = checkYValueRange();
+        frozenArea = (numPoints == 0) ? 0.0 : getArea();
+        frozenInverse = MembershipInverse.create(this);
+        tool = null;
+        frozen = true;
+        
+        return(this);
+    }
+
+    /**
+     * Throws an UnsupportedOperationException if this FuzzySet has been frozen. 
+     * Called by the methods that change the points of the set.
+     */
+
+    protected void checkNotFrozen()
+    {
+        if (frozen)
+           throw new UnsupportedOperationException("A frozen FuzzySet cannot be changed");
+    }
+
 
     /**
      * Returns true if this FuzzySet is empty; in other words, if this FuzzySet does not
@@ -2490,6 +2806,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public boolean isEmpty()
     {
+        ensurePoints();
         return(numPoints==0);
     }
 
@@ -2505,7 +2822,9 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
 
     public boolean isNormal()
-    {   boolean bResult = false;
+    {   ensurePoints();
+        boolean bResult = false;
+        if (frozen) return(frozenNormal);
         for(int i=0; i<numPoints; i++)
         {   if (set[i].y > 1.0) return (false);
 			if (set[i].y == 1.0) bResult = true;
@@ -2523,6 +2842,9 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public boolean isConvex()
     {
+        ensurePoints();
+        if (frozen) return(frozenConvex);
+
         boolean negativeSlope = false;
         boolean convex = true;
         double previous = set[0].y;
@@ -2655,7 +2977,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public FuzzySet horizontalIntersection(double y) 
     {
-        return(horizontalIntersectionUnion(y, INTERSECTION));
+        FuzzySet result = horizontalIntersectionUnion(y, INTERSECTION);
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.operation(FuzzyAllocationCounters.CLIP, result);
+        return(result);
     }
 
     /**
@@ -2678,6 +3003,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     protected FuzzySet horizontalIntersectionUnion(double y, int op) 
     {
+        ensurePoints();
         FuzzySet resultSet;
 
         double previousY, currentY;
@@ -2733,7 +3059,21 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
 
     public boolean noIntersectionTest(FuzzySet b)
-    {   // do simple test to see if either set is completely below the other
+    {   ensurePoints();
+        b.ensurePoints();
+        return(countIntersectionTest(noIntersection(b)));
+    }
+
+    /**
+     * Does the work for noIntersectionTest(FuzzySet b) without counting the test.
+     */
+
+    private boolean noIntersection(FuzzySet b)
+    {   // the supports do not overlap (also true when either set is all zeros)
+        if (supportsDoNotIntersect(this, b, 0.0))
+            return true;
+        
+        // do simple test to see if either set is completely below the other
         // and if so return true since they definitely do NOT overlap
         if (numPoints > 1 && b.numPoints >1)
            if ( test(this, b) || test(b, this) )
@@ -2755,6 +3095,128 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
         return true; // set b all zeros .. no overlap
     }
 
+    /**
+     * Returns a tentative indication of whether or not the FuzzySets intersect
+     * with a membership value of at least <code>threshold</code>; that is, whether
+     * the maximum of the intersection of the sets is definitely less than the threshold 
+     * (or definitely 0.0 when the threshold is 0.0). Like noIntersectionTest(FuzzySet)
+     * a result of <code>true</code> can be taken for gospel but <code>false</code> only
+     * means that the sets may intersect at that level. 
+     * <p>
+     * The test only compares the support bounds and the maximum membership values of 
+     * the sets, which are calculated once for frozen sets, so it is much faster than 
+     * calculating the maximum of intersection and it rejects most of the pairs of 
+     * antecedents and inputs that will not match when rules are tested. 
+     * The number of tests done and the number that rejected the pair of sets 
+     * are counted (see getIntersectionTestCount and getIntersectionRejectionCount).
+     *
+     * @param b a FuzzySet to be tested against this FuzzySet
+     * @param threshold the membership value at which the sets must intersect
+     *
+     * @return  <code>true</code> if the FuzzySets definitely do not intersect at the 
+     *          threshold level; <code>false</code> if there is a possibility that they do
+     */
+
+    public boolean noIntersectionTest(FuzzySet b, double threshold)
+    {
+        return(noIntersectionTest(this, b, threshold));
+    }
+
+    /**
+     * Does the work for noIntersectionTest(FuzzySet b, double threshold) and
+     * counts the test.
+     */
+
+    private static boolean noIntersectionTest(FuzzySet a, FuzzySet b, double threshold)
+    {
+        a.ensurePoints();
+        b.ensurePoints();
+        return(countIntersectionTest(supportsDoNotIntersect(a, b, threshold)));
+    }
+
+    /**
+     * Compares the support bounds and the maximum membership values of the sets 
+     * (see noIntersectionTest(FuzzySet b, double threshold)).
+     */
+
+    private static boolean supportsDoNotIntersect(FuzzySet a, FuzzySet b, double threshold)
+    {
+        boolean noIntersection;
+        if (a.numPoints == 0 || b.numPoints == 0)
+            noIntersection = false; // leave empty sets to the full calculations
+        else
+        {   double aMaxY = a.getMaxY();
+            double bMaxY = b.getMaxY();
+            
+            if (threshold > 0.0)
+               noIntersection = aMaxY < threshold || bMaxY < threshold;
+            else
+               noIntersection = aMaxY <= 0.0 || bMaxY <= 0.0;
+               
+            noIntersection = noIntersection ||
+                             a.getSupportUpperBound() < b.getSupportLowerBound() || 
+                             b.getSupportUpperBound() < a.getSupportLowerBound();
+        }
+        return(noIntersection);
+    }
+
+    /**
+     * Counts a quick test for no intersection and, if it rejected the sets,
+     * the rejection.
+     *
+     * @param noIntersection the result of the test
+     * @return the result of the test
+     */
+
+    private static boolean countIntersectionTest(boolean noIntersection)
+    {
+        intersectionTests.increment();
+        if (noIntersection)
+            intersectionRejections.increment();
+        return(noIntersection);
+    }
+
+    /**
+     * Returns the number of times two FuzzySets have been quickly tested for no 
+     * intersection (see noIntersectionTest(FuzzySet b, double threshold)). The tests 
+     * are done by the noIntersectionTest methods, by maximumOfIntersection when both 
+     * sets are frozen, and so by the FuzzyValue fuzzyMatch method, the 
+     * testRuleMatching method of FuzzyRule and the rule executors. Each of these
+     * operations counts as at most one test.
+     *
+     * @return the number of tests done since the counts were last reset
+     */
+
+    public static long getIntersectionTestCount()
+    {
+        return(intersectionTests.sum());
+    }
+
+    /**
+     * Returns the number of the quick tests for no intersection that found the 
+     * FuzzySets did not intersect, avoiding the full calculations
+     * (see getIntersectionTestCount).
+     *
+     * @return the number of tests that rejected a pair of FuzzySets since the counts 
+     *         were last reset
+     */
+
+    public static long getIntersectionRejectionCount()
+    {
+        return(intersectionRejections.sum());
+    }
+
+    /**
+     * Sets the counts of the quick tests for no intersection back to zero
+     * (see getIntersectionTestCount).
+     */
+
+    public static void resetIntersectionTestCounts()
+    {
+        intersectionTests.reset();
+        intersectionRejections.reset();
+    }
+
     /**
      * Returns a tentative indication of whether or not the FuzzySets intersect.
      * If this method returns <code>true</code>, meaning that to its knowledge
@@ -2787,6 +3249,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     private boolean test(FuzzySet a, FuzzySet b)
     {
+        a.ensurePoints();
+        b.ensurePoints();
         boolean aLastPointZero = ( a.set[a.numPoints-1].y == 0 );
         boolean bFirstPointZero = ( b.set[0].y == 0 );
 
@@ -2954,6 +3418,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public void insertSetPoint(double X, double Y)
     {
+        ensurePoints();
+        checkNotFrozen();
         // make sure there is enuff room for this new point
         testArrayLength();
         // make sure membership values are >= 0.0
@@ -2962,18 +3428,26 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
         // when the set is empty just add the point
         if (numPoints == 0) 
             set[numPoints++] = new SetPoint(X, Y);
+        else if (set[numPoints-1].x <= X)
+            // goes after all existing points -- the most common case
+            set[numPoints++] = new SetPoint(X, Y);
         else
         {   // find the place to put the new point ...
-            // results in i == the index where the point should be inserted
-            int i=0;
+            // results in i == the index of the first point with x value > X,
+            // which is where the point should be inserted
+            int i=0, high=numPoints-1;
             
-            while ((i < numPoints) && (set[i].x <= X))
-                i++;
+            while (i < high)
+            {   int mid = (i + high) >>> 1;
+                if (set[mid].x <= X) i = mid + 1;
+                else                 high = mid;
+            }
 
             shiftArrayRight(i);
             set[i] = new SetPoint(X, Y);  
         }
         simplified = false; // may no longer be a simplfied Fuzzy Set
+        analytic = false;   // nor the points of an analytic curve
     }
 
     /**
@@ -3026,8 +3500,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public void appendSetPoint(double X, double Y)
     {
+        ensurePoints();
         int i;
 
+        checkNotFrozen();
         // make sure there is enuff room for this new point
         testArrayLength();
 		// make sure membership values are >= 0.0
@@ -3048,6 +3524,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
             set[i] = new SetPoint(X, Y);     
         }
         simplified = false; // may no longer be a simplfied Fuzzy Set
+        analytic = false;   // nor the points of an analytic curve
     }
 
 
@@ -3064,13 +3541,16 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
 
     public boolean removeSetPoint(SetPoint a)
     {
+        ensurePoints();
         int i;
         
+        checkNotFrozen();
         for (i=0; i<numPoints; i++)
             if ( set[i].equals(a) ) 
             {
                 shiftArrayLeft(i);
                 simplified = false; // may no longer be a simplfied Fuzzy Set
+                analytic = false;   // nor the points of an analytic curve
                 return(true);
             }
             
@@ -3130,6 +3610,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      */
 
     protected FuzzySet concat(FuzzySet a, FuzzySet b) {
+        a.ensurePoints();
+        b.ensurePoints();
         FuzzySet fs = new FuzzySet();
 
         //Note: the method appendSetPoint will insert 
@@ -3174,8 +3656,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
         {
             SetPoint[] newArray = new SetPoint[numPoints];
 
-            for(int i=0; i<numPoints; i++)
-                newArray[i] = set[i];
+            System.arraycopy(set, 0, newArray, 0, numPoints);
 
             set = newArray;
         }
@@ -3192,15 +3673,20 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     }
 
     /**
-     * Add space to the set array holding the SetPoints
+     * Add space to the set array holding the SetPoints. The space is doubled
+     * (or increased by INCREMENT for small sets) so that building a set one
+     * point at a time does not copy the array for every point added.
      */
 
     protected void incrementArrayLength()
     {
-        SetPoint[] newArray = new SetPoint[numPoints+INCREMENT];
+        int newLength = numPoints * 2;
+        if (newLength < numPoints + INCREMENT)
+            newLength = numPoints + INCREMENT;
 
-        for(int i=0; i < this.size(); i++)
-            newArray[i] = set[i];
+        SetPoint[] newArray = new SetPoint[newLength];
+
+        System.arraycopy(set, 0, newArray, 0, numPoints);
 
         set = newArray;
     }
@@ -3213,8 +3699,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     {
         SetPoint[] newArray = new SetPoint[(numPoints < newSize) ? newSize : numPoints];
 
-        for(int i=0; i < this.size(); i++)
-            newArray[i] = set[i];
+        System.arraycopy(set, 0, newArray, 0, numPoints);
 
         set = newArray;
     }
@@ -3234,10 +3719,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     {
         if (numPoints == 0) return;
         
-        for (int i=index; i<(numPoints-1); i++)
-            set[i]=set[i+1];
+        if (index < numPoints-1)
+            System.arraycopy(set, index+1, set, index, numPoints-1-index);
         
-        numPoints--;
+        set[--numPoints] = null;
     }
 
     /**
@@ -3258,8 +3743,8 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     {
         if (numPoints == 0) return;
         
-        for (int i=numPoints-1; i>=index; i--)
-            set[i+1]=set[i];
+        if (index < numPoints)
+            System.arraycopy(set, index, set, index+1, numPoints-index);
         
         numPoints++;
     }
@@ -3313,6 +3798,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     public double momentDefuzzify(double xMin, double xMax)
         throws InvalidDefuzzifyException, XValuesOutOfOrderException
     {
+        ensurePoints();
         double result = 0.0;
     	
         if (numPoints == 0)
@@ -3352,6 +3838,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     double[] calulateSumOfMomentsTimesAreasAndSumOfAreas(double xMin, double xMax)
         throws XValuesOutOfOrderException, InvalidDefuzzifyException
     {
+        ensurePoints();
     	int i;
         double localMoment, localArea;
         double currentx, currenty, nextx, nexty;
@@ -3532,6 +4019,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
    public double centerOfAreaDefuzzify(double xMin, double xMax)
        throws InvalidDefuzzifyException, XValuesOutOfOrderException
    {
+       ensurePoints();
    	int i, j;
     double area, previousArea, totalArea = 0.0, halfOfArea;
     double currentx, currenty, nextx, nexty;
@@ -3726,9 +4214,10 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
      }
      
      /* trapezoid */
+     /* x1 - (y1 - root)/m, written so that it does not cancel when the slope is tiny */
      double m = (y2-y1)/x2minusx1;
      root = Math.sqrt(y1*y1 + 2.0*m*area);
-     return (x1 - (y1 - root)/m);
+     return (x1 + 2.0*area/(y1 + root));
    }
 
    /**
@@ -3748,6 +4237,9 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     */   
   public double getArea()
   {
+      ensurePoints();
+	  if (frozen) return(frozenArea);
+	  
 	  double result = 0.0;
 	  
 	  try
@@ -3778,6 +4270,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
   public double getArea(double xMin, double xMax)
       throws XValuesOutOfOrderException
   {
+      ensurePoints();
   	int i, j;
    double area, previousArea, totalArea = 0.0;
    double currentx, currenty, nextx, nexty;
@@ -3873,6 +4366,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     public double maximumDefuzzify(double xMin, double xMax)
         throws XValuesOutOfOrderException, InvalidDefuzzifyException
     {
+        ensurePoints();
     	double maxYandSumOfXandNumberOfX[] =
     	   calculateMaxYandSumOfXandNumberOfX(xMin, xMax);
     	   
@@ -3907,6 +4401,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     double[] calculateMaxYandSumOfXandNumberOfX(double xMin, double xMax)
         throws XValuesOutOfOrderException
     {
+        ensurePoints();
         int i, count;
         double maxy, sum;
         FuzzySet fs = this;
@@ -4054,6 +4549,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     public double weightedAverageDefuzzify(double xMin, double xMax)
         throws XValuesOutOfOrderException, InvalidDefuzzifyException
     {
+        ensurePoints();
     	double sums[] = calulateSumOfWeightsAndSumOfWeightsTimesXvals(xMin, xMax);
         double sumOfWeights = sums[1];
         double sumOfWeightsTimesXvals = sums[0];
@@ -4086,6 +4582,7 @@ public class FuzzySet implements java.lang.Cloneable, Serializable
     double[] calulateSumOfWeightsAndSumOfWeightsTimesXvals(double xMin, double xMax)
         throws XValuesOutOfOrderException, InvalidDefuzzifyException
     {
+        ensurePoints();
         int i;
         double sumOfWeights = 0.0;
         double sumOfWeightsTimesXvals = 0.0;
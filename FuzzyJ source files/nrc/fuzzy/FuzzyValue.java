@@ -255,6 +255,8 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
     public FuzzyValue(FuzzyVariable fuzzyVariable, String linguisticExpression) 
         throws InvalidLinguisticExpressionException
     {
+        FuzzyFlightRecorderEvents.ExpressionParse event = new FuzzyFlightRecorderEvents.ExpressionParse();
+        event.begin();
         /* create a parsing object */
         FuzzyParser parser_obj = 
             new FuzzyParser(new FuzzyScanner(fuzzyVariable, linguisticExpression));
@@ -268,6 +270,7 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
         {
         	System.out.println("Parsing Linguistic Expression: " + linguisticExpression +
         	                   ", FuzzyVar = " + fuzzyVariable.toString());
+          recordParse(event, fuzzyVariable, linguisticExpression, 0);
           throw new InvalidLinguisticExpressionException(e + "\n Parsing Linguistic Expression: " + linguisticExpression);
         } 
         
@@ -276,6 +279,24 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
         this.fuzzyVariable = fuzzyVariable;
         // note: no need to check for X values outside of UOD in this one
         //       since fuzzy set created from fuzzy terms of the fuzzy variable
+        recordParse(event, fuzzyVariable, linguisticExpression, fuzzySet.size());
+    }
+
+    /**
+     * Record an ExpressionParse event for the parse of a linguistic expression, 
+     * if the flight recorder is recording them.
+     */
+    private static void recordParse( FuzzyFlightRecorderEvents.ExpressionParse event,
+                                     FuzzyVariable fuzzyVariable, String linguisticExpression,
+                                     int points )
+    {
+        event.end();
+        if (event.shouldCommit())
+        {   event.variable = fuzzyVariable.getName();
+            event.expression = linguisticExpression;
+            event.points = points;
+            event.commit();
+        }
     }
 
     /**
@@ -298,7 +319,10 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
     {
         if (confineFuzzySetsToUOD)
            try 
-           {  fuzzySet.confineToXBounds(fuzzyVariable.getMinUOD(), fuzzyVariable.getMaxUOD());
+           {  // a frozen set may be shared so confine a copy of it
+              if (fuzzySet.isFrozen() && isAnyXValueOutsideUOD(fuzzySet, fuzzyVariable))
+                 fuzzySet = new FuzzySet(fuzzySet);
+              fuzzySet.confineToXBounds(fuzzyVariable.getMinUOD(), fuzzyVariable.getMaxUOD());
            }
            catch (XValuesOutOfOrderException e)
            { // can't happen since min and max UOD already checked
@@ -311,7 +335,9 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
     }
     
     /**
-     * Constructs a new FuzzyValue object from an existing FuzzyValue. This is basically a copy.
+     * Constructs a new FuzzyValue object from an existing FuzzyValue. This is basically a copy,
+     * although a frozen FuzzySet (see FuzzySet.freeze) is shared rather than copied since it
+     * cannot be changed.
      *
      * @param fuzzyValue         the FuzzyValue to copy 
      *                              range of the universe of discourse
@@ -321,7 +347,8 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
     {
         this.linguisticExpression = fuzzyValue.linguisticExpression;
         this.fuzzyVariable = fuzzyValue.fuzzyVariable;
-        this.fuzzySet = new FuzzySet(fuzzyValue.fuzzySet);
+        this.fuzzySet = fuzzyValue.fuzzySet.isFrozen() ? fuzzyValue.fuzzySet
+                                                       : new FuzzySet(fuzzyValue.fuzzySet);
     }
     
     /**
@@ -627,7 +654,10 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
     {
         if (confineFuzzySetsToUOD) 
            try 
-           {  fuzzySet.confineToXBounds(fuzzyVariable.getMinUOD(), fuzzyVariable.getMaxUOD());
+           {  // a frozen set may be shared so confine a copy of it
+              if (fuzzySet.isFrozen() && isAnyXValueOutsideUOD(fuzzySet, fuzzyVariable))
+                 fuzzySet = new FuzzySet(fuzzySet);
+              fuzzySet.confineToXBounds(fuzzyVariable.getMinUOD(), fuzzyVariable.getMaxUOD());
            }
            catch (XValuesOutOfOrderException e)
            { // can't happen since min and max UOD already checked
@@ -1111,7 +1141,13 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
     public double momentDefuzzify()
         throws InvalidDefuzzifyException, XValuesOutOfOrderException
     {
-        return fuzzySet.momentDefuzzify(getMinUOD(), getMaxUOD());
+        FuzzyInferenceListener listener = FuzzyRule.inferenceListener;
+        if (listener == null)
+            return fuzzySet.momentDefuzzify(getMinUOD(), getMaxUOD());
+        long start = System.nanoTime();
+        double result = fuzzySet.momentDefuzzify(getMinUOD(), getMaxUOD());
+        listener.defuzzified(this, result, System.nanoTime() - start);
+        return result;
     }
 
     /**
@@ -1137,7 +1173,13 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
    public double centerOfAreaDefuzzify()
        throws InvalidDefuzzifyException, XValuesOutOfOrderException
    {
-    return fuzzySet.centerOfAreaDefuzzify(getMinUOD(), getMaxUOD());
+    FuzzyInferenceListener listener = FuzzyRule.inferenceListener;
+    if (listener == null)
+        return fuzzySet.centerOfAreaDefuzzify(getMinUOD(), getMaxUOD());
+    long start = System.nanoTime();
+    double result = fuzzySet.centerOfAreaDefuzzify(getMinUOD(), getMaxUOD());
+    listener.defuzzified(this, result, System.nanoTime() - start);
+    return result;
    }
 
 
@@ -1203,7 +1245,13 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
     public double weightedAverageDefuzzify()
         throws XValuesOutOfOrderException, InvalidDefuzzifyException
     {
-        return fuzzySet.weightedAverageDefuzzify(getMinUOD(), getMaxUOD());
+        FuzzyInferenceListener listener = FuzzyRule.inferenceListener;
+        if (listener == null)
+            return fuzzySet.weightedAverageDefuzzify(getMinUOD(), getMaxUOD());
+        long start = System.nanoTime();
+        double result = fuzzySet.weightedAverageDefuzzify(getMinUOD(), getMaxUOD());
+        listener.defuzzified(this, result, System.nanoTime() - start);
+        return result;
     }
 
     /**
@@ -1240,7 +1288,13 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
     public double maximumDefuzzify()
         throws XValuesOutOfOrderException, InvalidDefuzzifyException
     {
-        return fuzzySet.maximumDefuzzify(getMinUOD(), getMaxUOD());
+        FuzzyInferenceListener listener = FuzzyRule.inferenceListener;
+        if (listener == null)
+            return fuzzySet.maximumDefuzzify(getMinUOD(), getMaxUOD());
+        long start = System.nanoTime();
+        double result = fuzzySet.maximumDefuzzify(getMinUOD(), getMaxUOD());
+        listener.defuzzified(this, result, System.nanoTime() - start);
+        return result;
     }
 
     /**
@@ -1326,13 +1380,14 @@ public class FuzzyValue implements java.lang.Cloneable, Serializable
             threshold = 0.0;
 
         // fast test first ... the test returns true if the sets definitely DO NOT intersect
-        // and we only do this if the threshold is 0.0 (otherwise we need to get the
-        // value of the maximum of the intersections) ... BUT this is a very common
-        // case
-        if (threshold == 0.0 && getFuzzySet().noIntersectionTest(otherValue.getFuzzySet()) )
+        // at the threshold level. It only compares the support bounds and the maximum 
+        // membership values of the sets (otherwise we need to get the value of the
+        // maximum of the intersections) ... BUT most pairs that don't match fail it
+        if (getFuzzySet().noIntersectionTest(otherValue.getFuzzySet(), threshold) )
             return false;
 
-        double maxmin = maximumOfIntersection(otherValue);
+        // the sets have passed the test so it is not made again
+        double maxmin = fuzzySet.maximumOfIntersection(otherValue.fuzzySet, true);
         
         if (threshold == 0.0)
             return( maxmin > 0.0 ? true : false );
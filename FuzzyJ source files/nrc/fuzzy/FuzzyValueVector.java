@@ -84,6 +84,8 @@ public class FuzzyValueVector implements Serializable
      */
 
     public FuzzyValueVector(){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.fuzzyValueVectorCreated();
         increment = 5;
 
         fuzzyValues = new FuzzyValue[INITIAL_CAPACITY];
@@ -101,6 +103,8 @@ public class FuzzyValueVector implements Serializable
      */
 
     public FuzzyValueVector(int initialCapacity){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.fuzzyValueVectorCreated();
         increment = 5;
 
         fuzzyValues = new FuzzyValue[initialCapacity];
@@ -119,6 +123,8 @@ public class FuzzyValueVector implements Serializable
      */
 
     public FuzzyValueVector(int initialCapacity, int increment){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.fuzzyValueVectorCreated();
         this.increment = increment;
 
         fuzzyValues = new FuzzyValue[initialCapacity];
@@ -143,6 +149,8 @@ public class FuzzyValueVector implements Serializable
      */
 
     public FuzzyValueVector(FuzzyValue[] FuzzyValueArray, int length){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.fuzzyValueVectorCreated();
         increment = 5;
 
         fuzzyValues = new FuzzyValue[length];
@@ -90,6 +90,12 @@ import java.io.*;
 
 public class FuzzyVariable  implements Serializable
 {
+    /**
+     * The serialVersionUID of the original form of the class, so that FuzzyVariables
+     * serialized by earlier versions can still be read (see readObject).
+     */
+    private static final long serialVersionUID = 4853939937038226623L;
+
     /** The string name of the fuzzy variable */
     String name;
     /** The units (such as Degrees C) for the varible */
@@ -98,6 +104,10 @@ public class FuzzyVariable  implements Serializable
     private double[] UOD = new double[2];
     /** The fuzzy terms described as FuzzyValues are stored in this hash table */
     private Hashtable fuzzyTerms;
+    /** The names of the terms in the order they were added (the order used by fuzzify) */
+    private Vector termNames = new Vector();
+    /** The breakpoint table used by fuzzify; built when first needed after the terms change */
+    private transient FuzzificationTable fuzzificationTable;
 
     /**
      * Create a FuzzyVariable (with no Fuzzy Terms) specifying units
@@ -263,7 +273,10 @@ public class FuzzyVariable  implements Serializable
      */
     public FuzzyValue removeTerm(String term)
     {
-        return (FuzzyValue)fuzzyTerms.remove(term.toLowerCase());
+        String lcTerm = term.toLowerCase();
+        termNames.removeElement(lcTerm);
+        fuzzificationTable = null;
+        return (FuzzyValue)fuzzyTerms.remove(lcTerm);
     }
 
     /**
@@ -273,6 +286,8 @@ public class FuzzyVariable  implements Serializable
     public void removeTerms()
     {
         fuzzyTerms.clear();
+        termNames.removeAllElements();
+        fuzzificationTable = null;
     }
 
 
@@ -306,7 +321,13 @@ public class FuzzyVariable  implements Serializable
             
             if (fuzzyTerms.get(lcTerm) != null)
                fuzzyTerms.remove(lcTerm);
+            else
+               termNames.addElement(lcTerm); // a replaced term keeps its place
+            fuzzificationTable = null;
 
+            // the term's set is shared by the FuzzyValues built from it so
+            // it must not change (addTerm copies a set given by the caller)
+            fval.getFuzzySet().freeze();
             fuzzyTerms.put(lcTerm, fval);
             fval.setLinguisticExpression(term);
         }
@@ -319,14 +340,17 @@ public class FuzzyVariable  implements Serializable
      * that term with this new one.
      *
      * @param term the name of the term being added
-     * @param fset the FuzzySet that represents the term
+     * @param fset the FuzzySet that represents the term; the term keeps a frozen
+     *        copy of it (or the set itself if it is already frozen), so the set
+     *        can still be changed by the caller
      * @exception XValueOutsideUODException
      */
     public FuzzyValue addTerm( String term, FuzzySet fset )
         throws XValueOutsideUODException, InvalidFuzzyVariableTermNameException
 
     {
-        FuzzyValue fval = new FuzzyValue(this, fset);         
+        // the term's set is frozen, so freeze a copy rather than the caller's set
+        FuzzyValue fval = new FuzzyValue(this, fset.isFrozen() ? fset : fset.privateCopy());         
         addTheTerm(term, fval);
 
         return fval;
@@ -404,6 +428,102 @@ public class FuzzyVariable  implements Serializable
         return fval;
     }
     
+    /**
+     * Return the names of the terms of the fuzzy variable in the order that
+     * they were added to the variable. This is the order of the membership
+     * values calculated by the fuzzify method. A term that is replaced by 
+     * adding a new term with the same name keeps its place.
+     *
+     * @return an array of the (lower case) names of the terms of the FuzzyVariable
+     */
+    public String[] getTermNames()
+    {
+        String[] names = new String[termNames.size()];
+        termNames.copyInto(names);
+        return names;
+    }
+
+    /**
+     * Calculate the membership value of a crisp x value in each of the terms of 
+     * the fuzzy variable. The result is the same as finding the maximum of the
+     * intersection of each term with a singleton fuzzy set at x (for example 
+     * <code>new TriangleFuzzySet(x, x, x)</code>), or the getMembership value
+     * of each term's fuzzy set at x, but is much faster since no fuzzy sets 
+     * are created or intersected. 
+     * <p>
+     * The x values of the points of all of the terms' fuzzy sets are merged into one sorted
+     * table of breakpoints when fuzzify is first called (and again after the terms
+     * are changed). Between two breakpoints every term's membership
+     * function is a straight line, so the table holds just the terms
+     * that are not zero between each pair of breakpoints, with the line for each.
+     * A binary search of the breakpoints finds x and then only those terms need
+     * to be calculated. 
+     * <p>
+     * When the terms form a Ruspini partition (the membership values of the terms
+     * always add up to 1, with at most two of them not zero at any x) and the 
+     * breakpoints are evenly spaced, as is usual for the NL, NM, ... PM, PL terms 
+     * of a controller, the breakpoints do not need to be searched and at 
+     * most two membership values are calculated. 
+     * See isRuspiniPartition.
+     *
+     * @param x the crisp value to fuzzify
+     * @param out the array to hold the membership values, one for each term in 
+     *        the order given by getTermNames; it must have at least as many 
+     *        elements as there are terms
+     * @exception XValueOutsideUODException if x is outside the universe of discourse
+     */
+    public void fuzzify(double x, double[] out)
+        throws XValueOutsideUODException
+    {
+        if (x < UOD[0] || x > UOD[1])
+           throw new XValueOutsideUODException("Value to fuzzify, " + x + 
+                                               ", is outside the Universe of Discourse");
+        getFuzzificationTable().fuzzify(x, out);
+    }
+
+    /**
+     * Returns true if the terms of the fuzzy variable form a Ruspini partition of 
+     * the universe of discourse; that is, at any x value at most two of the terms have 
+     * membership values that are not zero and the membership values of all of the
+     * terms add up to 1.0. The fuzzify method is fastest for such variables.
+     *
+     * @return true if the terms form a Ruspini partition
+     */
+    public boolean isRuspiniPartition()
+    {
+        return getFuzzificationTable().ruspini;
+    }
+
+    /**
+     * Returns the table used by fuzzify, building it if the terms have
+     * changed since it was last built.
+     */
+    FuzzificationTable getFuzzificationTable()
+    {
+        // the table never changes once built so it is safe to share it 
+        // without synchronization ... at worst two threads both build one
+        FuzzificationTable table = fuzzificationTable;
+        if (table == null)
+        {
+            FuzzySet[] sets = new FuzzySet[termNames.size()];
+            for (int i=0; i<sets.length; i++)
+                sets[i] = ((FuzzyValue)fuzzyTerms.get(termNames.elementAt(i))).getFuzzySet();
+            table = new FuzzificationTable(sets);
+            fuzzificationTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Sets the table used by fuzzify to one built earlier for the same terms
+     * (such as one read from a FuzzyRuleBaseSnapshot). It is forgotten, as a
+     * table that was built would be, if the terms are changed.
+     */
+    void setFuzzificationTable(FuzzificationTable table)
+    {
+        fuzzificationTable = table;
+    }
+
     /**
      * Returns the String representation of the FuzzyVariable. 
      *
@@ -441,6 +561,23 @@ public class FuzzyVariable  implements Serializable
         return(s);
     }    
 
-    
+    /**
+     * Restores a FuzzyVariable from a stream. A FuzzyVariable serialized before
+     * the order of its terms was kept has no termNames, so the terms are given
+     * the order of the term hashtable. The sets of the terms are frozen again
+     * since a FuzzySet is not frozen when it is read from a stream (see addTheTerm).
+     */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        if (termNames == null)
+        {   termNames = new Vector();
+            for (Enumeration e = fuzzyTerms.keys(); e.hasMoreElements();)
+                termNames.addElement(e.nextElement());
+        }
+        for (Enumeration e = fuzzyTerms.elements(); e.hasMoreElements();)
+            ((FuzzyValue)e.nextElement()).getFuzzySet().freeze();
+    }
 
 }
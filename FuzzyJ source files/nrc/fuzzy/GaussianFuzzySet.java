@@ -57,13 +57,29 @@ import java.io.*;
  * @see LRFuzzySet
  * @see leftGaussianFunction
  * @see rightGaussianFunction
+ * @see AnalyticFuzzySet
  *
  */
 
-public class GaussianFuzzySet extends LRFuzzySet implements Serializable
+public class GaussianFuzzySet extends LRFuzzySet implements AnalyticFuzzySet, Serializable
 {    
+    /**
+     * The serialVersionUID of the class before it became an AnalyticFuzzySet. Sets
+     * serialized by earlier versions have no curve parameters, so they are read
+     * as not analytic and the modifiers use their points.
+     */
+    private static final long serialVersionUID = 4653298610092977975L;
+
     private static LeftGaussianFunction lgf = new LeftGaussianFunction();
     private static RightGaussianFunction rgf = new RightGaussianFunction();
+
+    /*
+     * The parameters of the curve, remembered so that the exact curve can be
+     * used by the modifiers (see AnalyticFuzzySet). A curvePoints value of 0
+     * means that the default number of points of the gaussian functions was used.
+     */
+    private double leftCenter, leftSigma, rightCenter, rightSigma;
+    private int curvePoints;
     
 
     /**
@@ -78,6 +94,7 @@ public class GaussianFuzzySet extends LRFuzzySet implements Serializable
     public GaussianFuzzySet(double center, double standardDeviation) throws XValuesOutOfOrderException 
     {
         super(center - standardDeviation*4.0, center, center, center + standardDeviation*4.0, lgf, rgf);
+        setCurve(center, standardDeviation, center, standardDeviation, 0);
     }
 
 	/**
@@ -93,6 +110,7 @@ public class GaussianFuzzySet extends LRFuzzySet implements Serializable
 	{
 		super(center - standardDeviation*4.0, center, center, center + standardDeviation*4.0,
 			  new LeftGaussianFunction(numPoints), new RightGaussianFunction(numPoints));
+		setCurve(center, standardDeviation, center, standardDeviation, numPoints);
 	}
 
 	/**
@@ -114,6 +132,7 @@ public class GaussianFuzzySet extends LRFuzzySet implements Serializable
 	{
 		super(leftCenter - leftStandardDeviation*4.0, leftCenter, rightCenter, rightCenter + rightStandardDeviation*4.0,
 			  new LeftGaussianFunction(numPoints), new RightGaussianFunction(numPoints));
+		setCurve(leftCenter, leftStandardDeviation, rightCenter, rightStandardDeviation, numPoints);
 	}
 
 	/**
@@ -135,5 +154,84 @@ public class GaussianFuzzySet extends LRFuzzySet implements Serializable
 		super(leftCenter - leftStandardDeviation*4.0, leftCenter, 
 		      rightCenter, rightCenter + rightStandardDeviation*4.0,
 			  lgf, rgf);
+		setCurve(leftCenter, leftStandardDeviation, rightCenter, rightStandardDeviation, 0);
+	}
+
+	/**
+	 * Records the parameters of the gaussian curve and marks the FuzzySet 
+	 * as analytic.
+	 */
+	private void setCurve(double leftCenter, double leftStandardDeviation,
+						  double rightCenter, double rightStandardDeviation, int numPoints)
+	{
+		this.leftCenter = leftCenter;
+		this.leftSigma = leftStandardDeviation;
+		this.rightCenter = rightCenter;
+		this.rightSigma = rightStandardDeviation;
+		this.curvePoints = numPoints;
+		analytic = true;
+	}
+
+	/**
+	 * Returns the membership value of the gaussian curve at the specified x value.
+	 * As with the points of the FuzzySet, the curve is 0 beyond 4 standard 
+	 * deviations from the centre(s) and 1 between the left and right centres.
+	 *
+	 * @param x the x value at which to find the membership value of the curve
+	 * @return the membership value of the curve at x
+	 */
+	public double getAnalyticMembership(double x)
+	{
+		return(gaussianMembership(x, leftCenter, leftSigma, rightCenter, rightSigma));
+	}
+
+	/**
+	 * Returns a new FuzzySet with the membership values of the gaussian curve
+	 * raised to the specified power. Raising a gaussian with standard deviation sigma
+	 * to the power p gives a gaussian with standard deviation sigma/sqrt(p), so for
+	 * a power of 1 or more a new GaussianFuzzySet with the same number of points
+	 * is returned. Powers less than 1 widen the curve beyond the x range of this
+	 * set, so in that case a PowerFuzzySet confined to the same x range is returned.
+	 *
+	 * @param exponent the power (exponent) to which the membership values are raised
+	 * @return a new FuzzySet representing this FuzzySet raised to the power
+	 */
+	public FuzzySet power(double exponent)
+	{
+		if (exponent < 1.0)
+			return(new PowerFuzzySet(this, exponent));
+		
+		double scale = 1.0/Math.sqrt(exponent);
+		try
+		{ if (curvePoints == 0)
+			  return(new GaussianFuzzySet(leftCenter, leftSigma*scale, 
+										  rightCenter, rightSigma*scale));
+		  else
+			  return(new GaussianFuzzySet(leftCenter, leftSigma*scale, 
+										  rightCenter, rightSigma*scale, curvePoints));
+		}
+		catch (XValuesOutOfOrderException e)
+		{ // cannot happen since a narrower curve keeps the same x order
+		  return(new PowerFuzzySet(this, exponent));
+		}
+	}
+
+	/**
+	 * Calculates the membership value of a gaussian curve with possibly different
+	 * left and right centres and standard deviations. The curve is 0 at and beyond 4 
+	 * standard deviations from the centres, as it is for the gaussian fuzzy sets.
+	 */
+	static double gaussianMembership(double x, double leftCenter, double leftSigma,
+									 double rightCenter, double rightSigma)
+	{
+		if (x < leftCenter)
+		{	if (x <= leftCenter - 4.0*leftSigma) return(0.0);
+			return(Math.exp(-((x-leftCenter)*(x-leftCenter))/(2.0*leftSigma*leftSigma)));
+		}
+		if (x > rightCenter)
+		{	if (x >= rightCenter + 4.0*rightSigma) return(0.0);
+			return(Math.exp(-((x-rightCenter)*(x-rightCenter))/(2.0*rightSigma*rightSigma)));
+		}
+		return(1.0);
 	}
 }
@@ -0,0 +1,498 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+package nrc.fuzzy;
+
+/**
+ * An IncrementalFuzzyInference fires the rules of a FuzzyRuleBatch once per control
+ * cycle for a single record of crisp inputs, redoing only the work that depends on 
+ * the inputs that changed since the previous cycle. In a process controller most 
+ * inputs hold the same value for many cycles, so most of the work of firing the 
+ * rules can be skipped:
+ * <ul>
+ * <li> the membership values of an input in its antecedent sets are only found again
+ *      when the input changed;
+ * <li> the DOF (degree of fulfillment) of a rule is only calculated again when 
+ *      one of its antecedents is for an input that changed;
+ * <li> the output of an output variable is only defuzzified again when the DOF of a 
+ *      rule with a conclusion for it changed. Its union is patched when the DOFs
+ *      that changed all grew (the larger outputs of those rules are added to the 
+ *      union kept from the previous cycle) and is formed again from the DOFs of all 
+ *      the rules otherwise. For the outputs of Tsukamoto rules the x value of a 
+ *      conclusion is only found again when the DOF of its rule changed.
+ * </ul>
+ * The outputs are the same as those the FuzzyRuleBatch would produce for the record.
+ * After each cycle the work that was done and skipped is reported by the methods 
+ * getInputsChanged, getMembershipsSkipped, getRulesSkipped, getOutputsSkipped, etc.
+ * and is summarized by getCycleReport. 
+ * <p>
+ * If the match threshold (FuzzyValue.setMatchThreshold) changes between cycles all of 
+ * the rules are fired again. An IncrementalFuzzyInference keeps the state of the 
+ * previous cycle so it must only be used by one thread at a time. It only reads the
+ * tables of its FuzzyRuleBatch, so the controllers of many units can each have an 
+ * IncrementalFuzzyInference for the same FuzzyRuleBatch and fire the rules on 
+ * different threads at the same time.
+ * <p>
+ * For example,
+ * <pre><code>
+ *    FuzzyRuleBatch rules = new FuzzyRuleBatch(controllerRules, 
+ *                                              new FuzzyVariable[] {tempFVar, pressureFVar, flowFVar},
+ *                                              new FuzzyVariable[] {valveFVar});
+ *    IncrementalFuzzyInference controller = new IncrementalFuzzyInference(rules);
+ *    double[] inputs = new double[3];
+ *    double[] outputs = new double[1];
+ *    while (running)
+ *    {  ... read the sensors into inputs
+ *       controller.execute(inputs, outputs);
+ *       ... set the valve from outputs[0]
+ *    }
+ * </code></pre>
+ *
+ * @see FuzzyRuleBatch
+ */
+public class IncrementalFuzzyInference
+{
+    private FuzzyRuleBatch rules;
+    private int numInputs;
+    private int numOutputs;
+
+    /** the rules with an antecedent for each input: [input][rule] */
+    private int[][] inputRules;
+    /** the outputs and conclusions (in the FuzzyRuleBatch) of each rule: [rule][conclusion] */
+    private int[][] ruleOutput;
+    private int[][] ruleConclusion;
+
+    // The state kept from the previous cycle
+    private boolean initialized;
+    private double threshold;
+    private double[] inputValues;
+    /** the membership values of each input in its antecedent sets, as a block of 
+     *  one record for FuzzyRuleBatch.calculateDOFs: [input][set][0] */
+    private double[][][] memberships;
+    /** where each input was last found in its table (see FuzzificationTable.fuzzify) */
+    private int[] locations;
+    private double[] dof;
+    private double[] ruleDOF;
+    /** the values passed to an OTHER AntecedentCombineOperator: [rule][antecedent] */
+    private double[][] matchValues;
+    private FuzzyRuleBatch.Union[] unions;
+    /** the DOF and DOF times x of each Tsukamoto conclusion that adds to its output */
+    private double[][] conclusionWeight;
+    private double[][] conclusionWeightedX;
+    private double[] outputValues;
+
+    // The work of the current cycle
+    /** the cycle in which each rule was marked to be calculated, each output to be 
+     *  patched and each output to be formed again */
+    private int cycle;
+    private int[] ruleMarked;
+    private int[] outputPatched;
+    private int[] outputRebuilt;
+    /** the rules whose DOF changed in this cycle and their previous DOFs */
+    private int[] changedRules;
+    private double[] previousDOF;
+    private int numChangedRules;
+
+    // The report of the last cycle
+    private int inputsChanged;
+    private int membershipsCalculated;
+    private int membershipsSkipped;
+    private int rulesCalculated;
+    private int rulesSkipped;
+    private int rulesChanged;
+    private int outputsPatched;
+    private int outputsRebuilt;
+    private int outputsSkipped;
+
+    /**
+     * Create an IncrementalFuzzyInference for a set of rules. The first cycle 
+     * fires all of the rules.
+     *
+     * @param rules the rules to fire
+     */
+    public IncrementalFuzzyInference(FuzzyRuleBatch rules)
+    {
+        this.rules = rules;
+        numInputs = rules.inputVariables.length;
+        numOutputs = rules.outputVariables.length;
+        int numRules = rules.numRules;
+
+        int[] count = new int[numInputs];
+        boolean[] seen = new boolean[numInputs];
+        for (int r=0; r<numRules; r++)
+        {   int[] input = rules.antecedentInput[r];
+            for (int a=0; a<input.length; a++)
+                if (!seen[input[a]])
+                {   seen[input[a]] = true;
+                    count[input[a]]++;
+                }
+            for (int a=0; a<input.length; a++)
+                seen[input[a]] = false;
+        }
+        inputRules = new int[numInputs][];
+        for (int v=0; v<numInputs; v++)
+        {   inputRules[v] = new int[count[v]];
+            count[v] = 0;
+        }
+        for (int r=0; r<numRules; r++)
+        {   int[] input = rules.antecedentInput[r];
+            for (int a=0; a<input.length; a++)
+                if (!seen[input[a]])
+                {   seen[input[a]] = true;
+                    inputRules[input[a]][count[input[a]]++] = r;
+                }
+            for (int a=0; a<input.length; a++)
+                seen[input[a]] = false;
+        }
+
+        int[] numConclusions = new int[numRules];
+        for (int o=0; o<numOutputs; o++)
+            for (int k=0; k<rules.conclusionRule[o].length; k++)
+                numConclusions[rules.conclusionRule[o][k]]++;
+        ruleOutput = new int[numRules][];
+        ruleConclusion = new int[numRules][];
+        for (int r=0; r<numRules; r++)
+        {   ruleOutput[r] = new int[numConclusions[r]];
+            ruleConclusion[r] = new int[numConclusions[r]];
+            numConclusions[r] = 0;
+        }
+        for (int o=0; o<numOutputs; o++)
+            for (int k=0; k<rules.conclusionRule[o].length; k++)
+            {   int r = rules.conclusionRule[o][k];
+                ruleOutput[r][numConclusions[r]] = o;
+                ruleConclusion[r][numConclusions[r]++] = k;
+            }
+
+        inputValues = new double[numInputs];
+        memberships = new double[numInputs][][];
+        for (int v=0; v<numInputs; v++)
+            memberships[v] = new double[rules.inputSets[v].length][1];
+        locations = new int[numInputs];
+        java.util.Arrays.fill(locations, FuzzificationTable.UNKNOWN_LOCATION);
+        dof = new double[numRules];
+        ruleDOF = new double[1];
+        matchValues = new double[numRules][];
+        for (int r=0; r<numRules; r++)
+            matchValues[r] = new double[rules.antecedentInput[r].length];
+        unions = new FuzzyRuleBatch.Union[numOutputs];
+        conclusionWeight = new double[numOutputs][];
+        conclusionWeightedX = new double[numOutputs][];
+        for (int o=0; o<numOutputs; o++)
+        {   unions[o] = rules.new Union();
+            if (rules.weightedAverageOutput[o])
+            {   conclusionWeight[o] = new double[rules.conclusionRule[o].length];
+                conclusionWeightedX[o] = new double[rules.conclusionRule[o].length];
+            }
+        }
+        outputValues = new double[numOutputs];
+        ruleMarked = new int[numRules];
+        outputPatched = new int[numOutputs];
+        outputRebuilt = new int[numOutputs];
+        changedRules = new int[numRules];
+        previousDOF = new double[numRules];
+    }
+
+    /**
+     * Returns the FuzzyVariables of the inputs, in order.
+     *
+     * @return an array with the input FuzzyVariables
+     */
+    public FuzzyVariable[] getInputVariables()
+    {
+        return rules.getInputVariables();
+    }
+
+    /**
+     * Returns the FuzzyVariables of the outputs, in order.
+     *
+     * @return an array with the output FuzzyVariables
+     */
+    public FuzzyVariable[] getOutputVariables()
+    {
+        return rules.getOutputVariables();
+    }
+
+    /**
+     * Forget the previous cycle so that the next cycle fires all of the rules.
+     */
+    public void reset()
+    {
+        initialized = false;
+    }
+
+    /**
+     * Fire the rules for the inputs of this cycle, redoing only the work that depends 
+     * on the inputs that changed since the previous cycle. An output is Double.NaN
+     * if no rule with a conclusion for it fires (or the union of their outputs has 
+     * no area). If an input is outside the universe of discourse of its variable 
+     * nothing is changed and the next cycle is compared with the cycle before.
+     *
+     * @param inputs the crisp value of each input variable
+     * @param outputs an array to hold the defuzzified value of each output variable
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     */
+    public void execute(double[] inputs, double[] outputs)
+        throws XValueOutsideUODException
+    {
+        FuzzyFlightRecorderEvents.InferenceCycle event = new FuzzyFlightRecorderEvents.InferenceCycle();
+        event.begin();
+        for (int v=0; v<numInputs; v++)
+        {   double x = inputs[v];
+            if (!(x >= rules.inputVariables[v].getMinUOD() && x <= rules.inputVariables[v].getMaxUOD()))
+               throw new XValueOutsideUODException("Input value " + x + 
+                                                   " is outside the Universe of Discourse of " + 
+                                                   rules.inputVariables[v].getName());
+        }
+
+        double t = FuzzyValue.getMatchThreshold();
+        boolean all = !initialized || t != threshold;
+        threshold = t;
+        initialized = true;
+        if (++cycle == Integer.MAX_VALUE)
+        {   cycle = 1;
+            java.util.Arrays.fill(ruleMarked, 0);
+            java.util.Arrays.fill(outputPatched, 0);
+            java.util.Arrays.fill(outputRebuilt, 0);
+        }
+        inputsChanged = membershipsCalculated = membershipsSkipped = 0;
+        rulesCalculated = rulesSkipped = rulesChanged = 0;
+        outputsPatched = outputsRebuilt = outputsSkipped = 0;
+        numChangedRules = 0;
+
+        // fuzzify the inputs that changed and mark the rules that depend on them
+        for (int v=0; v<numInputs; v++)
+        {   if (!all && inputs[v] == inputValues[v])
+            {   membershipsSkipped += memberships[v].length;
+                continue;
+            }
+            inputValues[v] = inputs[v];
+            inputsChanged++;
+            locations[v] = rules.inputTables[v].fuzzify(inputs[v], memberships[v], 0, locations[v]);
+            membershipsCalculated += memberships[v].length;
+            int[] dependents = inputRules[v];
+            for (int i=0; i<dependents.length; i++)
+                ruleMarked[dependents[i]] = cycle;
+        }
+
+        // calculate the DOFs of the marked rules and mark the outputs that they change
+        for (int r=0; r<rules.numRules; r++)
+        {   if (!all && ruleMarked[r] != cycle)
+            {   rulesSkipped++;
+                continue;
+            }
+            rulesCalculated++;
+            double h = calculateDOF(r);
+            if (all || h != dof[r])
+            {   double previous = all ? 0.0 : dof[r];
+                dof[r] = h;
+                changedRules[numChangedRules] = r;
+                previousDOF[numChangedRules++] = previous;
+                rulesChanged++;
+                int[] output = ruleOutput[r];
+                for (int c=0; c<output.length; c++)
+                {   int o = output[c];
+                    if (all || h < previous || rules.weightedAverageOutput[o])
+                        outputRebuilt[o] = cycle;
+                    else
+                        outputPatched[o] = cycle;
+                }
+            }
+        }
+
+        // patch the unions that only grew; for the Tsukamoto outputs find the x values 
+        // of the conclusions whose DOF changed
+        for (int i=0; i<numChangedRules; i++)
+        {   int r = changedRules[i];
+            int[] output = ruleOutput[r];
+            int[] conclusion = ruleConclusion[r];
+            for (int c=0; c<output.length; c++)
+            {   int o = output[c];
+                if (rules.weightedAverageOutput[o])
+                {   double h = dof[r];
+                    double x = (h > 0.0) ? rules.conclusionX(o, conclusion[c], h) : Double.NaN;
+                    if (x == x) // not NaN
+                    {   conclusionWeight[o][conclusion[c]] = h;
+                        conclusionWeightedX[o][conclusion[c]] = h*x;
+                    }
+                    else
+                    {   conclusionWeight[o][conclusion[c]] = 0.0;
+                        conclusionWeightedX[o][conclusion[c]] = 0.0;
+                    }
+                }
+                else if (outputRebuilt[o] != cycle)
+                    unions[o].add(o, conclusion[c], dof[r]);
+            }
+        }
+
+        // form the other changed unions again and defuzzify the changed outputs
+        for (int o=0; o<numOutputs; o++)
+        {   FuzzyRuleBatch.Union union = unions[o];
+            if (outputRebuilt[o] == cycle)
+            {   union.clear();
+                int[] rule = rules.conclusionRule[o];
+                if (rules.weightedAverageOutput[o])
+                {   // the sums are formed in the same order as in the FuzzyRuleBatch
+                    for (int k=0; k<rule.length; k++)
+                    {   union.weightSum += conclusionWeight[o][k];
+                        union.weightedXSum += conclusionWeightedX[o][k];
+                    }
+                }
+                else
+                {   for (int k=0; k<rule.length; k++)
+                        if (dof[rule[k]] > 0.0)
+                            union.add(o, k, dof[rule[k]]);
+                }
+                outputValues[o] = union.defuzzify(o);
+                outputsRebuilt++;
+            }
+            else if (outputPatched[o] == cycle)
+            {   outputValues[o] = union.defuzzify(o);
+                outputsPatched++;
+            }
+            else
+                outputsSkipped++;
+            outputs[o] = outputValues[o];
+        }
+        event.end();
+        if (event.shouldCommit())
+        {   event.engine = "IncrementalFuzzyInference";
+            event.rules = rules.numRules;
+            event.rulesSkipped = rulesSkipped;
+            event.records = 1;
+            event.commit();
+        }
+    }
+
+    /**
+     * Calculate the DOF of rule r from the membership values of its antecedents; 
+     * 0.0 if an antecedent does not match its input at the threshold level.
+     */
+    private double calculateDOF(int r)
+    {
+        FuzzyRuleBatch.calculateDOFs(ruleDOF, 1, memberships, 
+                                     rules.antecedentInput[r], rules.antecedentSet[r], 
+                                     rules.ruleCombine[r], rules.ruleCombineOperator[r], 
+                                     matchValues[r], threshold);
+        return ruleDOF[0];
+    }
+
+    /**
+     * Returns the number of inputs whose value changed in the last cycle (all of 
+     * them in the first cycle).
+     *
+     * @return the number of inputs that changed
+     */
+    public int getInputsChanged()
+    {
+        return inputsChanged;
+    }
+
+    /**
+     * Returns the number of membership values of the inputs in their antecedent sets
+     * that were found in the last cycle.
+     *
+     * @return the number of membership values found
+     */
+    public int getMembershipsCalculated()
+    {
+        return membershipsCalculated;
+    }
+
+    /**
+     * Returns the number of membership values of the inputs in their antecedent sets
+     * that were kept from the previous cycle in the last cycle.
+     *
+     * @return the number of membership values kept
+     */
+    public int getMembershipsSkipped()
+    {
+        return membershipsSkipped;
+    }
+
+    /**
+     * Returns the number of rules whose DOF was calculated in the last cycle.
+     *
+     * @return the number of DOFs calculated
+     */
+    public int getRulesCalculated()
+    {
+        return rulesCalculated;
+    }
+
+    /**
+     * Returns the number of rules whose DOF was kept from the previous cycle
+     * in the last cycle.
+     *
+     * @return the number of DOFs kept
+     */
+    public int getRulesSkipped()
+    {
+        return rulesSkipped;
+    }
+
+    /**
+     * Returns the number of rules whose DOF changed in the last cycle.
+     *
+     * @return the number of DOFs that changed
+     */
+    public int getRulesChanged()
+    {
+        return rulesChanged;
+    }
+
+    /**
+     * Returns the number of outputs in the last cycle whose union was patched with the
+     * larger outputs of the rules whose DOFs grew.
+     *
+     * @return the number of outputs patched
+     */
+    public int getOutputsPatched()
+    {
+        return outputsPatched;
+    }
+
+    /**
+     * Returns the number of outputs in the last cycle whose union (or weighted average)
+     * was formed again from the DOFs of all of their rules.
+     *
+     * @return the number of outputs formed again
+     */
+    public int getOutputsRebuilt()
+    {
+        return outputsRebuilt;
+    }
+
+    /**
+     * Returns the number of outputs in the last cycle that were kept from the
+     * previous cycle.
+     *
+     * @return the number of outputs kept
+     */
+    public int getOutputsSkipped()
+    {
+        return outputsSkipped;
+    }
+
+    /**
+     * Returns a summary of the work done and skipped in the last cycle, such as
+     * <pre>
+     *   inputs changed: 1/3, memberships: 5 calculated 10 skipped, rules: 9 calculated 
+     *   16 skipped 2 changed, outputs: 0 patched 1 rebuilt 1 skipped
+     * </pre>
+     * (on one line).
+     *
+     * @return a description of the last cycle
+     */
+    public String getCycleReport()
+    {
+        return "inputs changed: " + inputsChanged + "/" + numInputs + 
+               ", memberships: " + membershipsCalculated + " calculated " + membershipsSkipped + " skipped" +
+               ", rules: " + rulesCalculated + " calculated " + rulesSkipped + " skipped " + rulesChanged + " changed" +
+               ", outputs: " + outputsPatched + " patched " + outputsRebuilt + " rebuilt " + outputsSkipped + " skipped";
+    }
+}
@@ -47,12 +47,28 @@ import java.io.*;
  * @see FuzzySet
  * @see LFuzzySet
  * @see LeftGaussianFunction
+ * @see AnalyticFuzzySet
  *
  */
-public class LeftGaussianFuzzySet extends LFuzzySet implements Serializable
+public class LeftGaussianFuzzySet extends LFuzzySet implements AnalyticFuzzySet, Serializable
 {    
+    /**
+     * The serialVersionUID of the class before it became an AnalyticFuzzySet. Sets
+     * serialized by earlier versions have no curve parameters, so they are read
+     * as not analytic and the modifiers use their points.
+     */
+    private static final long serialVersionUID = -461542561558689148L;
+
     private static LeftGaussianFunction lgf = new LeftGaussianFunction();
 
+    /*
+     * The parameters of the curve, remembered so that the exact curve can be
+     * used by the modifiers (see AnalyticFuzzySet). A curvePoints value of 0
+     * means that the default number of points of the gaussian function was used.
+     */
+    private double centre, sigma;
+    private int curvePoints;
+
     /**
      * Generate a FuzzySet with left half of a gaussian shape. 
      *
@@ -66,6 +82,7 @@ public class LeftGaussianFuzzySet extends LFuzzySet implements Serializable
 
     public LeftGaussianFuzzySet(double centre, double standardDeviation) throws XValuesOutOfOrderException {
         super(centre-4.0*standardDeviation, centre, lgf);
+        setCurve(centre, standardDeviation, 0);
     }
 
     /**
@@ -80,7 +97,59 @@ public class LeftGaussianFuzzySet extends LFuzzySet implements Serializable
      */
     public LeftGaussianFuzzySet(double centre, double standardDeviation, int numPoints) throws XValuesOutOfOrderException {
         super(centre-4.0*standardDeviation, centre, new LeftGaussianFunction(numPoints));
+        setCurve(centre, standardDeviation, numPoints);
+    }
+
+    /**
+     * Records the parameters of the gaussian curve and marks the FuzzySet 
+     * as analytic.
+     */
+    private void setCurve(double centre, double standardDeviation, int numPoints)
+    {
+        this.centre = centre;
+        this.sigma = standardDeviation;
+        this.curvePoints = numPoints;
+        analytic = true;
     }
-}
 
+    /**
+     * Returns the membership value of the gaussian curve at the specified x value.
+     * As with the points of the FuzzySet, the curve is 0 at and beyond 4 standard 
+     * deviations to the left of the centre and 1 to the right of the centre.
+     *
+     * @param x the x value at which to find the membership value of the curve
+     * @return the membership value of the curve at x
+     */
+    public double getAnalyticMembership(double x)
+    {
+        return(GaussianFuzzySet.gaussianMembership(x, centre, sigma, Double.POSITIVE_INFINITY, 0.0));
+    }
+
+    /**
+     * Returns a new FuzzySet with the membership values of the gaussian curve
+     * raised to the specified power. For a power of 1 or more this is a 
+     * LeftGaussianFuzzySet with the same number of points and a standard 
+     * deviation of sigma/sqrt(power). For powers less than 1 a PowerFuzzySet 
+     * confined to the same x range is returned.
+     *
+     * @param exponent the power (exponent) to which the membership values are raised
+     * @return a new FuzzySet representing this FuzzySet raised to the power
+     */
+    public FuzzySet power(double exponent)
+    {
+        if (exponent < 1.0)
+            return(new PowerFuzzySet(this, exponent));
 
+        double newSigma = sigma/Math.sqrt(exponent);
+        try
+        { if (curvePoints == 0)
+              return(new LeftGaussianFuzzySet(centre, newSigma));
+          else
+              return(new LeftGaussianFuzzySet(centre, newSigma, curvePoints));
+        }
+        catch (XValuesOutOfOrderException e)
+        { // cannot happen since a narrower curve keeps the same x order
+          return(new PowerFuzzySet(this, exponent));
+        }
+    }
+}
@@ -55,6 +55,12 @@ import java.io.*;
 public class MamdaniMinMaxMinRuleExecutor extends FuzzyRuleExecutor
                                            implements Serializable
 {
+    /**
+     * The serialVersionUID of the class before the inference listener was added,
+     * so that executors serialized by earlier versions can still be read.
+     */
+    private static final long serialVersionUID = -8282184949105202863L;
+
     // The degree of matching (or DOF -- Degree of rule Fullfillment)
 	// for the antecedents and inputs. This value
     // is maintained from rule execution to rule execution. It is expected that
@@ -114,7 +120,7 @@ public class MamdaniMinMaxMinRuleExecutor extends FuzzyRuleExecutor
         boolean recalulateDOF = (rule.isAntecedentsChanged() || rule.isInputsChanged() ||
 		                         rule.isAntecendentCombineOperatorChanged());
 
-        return doTheExecute( rule.getAntecedents(), rule.getConclusions(),
+        return doTheExecute( rule, rule.getAntecedents(), rule.getConclusions(),
                              rule.getInputs(), rule.getAntecedentCombineOperator(), 
                              recalulateDOF );
     }
@@ -142,13 +148,37 @@ public class MamdaniMinMaxMinRuleExecutor extends FuzzyRuleExecutor
         // in this case the DOF must always be re-calulated since there is no rule
         // that stores the antecedents and inputs from one invocation to the next
         // and use the default antecedentCombineOperator without a rule
-        return doTheExecute( antecedents, conclusions, inputs, 
+        return doTheExecute( null, antecedents, conclusions, inputs, 
                              FuzzyRule.getDefaultAntecedentCombineOperator(), true );
     }
     
+    /**
+     * Execute a rule with a set of inputs rather than those of the rule, as
+     * execute(antecedents, conclusions, inputs) does, telling the inference
+     * listener (if there is one) which rule was matched.
+     */
+    FuzzyValueVector executeWithInputs( FuzzyRule rule, FuzzyValueVector inputs )
+        throws IncompatibleRuleInputsException
+    {
+        return doTheExecute( rule, rule.getAntecedents(), rule.getConclusions(), inputs, 
+                             FuzzyRule.getDefaultAntecedentCombineOperator(), true );
+    }
+
+    /**
+     * Get the DOF (degree of fulfillment) found the last time the executor fired a rule.
+     *
+     * @return the DOF
+     */
+    public double getDegreeOfFulfillment()
+    {
+        return DOF;
+    }
+
     /**
      * This execute method does the work of the execute method.
      *
+     * @param rule The rule being executed, or null if there is none (it is only
+     *             given to the inference listener).
      * @param antecedents The FuzzyValues that represent a rule's antecedents.
      * @param conclusions The FuzzyValues that represent a rule's conclusions.
      * @param inputs The FuzzyValues that represent a rule's inputs.
@@ -160,7 +190,8 @@ public class MamdaniMinMaxMinRuleExecutor extends FuzzyRuleExecutor
      *          outputs of the fired rule.
      * @exception IncompatibleRuleInputsException
      */
-    private FuzzyValueVector doTheExecute( FuzzyValueVector antecedents, 
+    private FuzzyValueVector doTheExecute( FuzzyRule rule,
+                                           FuzzyValueVector antecedents, 
                                            FuzzyValueVector conclusions, 
                                            FuzzyValueVector inputs,
 	                                       AntecedentCombineOperator combineOperator,
@@ -171,6 +202,9 @@ public class MamdaniMinMaxMinRuleExecutor extends FuzzyRuleExecutor
         int i;
         FuzzyValueVector outputs;
         double tempDOF;
+        // work with a local copy of the DOF so that several threads can fire
+        // the same rule at once; the field only records it for getDegreeOfFulfillment
+        double dof = DOF;
 
         // antecedents and inputs must be same size and have matching FuzzyVariables
         FuzzyRule.checkAntecedentsAndInputs( antecedents, inputs );
@@ -182,29 +216,35 @@ public class MamdaniMinMaxMinRuleExecutor extends FuzzyRuleExecutor
 
         outputs = new FuzzyValueVector( conclusions.size() );
 
+        FuzzyInferenceListener listener = FuzzyRule.inferenceListener;
+        long start = (listener == null) ? 0 : System.nanoTime();
+
         if (recalulateDOF)
         { // we must recalculate DOF
 		  int len = antecedents.size();
-          DOF = 1.0;
+          dof = 1.0;
           if (len > 0)
           { try
 			{ double matchValues[] = new double[len];
 			  for (i = 0; i<len; i++)
 			  { matchValues[i] = antecedents.fuzzyValueAt(i).maximumOfIntersection(inputs.fuzzyValueAt(i));
 			  }
-			  DOF = (len == 1)? matchValues[0] :
+			  dof = (len == 1)? matchValues[0] :
 								combineOperator.execute(matchValues);
 			}
 			catch (IncompatibleFuzzyValuesException e)
 			{   tempDOF = 1.0; } // safe to ignore this since we already checked compatibility
           }
+          DOF = dof;
         }
+        if (listener != null)
+            listener.ruleMatched(rule, dof, (recalulateDOF) ? System.nanoTime() - start : 0);
 
         // now calc actual conclusions using DOF to 'clip' each
         // conclusion fuzzy value
         for (i = 0; i<conclusions.size(); i++)
         {   FuzzyValue conc = conclusions.fuzzyValueAt(i);
-            outputs.addFuzzyValue(conc.horizontalIntersection(DOF));
+            outputs.addFuzzyValue(conc.horizontalIntersection(dof));
         }
 
         return outputs;
@@ -0,0 +1,117 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+package nrc.fuzzy;
+
+/**
+ * The inverse of the membership function of a monotonic fuzzy set (one whose 
+ * membership values never decrease, or never increase, from left to right, such as an 
+ * SFuzzySet or a ZFuzzySet), used to find the x value with a given membership value 
+ * without scanning the points of the set. This is what the TsukamotoRuleExecutor 
+ * needs for the conclusions of its rules. The result is exactly that of 
+ * FuzzySet.getXforMembership: the inverse is found from the same points with the same 
+ * arithmetic, and where the set is flat at the membership value the same point is chosen.
+ * <p>
+ * The range of membership values is divided into evenly spaced bins, each holding the 
+ * first point of the set at or above the start of the bin, so the segment of the set 
+ * that holds a membership value is found with a multiplication and (rarely) a step or 
+ * two along the points. An inverse never changes once it is built so it can be 
+ * shared by many threads.
+ *
+ * @see FuzzySet#getXforMembership(double)
+ * @see TsukamotoRuleExecutor
+ */
+final class MembershipInverse
+{
+    /** the x values and the membership values of the points, with the membership
+     *  values negated if the set is decreasing so that they never decrease */
+    private final double[] x;
+    private final double[] y;
+    private final boolean decreasing;
+    /** (x[i]-x[i-1])/(y[i]-y[i-1]) as calculated by getXforMembership */
+    private final double[] ratio;
+    private final int[] bins;
+    private final double binScale;
+
+    private MembershipInverse(double[] x, double[] y, double[] ratio, boolean decreasing)
+    {
+        this.x = x;
+        this.y = y;
+        this.ratio = ratio;
+        this.decreasing = decreasing;
+        int n = y.length;
+        double range = y[n-1] - y[0];
+        int numBins = (range > 0.0) ? 4*n : 0;
+        binScale = (range > 0.0) ? numBins/range : 0.0;
+        bins = new int[numBins + 1];
+        int j = 0;
+        for (int k=0; k<=numBins; k++)
+        {   double start = y[0] + k/binScale;
+            while (j < n-1 && y[j] < start)
+                j++;
+            bins[k] = j;
+        }
+    }
+
+    /**
+     * Build the inverse of a fuzzy set.
+     *
+     * @param fs a simplified fuzzy set (see FuzzySet.simplifySet)
+     * @return the inverse, or null if the set is empty or its membership values are not
+     *         monotonic
+     */
+    static MembershipInverse create(FuzzySet fs)
+    {
+        int n = fs.size();
+        if (n == 0) return null;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] ratio = new double[n];
+        boolean increasing = true, decreasing = true;
+        for (int i=0; i<n; i++)
+        {   x[i] = fs.getX(i);
+            y[i] = fs.getY(i);
+            if (i > 0)
+            {   if (y[i] < y[i-1]) increasing = false;
+                if (y[i] > y[i-1]) decreasing = false;
+                ratio[i] = (x[i] - x[i-1])/(y[i] - y[i-1]);
+            }
+        }
+        if (!increasing && !decreasing)
+            return null;
+        if (!increasing)
+            for (int i=0; i<n; i++)
+                y[i] = -y[i];
+        return new MembershipInverse(x, y, ratio, !increasing);
+    }
+
+    /**
+     * The x value with membership value m (the same value as 
+     * FuzzySet.getXforMembership(m)), or Double.NaN if no x value has that membership.
+     */
+    double getX(double m)
+    {
+        int n = y.length;
+        double my = decreasing ? -m : m;
+        if (!(my >= y[0] && my <= y[n-1]))
+            return Double.NaN;
+        
+        // the first point at or above my
+        int j = bins[(int)((my - y[0])*binScale)];
+        while (y[j] < my)
+            j++;
+        if (y[j] == my)
+        {   // getXforMembership checks point 1 before point 0
+            if (j == 0 && n > 1 && y[1] == my) 
+                return x[1];
+            return x[j];
+        }
+        // y[j-1] < my < y[j]; interpolate as getXforMembership does
+        return x[j-1] + (m - (decreasing ? -y[j-1] : y[j-1]))*ratio[j];
+    }
+}
@@ -429,11 +429,16 @@ import java.io.*;
  *      aModifiedFuzzyValue = Modifers.very(aFuzzyValue);
  * </code></pre>
  * NOTE: all modifier names are case insensitive ('very' is the same as 'VERY')
+ * <p> The modifiers that use <code>concentrateDilute</code> (very, extremely, somewhat,
+ * more_or_less and plus) recognize FuzzySets that implement AnalyticFuzzySet
+ * (gaussian, S, Z and PI shaped sets) and apply the power to the exact curve.
+ * See the <code>concentrateDilute</code> method for details.
  *
  * @author Bob Orchard
  * 
  *
  * @see nrc.fuzzy.Modifiers
+ * @see nrc.fuzzy.AnalyticFuzzySet
  */
 
 public abstract class ModifierFunction implements Serializable
@@ -713,11 +718,15 @@ public abstract class ModifierFunction implements Serializable
 
     public static FuzzySet expandSet(FuzzySet a)
     {
+        FuzzyFlightRecorderEvents.ModifierExpansion event = new FuzzyFlightRecorderEvents.ModifierExpansion();
+        event.begin();
+        a.ensurePoints();
         FuzzySet fs = new FuzzySet();
         double numDivs, dY, dX, dY2add, dX2add;
 
         if(a.numPoints == 1)
         {   fs.appendSetPoint(a.getPoint(0));
+            recordExpansion(event, a, fs);
             return(fs);
         }
 
@@ -767,13 +776,37 @@ public abstract class ModifierFunction implements Serializable
         if(a.numPoints > 1) fs.appendSetPoint(a.getPoint(a.numPoints-1));
 
         fs.simplifySet();
+        recordExpansion(event, a, fs);
         return(fs);
     }
 
+    /**
+     * Record a ModifierExpansion event for an expansion of a set by expandSet,
+     * if the flight recorder is recording them.
+     */
+    private static void recordExpansion(FuzzyFlightRecorderEvents.ModifierExpansion event, 
+                                        FuzzySet a, FuzzySet expanded)
+    {
+        event.end();
+        if (event.shouldCommit())
+        {   event.pointsBefore = a.numPoints;
+            event.pointsAfter = expanded.numPoints;
+            event.precisionControlType = precisionControlType;
+            event.commit();
+        }
+    }
+
 
     /**
      * Returns a new FuzzySet object which represents the expansion of the FuzzySet
      * argument, with all the membership values raised to the specified power.
+     * <p>
+     * If the FuzzySet is an AnalyticFuzzySet (such as a GaussianFuzzySet or an
+     * SFuzzySet) the power is applied to the curve that generated the set rather
+     * than to its points, and the result is again an AnalyticFuzzySet. A gaussian
+     * raised to a power of 1 or more is simply a narrower gaussian with the same
+     * number of points, and repeated powers (as in "very very hot") are combined 
+     * into a single exponent on the original curve.
      *
      * @param a     the FuzzySet to expand and either concentrate or dilute
      *              via exponential methods
@@ -781,9 +814,14 @@ public abstract class ModifierFunction implements Serializable
      *
      * @return a new FuzzySet object representing the concentration or dilution of the
      *         FuzzySet argument by the exponent argument.
+     *
+     * @see AnalyticFuzzySet
      */
 
     public static FuzzySet concentrateDilute(FuzzySet a, double power){
+        if (power > 0.0 && a.isAnalytic())
+            return(((AnalyticFuzzySet)a).power(power));
+
         FuzzySet b = expandSet(a);
         FuzzySet fs = new FuzzySet();
 
@@ -195,7 +195,7 @@ public class Modifiers extends java.lang.Object implements Serializable
         if (mf == null)
            return null;
         else
-           return mf.call(fv);
+           return FuzzyAllocationCounters.modified(mf.call(fv));
     }
 
     /** 
@@ -215,7 +215,7 @@ public class Modifiers extends java.lang.Object implements Serializable
         if (mf == null)
            return null;
         else
-           return mf.call(fs);
+           return FuzzyAllocationCounters.modified(mf.call(fs));
     }
 
     /*
@@ -256,7 +256,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue not(FuzzyValue fv)
      {
-        return notMod.call(fv);
+        return FuzzyAllocationCounters.modified(notMod.call(fv));
      }
 
      /**
@@ -269,7 +269,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet not(FuzzySet fs)
      {
-        return notMod.call(fs);
+        return FuzzyAllocationCounters.modified(notMod.call(fs));
      }
 
 
@@ -283,7 +283,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue very(FuzzyValue fv)
      {
-         return veryMod.call(fv);
+         return FuzzyAllocationCounters.modified(veryMod.call(fv));
      }
 
      /**
@@ -296,7 +296,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet very(FuzzySet fs)
      {
-        return veryMod.call(fs);
+        return FuzzyAllocationCounters.modified(veryMod.call(fs));
      }
 
      /**
@@ -309,7 +309,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue extremely(FuzzyValue fv)
      {
-        return extremelyMod.call(fv);
+        return FuzzyAllocationCounters.modified(extremelyMod.call(fv));
      }
 
      /**
@@ -322,7 +322,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet extremely(FuzzySet fs)
      {
-        return extremelyMod.call(fs);
+        return FuzzyAllocationCounters.modified(extremelyMod.call(fs));
      }
 
      /**
@@ -335,7 +335,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue somewhat(FuzzyValue fv)
      {
-        return somewhatMod.call(fv);
+        return FuzzyAllocationCounters.modified(somewhatMod.call(fv));
      }
 
      /**
@@ -348,7 +348,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet somewhat(FuzzySet fs)
      {
-        return somewhatMod.call(fs);
+        return FuzzyAllocationCounters.modified(somewhatMod.call(fs));
      }
 
      /**
@@ -361,7 +361,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue more_or_less(FuzzyValue fv)
      {
-        return moreorlessMod.call(fv);
+        return FuzzyAllocationCounters.modified(moreorlessMod.call(fv));
      }
 
      /**
@@ -374,7 +374,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet more_or_less(FuzzySet fs)
      {
-        return moreorlessMod.call(fs);
+        return FuzzyAllocationCounters.modified(moreorlessMod.call(fs));
      }
 
      /**
@@ -387,7 +387,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue plus(FuzzyValue fv)
      {
-        return plusMod.call(fv);
+        return FuzzyAllocationCounters.modified(plusMod.call(fv));
      }
 
      /**
@@ -400,7 +400,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet plus(FuzzySet fs)
      {
-        return plusMod.call(fs);
+        return FuzzyAllocationCounters.modified(plusMod.call(fs));
      }
 
      /**
@@ -413,7 +413,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue norm(FuzzyValue fv)
      {
-        return normMod.call(fv);
+        return FuzzyAllocationCounters.modified(normMod.call(fv));
      }
 
      /**
@@ -426,7 +426,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet norm(FuzzySet fs)
      {
-        return normMod.call(fs);
+        return FuzzyAllocationCounters.modified(normMod.call(fs));
      }
 
      /**
@@ -439,7 +439,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue slightly(FuzzyValue fv)
      {
-        return slightlyMod.call(fv);
+        return FuzzyAllocationCounters.modified(slightlyMod.call(fv));
      }
 
      /**
@@ -452,7 +452,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet slightly(FuzzySet fs)
      {
-        return slightlyMod.call(fs);
+        return FuzzyAllocationCounters.modified(slightlyMod.call(fs));
      }
 
      /**
@@ -465,7 +465,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue intensify(FuzzyValue fv)
      {
-        return intensifyMod.call(fv);
+        return FuzzyAllocationCounters.modified(intensifyMod.call(fv));
      }
 
      /**
@@ -478,7 +478,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet intensify(FuzzySet fs)
      {
-        return intensifyMod.call(fs);
+        return FuzzyAllocationCounters.modified(intensifyMod.call(fs));
      }
 
      /**
@@ -491,7 +491,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue above(FuzzyValue fv)
      {
-        return aboveMod.call(fv);
+        return FuzzyAllocationCounters.modified(aboveMod.call(fv));
      }
 
      /**
@@ -504,7 +504,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet above(FuzzySet fs)
      {
-        return aboveMod.call(fs);
+        return FuzzyAllocationCounters.modified(aboveMod.call(fs));
      }
 
      /**
@@ -517,7 +517,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzyValue below(FuzzyValue fv)
      {
-        return belowMod.call(fv);
+        return FuzzyAllocationCounters.modified(belowMod.call(fv));
      }
 
      /**
@@ -530,7 +530,7 @@ public class Modifiers extends java.lang.Object implements Serializable
       */
      public static FuzzySet below(FuzzySet fs)
      {
-        return belowMod.call(fs);
+        return FuzzyAllocationCounters.modified(belowMod.call(fs));
      }
 
 }
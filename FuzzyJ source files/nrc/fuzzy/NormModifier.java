@@ -115,6 +115,7 @@ import java.io.*;
      * @see ModifierFunction
      */
     public FuzzySet call(FuzzySet a){
+        a.ensurePoints();
         FuzzySet fs = new FuzzySet();
 
         double maxY = 0;
@@ -117,6 +117,7 @@ import java.io.*;
      */
     public FuzzySet call(FuzzySet a)
     {
+        a.ensurePoints();
         FuzzySet fs = new FuzzySet();
 
         for(int i=0; i < a.numPoints; i++){
@@ -46,13 +46,27 @@ import java.io.*;
  * @see FuzzySet
  * @see LFuzzySet
  * @see SFunction
+ * @see AnalyticFuzzySet
  *
  */
 
-public class PIFuzzySet extends LRFuzzySet implements Serializable
+public class PIFuzzySet extends LRFuzzySet implements AnalyticFuzzySet, Serializable
 {    
+    /**
+     * The serialVersionUID of the class before it became an AnalyticFuzzySet. Sets
+     * serialized by earlier versions have no curve parameters, so they are read
+     * as not analytic and the modifiers use their points.
+     */
+    private static final long serialVersionUID = 6915235780658440746L;
+
     private static SFunction ssf = new SFunction(5);
     private static ZFunction szf = new ZFunction(5);
+
+    /*
+     * The parameters of the curve, remembered so that the exact curve can be
+     * used by the modifiers (see AnalyticFuzzySet).
+     */
+    private double center, curveWidth;
     
 
     /**
@@ -66,6 +80,7 @@ public class PIFuzzySet extends LRFuzzySet implements Serializable
 
     public PIFuzzySet(double center, double curveWidth) throws XValuesOutOfOrderException {
         super(center - curveWidth, center, center, center + curveWidth, ssf, szf);
+        setCurve(center, curveWidth);
     }
 
     /**
@@ -80,5 +95,42 @@ public class PIFuzzySet extends LRFuzzySet implements Serializable
     public PIFuzzySet(double center, double curveWidth, int numPoints) throws XValuesOutOfOrderException {
         super(center - curveWidth, center, center, center + curveWidth,
               new SFunction(numPoints), new ZFunction(numPoints));
+        setCurve(center, curveWidth);
+    }
+
+    /**
+     * Records the parameters of the PI curve and marks the FuzzySet as analytic.
+     */
+    private void setCurve(double center, double curveWidth)
+    {
+        this.center = center;
+        this.curveWidth = curveWidth;
+        analytic = true;
+    }
+
+    /**
+     * Returns the membership value of the PI curve at the specified x value.
+     *
+     * @param x the x value at which to find the membership value of the curve
+     * @return the membership value of the curve at x
+     */
+    public double getAnalyticMembership(double x)
+    {
+        if (x <= center)
+            return(SFunction.sMembership(x, center-curveWidth, center-curveWidth/2.0, center));
+        else
+            return(ZFunction.zMembership(x, center, center+curveWidth/2.0, center+curveWidth));
+    }
+
+    /**
+     * Returns a new PowerFuzzySet with the membership values of the PI curve
+     * raised to the specified power.
+     *
+     * @param exponent the power (exponent) to which the membership values are raised
+     * @return a new FuzzySet representing this FuzzySet raised to the power
+     */
+    public FuzzySet power(double exponent)
+    {
+        return(new PowerFuzzySet(this, exponent));
     }
 }
@@ -0,0 +1,165 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+
+/**
+ * A FuzzySet whose membership values are those of another FuzzySet (the base
+ * set) raised to a power. It is produced when a modifier such as <code>very</code> 
+ * or <code>somewhat</code> is applied to an AnalyticFuzzySet that has no closed
+ * form for the power in its own family (for example an SFuzzySet). 
+ * <p>
+ * The points of the set are only found when they are first needed (by any 
+ * method that uses them), so the intermediate sets of a chain of modifiers
+ * never have points of their own. They are placed using ModifierFunction.expandSet 
+ * (so the precision controls of the modifiers are respected), but the membership 
+ * values are calculated from the base set's curve rather than by interpolating 
+ * between its points. The base set and the exponent are remembered, so that 
+ * raising a PowerFuzzySet to a further power simply multiplies the exponents. 
+ * Applying "very very very" to an S shaped term therefore costs the same as 
+ * applying one modifier with an exponent of 8. Since the points are found from
+ * the points of the base set as they are at that time, the base set should not 
+ * be changed while a PowerFuzzySet made from it is in use (as with any FuzzySet 
+ * that is not frozen, a PowerFuzzySet should not be shared between threads 
+ * until it is frozen).
+ * <p>
+ * If the base set is not analytic (see the <code>isAnalytic</code> method of 
+ * FuzzySet) the membership values of its points (expanded as above) are 
+ * raised to the power.
+ *
+ * @see AnalyticFuzzySet
+ * @see ModifierFunction
+ * @see FuzzySet
+ */
+public class PowerFuzzySet extends FuzzySet implements AnalyticFuzzySet, Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The FuzzySet whose membership values are raised to the power.
+     */
+    private FuzzySet baseSet;
+
+    /**
+     * The power (exponent) to which the membership values of the base set are raised.
+     */
+    private double exponent;
+
+    /**
+     * Generate a FuzzySet with the membership values of the base FuzzySet raised
+     * to the specified power. 
+     *
+     * @param base the FuzzySet whose membership values are raised to the power
+     * @param exponent the power (exponent) to which the membership values are raised
+     */
+    public PowerFuzzySet(FuzzySet base, double exponent)
+    {
+        super(0);
+        set = null; // found when first needed
+        this.baseSet = base;
+        this.exponent = exponent;
+        analytic = true;
+    }
+
+    /**
+     * Finds the points of the set, the first time that they are needed.
+     */
+    void findPoints()
+    {
+        FuzzySet expanded, points;
+        int i;
+
+        baseSet.ensurePoints();
+        if (baseSet.isAnalytic())
+        {   // raise the curve at the points of the base set and expand that, so the 
+            // spacing of the points follows the shape of the result; then take 
+            // the exact values of the curve at the expanded x values
+            AnalyticFuzzySet curve = (AnalyticFuzzySet)baseSet;
+            FuzzySet coarse = new FuzzySet(baseSet.numPoints);
+            for (i=0; i<baseSet.numPoints; i++)
+                coarse.appendSetPoint(baseSet.set[i].x, 
+                                      Math.pow(curve.getAnalyticMembership(baseSet.set[i].x), exponent));
+            expanded = ModifierFunction.expandSet(coarse);
+            points = new FuzzySet(expanded.numPoints);
+            for (i=0; i<expanded.numPoints; i++)
+            {   double x = expanded.set[i].x;
+                points.appendSetPoint(x, Math.pow(curve.getAnalyticMembership(x), exponent));
+            }
+        }
+        else
+        {   expanded = ModifierFunction.expandSet(baseSet);
+            points = new FuzzySet(expanded.numPoints);
+            for (i=0; i<expanded.numPoints; i++)
+                points.appendSetPoint(expanded.set[i].x, Math.pow(expanded.set[i].y, exponent));
+        }
+        points.simplifySet();
+
+        numPoints = points.numPoints;
+        simplified = true;
+        set = points.set;
+    }
+
+    /**
+     * Returns the FuzzySet whose membership values are raised to the power.
+     *
+     * @return the base FuzzySet of this PowerFuzzySet
+     */
+    public FuzzySet getBaseSet()
+    {
+        return(baseSet);
+    }
+
+    /**
+     * Returns the power (exponent) to which the membership values of the base set
+     * are raised.
+     *
+     * @return the exponent of this PowerFuzzySet
+     */
+    public double getExponent()
+    {
+        return(exponent);
+    }
+
+    /**
+     * Returns the membership value of the base set's curve raised to the power 
+     * at the specified x value.
+     *
+     * @param x the x value at which to find the membership value
+     * @return the membership value at x
+     */
+    public double getAnalyticMembership(double x)
+    {
+        double y = (baseSet.isAnalytic()) 
+                   ? ((AnalyticFuzzySet)baseSet).getAnalyticMembership(x)
+                   : baseSet.getMembership(x);
+        return(Math.pow(y, exponent));
+    }
+
+    /**
+     * Returns a new FuzzySet with the membership values of this set raised to
+     * the specified power. The exponents are combined and the power is applied 
+     * to the base set, so the base set's own closed form is used when 
+     * one exists (for example, 'somewhat' followed by 'very' applied to a 
+     * GaussianFuzzySet returns a GaussianFuzzySet).
+     *
+     * @param exponent the power (exponent) to which the membership values are raised
+     * @return a new FuzzySet representing this FuzzySet raised to the power
+     */
+    public FuzzySet power(double exponent)
+    {
+        double combinedExponent = this.exponent * exponent;
+
+        if (baseSet.isAnalytic())
+            return(((AnalyticFuzzySet)baseSet).power(combinedExponent));
+        else
+            return(new PowerFuzzySet(baseSet, combinedExponent));
+    }
+}
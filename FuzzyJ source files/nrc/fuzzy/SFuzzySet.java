@@ -40,12 +40,26 @@ import java.io.*;
  * @see FuzzySet
  * @see LFuzzySet
  * @see SFunction
+ * @see AnalyticFuzzySet
  *
  */
-public class SFuzzySet extends LFuzzySet implements Serializable
+public class SFuzzySet extends LFuzzySet implements AnalyticFuzzySet, Serializable
 {    
+    /**
+     * The serialVersionUID of the class before it became an AnalyticFuzzySet. Sets
+     * serialized by earlier versions have no curve parameters, so they are read
+     * as not analytic and the modifiers use their points.
+     */
+    private static final long serialVersionUID = 3638869880743659380L;
+
     private static SFunction ssf = new SFunction();
 
+    /*
+     * The parameters of the curve, remembered so that the exact curve can be
+     * used by the modifiers (see AnalyticFuzzySet).
+     */
+    private double leftEdge, rightEdge;
+
     /**
      * Generate a FuzzySet with an S shape. 
      *
@@ -57,6 +71,7 @@ public class SFuzzySet extends LFuzzySet implements Serializable
 
     public SFuzzySet(double leftEdge, double rightEdge) throws XValuesOutOfOrderException {
         super(leftEdge, rightEdge, ssf);
+        setCurve(leftEdge, rightEdge);
     }
 
     /**
@@ -70,7 +85,39 @@ public class SFuzzySet extends LFuzzySet implements Serializable
      */
     public SFuzzySet(double leftEdge, double rightEdge, int numPoints) throws XValuesOutOfOrderException {
         super(leftEdge, rightEdge, new SFunction(numPoints));
+        setCurve(leftEdge, rightEdge);
     }
-}
 
+    /**
+     * Records the parameters of the S curve and marks the FuzzySet as analytic.
+     */
+    private void setCurve(double leftEdge, double rightEdge)
+    {
+        this.leftEdge = leftEdge;
+        this.rightEdge = rightEdge;
+        analytic = true;
+    }
 
+    /**
+     * Returns the membership value of the S curve at the specified x value.
+     *
+     * @param x the x value at which to find the membership value of the curve
+     * @return the membership value of the curve at x
+     */
+    public double getAnalyticMembership(double x)
+    {
+        return(SFunction.sMembership(x, leftEdge, (leftEdge+rightEdge)/2.0, rightEdge));
+    }
+
+    /**
+     * Returns a new PowerFuzzySet with the membership values of the S curve
+     * raised to the specified power.
+     *
+     * @param exponent the power (exponent) to which the membership values are raised
+     * @return a new FuzzySet representing this FuzzySet raised to the power
+     */
+    public FuzzySet power(double exponent)
+    {
+        return(new PowerFuzzySet(this, exponent));
+    }
+}
@@ -54,6 +54,8 @@ public class SetPoint implements Serializable
      */
     
     public SetPoint(){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.setPointAllocated();
         this.x = 0;
         this.y = 0;
     }
@@ -67,6 +69,8 @@ public class SetPoint implements Serializable
      */
 
     public SetPoint(SetPoint a){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.setPointAllocated();
         this.x = a.x;
         this.y = a.y;
     }
@@ -82,6 +86,8 @@ public class SetPoint implements Serializable
      */
 
     public SetPoint(double x, double y){
+        if (FuzzyAllocationCounters.enabled)
+            FuzzyAllocationCounters.setPointAllocated();
         this.x = x;
         this.y = y;
     }
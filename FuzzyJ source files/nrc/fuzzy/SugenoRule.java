@@ -0,0 +1,197 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+package nrc.fuzzy;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A SugenoRule is a Takagi-Sugeno-Kang (TSK) rule. Its antecedents are FuzzyValues, as
+ * for a FuzzyRule, but its consequent is a crisp value: a constant (a zero order rule) 
+ * or a linear function of the crisp inputs (a first order rule). For example,
+ * <pre>
+ *   if x is big and y is medium then z = x - 3*y
+ * </pre>
+ * would be written as
+ * <pre><code>
+ *    SugenoRule rule = new SugenoRule();
+ *    rule.addAntecedent(new FuzzyValue(x, "big"));
+ *    rule.addAntecedent(new FuzzyValue(y, "medium"));
+ *    rule.addConsequentTerm(x, 1.0);
+ *    rule.addConsequentTerm(y, -3.0);
+ * </code></pre>
+ * SugenoRules are fired by a SugenoRuleBatch, which finds the firing strength of each 
+ * rule from the membership values of the crisp inputs in its antecedents (combined with 
+ * the rule's AntecedentCombineOperator) and returns the average of the consequent values
+ * weighted by the firing strengths.
+ *
+ * @see SugenoRuleBatch
+ * @see FuzzyRule
+ */
+public class SugenoRule implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private FuzzyValueVector antecedents = new FuzzyValueVector();
+    private AntecedentCombineOperator antecedentCombineOperator;
+    private double constant;
+    private Vector consequentVariables = new Vector();
+    private DoubleVector consequentCoefficients = new DoubleVector();
+
+    /**
+     * Create a SugenoRule with no antecedents, a consequent of 0.0 and the
+     * default AntecedentCombineOperator of the FuzzyRule class.
+     */
+    public SugenoRule()
+    {
+        this(FuzzyRule.getDefaultAntecedentCombineOperator());
+    }
+
+    /**
+     * Create a SugenoRule with no antecedents and a consequent of 0.0.
+     *
+     * @param combineOperator the operator used to combine the membership values of the 
+     *        inputs in the antecedents into the firing strength of the rule
+     */
+    public SugenoRule(AntecedentCombineOperator combineOperator)
+    {
+        antecedentCombineOperator = combineOperator;
+    }
+
+    /**
+     * Add an antecedent FuzzyValue to the end of the antecedents of this rule.
+     *
+     * @param fval The FuzzyValue to add.
+     */
+    public void addAntecedent( FuzzyValue fval )
+    {
+        antecedents.addFuzzyValue( fval );
+    }
+
+    /**
+     * Get the antecedent FuzzyValue at the position indicated.
+     *
+     * @param i The index (position) at which to get the FuzzyValue (zero based).
+     */
+    public FuzzyValue antecedentAt( int i )
+    {
+        return antecedents.fuzzyValueAt( i );
+    }
+
+    /**
+     * Return the number of antecedents of the rule.
+     */
+    public int antecedentsSize()
+    {
+        return antecedents.size();
+    }
+
+    /**
+     * Set the AntecedentCombineOperator of the rule.
+     *
+     * @param combineOperator the operator used to combine the membership values of the 
+     *        inputs in the antecedents into the firing strength of the rule
+     */
+    public void setAntecedentCombineOperator( AntecedentCombineOperator combineOperator )
+    {
+        antecedentCombineOperator = combineOperator;
+    }
+
+    /**
+     * Get the AntecedentCombineOperator of the rule.
+     */
+    public AntecedentCombineOperator getAntecedentCombineOperator( )
+    {
+        return antecedentCombineOperator;
+    }
+
+    /**
+     * Set the constant term of the consequent.
+     *
+     * @param constant the value of the consequent when all of the 
+     *        terms for the inputs are zero
+     */
+    public void setConsequentConstant( double constant )
+    {
+        this.constant = constant;
+    }
+
+    /**
+     * Get the constant term of the consequent.
+     */
+    public double getConsequentConstant()
+    {
+        return constant;
+    }
+
+    /**
+     * Add a term to the consequent: the crisp value of an input variable
+     * times a coefficient. If the variable already has a term the coefficients
+     * are added.
+     *
+     * @param fvar the input variable
+     * @param coefficient the amount the consequent changes for each unit of the input
+     */
+    public void addConsequentTerm( FuzzyVariable fvar, double coefficient )
+    {
+        int i = consequentVariables.indexOf(fvar);
+        if (i < 0)
+        {   consequentVariables.addElement(fvar);
+            consequentCoefficients.addDouble(coefficient);
+        }
+        else
+            consequentCoefficients.setDoubleAt(consequentCoefficients.doubleAt(i) + coefficient, i);
+    }
+
+    /**
+     * Return the number of terms (other than the constant) in the consequent.
+     */
+    public int consequentTermsSize()
+    {
+        return consequentVariables.size();
+    }
+
+    /**
+     * Get the input variable of a term of the consequent.
+     *
+     * @param i The index of the term (zero based).
+     */
+    public FuzzyVariable consequentVariableAt( int i )
+    {
+        return (FuzzyVariable)consequentVariables.elementAt(i);
+    }
+
+    /**
+     * Get the coefficient of a term of the consequent.
+     *
+     * @param i The index of the term (zero based).
+     */
+    public double consequentCoefficientAt( int i )
+    {
+        return consequentCoefficients.doubleAt(i);
+    }
+
+    /**
+     * Returns the rule as a String, for example 
+     * <code>if x is big and y is medium then 0.0 + 1.0*x + -3.0*y</code>.
+     */
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer("if ");
+        for (int i=0; i<antecedents.size(); i++)
+        {   FuzzyValue fval = antecedents.fuzzyValueAt(i);
+            if (i > 0) sb.append(" and ");
+            sb.append(fval.getFuzzyVariable().getName() + " is " + fval.getLinguisticExpression());
+        }
+        sb.append(" then " + constant);
+        for (int i=0; i<consequentVariables.size(); i++)
+            sb.append(" + " + consequentCoefficientAt(i) + "*" + consequentVariableAt(i).getName());
+        return sb.toString();
+    }
+}
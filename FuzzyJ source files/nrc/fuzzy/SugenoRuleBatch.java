@@ -0,0 +1,284 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. 
+ * If a copy of the MPL was not distributed with this file, You can obtain one at
+ *  http://mozilla.org/MPL/2.0/. 
+ */
+
+
+
+package nrc.fuzzy;
+
+import java.util.*;
+
+/**
+ * A SugenoRuleBatch fires a set of SugenoRules (Takagi-Sugeno-Kang rules) for
+ * crisp input values. The firing strength w of each rule is found from the membership 
+ * values of the inputs in its antecedent fuzzy sets, combined with the rule's 
+ * AntecedentCombineOperator, and the output is the average of the rule consequents z 
+ * weighted by the firing strengths, 
+ * <pre>
+ *    sum(w*z) / sum(w)
+ * </pre>
+ * As with the FuzzyRules a rule only fires if the membership of each input in its 
+ * antecedent is above the match threshold (see FuzzyValue.getMatchThreshold). If 
+ * no rule fires the output is Double.NaN.
+ * <p>
+ * This gives the same result as executing FuzzyRules whose conclusions are 
+ * SingletonFuzzySets at the consequent values, summing the outputs with fuzzySum and 
+ * using weightedAverageDefuzzify (see the sugenorule example), but no FuzzySets or 
+ * FuzzyValues are created: the antecedent sets of each input variable are merged into 
+ * a breakpoint table when the SugenoRuleBatch is constructed (as is done by 
+ * FuzzyVariable.fuzzify) and the inputs are processed with arrays of doubles. Many 
+ * records can be processed at once by passing columns of inputs, as with a FuzzyRuleBatch.
+ * <p>
+ * The rules are copied when the SugenoRuleBatch is constructed, so later changes to the 
+ * rules are not seen. A SugenoRuleBatch holds the arrays it works in and so it must 
+ * not be used by more than one thread at a time.
+ *
+ * @see SugenoRule
+ * @see FuzzyRuleBatch
+ */
+public class SugenoRuleBatch
+{
+    private FuzzyVariable[] inputVariables;
+    /** the antecedent sets of each input variable, merged */
+    private FuzzificationTable[] inputTables;
+
+    private int numRules;
+    /** the input and set (in the inputTables) of each antecedent: [rule][antecedent] */
+    private int[][] antecedentInput;
+    private int[][] antecedentSet;
+    private int[] ruleCombine;
+    private AntecedentCombineOperator[] ruleCombineOperator;
+    /** the consequents: the constant and the input and coefficient of each term */
+    private double[] consequentConstant;
+    private int[][] consequentInput;
+    private double[][] consequentCoefficient;
+
+    /** the membership values of a block of records: [input][antecedent set][record] */
+    private double[][][] memberships;
+    /** where each membership column was last found in its table: [input][record] */
+    private int[][] locations;
+    /** the values passed to an OTHER AntecedentCombineOperator: [rule][antecedent] */
+    private double[][] matchValues;
+    /** the firing strength of a rule and the sums of the weights and weighted consequents */
+    private double[] strength;
+    private double[] weights;
+    private double[] weightedSum;
+
+    /**
+     * Create a SugenoRuleBatch for a set of rules.
+     *
+     * @param rules the rules to fire
+     * @param inputVariables the FuzzyVariables of the inputs; the antecedents and 
+     *        consequent terms of the rules must be for these variables
+     * @exception FuzzyRuleException if a rule has an antecedent or consequent term
+     *        for a variable that is not an input
+     */
+    public SugenoRuleBatch(SugenoRule[] rules, FuzzyVariable[] inputVariables)
+        throws FuzzyRuleException
+    {
+        int blockSize = FuzzyRuleBatch.BLOCK_SIZE;
+        this.inputVariables = inputVariables.clone();
+        numRules = rules.length;
+        
+        Vector[] inputSets = new Vector[inputVariables.length];
+        for (int v=0; v<inputVariables.length; v++)
+            inputSets[v] = new Vector();
+        antecedentInput = new int[numRules][];
+        antecedentSet = new int[numRules][];
+        ruleCombine = new int[numRules];
+        ruleCombineOperator = new AntecedentCombineOperator[numRules];
+        consequentConstant = new double[numRules];
+        consequentInput = new int[numRules][];
+        consequentCoefficient = new double[numRules][];
+        matchValues = new double[numRules][];
+        
+        for (int r=0; r<numRules; r++)
+        {   SugenoRule rule = rules[r];
+            ruleCombineOperator[r] = rule.getAntecedentCombineOperator();
+            ruleCombine[r] = FuzzyRuleBatch.combineCode(ruleCombineOperator[r]);
+
+            int numAntecedents = rule.antecedentsSize();
+            antecedentInput[r] = new int[numAntecedents];
+            antecedentSet[r] = new int[numAntecedents];
+            matchValues[r] = new double[numAntecedents];
+            for (int a=0; a<numAntecedents; a++)
+            {   FuzzyValue antecedent = rule.antecedentAt(a);
+                int v = FuzzyRuleBatch.indexOf(inputVariables, antecedent.getFuzzyVariable());
+                if (v < 0)
+                   throw new FuzzyRuleException("SugenoRuleBatch rule antecedent variable " + 
+                                                antecedent.getFuzzyVariable().getName() + " is not an input variable");
+                antecedentInput[r][a] = v;
+                antecedentSet[r][a] = FuzzyRuleBatch.setIndex(inputSets[v], antecedent.getFuzzySet());
+            }
+            
+            int numTerms = rule.consequentTermsSize();
+            consequentConstant[r] = rule.getConsequentConstant();
+            consequentInput[r] = new int[numTerms];
+            consequentCoefficient[r] = new double[numTerms];
+            for (int t=0; t<numTerms; t++)
+            {   int v = FuzzyRuleBatch.indexOf(inputVariables, rule.consequentVariableAt(t));
+                if (v < 0)
+                   throw new FuzzyRuleException("SugenoRuleBatch rule consequent variable " + 
+                                                rule.consequentVariableAt(t).getName() + " is not an input variable");
+                consequentInput[r][t] = v;
+                consequentCoefficient[r][t] = rule.consequentCoefficientAt(t);
+            }
+        }
+
+        inputTables = new FuzzificationTable[inputVariables.length];
+        memberships = new double[inputVariables.length][][];
+        locations = new int[inputVariables.length][blockSize];
+        for (int v=0; v<inputVariables.length; v++)
+        {   FuzzySet[] sets = new FuzzySet[inputSets[v].size()];
+            inputSets[v].copyInto(sets);
+            inputTables[v] = new FuzzificationTable(sets);
+            memberships[v] = new double[sets.length][blockSize];
+            Arrays.fill(locations[v], FuzzificationTable.UNKNOWN_LOCATION);
+        }
+        strength = new double[blockSize];
+        weights = new double[blockSize];
+        weightedSum = new double[blockSize];
+    }
+
+    /**
+     * Returns the FuzzyVariables of the inputs, in order.
+     *
+     * @return an array with the input FuzzyVariables
+     */
+    public FuzzyVariable[] getInputVariables()
+    {
+        return inputVariables.clone();
+    }
+
+    /**
+     * Fire the rules for one set of crisp inputs.
+     *
+     * @param inputs the crisp value of each input variable, in order
+     * @return the average of the rule consequents weighted by the firing strengths of 
+     *         the rules, or Double.NaN if no rule fired
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     */
+    public double execute(double[] inputs)
+        throws XValueOutsideUODException
+    {
+        double threshold = FuzzyValue.getMatchThreshold();
+        for (int v=0; v<inputVariables.length; v++)
+        {   checkUOD(v, inputs[v], -1);
+            locations[v][0] = inputTables[v].fuzzify(inputs[v], memberships[v], 0, locations[v][0]);
+        }
+        double sumW = 0.0, sumWZ = 0.0;
+        for (int r=0; r<numRules; r++)
+        {   calculateStrengths(r, 1, threshold);
+            double w = strength[0];
+            if (w <= 0.0) continue;
+            double z = consequentConstant[r];
+            int[] input = consequentInput[r];
+            double[] coefficient = consequentCoefficient[r];
+            for (int t=0; t<input.length; t++)
+                z += coefficient[t]*inputs[input[t]];
+            sumW += w;
+            sumWZ += w*z;
+        }
+        return (sumW > 0.0) ? sumWZ/sumW : Double.NaN;
+    }
+
+    /**
+     * Fire the rules for every record in the input columns.
+     *
+     * @param inputs one column of crisp values for each input variable (all of the 
+     *        same length); with no input variables there are no records, as with 
+     *        a FuzzyRuleBatch
+     * @param outputs an array, at least as long as the input columns, to hold the 
+     *        weighted average of the rule consequents for each record (Double.NaN for
+     *        a record where no rule fired)
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     */
+    public void execute(double[][] inputs, double[] outputs)
+        throws XValueOutsideUODException
+    {
+        execute(inputs, outputs, 0, (inputs.length == 0) ? 0 : inputs[0].length);
+    }
+
+    /**
+     * Fire the rules for the records from <code>from</code> to <code>from+count-1</code>
+     * of the input columns, writing the results to the same records of the outputs.
+     *
+     * @param inputs one column of crisp values for each input variable
+     * @param outputs an array to hold the weighted average of the rule consequents 
+     *        for each record (Double.NaN for a record where no rule fired)
+     * @param from the first record to process
+     * @param count the number of records to process
+     * @exception XValueOutsideUODException if an input value is outside the universe 
+     *        of discourse of its variable
+     */
+    public void execute(double[][] inputs, double[] outputs, int from, int count)
+        throws XValueOutsideUODException
+    {
+        double threshold = FuzzyValue.getMatchThreshold();
+        
+        for (int start=from; start<from+count; start+=FuzzyRuleBatch.BLOCK_SIZE)
+        {   int n = Math.min(FuzzyRuleBatch.BLOCK_SIZE, from + count - start);
+            for (int v=0; v<inputVariables.length; v++)
+            {   double[] column = inputs[v];
+                FuzzificationTable table = inputTables[v];
+                double[][] m = memberships[v];
+                int[] location = locations[v];
+                for (int i=0; i<n; i++)
+                {   checkUOD(v, column[start+i], start+i);
+                    location[i] = table.fuzzify(column[start+i], m, i, location[i]);
+                }
+            }
+            
+            for (int i=0; i<n; i++)
+            {   weights[i] = 0.0;
+                weightedSum[i] = 0.0;
+            }
+            for (int r=0; r<numRules; r++)
+            {   double[] w = strength;
+                calculateStrengths(r, n, threshold);
+                // the consequent is a linear function, so add up its terms over the 
+                // block one term at a time
+                int[] input = consequentInput[r];
+                double[] coefficient = consequentCoefficient[r];
+                double c = consequentConstant[r];
+                for (int i=0; i<n; i++)
+                {   weights[i] += w[i];
+                    weightedSum[i] += w[i]*c;
+                }
+                for (int t=0; t<input.length; t++)
+                {   double[] x = inputs[input[t]];
+                    double k = coefficient[t];
+                    for (int i=0; i<n; i++)
+                        weightedSum[i] += w[i]*k*x[start+i];
+                }
+            }
+            for (int i=0; i<n; i++)
+                outputs[start+i] = (weights[i] > 0.0) ? weightedSum[i]/weights[i] : Double.NaN;
+        }
+    }
+
+    /**
+     * Calculate the firing strength of rule r for a block of records (as is done for the
+     * DOFs in FuzzyRuleBatch); 0.0 if an antecedent does not match its input at the
+     * threshold level.
+     */
+    private void calculateStrengths(int r, int n, double threshold)
+    {
+        FuzzyRuleBatch.calculateDOFs(strength, n, memberships, antecedentInput[r], antecedentSet[r], 
+                                     ruleCombine[r], ruleCombineOperator[r], matchValues[r], threshold);
+    }
+
+    private void checkUOD(int v, double x, int record)
+        throws XValueOutsideUODException
+    {
+        if (!(x >= inputVariables[v].getMinUOD() && x <= inputVariables[v].getMaxUOD()))
+           throw new XValueOutsideUODException("Input value " + x + 
+                                               ((record < 0) ? "" : " of record " + record) + 
+                                               " is outside the Universe of Discourse of " + 
+                                               inputVariables[v].getName());
+    }
+}
@@ -68,6 +68,12 @@ import java.io.*;
 public class TsukamotoRuleExecutor extends FuzzyRuleExecutor
                                            implements Serializable
 {
+    /**
+     * The serialVersionUID of the class before the inference listener was added,
+     * so that executors serialized by earlier versions can still be read.
+     */
+    private static final long serialVersionUID = 3240177764364407765L;
+
     // The degree of matching (or DOF -- Degree of rule Fullfillment)
 	// for the antecedents and inputs. This value
     // is maintained from rule execution to rule execution. It is expected that
@@ -127,7 +133,7 @@ public class TsukamotoRuleExecutor extends FuzzyRuleExecutor
         boolean recalulateDOF = (rule.isAntecedentsChanged() || rule.isInputsChanged() ||
 		                         rule.isAntecendentCombineOperatorChanged());
 
-        return doTheExecute( rule.getAntecedents(), rule.getConclusions(),
+        return doTheExecute( rule, rule.getAntecedents(), rule.getConclusions(),
                              rule.getInputs(), rule.getAntecedentCombineOperator(), 
                              recalulateDOF );
     }
@@ -155,13 +161,37 @@ public class TsukamotoRuleExecutor extends FuzzyRuleExecutor
         // in this case the DOF must always be re-calulated since there is no rule
         // that stores the antecedents and inputs from one invocation to the next
         // and use the default antecedentCombineOperator without a rule
-        return doTheExecute( antecedents, conclusions, inputs, 
+        return doTheExecute( null, antecedents, conclusions, inputs, 
                              FuzzyRule.getDefaultAntecedentCombineOperator(), true );
     }
     
+    /**
+     * Execute a rule with a set of inputs rather than those of the rule, as
+     * execute(antecedents, conclusions, inputs) does, telling the inference
+     * listener (if there is one) which rule was matched.
+     */
+    FuzzyValueVector executeWithInputs( FuzzyRule rule, FuzzyValueVector inputs )
+        throws IncompatibleRuleInputsException
+    {
+        return doTheExecute( rule, rule.getAntecedents(), rule.getConclusions(), inputs, 
+                             FuzzyRule.getDefaultAntecedentCombineOperator(), true );
+    }
+
+    /**
+     * Get the DOF (degree of fulfillment) found the last time the executor fired a rule.
+     *
+     * @return the DOF
+     */
+    public double getDegreeOfFulfillment()
+    {
+        return DOF;
+    }
+
     /**
      * This execute method does the work of the execute method.
      *
+     * @param rule The rule being executed, or null if there is none (it is only
+     *             given to the inference listener).
      * @param antecedents The FuzzyValues that represent a rule's antecedents.
      * @param conclusions The FuzzyValues that represent a rule's conclusions.
      * @param inputs The FuzzyValues that represent a rule's inputs.
@@ -173,7 +203,8 @@ public class TsukamotoRuleExecutor extends FuzzyRuleExecutor
      *          outputs of the fired rule.
      * @exception IncompatibleRuleInputsException
      */
-    private FuzzyValueVector doTheExecute( FuzzyValueVector antecedents, 
+    private FuzzyValueVector doTheExecute( FuzzyRule rule,
+                                           FuzzyValueVector antecedents, 
                                            FuzzyValueVector conclusions, 
                                            FuzzyValueVector inputs,
 	                                       AntecedentCombineOperator combineOperator,
@@ -184,6 +215,9 @@ public class TsukamotoRuleExecutor extends FuzzyRuleExecutor
         int i;
         FuzzyValueVector outputs;
         double tempDOF;
+        // work with a local copy of the DOF so that several threads can fire
+        // the same rule at once; the field only records it for getDegreeOfFulfillment
+        double dof = DOF;
 
         // antecedents and inputs must be same size and have matching FuzzyVariables
         FuzzyRule.checkAntecedentsAndInputs( antecedents, inputs );
@@ -195,23 +229,29 @@ public class TsukamotoRuleExecutor extends FuzzyRuleExecutor
 
         outputs = new FuzzyValueVector( conclusions.size() );
 
+        FuzzyInferenceListener listener = FuzzyRule.inferenceListener;
+        long start = (listener == null) ? 0 : System.nanoTime();
+
         if (recalulateDOF)
         { // we must recalculate DOF
 		  int len = antecedents.size();
-          DOF = 1.0;
+          dof = 1.0;
           if (len > 0)
           { try
 			{ double matchValues[] = new double[len];
 			  for (i = 0; i<len; i++)
 			  { matchValues[i] = antecedents.fuzzyValueAt(i).maximumOfIntersection(inputs.fuzzyValueAt(i));
 			  }
-			  DOF = (len == 1)? matchValues[0] :
+			  dof = (len == 1)? matchValues[0] :
 								combineOperator.execute(matchValues);
 			}
 			catch (IncompatibleFuzzyValuesException e)
 			{   tempDOF = 1.0; } // safe to ignore this since we already checked compatibility
           }
+          DOF = dof;
         }
+        if (listener != null)
+            listener.ruleMatched(rule, dof, (recalulateDOF) ? System.nanoTime() - start : 0);
 
         // now calc actual conclusions using the DOF to find the corresponding X
         // value with the DOF membership value (expects conclusions are
@@ -223,13 +263,13 @@ public class TsukamotoRuleExecutor extends FuzzyRuleExecutor
         // in this case. This should not happen if the user has the proper
         // conclusion FuzzySets spanning all membership values from 0.0 to 1.0.
         double xVals[] = new double[3];
-        double yVals[] = {0.0, DOF, 0.0};
+        double yVals[] = {0.0, dof, 0.0};
         for (i = 0; i<conclusions.size(); i++)
         {   double xValue;
         	int len = 3;
         	FuzzyValue conc = conclusions.fuzzyValueAt(i);
         	try
-			{   xValue = conc.getXforMembership(DOF);
+			{   xValue = conc.getXforMembership(dof);
         		xVals[0] = xVals[1] = xVals[2] = xValue;
 			}
         	catch (NoXValueForMembershipException e)
@@ -251,8 +251,11 @@ public class FuzzyRete extends Rete implements Serializable
     // being asserted ... then special processing             
     if (fuzzyValues != null)
       {
+        FuzzyFlightRecorderEvents.PreAssertion event = new FuzzyFlightRecorderEvents.PreAssertion();
+        event.begin();
         Vector fuzzyMatches = null;
         FuzzyValueVector fuzzyOutputs = null;
+        FuzzyValueVector factFuzzyValues = fuzzyValues;
         // if in an activation and there were fuzzy matches on LHS
         // determine the modified fuzzy outputs
         if ( m_currentActivation != null &&
@@ -277,6 +280,9 @@ public class FuzzyRete extends Rete implements Serializable
                  )
                 )
               { m_currentActivationFuzzyRule = new FuzzyRule();
+                // named for the defrule so that inference listeners can
+                // tell the firings of different defrules apart
+                m_currentActivationFuzzyRule.setName(m_currentActivation.getRule().getName());
                 for (i = 0; i<fuzzyMatches.size(); i++)
                   { FuzzyValueVector fvv = (FuzzyValueVector)(fuzzyMatches.elementAt(i));
                     m_currentActivationFuzzyRule.addAntecedent(fvv.fuzzyValueAt(0));
@@ -323,7 +329,9 @@ public class FuzzyRete extends Rete implements Serializable
         if (iFact == null)
           { // no existing fact to combine with
             if (fuzzyOutputs != null) // null if no matches on LHS or not in a rule
-              setFuzzyValuesInFact(f, fuzzyOutputs);
+              { setFuzzyValuesInFact(f, fuzzyOutputs);
+                factFuzzyValues = fuzzyOutputs;
+              }
           }
         else
           { // an existing fact to combine with
@@ -331,12 +339,17 @@ public class FuzzyRete extends Rete implements Serializable
             FuzzyValueVector iFactFuzzyValues = getFuzzyValuesInFact(iFact);
             if (fuzzyOutputs == null) // null if no matches on LHS or not in a rule
               fuzzyOutputs = fuzzyValues;
+            FuzzyInferenceListener listener = FuzzyRule.getInferenceListener();
             try
               { for (i=0; i<iFactFuzzyValues.size(); i++)
                 {   // do correct type of global contribution
                 	FuzzyValue globalFV = fuzzyOutputs.fuzzyValueAt(i);
                 	if (m_globalContributionOperator != null)
+                	{  long start = (listener == null) ? 0 : System.nanoTime();
                 	   globalFV = m_globalContributionOperator.execute(globalFV,iFactFuzzyValues.fuzzyValueAt(i));
+                	   if (listener != null)
+                	      listener.aggregated(globalFV, System.nanoTime() - start);
+                	}
 					globalFuzzyValues.addFuzzyValue(globalFV);
                 }
               }
@@ -352,9 +365,23 @@ public class FuzzyRete extends Rete implements Serializable
                                         "Unexpected error global contribution, internal problem: " + xvoue, "");
               }
             setFuzzyValuesInFact(f, globalFuzzyValues);
+            factFuzzyValues = globalFuzzyValues;
             // retract the existing 'identical' fact!
             retract(iFact);
           }
+        event.end();
+        if (event.shouldCommit())
+          { event.fact = f.getName();
+            if (m_currentActivation != null)
+              event.rule = m_currentActivation.getRule().getName();
+            event.fuzzyValues = factFuzzyValues.size();
+            event.dof = (fuzzyMatches == null) ? Double.NaN :
+                        m_currentActivationFuzzyRule.getRuleExecutor().getDegreeOfFulfillment();
+            event.globalContribution = (iFact != null);
+            for (i=0; i<factFuzzyValues.size(); i++)
+              event.points += factFuzzyValues.fuzzyValueAt(i).size();
+            event.commit();
+          }
       }
     return super.doPreAssertionProcessing(f);  
   }
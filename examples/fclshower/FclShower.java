@@ -0,0 +1,58 @@
+// Loads the shower controller written in the Fuzzy Control Language
+// (shower.fcl) and prints the changes it makes to the hot and cold valves
+// for a range of temperatures and flows.
+//
+// From the directory above examples:
+//
+//    java examples.fclshower.FclShower [fcl file] [-cache directory]
+//
+// With -cache the model is kept in the directory and loaded from there the next
+// time, as long as the FCL file has not changed.
+
+package examples.fclshower;
+
+import java.io.File;
+import nrc.fuzzy.*;
+
+public class FclShower
+{
+    public static void main(String[] args) throws Exception
+    {
+        File file = new File("examples/fclshower/shower.fcl");
+        File cache = null;
+        for (int i=0; i<args.length; i++)
+        {   if (args[i].equals("-cache") && i+1 < args.length)
+                cache = new File(args[++i]);
+            else
+                file = new File(args[i]);
+        }
+
+        long start = System.nanoTime();
+        FuzzyControlLanguageModel model = (cache == null) ? FuzzyControlLanguageLoader.load(file) 
+                                                          : FuzzyControlLanguageLoader.load(file, cache);
+        long loaded = System.nanoTime();
+        System.out.println("Loaded " + model.getName() + " (" + model.getFuzzyRules().length + 
+                           " rules) in " + (loaded - start)/1000000.0 + " ms");
+
+        double[] inputs = new double[2];
+        double[] outputs = new double[2];
+        System.out.println("temperature  flow   hot valve  cold valve");
+        for (double temperature=10.0; temperature<=60.0; temperature+=10.0)
+            for (double flow=5.0; flow<=25.0; flow+=10.0)
+            {   inputs[model.getInputIndex("temperature")] = temperature;
+                inputs[model.getInputIndex("flow")] = flow;
+                model.evaluate(inputs, outputs);
+                System.out.println(format(temperature, 11) + format(flow, 6) + 
+                                   format(outputs[model.getOutputIndex("hotValveChange")], 11) +
+                                   format(outputs[model.getOutputIndex("coldValveChange")], 12));
+            }
+    }
+
+    static String format(double d, int width)
+    {
+        String s = String.valueOf(Math.round(d*1000.0)/1000.0);
+        while (s.length() < width)
+            s = " " + s;
+        return s;
+    }
+}
@@ -25,6 +25,7 @@ package examples.fuzzypendulum;
 
 import javax.swing.*;
 import nrc.fuzzy.*;
+import examples.simulation.PendulumSimulation;
 
 /** 
  * Class to simulate an inverse pendulum balancing (mass balanced on a stick,  
@@ -66,50 +67,35 @@ import nrc.fuzzy.*;
  * current. The current is set to this value and the next iteration is done.
  * The current output determined by the rules is a value between -1.0 and 1.0.
  * This is scaled by the size of the motor to get the actual current.
+ *
+ * The dynamics of the pendulum and the rules are in the headless 
+ * examples.simulation.PendulumSimulation; this thread steps it and, after each step,
+ * gives a snapshot of its state to the GUI.
  */
 
 public class FuzzyPendulumModel extends java.lang.Thread
 {
     // Some constants
-    final static double G = 9.80666;  // gravity constant
-    final static double dT = 0.06;    // time delta (.04 was original value, use < 0.1
-                                      // or it reacts too slow to control the system)
-    final static double dT2 = dT*dT;  // time delta squared
-    final static double ERROR_MIN = -Math.PI/2, 
-                        ERROR_MAX = Math.PI/2;
-    final static double OMEGA_MIN = -8.5, 
-                        OMEGA_MAX = 8.5;
-    final static double CURRENT_MIN = -1.0, 
-                        CURRENT_MAX = 1.0;
+    final static double ERROR_MIN = PendulumSimulation.ERROR_MIN, 
+                        ERROR_MAX = PendulumSimulation.ERROR_MAX;
+    final static double OMEGA_MIN = PendulumSimulation.OMEGA_MIN, 
+                        OMEGA_MAX = PendulumSimulation.OMEGA_MAX;
+    final static double CURRENT_MIN = PendulumSimulation.CURRENT_MIN, 
+                        CURRENT_MAX = PendulumSimulation.CURRENT_MAX;
     
     // state information for the simulation
     boolean bopping = true;  // true is bopping is being done (hit the mass from the left)
-    boolean bobbing = false; // true if mass if to 'bob' up and down
     boolean stepMode = false;// true if doing one step of the simulation at a time
     int stepsToDo = 0;       // number of steps pending in step mode
     
-    double motorSize;        // size of the motor (max current for Motor, Amps)
-    double minMotorSize;     // min size of the motor
-    double maxMotorSize;     // max size of the motor
-    
-    double massSize;         // size of the mass (kg)
-    double minMassSize;      // min size of the mass
-    double maxMassSize;      // max size of the mass
-    
-    double stickLength;      // current length of the stick/pendulum (meters)
-    double minStickLength;   // min length of the stick
-    double maxStickLength;   // max length of the stick
-    double stickDirection;   // +1 or -1 as the stick 'bobs' up and down
+    // the simulation of the pendulum and its fuzzy rules
+    PendulumSimulation simulation;
     
+    // snapshot of the state of the simulation after the last step
     double theta;            // actual angle of pendulum (0 to PI radians)
-    double thetaMin;         // min value for theta
-    double thetaMax;         // max value for theta
-    double requiredTheta;    // the required value of Theta (PI/2 : vertical)
-    
     double error;            // error from required theta value
     double omega;            // angular velocity of the pendulum
     double current;          // output current (from -1.0 to 1.0; scaled by motor size)
-        
     FuzzyValue globalCurrentFVal = null; // aggregated result of all rules firing
     
     FuzzyPendulumJApplet simGraphics; // the GUI attached to the simulation
@@ -118,52 +104,16 @@ public class FuzzyPendulumModel extends java.lang.Thread
     
     private boolean suspendRequested = false; // set to true if this thread should be suspended
     
-    // *************************************************
-    // ***** The Fuzzy Rule definition components ******
-    // *************************************************
-    final int NUM_RULES = 11;
+    final int NUM_RULES = PendulumSimulation.NUM_RULES;
     // The names associated with the rules ... external reference to rules
     // must use these names ... "Z_NM_PM" means 
     //        if error is Z and omega is NM 
     //        then current is PM
-    String[] ruleNames = {"Z_NM_PM", "Z_NS_PS", "PS_NS_Z", "NM_Z_PM", 
-                          "NS_Z_PS", "Z_Z_Z", "PS_Z_NS", "PM_Z_NM", 
-                          "NS_PS_Z", "Z_PS_NS", "Z_PM_NM"
-                         };
+    String[] ruleNames = PendulumSimulation.getRuleNames();
     // identifies if a rule is being used (true => enabled, false => diabled)
-    boolean[] rulesEnabled = {true, true, true, true, true, true, 
-                             true, true, true, true, true
-                            };
+    boolean[] rulesEnabled = new boolean[NUM_RULES];
     // identifies if a rule was fired in the last iteration
-    boolean[] rulesFired = {false, false, false, false, false, false, 
-                             false, false, false, false, false
-                          };
-    // the names of the error antecedants, omega antecedents and current
-    // conclusions for each rule
-    String[] errorAntecedents = {"Z", "Z", "PS", "NM", "NS", "Z", 
-                                 "PS", "PM", "NS", "Z", "Z"};                       
-    String[] omegaAntecedents = {"NM", "NS", "NS", "Z", "Z", "Z",
-                                  "Z", "Z", "PS", "PS", "PM"};    
-    String[] currentConclusions = {"PM", "PS", "Z", "PM", "PS", "Z",
-                                   "NS", "NM", "Z", "NS", "NM"};                       
-    // the fuzzy rules
-    FuzzyRule[] fuzzyRules = new FuzzyRule[NUM_RULES];
-    
-
-    // define the fuzzy terms for each fuzzy variable
-    FuzzyVariable errorFVar;
-    FuzzyVariable omegaFVar;
-    FuzzyVariable currentFVar;
-    
-    final int numErrorFuzzyTerms = 5;
-    final int numOmegaFuzzyTerms = 5;
-    final int numCurrentFuzzyTerms = 5;
-    
-    String[] termNames = {"NM", "NS", "Z", "PS", "PM"};
-    
-    FuzzySet[] errorFuzzySets = new FuzzySet[numErrorFuzzyTerms];
-    FuzzySet[] omegaFuzzySets = new FuzzySet[numOmegaFuzzyTerms];
-    FuzzySet[] currentFuzzySets = new FuzzySet[numCurrentFuzzyTerms];
+    boolean[] rulesFired = new boolean[NUM_RULES];
              
     /**
      * Create a model of the fuzzy pendulum, setting the appropriate values
@@ -171,79 +121,38 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     public FuzzyPendulumModel( FuzzyPendulumJApplet a )
     {
-        int i;
         suspendRequested = false;
         simGraphics = a;
         
-        massSize = 2.5;       // mass is 0.5 kg to 3.5 kg
-        minMassSize = 0.5;
-        maxMassSize = 3.5;
-        
-        motorSize = 100.0;    // motor size is from 60 to 180 Amps (or mA?)
-        minMotorSize = 60.0;
-        maxMotorSize = 180.0;
-        
-        stickLength = 1.3;    // stick can vary from 0.7 to 1.3 m
-        minStickLength = 0.7;
-        maxStickLength = 1.3;
-        stickDirection = -0.1;
-        
-        theta = Math.PI/2.0;         // start vertical
-        requiredTheta = Math.PI/2.0; // want to keep it vertical
-        thetaMin = 0.0;              // min value for theta
-        thetaMax = Math.PI;          // max value for theta
-        error = 0.0;                 // initial error is 0.0 (balanced)
-        omega = 0.0;                 // initial angular velocity is 0.0 (balanced)
-        current = 0.0;               // initial current is 0.0 (balanced)
-        setBopping( true );          // initially bopping in ON
-        setBobbing( false );         // initially bobbing (up/down) is OFF
-        setStepMode( false);         // initially NOT in step mode
-        
         // define the fuzzy variables and their terms and the fuzzy rules
         try 
         {
-          errorFVar = new FuzzyVariable("error", ERROR_MIN, ERROR_MAX);
-          omegaFVar = new FuzzyVariable("omega", OMEGA_MIN, OMEGA_MAX);
-          currentFVar = new FuzzyVariable("current", CURRENT_MIN, CURRENT_MAX);
-        
-          errorFuzzySets[0] = new RFuzzySet(-1.28, -0.64, new RightLinearFunction());
-          errorFuzzySets[1] = new TriangleFuzzySet(-1.28, -0.64, 0);
-          errorFuzzySets[2] = new TriangleFuzzySet(-0.64, 0, 0.64);
-          errorFuzzySets[3] = new TriangleFuzzySet(0, 0.64, 1.28);
-          errorFuzzySets[4] = new LFuzzySet(0.64, 1.28, new LeftLinearFunction());
-             
-          omegaFuzzySets[0] = new RFuzzySet(-4.27, -2.13, new RightLinearFunction());
-          omegaFuzzySets[1] = new TriangleFuzzySet(-4.27, -2.13, 0);
-          omegaFuzzySets[2] = new TriangleFuzzySet(-2.13, 0, 2.13);
-          omegaFuzzySets[3] = new TriangleFuzzySet(0, 2.13, 4.27);
-          omegaFuzzySets[4] = new LFuzzySet(2.13, 4.27, new LeftLinearFunction());
-             
-          currentFuzzySets[0] = new RFuzzySet(-1.0, -0.25, new RightLinearFunction());
-          currentFuzzySets[1] = new TriangleFuzzySet(-0.5, -0.25, 0);
-          currentFuzzySets[2] = new TriangleFuzzySet(-0.25, 0, 0.25);
-          currentFuzzySets[3] = new TriangleFuzzySet(0, 0.25, 0.5);
-          currentFuzzySets[4] = new LFuzzySet(0.25, 1.0, new LeftLinearFunction());
-       
-          for (i=0; i<numErrorFuzzyTerms; i++)
-            errorFVar.addTerm(termNames[i], errorFuzzySets[i]);
-
-          for (i=0; i<numOmegaFuzzyTerms; i++)
-            omegaFVar.addTerm(termNames[i], omegaFuzzySets[i]);
-    
-          for (i=0; i<numErrorFuzzyTerms; i++)
-            currentFVar.addTerm(termNames[i], currentFuzzySets[i]);
-            
-          for (i=0; i<NUM_RULES; i++)
-          { fuzzyRules[i] = new FuzzyRule();
-            fuzzyRules[i].addAntecedent(new FuzzyValue(errorFVar, errorAntecedents[i]));
-            fuzzyRules[i].addAntecedent(new FuzzyValue(omegaFVar, omegaAntecedents[i]));
-            fuzzyRules[i].addConclusion(new FuzzyValue(currentFVar, currentConclusions[i]));
-          }
+          simulation = new PendulumSimulation();
         }
         catch (FuzzyException fe)
-        {}
+        { // there is nothing to show without the rules
+          throw new RuntimeException("Unable to define the fuzzy pendulum rules: " + fe);
+        }
+        takeSnapshot();
+        setBopping( true );          // initially bopping in ON
+        setBobbing( false );         // initially bobbing (up/down) is OFF
+        setStepMode( false);         // initially NOT in step mode
     }
     
+    /** Copy the state of the simulation for the GUI.
+     */
+    void takeSnapshot()
+    {
+        theta = simulation.getTheta();
+        error = simulation.getError();
+        omega = simulation.getOmega();
+        current = simulation.getCurrent();
+        globalCurrentFVal = simulation.getGlobalCurrent();
+        for (int i=0; i<NUM_RULES; i++)
+        {   rulesEnabled[i] = simulation.isRuleEnabled(i);
+            rulesFired[i] = simulation.isRuleFired(i);
+        }
+    }
     
     void requestSuspend()
     {
@@ -274,7 +183,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     void setBobbing( boolean b )
     {
-        bobbing = b;
+        simulation.setBobbing(b);
     }
     
     /** Get the state of bobbing in the simulation
@@ -283,10 +192,9 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     boolean isBobbing()
     {
-        return bobbing;
+        return simulation.isBobbing();
     }
     
-    void setMassSize( double size )
     /**
      * Set the size of the mass on the pendulum.
      * Up to the user to keep values between min and max sizes.
@@ -294,10 +202,9 @@ public class FuzzyPendulumModel extends java.lang.Thread
      *
      * @param size the value to set for the size of the mass on the pendulum
      */
+    void setMassSize( double size )
     {
-        if (size > maxMassSize) massSize = maxMassSize;
-        else if (size < minMassSize) massSize = minMassSize;
-        else massSize = size;
+        simulation.setMassSize(size);
     }
     
     /** Get the current size of the mass on the pendulum.
@@ -306,7 +213,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getMassSize()
     {
-        return massSize;
+        return simulation.getMassSize();
     }
         
     /** Get the current maximum size of the mass on the pendulum.
@@ -315,7 +222,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getMaxMassSize()
     {
-        return maxMassSize;
+        return simulation.getMaxMassSize();
     }
         
     /** Get the current minimum size of the mass on the pendulum.
@@ -324,7 +231,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getMinMassSize()
     {
-        return minMassSize;
+        return simulation.getMinMassSize();
     }
         
     /**
@@ -336,9 +243,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     void setMotorSize( double size )
     {
-        if (size > maxMotorSize) motorSize = maxMotorSize;
-        else if (size < minMotorSize) motorSize = minMotorSize;
-        else motorSize = size;
+        simulation.setMotorSize(size);
     }
     
     /** Get the current size of the motor on the pendulum.
@@ -347,7 +252,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getMotorSize()
     {
-        return motorSize;
+        return simulation.getMotorSize();
     }
     
     /** Get the minimum size of the motor on the pendulum.
@@ -356,7 +261,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getMinMotorSize()
     {
-        return minMotorSize;
+        return simulation.getMinMotorSize();
     }
     
     /** Get the maximum size of the motor on the pendulum.
@@ -365,7 +270,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getMaxMotorSize()
     {
-        return maxMotorSize;
+        return simulation.getMaxMotorSize();
     }
     
     /** Freeze the simulation for a specified number of seconds.
@@ -382,7 +287,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     void bumpLeft()
     {
-        omega += 3.0;
+        simulation.bumpLeft();
     }
     
     /** Bump the mass to the right. In this case just decrease the angular
@@ -390,7 +295,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     void bumpRight()
     {
-        omega -= 3.0;
+        simulation.bumpRight();
     }
     
     /** Pull the mass all the way to the left. In this case set the angular
@@ -398,8 +303,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     void pullLeft()
     {
-        omega = 0.0;
-        theta = Math.PI;
+        simulation.pullLeft();
     }
     
     /** Pull the mass all the way to the right. In this case set the angular
@@ -407,8 +311,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     void pullRight()
     {
-        omega = 0.0;
-        theta = 0.0;
+        simulation.pullRight();
     }
     
     /** Turn on or off step mode, allowing the user to execute one step of the
@@ -453,7 +356,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getTheta()
     {
-        return theta;
+        return simulation.getTheta();
     }
     
     /** Get the current value of the length of the pendulum (stick).
@@ -462,7 +365,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getStickLength()
     {
-        return stickLength;
+        return simulation.getStickLength();
     }
     
     /** Get the minimum value of the length of the pendulum (stick).
@@ -471,7 +374,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getMinStickLength()
     {
-        return minStickLength;
+        return simulation.getMinStickLength();
     }
     
     /** Get the maximum value of the length of the pendulum (stick).
@@ -480,7 +383,7 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     double getMaxStickLength()
     {
-        return maxStickLength;
+        return simulation.getMaxStickLength();
     }
     
     /** Enbable or disable a rule from being used in the rule firings.
@@ -491,13 +394,11 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     void setRuleEnabled(boolean b, String rule)
     {
-        int i;
-        
-        for (i=0; i<NUM_RULES; i++)
-            if (rule.equalsIgnoreCase(ruleNames[i]))
-            {  rulesEnabled[i] = b;
-               return;
-            }
+        int i = PendulumSimulation.findRule(rule);
+        if (i >= 0)
+        {  simulation.setRuleEnabled(b, i);
+           rulesEnabled[i] = b;
+        }
     }
     
     /** Determine if a rule is enabled or disabled.
@@ -507,13 +408,8 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     boolean isRuleEnabled(String rule)
     {
-        int i;
-        
-        for (i=0; i<NUM_RULES; i++)
-            if (rule.equalsIgnoreCase(ruleNames[i]))
-               return rulesEnabled[i];
-               
-        return false;
+        int i = PendulumSimulation.findRule(rule);
+        return (i >= 0) && simulation.isRuleEnabled(i);
     }
     
     /** Get a rule.
@@ -524,14 +420,9 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     FuzzyRule getFuzzyRule(String rule)
     {
-        int i;
-        
-        for (i=0; i<NUM_RULES; i++)
-            if (rule.equalsIgnoreCase(ruleNames[i]))
-               return fuzzyRules[i];
-               
-        // error ... rule not found
-        return null;
+        int i = PendulumSimulation.findRule(rule);
+        // null if error ... rule not found
+        return (i < 0) ? null : simulation.getFuzzyRule(i);
     }
     
     
@@ -539,10 +430,10 @@ public class FuzzyPendulumModel extends java.lang.Thread
     /** The heart of the simulation, the run method. 
      * 
      * Simulates the balancing of a pendulum. At each cycle (time step) 
-     * we calculate the current simulation state (theta, omega, etc.) and
-     * we execute a set of Fuzzy Rules that determine the current to
+     * the simulation calculates the current simulation state (theta, omega, etc.) 
+     * and executes a set of Fuzzy Rules that determine the current to
      * apply in the motor in order to try to bring the pendulum to a vertical
-     * position.
+     * position. The new state is then shown by the GUI.
      */
     public void run()
     {
@@ -572,45 +463,14 @@ public class FuzzyPendulumModel extends java.lang.Thread
 			       {}
 			       freezeSeconds = 0;
                 }
-                // deal with stick 'bobbing' if required
-                if (isBobbing())
-                {  // adjust the length of the stick
-                   stickLength += stickDirection;
-                   if (stickLength < minStickLength)
-                      stickDirection = 0.1;
-                   else if (stickLength > maxStickLength)
-                      stickDirection = -0.1;
-                }
                 
-                // determine the new value for theta given the current being 
-                // applied (size of motor plus normalized current determined), 
-                // the size of the mass, the current position of the mass/stick.
-                //
-                // mainTorque ... torque exerted by gravity
-                // coilTorque ... torque exerted by the motor
-                // totalTorque ... combined torque
-                double mainTorque = -(stickLength*massSize*Math.cos(theta)*G);
-                double coilTorque = motorSize*(current);
-                double totalTorque = mainTorque + coilTorque;
-                double inertia = stickLength*stickLength * massSize;
-                double alpha = totalTorque/inertia; // mass angular acceleration
-                omega = omega + alpha*dT; // mass angular velocity
-                theta = theta + omega*dT + alpha*dT2;
-                
-                if (theta > thetaMax) 
-                {  theta = thetaMax;
-                   omega = 0.0;
-                }
-                else if (theta < thetaMin) 
-                {  theta = thetaMin;
-                   omega = 0.0;
+                // move the pendulum and fire the rules to calculate the next current setting
+                try
+                { simulation.step();
                 }
-                
-                // get error and delta error (actually angular velocity!!)
-                error = theta - requiredTheta;
-                
-                // fire rules to calculate the next current setting
-                fireRules( error, omega );
+                catch (FuzzyException fe)
+                {}
+                takeSnapshot();
 
                 // always draw the modified simulation panel after each time step
                 // and draw the modified rule firings information
@@ -646,53 +506,12 @@ public class FuzzyPendulumModel extends java.lang.Thread
      */
     public void fireRules(double error, double omega )
     {
-        int i;
-        
-        FuzzyValueVector ruleResultFVV = null;
-        globalCurrentFVal = null;
-        
-        // to fuzzify error and omega they need to be in range
-        if (error > ERROR_MAX) error = ERROR_MAX;
-        if (error < ERROR_MIN) error = ERROR_MIN;
-        if (omega > OMEGA_MAX) omega = OMEGA_MAX;
-        if (omega < OMEGA_MIN) omega = OMEGA_MIN;
-        
-        // clear all rulesFired flags;
-        for (i=0; i<NUM_RULES; i++)
-            rulesFired[i] = false;
-        
         try
-        {
-          // fuzzify error and omega 
-          FuzzyValue errorFVal = new FuzzyValue(errorFVar, new TriangleFuzzySet(error, error, error));
-          FuzzyValue omegaFVal = new FuzzyValue(omegaFVar, new TriangleFuzzySet(omega, omega, omega));
-        
-          // use these as the inputs to each rule firing
-          FuzzyValueVector ruleInputs = new FuzzyValueVector(2);
-          ruleInputs.addFuzzyValue(errorFVal);
-          ruleInputs.addFuzzyValue(omegaFVal);
-        
-          // fire the rules if they match the inputs
-          for (i=0; i<NUM_RULES; i++)
-          {
-            FuzzyRule rule = fuzzyRules[i];
-            if (rulesEnabled[i] && rule.testRuleMatching(ruleInputs))
-            {
-                rulesFired[i] = true;
-                ruleResultFVV = rule.execute(ruleInputs);
-                FuzzyValue fval = ruleResultFVV.fuzzyValueAt(0);
-                if (globalCurrentFVal == null)
-                   globalCurrentFVal = fval;
-                else
-                   globalCurrentFVal = globalCurrentFVal.fuzzyUnion(fval);
-            }
-          }
-          // determine the new value for the motor current (between -1 and +1)
-          if (globalCurrentFVal != null)
-             current = globalCurrentFVal.momentDefuzzify();
+        { simulation.fireRules(error, omega);
         }
         catch (FuzzyException fe)
         {}
+        takeSnapshot();
     }
     
     /* Threads for repainting etc. Note ... MUST do the painting 
@@ -714,4 +533,4 @@ public class FuzzyPendulumModel extends java.lang.Thread
        }
     }
     
-}
\ No newline at end of file
+}
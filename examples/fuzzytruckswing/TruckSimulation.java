@@ -4,9 +4,12 @@ import nrc.fuzzy.*;
 import java.awt.*;
 import javax.swing.*;
 import java.text.*;
+import examples.simulation.TruckBackerUpper;
 
 // This is the base class for truck simulator. It handles setting up
-// the initial data and running the algorithm.
+// the initial data and running the algorithm. The fuzzy definitions and 
+// the movement of the truck are in examples.simulation.TruckBackerUpper;
+// this thread steps it and shows its state after each step.
 
 public class TruckSimulation extends java.lang.Thread
 {
@@ -16,10 +19,8 @@ public class TruckSimulation extends java.lang.Thread
 	public static final int STEP = 1;
 	public static final int RUN = 2;
 	
-	public static final int ROWS = 7;
-	public static final int COLUMNS = 5;
-	
-	static final double PIBY180 = Math.PI / 180;
+	public static final int ROWS = TruckBackerUpper.ROWS;
+	public static final int COLUMNS = TruckBackerUpper.COLUMNS;
 	
 	boolean pause = true, finished = false, truck_disabled = false;
 	// initial state of simulation is paused
@@ -56,18 +57,8 @@ public class TruckSimulation extends java.lang.Thread
 	// true when we are to show the rule firings as the simulation proceeds
 	boolean showRuleFirings;
     
-    // The fuzzy definitions
-	static FuzzyVariable xpos;
-	static String xposTerms[] = {"LeftBig", "LeftMedium", "Centred", "RightMedium", "RightBig"};
-	static FuzzySet xposFzsets[] = new FuzzySet[COLUMNS];
-	static FuzzyVariable phi;
-	static String phiTerms[] = {"LargeBelow90", "MediumBelow90", "SmallBelow90", "At90", "SmallAbove90", "MediumAbove90", "LargeAbove90"};
-	static FuzzySet phiFzSets[] = new FuzzySet[ROWS];
-	static FuzzyVariable changePhi;
-	static String changePhiTerms[] = {"NB", "NM", "NS", "ZE", "PS", "PM", "PB" };
-	static FuzzySet changePhiFzSets[] = new FuzzySet[ROWS];
-	
-	static FuzzyRule theRules[][] = new FuzzyRule[ROWS][COLUMNS]; // 1st index is phi, 2nd is xpos
+    // The simulation of the truck and its fuzzy rules
+	TruckBackerUpper core;
 	
 	// OFF_COLOR is normal color for rule matrix buttons 
 	private static final Color OFF_COLOR = new Color(204, 204, 204);
@@ -87,14 +78,7 @@ public class TruckSimulation extends java.lang.Thread
 
 	// default values for the rule conclusions matrix (Reset Rules button 
 	// resets to these values)
-	public static final String DefaultConclusions[][] = 
-				{{"PS", "PM", "PM", "PB", "PB"},
-				 {"NS", "PS", "PM", "PB", "PB"},
-				 {"NM", "NS", "PS", "PM", "PB"},
-				 {"NM", "NM", "ZE", "PM", "PM"},
-				 {"NB", "NM", "NS", "PS", "PM"},
-				 {"NB", "NB", "NM", "NS", "PS"},
-				 {"NB", "NB", "NM", "NM", "NS"}};
+	public static final String DefaultConclusions[][] = TruckBackerUpper.DefaultConclusions;
 				
     // current values for the rule conclusions
 	public static String CurrentConclusions[][] = 
@@ -110,58 +94,11 @@ public class TruckSimulation extends java.lang.Thread
 	// Set up the data in a constructor
 	public TruckSimulation (FuzzyTruckJApplet p) {
 		parent = p;
-		int i, j;
 		
-		// define the fuzzyVariables and terms
-		// define the fuzzy input values (curentXpos and currentPhi)
-		// define the fuzzy output value (changePhi)
+		// define the fuzzyVariables and terms and the rules
 		try 
 		{
-          // data from Kosko's book.
-	      phiFzSets[0] = new RFuzzySet(-45.0, 10.0, new RightLinearFunction());
-		  phiFzSets[1] = new TriangleFuzzySet(-10.0, 25.0, 60.0);
-		  phiFzSets[2] = new TriangleFuzzySet(50.0, 70.0, 90.0);
-		  phiFzSets[3] = new TriangleFuzzySet(80.0, 90.0, 100.0);
-		  phiFzSets[4] = new TriangleFuzzySet(90.0, 110.0, 130.0);
-		  phiFzSets[5] = new TriangleFuzzySet(120.0, 155.0, 190.0);
-		  phiFzSets[6] = new LFuzzySet(170.0, 225.0, new LeftLinearFunction());
-
-		  changePhiFzSets[0] = new TriangleFuzzySet(-45.0, -30.0, -15.0);
-	      changePhiFzSets[1] = new TriangleFuzzySet(-25.0, -15.0, -5.0);
-	      changePhiFzSets[2] = new TriangleFuzzySet(-10.0, -5.0, 0.0);
-	      changePhiFzSets[3] = new TriangleFuzzySet(-5.0, 0.0, 5.0);
-	      changePhiFzSets[4] = new TriangleFuzzySet(0.0, 5.0, 10.0);
-	      changePhiFzSets[5] = new TriangleFuzzySet(5.0, 15.0, 25.0);
-	      changePhiFzSets[6] = new TriangleFuzzySet(15.0, 30.0, 45.0);
-
-          xposFzsets[0] = new RFuzzySet(10.0, 35.0, new RightLinearFunction());
-	      xposFzsets[1] = new TriangleFuzzySet(30.0, 40.0, 50.0);
-	      xposFzsets[2] = new TriangleFuzzySet(45.0, 50.0, 55.0);
-	      xposFzsets[3] = new TriangleFuzzySet(50.0, 60.0, 70.0);
-	      xposFzsets[4] = new LFuzzySet(65.0, 90.0, new LeftLinearFunction());
-
-          // Input fuzzy variable for the truck's x coordinate position
-		  xpos = new FuzzyVariable("Xpos", 0, 100, "");
-		  for (i=0; i<xposTerms.length; i++)
-		      xpos.addTerm(xposTerms[i], xposFzsets[i]); 
-          // Input fuzzy variable for the truck's angular position
-		  phi = new FuzzyVariable("Phi", -90, 270, "Degrees");
-		  for (i=0; i<phiTerms.length; i++)
-		      phi.addTerm(phiTerms[i], phiFzSets[i]); 
-          // Output fuzzy variable for changing the truck's angular position
-		  changePhi = new FuzzyVariable("changePhi", -45.0, 45.0, "Degrees");
-		  for (i=0; i<changePhiTerms.length; i++)
-		      changePhi.addTerm(changePhiTerms[i], changePhiFzSets[i]); 
-
-		  //define the fuzzy rules
-		  for (i=0; i<phiTerms.length; i++)
-		    for (j=0; j<xposTerms.length; j++)
-		    { 
-		     theRules[i][j] = new FuzzyRule();
-		     theRules[i][j].addAntecedent(new FuzzyValue(xpos, xposTerms[j]));
-		     theRules[i][j].addAntecedent(new FuzzyValue(phi, phiTerms[i]));
-		     theRules[i][j].addConclusion(new FuzzyValue(changePhi, CurrentConclusions[i][j]));
-		    }
+		  core = new TruckBackerUpper();
 		}
 		catch (FuzzyException fe)
 		{System.out.println(fe);}
@@ -267,7 +204,6 @@ public class TruckSimulation extends java.lang.Thread
 	// Core of the fuzzy truck algorithm
 	public void run() 
 	{   int m, i=0, j=0;
-		double angleInRadians;
         double changePhiValue;
 		
 		ResetConclusionButtonsThread rcbThread = new ResetConclusionButtonsThread();
@@ -280,71 +216,38 @@ public class TruckSimulation extends java.lang.Thread
           m = getMsg();
                       
           if (!simulationFinished()) 
-          { FuzzyValue globalResult = null;
-            changePhiValue = 0.0;
+          { changePhiValue = 0.0;
             try
             { // if this is the first time we run the alg.
               // then get the rules from the matrix.
               if (Iteration == 0) 
-			  { Xt = X;
-	  		    Yt = Y;
-	 			Phit = Phi;
+			  { core.reset(X, Y, Phi);
 	 			// get the correct conclusions for each rule
-                for (i=0; i<phiTerms.length; i++)
-                    for (j=0; j<xposTerms.length; j++)
-		            { 
-		              String fzExpression = CurrentConclusions[i][j];
-                      theRules[i][j].removeAllConclusions();
-		              if (!fzExpression.equals(" "))
-		                 theRules[i][j].addConclusion(new FuzzyValue(changePhi, fzExpression));
-		            }
+                for (i=0; i<ROWS; i++)
+                    for (j=0; j<COLUMNS; j++)
+                      core.setConclusionExpression(CurrentConclusions[i][j], i, j);
 			  }
 			  // reset the conclusion buttons backgrounds
               SwingUtilities.invokeAndWait( rcbThread );
 
-		      // compute the results of the rule firing for the current xpos and phi values.
-		      FuzzyValueVector fvvInputs = new FuzzyValueVector(2);
-			  FuzzyValueVector result = null;
-			  fvvInputs.addFuzzyValue(new FuzzyValue(xpos, new TriangleFuzzySet(Xt, Xt, Xt)));
-			  fvvInputs.addFuzzyValue(new FuzzyValue(phi, new TriangleFuzzySet(Phit, Phit, Phit)));
-              for (i=0; i<phiTerms.length; i++)
-              {  for (j=0; j<xposTerms.length; j++)
-		         { FuzzyValueVector concFvv = theRules[i][j].getConclusions();
-		           if ( concFvv != null &&
-		                concFvv.size() > 0 &&
-		                theRules[i][j].testRuleMatching(fvvInputs)
-		              )
-		           { // execute rule with required input values
-		             result = theRules[i][j].execute(fvvInputs);
-		             FuzzyValue fv = result.fuzzyValueAt(0);
-		             // set color of rule button background to indicate degree of matching
-		             if (showRuleFirings)
-		             {
-		               double maxY = fv.getMaxY();
-		               int colorDegree = (int)(255.0*(1.0-maxY));
-		               conclusionColor = matchColors[colorDegree];
-		               conclusionI = i;
-		               conclusionJ = j;
-                       SwingUtilities.invokeAndWait( scbcThread );
-                     }
-                     
-		             // add to global result for all rules 
-   		             if (globalResult == null)
-    		            globalResult = fv;
-    		         else
-    		            globalResult = globalResult.fuzzyUnion(fv);
- 		           }
-		         }
-              }
-		      // new values based on the alogorithm for finding the new
-			  // angle (see Kosko's book).
-		      // globalResult could be null if we take out some rules
-		      // that and no rules now match ... 
-              if (globalResult != null) 
-                 changePhiValue = globalResult.momentDefuzzify();
-		      Phit += changePhiValue;
-			  Xt += Speed * Math.cos(angleInRadians = Phit * PIBY180);
-			  Yt -= Speed * Math.sin(angleInRadians);
+		      // fire the rules for the current xpos and phi values and move the truck
+              core.setTruckSpeed(Speed);
+              core.step();
+              changePhiValue = core.getChangePhi();
+              
+		      // set color of rule button backgrounds to indicate degree of matching
+		      if (showRuleFirings)
+                for (i=0; i<ROWS; i++)
+                  for (j=0; j<COLUMNS; j++)
+		          { double maxY = core.getFiringDegree(i, j);
+		            if (maxY >= 0.0)
+		            { int colorDegree = (int)(255.0*(1.0-maxY));
+		              conclusionColor = matchColors[colorDegree];
+		              conclusionI = i;
+		              conclusionJ = j;
+                      SwingUtilities.invokeAndWait( scbcThread );
+                    }
+                  }
             }
             catch (FuzzyException fe)
             {  System.out.println(fe+"\n"+i+", "+j);
@@ -354,12 +257,16 @@ public class TruckSimulation extends java.lang.Thread
 			   //Ensure the application exits with an error condition.
 			   System.exit(1);
 			}
+			Xt = core.getX();
+			Yt = core.getY();
+			Phit = core.getPhi();
 
 			// compute the new coords for display
 			parent.viewArea.computeTruckCoords();
 
 			// test if the simulation is complete
-			test(Xt, Yt, Phit);
+			finished = core.isParked();
+			truck_disabled = core.isDisabled();
 
 			// update the applet
 			Iteration++;
@@ -386,22 +293,6 @@ public class TruckSimulation extends java.lang.Thread
 		}
 	}
 
-	// test if the sim. is complete or if the truck left the 
-	// canvas.
-	private void test(double x, double y, double angle) 
-	{   if ((y <= 0.3) && 
-	        (Math.abs(50.0 - x) <= 1.0) &&
-	        (Math.abs(angle-90.0) <= 5.0)
-	       )
-	    {
-			finished = true;
-			return;
-		}
-		if ((y < 0) || (x < 0) || (x > 100) || ((y > 100) &&
-		    (Math.abs(x - 50) > 1))) 
-		    truck_disabled = true;
-	}
-
 	// print the information if the sim. is complete or
 	// if the truck has left the canvas.
 	private boolean simulationFinished() 
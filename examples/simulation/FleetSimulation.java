@@ -0,0 +1,438 @@
+package examples.simulation;
+
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import nrc.fuzzy.*;
+
+/**
+ * Runs a fleet of many trucks (see FleetTruck) for a number of ticks on a work-stealing
+ * pool of threads (a java.util.concurrent.ForkJoinPool), for what-if studies with
+ * thousands of units. The trucks share one set of fuzzy variables and rules, and
+ * each keeps only a small context of its own, so any number of them can be stepped
+ * on different threads at the same time. Each
+ * tick the work is split into ranges of trucks that idle threads steal from busy
+ * ones, so the threads stay busy as trucks park and drop out.
+ * <p>
+ * The ticks are run in segments with a barrier at the end of each: no truck starts
+ * the ticks of a segment before every truck has finished the ticks of the previous
+ * one, so the observer (if any) sees the state of the whole fleet at the same tick.
+ * With a barrier interval of 1 (the default) the fleet runs in lock step, one tick
+ * per segment; with a barrier interval of 0 each truck runs all of its ticks as
+ * fast as it can, with no barrier until the end. The run ends at the first barrier
+ * at which every truck is parked or has left the area, so the throughput histogram
+ * only has the segments in which trucks were stepped.
+ * <p>
+ * As with the SimulationHarness the initial position of truck i is chosen with a
+ * java.util.Random seeded with seed + i, and a checksum of the final states is
+ * reported. The trucks do not interact, so the checksum is the same for any number of
+ * threads and any barrier interval, and the same as that of the SimulationHarness for
+ * the same number of trucks, ticks and seed; a different checksum means that firing
+ * the rules on several threads at once changed their results. The time taken by each step is
+ * recorded in a latency histogram (in nanoseconds) and the rate of each segment in a
+ * throughput histogram (in steps per second). From the command line:
+ * <pre>
+ *    java examples.simulation.FleetSimulation [trucks] [ticks] [seed] [-threads n] [-barrier ticks] [-trace interval]
+ * </pre>
+ * runs 10000 trucks for 200 ticks with seed 1 by default. Without -threads the fleet
+ * is run with 1, 2, 4, ... threads up to the number of processors to show how it
+ * scales, and the checksums of the runs are compared.
+ */
+public class FleetSimulation
+{
+    int numUnits;
+    int ticks;
+    long seed;
+    int threads;
+    int barrierInterval = 1;
+    SimulationObserver observer = null;
+    int sampleInterval = 0;
+
+    // the results of the last run
+    FleetTruck[] units = null;
+    long stepsDone = 0;
+    long elapsedNanos = 0;
+    long checksum = 0;
+    int numFinished = 0;
+    int numBarriers = 0;
+    Histogram latency = new Histogram();
+    Histogram throughput = new Histogram();
+
+    // the state of the current run
+    private int grain;
+    private Vector threadHistograms;
+    private ThreadLocal<Histogram> threadLatency;
+    private FuzzyException failure;
+
+    /**
+     * Create a fleet simulation.
+     *
+     * @param numUnits the number of trucks
+     * @param ticks the number of ticks to run (a truck that is parked or has left the
+     *        area does nothing more)
+     * @param seed the seed for the initial positions
+     * @param threads the number of threads to step the trucks with
+     */
+    public FleetSimulation(int numUnits, int ticks, long seed, int threads)
+    {
+        if (numUnits < 1 || ticks < 0 || threads < 1)
+           throw new IllegalArgumentException("There must be at least one truck and one thread");
+        this.numUnits = numUnits;
+        this.ticks = ticks;
+        this.seed = seed;
+        this.threads = threads;
+    }
+
+    /**
+     * Set the number of ticks between the barriers at which all of the trucks wait for
+     * each other.
+     *
+     * @param ticks the number of ticks between barriers; 1 to run the fleet in lock
+     *        step and 0 for no barriers until the end of the run
+     */
+    public void setBarrierInterval(int ticks)
+    {
+        barrierInterval = Math.max(0, ticks);
+    }
+
+    /** Get the number of ticks between barriers.
+     *
+     * @return the number of ticks; 1 when running in lock step, 0 when there are no
+     *         barriers
+     */
+    public int getBarrierInterval()
+    {
+        return barrierInterval;
+    }
+
+    /**
+     * Set an observer to be given a snapshot of each truck at the first barrier at
+     * or after every so many ticks (and at the end of the run).
+     *
+     * @param observer the observer, or null for none
+     * @param sampleInterval the number of ticks between snapshots
+     */
+    public void setObserver(SimulationObserver observer, int sampleInterval)
+    {
+        this.observer = observer;
+        this.sampleInterval = Math.max(1, sampleInterval);
+    }
+
+    /**
+     * Create the trucks with their initial positions, sharing one set of fuzzy
+     * variables and rules.
+     *
+     * @return the trucks
+     * @exception FuzzyException if the fuzzy variables or rules cannot be defined
+     */
+    public FleetTruck[] createUnits() throws FuzzyException
+    {
+        TruckBackerUpper rulesFrom = new TruckBackerUpper();
+        FleetTruck[] trucks = new FleetTruck[numUnits];
+        for (int i=0; i<numUnits; i++)
+        {   trucks[i] = new FleetTruck(rulesFrom);
+            SimulationHarness.placeTruck(trucks[i], new Random(seed + i));
+        }
+        return trucks;
+    }
+
+    /**
+     * Create the trucks and run them for the number of ticks.
+     *
+     * @exception FuzzyException if the rules of a truck cannot be fired
+     */
+    public void run() throws FuzzyException
+    {
+        units = createUnits();
+        latency.clear();
+        throughput.clear();
+        numBarriers = 0;
+        failure = null;
+        grain = Math.max(1, numUnits/(threads*16));
+        threadHistograms = new Vector();
+        threadLatency = new ThreadLocal<Histogram>()
+            {   protected Histogram initialValue()
+                {   Histogram h = new Histogram();
+                    threadHistograms.addElement(h);
+                    return h;
+                }
+            };
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        try
+        {   int interval = (barrierInterval > 0) ? barrierInterval : Math.max(1, ticks);
+            int nextSample = sampleInterval;
+            long steps = 0;
+            for (int from=0; from<ticks; from+=interval)
+            {   int to = Math.min(ticks, from + interval);
+                long segmentStart = System.nanoTime();
+                pool.invoke(new StepUnits(0, numUnits, from, to));
+                long segmentNanos = System.nanoTime() - segmentStart;
+                if (failure != null)
+                    throw failure;
+
+                // the barrier: all of the trucks have done the ticks up to 'to'
+                numBarriers++;
+                long segmentSteps = -steps;
+                steps = 0;
+                for (int h=0; h<threadHistograms.size(); h++)
+                    steps += ((Histogram)threadHistograms.elementAt(h)).getCount();
+                segmentSteps += steps;
+                throughput.record((segmentNanos == 0) ? 0 : segmentSteps*1000000000L/segmentNanos);
+                boolean allFinished = true;
+                for (int i=0; i<numUnits && allFinished; i++)
+                    allFinished = units[i].isFinished();
+                if (observer != null && (to >= nextSample || to == ticks || allFinished))
+                {   for (int i=0; i<numUnits; i++)
+                        observer.snapshot(i, to, units[i].getState());
+                    while (nextSample <= to)
+                        nextSample += sampleInterval;
+                }
+                // the rest of the ticks would not step any truck
+                if (allFinished)
+                    break;
+            }
+        }
+        finally
+        {   pool.shutdown();
+        }
+        elapsedNanos = System.nanoTime() - start;
+
+        for (int h=0; h<threadHistograms.size(); h++)
+            latency.add((Histogram)threadHistograms.elementAt(h));
+        stepsDone = latency.getCount();
+        checksum = 0;
+        numFinished = 0;
+        for (int i=0; i<numUnits; i++)
+        {   checksum = SimulationHarness.checksum(units[i].getState(), checksum);
+            if (units[i].isFinished())
+                numFinished++;
+        }
+    }
+
+    /**
+     * Step a range of the trucks through the ticks of a segment, splitting the range
+     * in two until it is small enough so that idle threads can steal half of it.
+     */
+    class StepUnits extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        int low, high, fromTick, toTick;
+
+        StepUnits(int low, int high, int fromTick, int toTick)
+        {
+            this.low = low;
+            this.high = high;
+            this.fromTick = fromTick;
+            this.toTick = toTick;
+        }
+
+        protected void compute()
+        {
+            if (high - low > grain)
+            {   int middle = (low + high) >>> 1;
+                invokeAll(new StepUnits(low, middle, fromTick, toTick),
+                          new StepUnits(middle, high, fromTick, toTick));
+                return;
+            }
+
+            Histogram h = threadLatency.get();
+            for (int i=low; i<high; i++)
+            {   FleetTruck unit = units[i];
+                try
+                {   for (int t=fromTick; t<toTick && !unit.isFinished(); t++)
+                    {   long start = System.nanoTime();
+                        unit.step();
+                        h.record(System.nanoTime() - start);
+                    }
+                }
+                catch (FuzzyException fe)
+                {   synchronized (FleetSimulation.this)
+                    {   if (failure == null)
+                            failure = fe;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Get the trucks of the last run.
+     *
+     * @return the trucks
+     */
+    public FleetTruck[] getUnits()
+    {
+        return units;
+    }
+
+    /** Get the number of threads the trucks are stepped with.
+     *
+     * @return the number of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /** Get the number of steps done in the last run.
+     *
+     * @return the number of steps
+     */
+    public long getStepsDone()
+    {
+        return stepsDone;
+    }
+
+    /** Get the time taken by the last run.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    /** Get the number of steps done per second in the last run.
+     *
+     * @return the steps per second
+     */
+    public double getStepsPerSecond()
+    {
+        return (elapsedNanos == 0) ? 0.0 : stepsDone*1.0e9/elapsedNanos;
+    }
+
+    /** Get the number of barriers passed in the last run (including the one at the end).
+     *
+     * @return the number of barriers
+     */
+    public int getNumBarriers()
+    {
+        return numBarriers;
+    }
+
+    /** Get the histogram of the time taken by each step of the last run.
+     *
+     * @return the latencies in nanoseconds
+     */
+    public Histogram getLatencyHistogram()
+    {
+        return latency;
+    }
+
+    /** Get the histogram of the rate of each segment (between barriers) of the last run.
+     *
+     * @return the throughputs in steps per second
+     */
+    public Histogram getThroughputHistogram()
+    {
+        return throughput;
+    }
+
+    /** Get the checksum of the final states of the trucks of the last run.
+     *
+     * @return the checksum
+     */
+    public long getChecksum()
+    {
+        return checksum;
+    }
+
+    /** Get the number of trucks that were parked or left the area in the last run.
+     *
+     * @return the number of finished trucks
+     */
+    public int getNumFinished()
+    {
+        return numFinished;
+    }
+
+    public static void main(String[] args) throws FuzzyException
+    {
+        int numUnits = 10000;
+        int ticks = 200;
+        long seed = 1;
+        int threads = 0;
+        int barrierInterval = 1;
+        int traceInterval = 0;
+        int n = 0;
+        for (int i=0; i<args.length; i++)
+        {   if (args[i].equals("-threads") && i+1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-barrier") && i+1 < args.length)
+                barrierInterval = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-trace") && i+1 < args.length)
+                traceInterval = Integer.parseInt(args[++i]);
+            else
+            {   switch (n++)
+                {  case 0: numUnits = Integer.parseInt(args[i]); break;
+                   case 1: ticks = Integer.parseInt(args[i]); break;
+                   case 2: seed = Long.parseLong(args[i]); break;
+                   default:
+                      System.err.println("Usage: FleetSimulation [trucks] [ticks] [seed] [-threads n] [-barrier ticks] [-trace interval]");
+                      System.exit(1);
+                }
+            }
+        }
+
+        // the numbers of threads to run with: just the one asked for, or
+        // powers of 2 up to the number of processors
+        Vector threadCounts = new Vector();
+        if (threads > 0)
+            threadCounts.addElement(Integer.valueOf(threads));
+        else
+        {   int processors = Runtime.getRuntime().availableProcessors();
+            for (int t=1; t<processors; t*=2)
+                threadCounts.addElement(Integer.valueOf(t));
+            threadCounts.addElement(Integer.valueOf(processors));
+            // warm up the compiler so the first run is not slowed by it
+            FleetSimulation warmUp = new FleetSimulation(numUnits, ticks, seed, processors);
+            warmUp.setBarrierInterval(barrierInterval);
+            warmUp.run();
+        }
+
+        double baseRate = 0.0;
+        long firstChecksum = 0;
+        boolean checksumsAgree = true;
+        for (int c=0; c<threadCounts.size(); c++)
+        {   int t = ((Integer)threadCounts.elementAt(c)).intValue();
+            FleetSimulation fleet = new FleetSimulation(numUnits, ticks, seed, t);
+            fleet.setBarrierInterval(barrierInterval);
+            if (traceInterval > 0)
+                fleet.setObserver(new SimulationObserver()
+                    {   public void snapshot(int simulation, int step, double[] state)
+                        {   StringBuffer sb = new StringBuffer();
+                            sb.append(simulation).append(" ").append(step).append(":");
+                            for (int i=0; i<state.length; i++)
+                                sb.append(" ").append(state[i]);
+                            System.out.println(sb);
+                        }
+                    }, traceInterval);
+            fleet.run();
+
+            if (c == 0)
+            {   baseRate = fleet.getStepsPerSecond();
+                firstChecksum = fleet.getChecksum();
+                System.out.println(numUnits + " trucks, " + ticks + " ticks, " +
+                                   ((barrierInterval == 1) ? "lock step" :
+                                    (barrierInterval == 0) ? "no barriers" :
+                                    "barrier every " + barrierInterval + " ticks") +
+                                   ": " + fleet.getStepsDone() + " steps, " +
+                                   fleet.getNumFinished() + " trucks finished");
+            }
+            else if (fleet.getChecksum() != firstChecksum)
+                checksumsAgree = false;
+            System.out.println(t + " thread" + ((t == 1) ? "" : "s") + ": " +
+                               Math.round(fleet.getStepsPerSecond()) + " steps/s (x" +
+                               Math.round(100.0*fleet.getStepsPerSecond()/baseRate)/100.0 +
+                               "), checksum " + Long.toHexString(fleet.getChecksum()));
+            System.out.println("   step latency (ns): " + fleet.getLatencyHistogram());
+            System.out.println("   throughput per segment (steps/s): " + fleet.getThroughputHistogram());
+        }
+        if (threadCounts.size() > 1)
+            System.out.println(checksumsAgree ? "The checksums agree" : "THE CHECKSUMS DIFFER");
+    }
+}
@@ -0,0 +1,26 @@
+package examples.simulation;
+
+import nrc.fuzzy.*;
+
+/**
+ * A truck of a fleet run by a FleetSimulation. It is stepped just as a TruckBackerUpper
+ * is, firing the FuzzyRules shared by all of the trucks of the fleet with the inputs
+ * for its own position and angle. Firing a rule with given inputs (FuzzyRule.execute
+ * with a FuzzyValueVector) only reads the rule, its fuzzy variables and its executor,
+ * so the trucks of a fleet can be stepped on different threads at the same time; the
+ * context of each truck is just its position and the firing degrees of the rules at
+ * its last step. The changes of angle, and so the final states, are exactly the same
+ * as those of a TruckBackerUpper placed at the same position.
+ */
+public class FleetTruck extends TruckBackerUpper
+{
+    /**
+     * Create a truck at (50, 50) at an angle of 90 degrees.
+     *
+     * @param rulesFrom the simulation whose fuzzy variables and rules are used
+     */
+    public FleetTruck(TruckBackerUpper rulesFrom)
+    {
+        super(rulesFrom);
+    }
+}
@@ -0,0 +1,156 @@
+package examples.simulation;
+
+/**
+ * A histogram of non-negative long values, such as latencies in nanoseconds or
+ * throughputs in steps per second. The values up to 15 each have a bucket; above
+ * that each power of 2 is split into 8 buckets, so a percentile is found to within
+ * 12.5% of its value with a fixed, small number of buckets whatever the range of
+ * the values. Negative values are counted as 0.
+ * <p>
+ * A Histogram is not synchronized. When values are recorded on several threads each
+ * thread should record into its own Histogram and the Histograms can be added
+ * together afterwards.
+ */
+public class Histogram
+{
+    static final int LINEAR_BUCKETS = 16;
+    static final int SUB_BUCKETS = 8;
+
+    long[] counts = new long[LINEAR_BUCKETS + (63-4)*SUB_BUCKETS];
+    long count = 0;
+    long sum = 0;
+    long minimum = Long.MAX_VALUE;
+    long maximum = 0;
+
+    /**
+     * Record a value.
+     *
+     * @param value the value
+     */
+    public void record(long value)
+    {
+        if (value < 0) value = 0;
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        if (value < minimum) minimum = value;
+        if (value > maximum) maximum = value;
+    }
+
+    /**
+     * Add the values recorded in another Histogram to this one.
+     *
+     * @param h the other Histogram
+     */
+    public void add(Histogram h)
+    {
+        for (int b=0; b<counts.length; b++)
+            counts[b] += h.counts[b];
+        count += h.count;
+        sum += h.sum;
+        if (h.minimum < minimum) minimum = h.minimum;
+        if (h.maximum > maximum) maximum = h.maximum;
+    }
+
+    /**
+     * Forget all of the values recorded.
+     */
+    public void clear()
+    {
+        java.util.Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        minimum = Long.MAX_VALUE;
+        maximum = 0;
+    }
+
+    /** The bucket of a value. */
+    static int bucket(long value)
+    {
+        if (value < LINEAR_BUCKETS)
+            return (int)value;
+        int e = 63 - Long.numberOfLeadingZeros(value);
+        return LINEAR_BUCKETS + (e-4)*SUB_BUCKETS + (int)((value >>> (e-3)) & (SUB_BUCKETS-1));
+    }
+
+    /** The largest value in a bucket. */
+    static long bucketMaximum(int b)
+    {
+        if (b < LINEAR_BUCKETS)
+            return b;
+        int e = (b - LINEAR_BUCKETS)/SUB_BUCKETS + 4;
+        long sub = (b - LINEAR_BUCKETS)%SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (e-3)) - 1;
+    }
+
+    /** Get the number of values recorded.
+     *
+     * @return the number of values
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /** Get the mean of the values recorded.
+     *
+     * @return the mean, or 0.0 if there are none
+     */
+    public double getMean()
+    {
+        return (count == 0) ? 0.0 : (double)sum/count;
+    }
+
+    /** Get the smallest value recorded.
+     *
+     * @return the smallest value, or 0 if there are none
+     */
+    public long getMinimum()
+    {
+        return (count == 0) ? 0 : minimum;
+    }
+
+    /** Get the largest value recorded.
+     *
+     * @return the largest value, or 0 if there are none
+     */
+    public long getMaximum()
+    {
+        return maximum;
+    }
+
+    /**
+     * Get a percentile of the values recorded: the value that the given percent of
+     * the values are less than or equal to (to within the size of its bucket).
+     *
+     * @param percent the percentile (0 to 100)
+     * @return the value, or 0 if there are none
+     */
+    public long getPercentile(double percent)
+    {
+        if (count == 0)
+            return 0;
+        long rank = (long)Math.ceil(count*percent/100.0);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int b=0; b<counts.length; b++)
+        {   seen += counts[b];
+            if (seen >= rank)
+                return Math.max(minimum, Math.min(maximum, bucketMaximum(b)));
+        }
+        return maximum;
+    }
+
+    /**
+     * Describe the values recorded: the count, mean, 50th, 90th and 99th percentiles
+     * and the maximum.
+     *
+     * @return the description
+     */
+    public String toString()
+    {
+        return "count " + count + ", mean " + Math.round(getMean()) +
+               ", p50 " + getPercentile(50.0) + ", p90 " + getPercentile(90.0) +
+               ", p99 " + getPercentile(99.0) + ", max " + getMaximum();
+    }
+}
@@ -0,0 +1,564 @@
+package examples.simulation;
+
+import nrc.fuzzy.*;
+
+/** 
+ * The inverted pendulum of the fuzzypendulum example (a mass balanced on a stick,
+ * with a motor at the base to apply force to keep the mass balanced) without its 
+ * user interface, so that it can be run headless and timed.
+ * 
+ * There are 11 rules that control the balancing. The rules each have 2 fuzzy 
+ * antecedent conditions and a single fuzzy conclusion:
+ *
+ *    if   error is Z
+ *    and  omega is Z
+ *    then current is Z
+ *
+ * where:
+ *
+ * error - deviation of the pendulum position from vertical (PI/2)
+ * omega - angular velocity of the pendulum
+ * 
+ * and the terms NM, NS, Z, PS and PM describe the degrees of error, omega and current.
+ * On each step the rules that match the error and omega are fired, their outputs are 
+ * combined (union of the fuzzy sets) and the result is defuzzified to give the 
+ * current (between -1.0 and 1.0), which is scaled by the size of the motor.
+ *
+ * The state of a snapshot (getState) is theta, omega, current and the stick length.
+ */
+public class PendulumSimulation implements Simulation
+{
+    // Some constants
+    public final static double G = 9.80666;  // gravity constant
+    public final static double dT = 0.06;    // time delta (.04 was original value, use < 0.1
+                                             // or it reacts too slow to control the system)
+    public final static double dT2 = dT*dT;  // time delta squared
+    public final static double ERROR_MIN = -Math.PI/2, 
+                               ERROR_MAX = Math.PI/2;
+    public final static double OMEGA_MIN = -8.5, 
+                               OMEGA_MAX = 8.5;
+    public final static double CURRENT_MIN = -1.0, 
+                               CURRENT_MAX = 1.0;
+    
+    // state information for the simulation
+    boolean bobbing = false; // true if mass if to 'bob' up and down
+    
+    double motorSize = 100.0;    // size of the motor (max current for Motor, Amps)
+    double minMotorSize = 60.0;  // min size of the motor
+    double maxMotorSize = 180.0; // max size of the motor
+    
+    double massSize = 2.5;       // size of the mass (kg)
+    double minMassSize = 0.5;    // min size of the mass
+    double maxMassSize = 3.5;    // max size of the mass
+    
+    double stickLength = 1.3;    // current length of the stick/pendulum (meters)
+    double minStickLength = 0.7; // min length of the stick
+    double maxStickLength = 1.3; // max length of the stick
+    double stickDirection = -0.1;// +1 or -1 as the stick 'bobs' up and down
+    
+    double theta = Math.PI/2.0;         // actual angle of pendulum (0 to PI radians)
+    double thetaMin = 0.0;              // min value for theta
+    double thetaMax = Math.PI;          // max value for theta
+    double requiredTheta = Math.PI/2.0; // the required value of Theta (PI/2 : vertical)
+    
+    double error = 0.0;      // error from required theta value
+    double omega = 0.0;      // angular velocity of the pendulum
+    double current = 0.0;    // output current (from -1.0 to 1.0; scaled by motor size)
+        
+    FuzzyValue globalCurrentFVal = null; // aggregated result of all rules firing
+    int steps = 0;           // number of steps done
+    
+    // *************************************************
+    // ***** The Fuzzy Rule definition components ******
+    // *************************************************
+    public final static int NUM_RULES = 11;
+    // The names associated with the rules ... "Z_NM_PM" means 
+    //        if error is Z and omega is NM 
+    //        then current is PM
+    final static String[] ruleNames = {"Z_NM_PM", "Z_NS_PS", "PS_NS_Z", "NM_Z_PM", 
+                                       "NS_Z_PS", "Z_Z_Z", "PS_Z_NS", "PM_Z_NM", 
+                                       "NS_PS_Z", "Z_PS_NS", "Z_PM_NM"
+                                      };
+    // identifies if a rule is being used (true => enabled, false => diabled)
+    boolean[] rulesEnabled = {true, true, true, true, true, true, 
+                              true, true, true, true, true
+                             };
+    // identifies if a rule was fired in the last iteration
+    boolean[] rulesFired = new boolean[NUM_RULES];
+    // the names of the error antecedants, omega antecedents and current
+    // conclusions for each rule
+    final static String[] errorAntecedents = {"Z", "Z", "PS", "NM", "NS", "Z", 
+                                              "PS", "PM", "NS", "Z", "Z"};                       
+    final static String[] omegaAntecedents = {"NM", "NS", "NS", "Z", "Z", "Z",
+                                              "Z", "Z", "PS", "PS", "PM"};    
+    final static String[] currentConclusions = {"PM", "PS", "Z", "PM", "PS", "Z",
+                                                "NS", "NM", "Z", "NS", "NM"};                       
+    final static String[] termNames = {"NM", "NS", "Z", "PS", "PM"};
+
+    // the fuzzy variables and rules
+    FuzzyVariable errorFVar;
+    FuzzyVariable omegaFVar;
+    FuzzyVariable currentFVar;
+    FuzzyRule[] fuzzyRules;
+             
+    /**
+     * Create a simulation of the pendulum, balanced, with its own fuzzy variables 
+     * and rules.
+     *
+     * @exception FuzzyException if the fuzzy variables or rules cannot be defined
+     */
+    public PendulumSimulation() throws FuzzyException
+    {
+        int i;
+        errorFVar = new FuzzyVariable("error", ERROR_MIN, ERROR_MAX);
+        omegaFVar = new FuzzyVariable("omega", OMEGA_MIN, OMEGA_MAX);
+        currentFVar = new FuzzyVariable("current", CURRENT_MIN, CURRENT_MAX);
+        
+        errorFVar.addTerm("NM", new RFuzzySet(-1.28, -0.64, new RightLinearFunction()));
+        errorFVar.addTerm("NS", new TriangleFuzzySet(-1.28, -0.64, 0));
+        errorFVar.addTerm("Z", new TriangleFuzzySet(-0.64, 0, 0.64));
+        errorFVar.addTerm("PS", new TriangleFuzzySet(0, 0.64, 1.28));
+        errorFVar.addTerm("PM", new LFuzzySet(0.64, 1.28, new LeftLinearFunction()));
+             
+        omegaFVar.addTerm("NM", new RFuzzySet(-4.27, -2.13, new RightLinearFunction()));
+        omegaFVar.addTerm("NS", new TriangleFuzzySet(-4.27, -2.13, 0));
+        omegaFVar.addTerm("Z", new TriangleFuzzySet(-2.13, 0, 2.13));
+        omegaFVar.addTerm("PS", new TriangleFuzzySet(0, 2.13, 4.27));
+        omegaFVar.addTerm("PM", new LFuzzySet(2.13, 4.27, new LeftLinearFunction()));
+             
+        currentFVar.addTerm("NM", new RFuzzySet(-1.0, -0.25, new RightLinearFunction()));
+        currentFVar.addTerm("NS", new TriangleFuzzySet(-0.5, -0.25, 0));
+        currentFVar.addTerm("Z", new TriangleFuzzySet(-0.25, 0, 0.25));
+        currentFVar.addTerm("PS", new TriangleFuzzySet(0, 0.25, 0.5));
+        currentFVar.addTerm("PM", new LFuzzySet(0.25, 1.0, new LeftLinearFunction()));
+            
+        fuzzyRules = new FuzzyRule[NUM_RULES];
+        for (i=0; i<NUM_RULES; i++)
+        { fuzzyRules[i] = new FuzzyRule();
+          fuzzyRules[i].addAntecedent(new FuzzyValue(errorFVar, errorAntecedents[i]));
+          fuzzyRules[i].addAntecedent(new FuzzyValue(omegaFVar, omegaAntecedents[i]));
+          fuzzyRules[i].addConclusion(new FuzzyValue(currentFVar, currentConclusions[i]));
+        }
+    }
+    
+    /**
+     * Create a simulation of the pendulum, balanced, that uses the same fuzzy 
+     * variables and rules as another one. The two simulations must not be stepped
+     * at the same time by different threads (firing a rule changes its state).
+     *
+     * @param rulesFrom the simulation whose fuzzy variables and rules are used
+     */
+    public PendulumSimulation(PendulumSimulation rulesFrom)
+    {
+        errorFVar = rulesFrom.errorFVar;
+        omegaFVar = rulesFrom.omegaFVar;
+        currentFVar = rulesFrom.currentFVar;
+        fuzzyRules = rulesFrom.fuzzyRules;
+    }
+
+    /** Set the angle and the angular velocity of the pendulum.
+     *
+     * @param theta the angle of the pendulum (0 to PI radians; PI/2 is vertical)
+     * @param omega the angular velocity of the pendulum
+     */
+    public void setPosition( double theta, double omega )
+    {
+        this.theta = Math.max(thetaMin, Math.min(thetaMax, theta));
+        this.omega = omega;
+        error = this.theta - requiredTheta;
+    }
+    
+    /** Set the state of 'bobbing' (up/down motion) for the simulation.
+     *
+     * @param b true when bobbing is enabled
+     */
+    public void setBobbing( boolean b )
+    {
+        bobbing = b;
+    }
+    
+    /** Get the state of bobbing in the simulation
+     *
+     * @return true when bobbing is enabled 
+     */
+    public boolean isBobbing()
+    {
+        return bobbing;
+    }
+    
+    /**
+     * Set the size of the mass on the pendulum (kept between the min and max sizes).
+     *
+     * @param size the value to set for the size of the mass on the pendulum
+     */
+    public void setMassSize( double size )
+    {
+        if (size > maxMassSize) massSize = maxMassSize;
+        else if (size < minMassSize) massSize = minMassSize;
+        else massSize = size;
+    }
+    
+    /** Get the current size of the mass on the pendulum.
+     *
+     * @return the current size of the mass (KG).
+     */
+    public double getMassSize()
+    {
+        return massSize;
+    }
+        
+    /** Get the maximum size of the mass on the pendulum.
+     *
+     * @return the maximum size of the mass (KG).
+     */
+    public double getMaxMassSize()
+    {
+        return maxMassSize;
+    }
+        
+    /** Get the minimum size of the mass on the pendulum.
+     *
+     * @return the minimum size of the mass (KG).
+     */
+    public double getMinMassSize()
+    {
+        return minMassSize;
+    }
+        
+    /**
+     * Set the size of the motor on the pendulum (kept between the min and max sizes).
+     *
+     * @param size the value to set for the size of the motor on the pendulum
+     */
+    public void setMotorSize( double size )
+    {
+        if (size > maxMotorSize) motorSize = maxMotorSize;
+        else if (size < minMotorSize) motorSize = minMotorSize;
+        else motorSize = size;
+    }
+    
+    /** Get the current size of the motor on the pendulum.
+     *
+     * @return the current size of the motor.
+     */
+    public double getMotorSize()
+    {
+        return motorSize;
+    }
+    
+    /** Get the minimum size of the motor on the pendulum.
+     *
+     * @return the minimum size of the motor.
+     */
+    public double getMinMotorSize()
+    {
+        return minMotorSize;
+    }
+    
+    /** Get the maximum size of the motor on the pendulum.
+     *
+     * @return the maximum size of the motor.
+     */
+    public double getMaxMotorSize()
+    {
+        return maxMotorSize;
+    }
+    
+    /** Bump the mass to the left. In this case just increase the angular
+     * momentum by 3.
+     */
+    public void bumpLeft()
+    {
+        omega += 3.0;
+    }
+    
+    /** Bump the mass to the right. In this case just decrease the angular
+     * momentum by 3.
+     */
+    public void bumpRight()
+    {
+        omega -= 3.0;
+    }
+    
+    /** Pull the mass all the way to the left. In this case set the angular
+     * momentum to 0 and set theta to PI.
+     */
+    public void pullLeft()
+    {
+        omega = 0.0;
+        theta = Math.PI;
+    }
+    
+    /** Pull the mass all the way to the right. In this case set the angular
+     * momentum to 0 and set theta to 0.
+     */
+    public void pullRight()
+    {
+        omega = 0.0;
+        theta = 0.0;
+    }
+    
+    /** Get the current value of theta, the angle of the pendulum.
+     *
+     * @return the angle of the pendulum.
+     */
+    public double getTheta()
+    {
+        return theta;
+    }
+    
+    /** Get the error from the required theta value when the rules were last fired.
+     *
+     * @return the error.
+     */
+    public double getError()
+    {
+        return error;
+    }
+    
+    /** Get the angular velocity of the pendulum.
+     *
+     * @return the angular velocity.
+     */
+    public double getOmega()
+    {
+        return omega;
+    }
+    
+    /** Get the current (from -1.0 to 1.0) determined by the rules.
+     *
+     * @return the current.
+     */
+    public double getCurrent()
+    {
+        return current;
+    }
+    
+    /** Get the union of the outputs of the rules fired in the last step.
+     *
+     * @return the aggregated current, or null if no rule fired.
+     */
+    public FuzzyValue getGlobalCurrent()
+    {
+        return globalCurrentFVal;
+    }
+    
+    /** Get the current value of the length of the pendulum (stick).
+     *
+     * @return the length of the stick.
+     */
+    public double getStickLength()
+    {
+        return stickLength;
+    }
+    
+    /** Get the minimum value of the length of the pendulum (stick).
+     *
+     * @return the minimum length of the stick.
+     */
+    public double getMinStickLength()
+    {
+        return minStickLength;
+    }
+    
+    /** Get the maximum value of the length of the pendulum (stick).
+     *
+     * @return the maximum length of the stick.
+     */
+    public double getMaxStickLength()
+    {
+        return maxStickLength;
+    }
+    
+    /** Get the number of steps done.
+     *
+     * @return the number of steps.
+     */
+    public int getSteps()
+    {
+        return steps;
+    }
+    
+    /** Get the names of the rules, in the format Z_NM_PM etc.
+     *
+     * @return the names of the rules.
+     */
+    public static String[] getRuleNames()
+    {
+        return ruleNames.clone();
+    }
+    
+    /** Find the number of a rule from its name.
+     *
+     * @param rule string name of the rule. The rule names have the format Z_NM_PM etc.
+     * @return the number of the rule, or -1 if there is no rule with the name
+     */
+    public static int findRule(String rule)
+    {
+        for (int i=0; i<NUM_RULES; i++)
+            if (rule.equalsIgnoreCase(ruleNames[i]))
+               return i;
+        return -1;
+    }
+    
+    /** Enable or disable a rule from being used in the rule firings.
+     *
+     * @param b true if rule is to be enabled
+     * @param i the number of the rule
+     */
+    public void setRuleEnabled(boolean b, int i)
+    {
+        rulesEnabled[i] = b;
+    }
+    
+    /** Determine if a rule is enabled or disabled.
+     *
+     * @param i the number of the rule
+     * @return true if the rule is enabled
+     */
+    public boolean isRuleEnabled(int i)
+    {
+        return rulesEnabled[i];
+    }
+    
+    /** Determine if a rule was fired in the last step.
+     *
+     * @param i the number of the rule
+     * @return true if the rule was fired
+     */
+    public boolean isRuleFired(int i)
+    {
+        return rulesFired[i];
+    }
+    
+    /** Get a rule.
+     *
+     * @param i the number of the rule
+     * @return a FuzzyRule object.
+     */
+    public FuzzyRule getFuzzyRule(int i)
+    {
+        return fuzzyRules[i];
+    }
+    
+    /** 
+     * Do one step of the simulation: calculate the new position of the pendulum given 
+     * the current being applied and fire the rules to find the next current to apply.
+     *
+     * @exception FuzzyException if the rules cannot be fired
+     */
+    public void step() throws FuzzyException
+    {
+        // deal with stick 'bobbing' if required
+        if (bobbing)
+        {  // adjust the length of the stick
+           stickLength += stickDirection;
+           if (stickLength < minStickLength)
+              stickDirection = 0.1;
+           else if (stickLength > maxStickLength)
+              stickDirection = -0.1;
+        }
+                
+        // determine the new value for theta given the current being 
+        // applied (size of motor plus normalized current determined), 
+        // the size of the mass, the current position of the mass/stick.
+        //
+        // mainTorque ... torque exerted by gravity
+        // coilTorque ... torque exerted by the motor
+        // totalTorque ... combined torque
+        double mainTorque = -(stickLength*massSize*Math.cos(theta)*G);
+        double coilTorque = motorSize*(current);
+        double totalTorque = mainTorque + coilTorque;
+        double inertia = stickLength*stickLength * massSize;
+        double alpha = totalTorque/inertia; // mass angular acceleration
+        omega = omega + alpha*dT; // mass angular velocity
+        theta = theta + omega*dT + alpha*dT2;
+                
+        if (theta > thetaMax) 
+        {  theta = thetaMax;
+           omega = 0.0;
+        }
+        else if (theta < thetaMin) 
+        {  theta = thetaMin;
+           omega = 0.0;
+        }
+                
+        // get error and delta error (actually angular velocity!!)
+        error = theta - requiredTheta;
+                
+        // fire rules to calculate the next current setting
+        fireRules( error, omega );
+        steps++;
+    }
+    
+    /** Execute the rules, calculating the new value for the current to
+     * be applied in the motor.
+     *
+     * @param error the error from required theta value
+     * @param omega the angular velocity of the pendulum
+     * @exception FuzzyException if the rules cannot be fired
+     */
+    public void fireRules(double error, double omega ) throws FuzzyException
+    {
+        int i;
+        
+        FuzzyValueVector ruleResultFVV = null;
+        globalCurrentFVal = null;
+        
+        // to fuzzify error and omega they need to be in range
+        if (error > ERROR_MAX) error = ERROR_MAX;
+        if (error < ERROR_MIN) error = ERROR_MIN;
+        if (omega > OMEGA_MAX) omega = OMEGA_MAX;
+        if (omega < OMEGA_MIN) omega = OMEGA_MIN;
+        
+        // clear all rulesFired flags;
+        for (i=0; i<NUM_RULES; i++)
+            rulesFired[i] = false;
+        
+        // fuzzify error and omega 
+        FuzzyValue errorFVal = new FuzzyValue(errorFVar, new TriangleFuzzySet(error, error, error));
+        FuzzyValue omegaFVal = new FuzzyValue(omegaFVar, new TriangleFuzzySet(omega, omega, omega));
+        
+        // use these as the inputs to each rule firing
+        FuzzyValueVector ruleInputs = new FuzzyValueVector(2);
+        ruleInputs.addFuzzyValue(errorFVal);
+        ruleInputs.addFuzzyValue(omegaFVal);
+        
+        // fire the rules if they match the inputs
+        for (i=0; i<NUM_RULES; i++)
+        {
+          FuzzyRule rule = fuzzyRules[i];
+          if (rulesEnabled[i] && rule.testRuleMatching(ruleInputs))
+          {
+              rulesFired[i] = true;
+              ruleResultFVV = rule.execute(ruleInputs);
+              FuzzyValue fval = ruleResultFVV.fuzzyValueAt(0);
+              if (globalCurrentFVal == null)
+                 globalCurrentFVal = fval;
+              else
+                 globalCurrentFVal = globalCurrentFVal.fuzzyUnion(fval);
+          }
+        }
+        // determine the new value for the motor current (between -1 and +1)
+        if (globalCurrentFVal != null)
+           current = globalCurrentFVal.momentDefuzzify();
+    }
+    
+    /** The pendulum simulation runs until it is stopped.
+     *
+     * @return false
+     */
+    public boolean isFinished()
+    {
+        return false;
+    }
+    
+    /** Get a snapshot of the state of the pendulum.
+     *
+     * @return theta, omega, current and the stick length
+     */
+    public double[] getState()
+    {
+        return new double[] {theta, omega, current, stickLength};
+    }
+}
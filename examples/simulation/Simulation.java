@@ -0,0 +1,32 @@
+package examples.simulation;
+
+import nrc.fuzzy.*;
+
+/**
+ * A simulation of a plant controlled by fuzzy rules that can be run without a
+ * user interface (see SimulationHarness). Each step of the simulation advances the 
+ * plant by one time step and fires the rules to find the next control setting.
+ */
+public interface Simulation
+{
+    /**
+     * Advance the simulation by one time step.
+     *
+     * @exception FuzzyException if the rules cannot be fired
+     */
+    void step() throws FuzzyException;
+
+    /**
+     * Determine if the simulation has reached an end state (no more steps are needed).
+     *
+     * @return true if the simulation is finished
+     */
+    boolean isFinished();
+
+    /**
+     * Get a snapshot of the state of the simulation.
+     *
+     * @return a new array with the values that describe the state of the simulation
+     */
+    double[] getState();
+}
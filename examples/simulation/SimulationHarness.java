@@ -0,0 +1,295 @@
+package examples.simulation;
+
+import java.util.Random;
+import nrc.fuzzy.*;
+
+/**
+ * Runs a number of independent pendulum or truck simulations headless for a fixed 
+ * number of steps and reports how fast the steps were done and a checksum of the 
+ * final states of the simulations. The initial conditions of each simulation are 
+ * chosen at random from a seed (simulation i uses a java.util.Random seeded with 
+ * seed + i), so a run with the same arguments always does the same steps and gives
+ * the same checksum; a different checksum after a change to the library means the
+ * change altered the results of the rules. A truck simulation stops early when the
+ * truck is parked or leaves the area.
+ * <p>
+ * An observer (a display or a trace, for example) can be given snapshots of the 
+ * state of each simulation every so many steps. From the command line:
+ * <pre>
+ *    java examples.simulation.SimulationHarness [pendulum|truck] [simulations] [steps] [seed] [-trace interval]
+ * </pre>
+ * runs 100 pendulum simulations of 1000 steps with seed 1 by default; -trace prints 
+ * a snapshot of each simulation every interval steps.
+ */
+public class SimulationHarness
+{
+    public static final String PENDULUM = "pendulum";
+    public static final String TRUCK = "truck";
+
+    String kind;
+    int numSimulations;
+    int steps;
+    long seed;
+    SimulationObserver observer = null;
+    int sampleInterval = 0;
+
+    // the results of the last run
+    long stepsDone = 0;
+    long elapsedNanos = 0;
+    long checksum = 0;
+    int numFinished = 0;
+    Simulation[] simulations = null;
+
+    /**
+     * Create a harness for a set of simulations.
+     *
+     * @param kind PENDULUM or TRUCK
+     * @param numSimulations the number of simulations
+     * @param steps the number of steps to run each simulation for
+     * @param seed the seed for the initial conditions
+     */
+    public SimulationHarness(String kind, int numSimulations, int steps, long seed)
+    {
+        if (!kind.equals(PENDULUM) && !kind.equals(TRUCK))
+           throw new IllegalArgumentException("The kind of simulation must be " + PENDULUM + " or " + TRUCK);
+        this.kind = kind;
+        this.numSimulations = numSimulations;
+        this.steps = steps;
+        this.seed = seed;
+    }
+
+    /**
+     * Set an observer to be given a snapshot of each simulation every so many steps.
+     *
+     * @param observer the observer, or null for none
+     * @param sampleInterval the number of steps between snapshots
+     */
+    public void setObserver(SimulationObserver observer, int sampleInterval)
+    {
+        this.observer = observer;
+        this.sampleInterval = Math.max(1, sampleInterval);
+    }
+
+    /**
+     * Create the simulations with their initial conditions. The simulations share 
+     * one set of fuzzy variables and rules.
+     *
+     * @return the simulations
+     * @exception FuzzyException if the fuzzy variables or rules cannot be defined
+     */
+    public Simulation[] createSimulations() throws FuzzyException
+    {
+        Simulation[] sims = new Simulation[numSimulations];
+        if (kind.equals(PENDULUM))
+        {   PendulumSimulation rules = new PendulumSimulation();
+            for (int i=0; i<numSimulations; i++)
+                sims[i] = createPendulum(rules, new Random(seed + i));
+        }
+        else
+        {   TruckBackerUpper rules = new TruckBackerUpper();
+            for (int i=0; i<numSimulations; i++)
+                sims[i] = createTruck(rules, new Random(seed + i));
+        }
+        return sims;
+    }
+
+    /**
+     * Create a pendulum simulation with a random mass and motor, up to 45 degrees
+     * from vertical and moving at up to 2 radians per second.
+     *
+     * @param rules the simulation whose fuzzy variables and rules are used
+     * @param random the source of the initial conditions
+     * @return the simulation
+     */
+    public static PendulumSimulation createPendulum(PendulumSimulation rules, Random random)
+    {
+        PendulumSimulation sim = new PendulumSimulation(rules);
+        sim.setMassSize(sim.getMinMassSize() + random.nextDouble()*(sim.getMaxMassSize() - sim.getMinMassSize()));
+        sim.setMotorSize(sim.getMinMotorSize() + random.nextDouble()*(sim.getMaxMotorSize() - sim.getMinMotorSize()));
+        sim.setPosition(Math.PI/2.0 + (random.nextDouble() - 0.5)*Math.PI/2.0, (random.nextDouble() - 0.5)*4.0);
+        return sim;
+    }
+
+    /**
+     * Create a truck simulation with the truck anywhere from 20 to 80 across and 
+     * down the area at any angle.
+     *
+     * @param rules the simulation whose fuzzy variables and rules are used
+     * @param random the source of the initial conditions
+     * @return the simulation
+     */
+    public static TruckBackerUpper createTruck(TruckBackerUpper rules, Random random)
+    {
+        TruckBackerUpper sim = new TruckBackerUpper(rules);
+        placeTruck(sim, random);
+        return sim;
+    }
+
+    /**
+     * Put a truck anywhere from 20 to 80 across and down the area at any angle.
+     *
+     * @param sim the truck simulation
+     * @param random the source of the initial conditions
+     */
+    public static void placeTruck(TruckBackerUpper sim, Random random)
+    {
+        sim.reset(20.0 + random.nextDouble()*60.0, 20.0 + random.nextDouble()*60.0, 
+                  -90.0 + random.nextDouble()*360.0);
+    }
+
+    /**
+     * Create the simulations and run each of them for the number of steps (or until
+     * it is finished).
+     *
+     * @exception FuzzyException if the rules of a simulation cannot be fired
+     */
+    public void run() throws FuzzyException
+    {
+        simulations = createSimulations();
+        stepsDone = 0;
+        long start = System.nanoTime();
+        for (int i=0; i<simulations.length; i++)
+        {   Simulation sim = simulations[i];
+            for (int s=1; s<=steps && !sim.isFinished(); s++)
+            {   sim.step();
+                stepsDone++;
+                if (observer != null && s % sampleInterval == 0)
+                    observer.snapshot(i, s, sim.getState());
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+
+        checksum = 0;
+        numFinished = 0;
+        for (int i=0; i<simulations.length; i++)
+        {   checksum = checksum(simulations[i].getState(), checksum);
+            if (simulations[i].isFinished())
+                numFinished++;
+        }
+    }
+
+    /**
+     * Add the exact values of a state to a checksum.
+     *
+     * @param state the values of the state
+     * @param checksum the checksum so far
+     * @return the new checksum
+     */
+    public static long checksum(double[] state, long checksum)
+    {
+        for (int i=0; i<state.length; i++)
+            checksum = 31*checksum + Double.doubleToLongBits(state[i]);
+        return checksum;
+    }
+
+    /** Get the simulations of the last run.
+     *
+     * @return the simulations
+     */
+    public Simulation[] getSimulations()
+    {
+        return simulations;
+    }
+
+    /** Get the number of steps done in the last run.
+     *
+     * @return the number of steps
+     */
+    public long getStepsDone()
+    {
+        return stepsDone;
+    }
+
+    /** Get the time taken by the steps of the last run.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    /** Get the number of steps done per second in the last run.
+     *
+     * @return the steps per second
+     */
+    public double getStepsPerSecond()
+    {
+        return (elapsedNanos == 0) ? 0.0 : stepsDone*1.0e9/elapsedNanos;
+    }
+
+    /** Get the checksum of the final states of the simulations of the last run.
+     *
+     * @return the checksum
+     */
+    public long getChecksum()
+    {
+        return checksum;
+    }
+
+    /** Get the number of simulations that finished (for the truck, that were parked
+     * or left the area) in the last run.
+     *
+     * @return the number of finished simulations
+     */
+    public int getNumFinished()
+    {
+        return numFinished;
+    }
+
+    public static void main(String[] args) throws FuzzyException
+    {
+        String kind = PENDULUM;
+        int numSimulations = 100;
+        int steps = 1000;
+        long seed = 1;
+        int traceInterval = 0;
+        int n = 0;
+        for (int i=0; i<args.length; i++)
+        {   if (args[i].equals("-trace") && i+1 < args.length)
+                traceInterval = Integer.parseInt(args[++i]);
+            else if (n == 0 && (args[i].equals(PENDULUM) || args[i].equals(TRUCK)))
+            {   kind = args[i];
+                n++;
+            }
+            else
+            {   if (n == 0) n++;
+                switch (n++)
+                {  case 1: numSimulations = Integer.parseInt(args[i]); break;
+                   case 2: steps = Integer.parseInt(args[i]); break;
+                   case 3: seed = Long.parseLong(args[i]); break;
+                   default:
+                      System.err.println("Usage: SimulationHarness [pendulum|truck] [simulations] [steps] [seed] [-trace interval]");
+                      System.exit(1);
+                }
+            }
+        }
+
+        SimulationHarness harness = new SimulationHarness(kind, numSimulations, steps, seed);
+        if (traceInterval > 0)
+            harness.setObserver(new SimulationObserver()
+                {   public void snapshot(int simulation, int step, double[] state)
+                    {   StringBuffer sb = new StringBuffer();
+                        sb.append(simulation).append(" ").append(step).append(":");
+                        for (int i=0; i<state.length; i++)
+                            sb.append(" ").append(state[i]);
+                        System.out.println(sb);
+                    }
+                }, traceInterval);
+        harness.run();
+
+        System.out.println(kind + ": " + numSimulations + " simulations, " + harness.getStepsDone() + 
+                           " steps in " + (harness.getElapsedNanos()/1.0e9) + " s (" + 
+                           Math.round(harness.getStepsPerSecond()) + " steps/s)");
+        if (kind.equals(TRUCK))
+        {   int parked = 0;
+            Simulation[] sims = harness.getSimulations();
+            for (int i=0; i<sims.length; i++)
+                if (((TruckBackerUpper)sims[i]).isParked())
+                    parked++;
+            System.out.println("parked: " + parked + ", left the area: " + (harness.getNumFinished() - parked) +
+                               ", still moving: " + (numSimulations - harness.getNumFinished()));
+        }
+        System.out.println("checksum of final states: " + Long.toHexString(harness.getChecksum()));
+    }
+}
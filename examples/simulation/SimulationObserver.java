@@ -0,0 +1,19 @@
+package examples.simulation;
+
+/**
+ * An observer of simulations run by a SimulationHarness (a display or a trace, 
+ * for example). It is given a snapshot of the state of a simulation every so 
+ * many steps rather than looking at the simulation as it runs, so the simulation 
+ * is not slowed down by the observer.
+ */
+public interface SimulationObserver
+{
+    /**
+     * Called with a snapshot of the state of a simulation.
+     *
+     * @param simulation the number of the simulation (from 0)
+     * @param step the number of steps the simulation has done
+     * @param state the state of the simulation after the step (see Simulation.getState)
+     */
+    void snapshot(int simulation, int step, double[] state);
+}
@@ -0,0 +1,325 @@
+package examples.simulation;
+
+import nrc.fuzzy.*;
+
+/**
+ * The truck backer-upper of the fuzzytruckswing example without its user interface,
+ * so that it can be run headless and timed. A truck backs towards a loading dock at 
+ * the middle of the top of a 100 by 100 area (x = 50, y = 0), changing its angle at
+ * each step as the rules decide; the data for the fuzzy sets are from Kosko's book.
+ * There is a rule for each combination of the 5 terms of the x position of the truck 
+ * and the 7 terms of its angle (phi), concluding a change of angle. On each step the
+ * rules that match the position and angle of the truck are fired, their outputs are 
+ * combined (union of the fuzzy sets) and the result is defuzzified to give the 
+ * change of the angle, and the truck moves back at its speed at the new angle.
+ * <p>
+ * The simulation is finished when the truck is parked (within 1 of the middle of the
+ * dock at an angle within 5 degrees of 90) or has left the area.
+ * The state of a snapshot (getState) is x, y, phi and the last change of phi.
+ */
+public class TruckBackerUpper implements Simulation
+{
+	public static final int ROWS = 7;
+	public static final int COLUMNS = 5;
+	
+	static final double PIBY180 = Math.PI / 180;
+	
+    // The fuzzy definitions
+	static final String xposTerms[] = {"LeftBig", "LeftMedium", "Centred", "RightMedium", "RightBig"};
+	static final String phiTerms[] = {"LargeBelow90", "MediumBelow90", "SmallBelow90", "At90", "SmallAbove90", "MediumAbove90", "LargeAbove90"};
+	static final String changePhiTerms[] = {"NB", "NM", "NS", "ZE", "PS", "PM", "PB" };
+
+	// default values for the rule conclusions matrix: 1st index is phi, 2nd is xpos
+	public static final String DefaultConclusions[][] = 
+				{{"PS", "PM", "PM", "PB", "PB"},
+				 {"NS", "PS", "PM", "PB", "PB"},
+				 {"NM", "NS", "PS", "PM", "PB"},
+				 {"NM", "NM", "ZE", "PM", "PM"},
+				 {"NB", "NM", "NS", "PS", "PM"},
+				 {"NB", "NB", "NM", "NS", "PS"},
+				 {"NB", "NB", "NM", "NM", "NS"}};
+
+	FuzzyVariable xpos;
+	FuzzyVariable phi;
+	FuzzyVariable changePhi;
+	FuzzyRule theRules[][]; // 1st index is phi, 2nd is xpos
+	
+	// Xt, Yt, Phit hold state of truck as simulation progresses
+	double Xt = 50, Yt = 50, Phit = 90;
+	// speed of truck
+	double Speed = 1;
+	// the last change of the angle
+	double changePhiValue = 0.0;
+	// the degree to which each rule fired in the last step (the height of its 
+	// output), or -1 if it did not fire
+	double firingDegrees[][] = new double[ROWS][COLUMNS];
+	// iteration count during simulation
+	int Iteration = 0;
+	boolean finished = false, truck_disabled = false;
+	
+	/**
+	 * Create a truck simulation, with the truck at (50, 50) at an angle of 90 degrees, 
+	 * with its own fuzzy variables and the rules with the default conclusions.
+	 *
+	 * @exception FuzzyException if the fuzzy variables or rules cannot be defined
+	 */
+	public TruckBackerUpper() throws FuzzyException
+	{
+		int i, j;
+		
+		// define the fuzzy input values (xpos and phi)
+		// define the fuzzy output value (changePhi)
+          // Input fuzzy variable for the truck's x coordinate position
+		xpos = new FuzzyVariable("Xpos", 0, 100, "");
+		xpos.addTerm(xposTerms[0], new RFuzzySet(10.0, 35.0, new RightLinearFunction()));
+		xpos.addTerm(xposTerms[1], new TriangleFuzzySet(30.0, 40.0, 50.0));
+		xpos.addTerm(xposTerms[2], new TriangleFuzzySet(45.0, 50.0, 55.0));
+		xpos.addTerm(xposTerms[3], new TriangleFuzzySet(50.0, 60.0, 70.0));
+		xpos.addTerm(xposTerms[4], new LFuzzySet(65.0, 90.0, new LeftLinearFunction()));
+          // Input fuzzy variable for the truck's angular position
+		phi = new FuzzyVariable("Phi", -90, 270, "Degrees");
+		phi.addTerm(phiTerms[0], new RFuzzySet(-45.0, 10.0, new RightLinearFunction()));
+		phi.addTerm(phiTerms[1], new TriangleFuzzySet(-10.0, 25.0, 60.0));
+		phi.addTerm(phiTerms[2], new TriangleFuzzySet(50.0, 70.0, 90.0));
+		phi.addTerm(phiTerms[3], new TriangleFuzzySet(80.0, 90.0, 100.0));
+		phi.addTerm(phiTerms[4], new TriangleFuzzySet(90.0, 110.0, 130.0));
+		phi.addTerm(phiTerms[5], new TriangleFuzzySet(120.0, 155.0, 190.0));
+		phi.addTerm(phiTerms[6], new LFuzzySet(170.0, 225.0, new LeftLinearFunction()));
+          // Output fuzzy variable for changing the truck's angular position
+		changePhi = new FuzzyVariable("changePhi", -45.0, 45.0, "Degrees");
+		changePhi.addTerm(changePhiTerms[0], new TriangleFuzzySet(-45.0, -30.0, -15.0));
+		changePhi.addTerm(changePhiTerms[1], new TriangleFuzzySet(-25.0, -15.0, -5.0));
+		changePhi.addTerm(changePhiTerms[2], new TriangleFuzzySet(-10.0, -5.0, 0.0));
+		changePhi.addTerm(changePhiTerms[3], new TriangleFuzzySet(-5.0, 0.0, 5.0));
+		changePhi.addTerm(changePhiTerms[4], new TriangleFuzzySet(0.0, 5.0, 10.0));
+		changePhi.addTerm(changePhiTerms[5], new TriangleFuzzySet(5.0, 15.0, 25.0));
+		changePhi.addTerm(changePhiTerms[6], new TriangleFuzzySet(15.0, 30.0, 45.0));
+
+		//define the fuzzy rules
+		theRules = new FuzzyRule[ROWS][COLUMNS];
+		for (i=0; i<phiTerms.length; i++)
+		  for (j=0; j<xposTerms.length; j++)
+		  { 
+		   theRules[i][j] = new FuzzyRule();
+		   theRules[i][j].addAntecedent(new FuzzyValue(xpos, xposTerms[j]));
+		   theRules[i][j].addAntecedent(new FuzzyValue(phi, phiTerms[i]));
+		   theRules[i][j].addConclusion(new FuzzyValue(changePhi, DefaultConclusions[i][j]));
+		  }
+	}
+	
+	/**
+	 * Create a truck simulation, with the truck at (50, 50) at an angle of 90 degrees, 
+	 * that uses the same fuzzy variables and rules as another one. The two simulations
+	 * can be stepped at the same time by different threads, as long as neither changes
+	 * the rules (with setConclusionExpression) while the other is being stepped.
+	 *
+	 * @param rulesFrom the simulation whose fuzzy variables and rules are used
+	 */
+	public TruckBackerUpper(TruckBackerUpper rulesFrom)
+	{
+		xpos = rulesFrom.xpos;
+		phi = rulesFrom.phi;
+		changePhi = rulesFrom.changePhi;
+		theRules = rulesFrom.theRules;
+	}
+
+	/**
+	 * Set the conclusion of a rule.
+	 *
+	 * @param fzExpression the linguistic expression of the change of angle
+	 *        concluded by the rule, or " " for a rule with no conclusion
+	 * @param i the phi term of the rule
+	 * @param j the xpos term of the rule
+	 * @exception FuzzyException if the expression is not valid
+	 */
+	public void setConclusionExpression(String fzExpression, int i, int j) throws FuzzyException
+	{
+		theRules[i][j].removeAllConclusions();
+		if (!fzExpression.equals(" "))
+		   theRules[i][j].addConclusion(new FuzzyValue(changePhi, fzExpression));
+	}
+
+	/**
+	 * Put the truck at a position and angle and start the simulation again.
+	 *
+	 * @param x the x position (0 to 100)
+	 * @param y the y position (0 to 100)
+	 * @param angle the angle in degrees (-90 to 270)
+	 */
+	public void reset(double x, double y, double angle) 
+	{
+		Xt = x;
+		Yt = y;
+		Phit = angle;
+		changePhiValue = 0.0;
+		finished = false;
+		truck_disabled = false;
+		Iteration = 0;
+	}
+
+    public void setTruckSpeed( double s )
+    {  Speed = s;
+    }
+
+    public double getTruckSpeed( )
+    {  return Speed;
+    }
+
+    public double getX( )
+    {  return Xt;
+    }
+
+    public double getY( )
+    {  return Yt;
+    }
+
+    public double getPhi( )
+    {  return Phit;
+    }
+
+    public double getChangePhi( )
+    {  return changePhiValue;
+    }
+
+    public int getIteration( )
+    {  return Iteration;
+    }
+
+    /**
+     * Get the degree to which a rule fired in the last step.
+     *
+     * @param i the phi term of the rule
+     * @param j the xpos term of the rule
+     * @return the height of the output of the rule, or -1 if it did not fire
+     */
+    public double getFiringDegree( int i, int j )
+    {  return firingDegrees[i][j];
+    }
+
+    /**
+     * Get a rule.
+     *
+     * @param i the phi term of the rule
+     * @param j the xpos term of the rule
+     * @return the FuzzyRule
+     */
+    public FuzzyRule getFuzzyRule( int i, int j )
+    {  return theRules[i][j];
+    }
+
+    /**
+     * Determine if the truck is parked.
+     *
+     * @return true if the truck is parked
+     */
+    public boolean isParked( )
+    {  return finished;
+    }
+
+    /**
+     * Determine if the truck has left the area.
+     *
+     * @return true if the truck has left the area
+     */
+    public boolean isDisabled( )
+    {  return truck_disabled;
+    }
+
+    /**
+     * Determine if the truck is parked or has left the area.
+     *
+     * @return true if the simulation is finished
+     */
+    public boolean isFinished( )
+    {  return finished || truck_disabled;
+    }
+
+	/**
+	 * Do one step of the simulation: fire the rules for the current position and angle
+	 * of the truck to find the change of angle, then move the truck back at the new angle.
+	 *
+	 * @exception FuzzyException if the rules cannot be fired
+	 */
+	public void step() throws FuzzyException
+	{   int i, j;
+		FuzzyValue globalResult = null;
+		changePhiValue = 0.0;
+
+		// compute the results of the rule firing for the current xpos and phi values.
+		FuzzyValueVector fvvInputs = new FuzzyValueVector(2);
+		FuzzyValueVector result = null;
+		fvvInputs.addFuzzyValue(new FuzzyValue(xpos, new TriangleFuzzySet(Xt, Xt, Xt)));
+		fvvInputs.addFuzzyValue(new FuzzyValue(phi, new TriangleFuzzySet(Phit, Phit, Phit)));
+        for (i=0; i<phiTerms.length; i++)
+        {  for (j=0; j<xposTerms.length; j++)
+		   { FuzzyValueVector concFvv = theRules[i][j].getConclusions();
+		     firingDegrees[i][j] = -1.0;
+		     if ( concFvv != null &&
+		          concFvv.size() > 0 &&
+		          theRules[i][j].testRuleMatching(fvvInputs)
+		        )
+		     { // execute rule with required input values
+		       result = theRules[i][j].execute(fvvInputs);
+		       FuzzyValue fv = result.fuzzyValueAt(0);
+		       firingDegrees[i][j] = fv.getMaxY();
+		       // add to global result for all rules 
+   		       if (globalResult == null)
+    		      globalResult = fv;
+    		   else
+    		      globalResult = globalResult.fuzzyUnion(fv);
+ 		     }
+		   }
+        }
+		// new values based on the alogorithm for finding the new
+		// angle (see Kosko's book).
+		// globalResult could be null if we take out some rules
+		// that and no rules now match ... 
+        if (globalResult != null) 
+           changePhiValue = globalResult.momentDefuzzify();
+		move(changePhiValue);
+	}
+
+	/**
+	 * Change the angle of the truck, move it back at its speed at the new angle and
+	 * test if the simulation is complete.
+	 *
+	 * @param change the change of the angle in degrees
+	 */
+	void move(double change)
+	{   double angleInRadians;
+		changePhiValue = change;
+		Phit += changePhiValue;
+		Xt += Speed * Math.cos(angleInRadians = Phit * PIBY180);
+		Yt -= Speed * Math.sin(angleInRadians);
+
+		// test if the simulation is complete
+		test(Xt, Yt, Phit);
+		Iteration++;
+	}
+
+	// test if the sim. is complete or if the truck left the 
+	// canvas.
+	private void test(double x, double y, double angle) 
+	{   if ((y <= 0.3) && 
+	        (Math.abs(50.0 - x) <= 1.0) &&
+	        (Math.abs(angle-90.0) <= 5.0)
+	       )
+	    {
+			finished = true;
+			return;
+		}
+		if ((y < 0) || (x < 0) || (x > 100) || ((y > 100) &&
+		    (Math.abs(x - 50) > 1))) 
+		    truck_disabled = true;
+	}
+
+    /**
+     * Get a snapshot of the state of the truck.
+     *
+     * @return x, y, phi and the last change of phi
+     */
+	public double[] getState()
+	{
+		return new double[] {Xt, Yt, Phit, changePhiValue};
+	}
+}
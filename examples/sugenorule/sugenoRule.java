@@ -98,6 +98,28 @@ public class sugenoRule
   System.out.println("");
   System.out.println(zFVal.plotFuzzyValue("+"));
      System.out.println("\nDefuzzified z value is: " + crispz);
+
+  // Step 7 (the same rules as SugenoRules, whose consequents are linear functions
+  //         of the inputs; the SugenoRuleBatch calculates the weighted average 
+  //         of the consequents directly, with no FuzzySets)
+
+     SugenoRule sugenoBigMedium = new SugenoRule();
+     sugenoBigMedium.addAntecedent(new FuzzyValue(x,"big"));
+     sugenoBigMedium.addAntecedent(new FuzzyValue(y,"medium"));
+     sugenoBigMedium.addConsequentTerm(x, 1.0);
+     sugenoBigMedium.addConsequentTerm(y, -3.0);
+
+     SugenoRule sugenoSmallBig = new SugenoRule();
+     sugenoSmallBig.addAntecedent(new FuzzyValue(x,"small"));
+     sugenoSmallBig.addAntecedent(new FuzzyValue(y,"big"));
+     sugenoSmallBig.setConsequentConstant(4.0);
+     sugenoSmallBig.addConsequentTerm(x, 2.0);
+
+     SugenoRuleBatch sugeno = 
+        new SugenoRuleBatch(new SugenoRule[] {sugenoBigMedium, sugenoSmallBig},
+                            new FuzzyVariable[] {x, y});
+     System.out.println("SugenoRuleBatch z value is: " + 
+                        sugeno.execute(new double[] {xVal, yVal}));
   }
 
 }
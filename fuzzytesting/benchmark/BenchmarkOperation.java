@@ -0,0 +1,20 @@
+package fuzzytesting.benchmark;
+
+/**
+ * An operation to be timed by a BenchmarkRunner. The operation returns a double
+ * computed from its result (the value itself for a double result, or the number of 
+ * points of a FuzzySet, say) so that the runner can use it and the work cannot be 
+ * optimized away by the compiler.
+ *
+ * @see BenchmarkRunner
+ */
+public interface BenchmarkOperation
+{
+    /**
+     * Do the operation once.
+     *
+     * @return a value computed from the result of the operation
+     * @exception Exception if the operation fails
+     */
+    public double execute() throws Exception;
+}
@@ -0,0 +1,396 @@
+package fuzzytesting.benchmark;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.Vector;
+import examples.simulation.Histogram;
+
+/**
+ * Times BenchmarkOperations in the manner of JMH, without needing its libraries: each
+ * benchmark is run for a number of warm-up iterations (so the code is compiled before
+ * it is measured) and then for a number of measured iterations of a fixed time each.
+ * For each benchmark the throughput (operations per second) is reported with its error
+ * (the standard deviation across the measured iterations), along with the bytes
+ * allocated per operation and the allocation rate (as are reported by the JMH
+ * <code>-prof gc</code> profiler). The allocation is found from the bytes allocated by
+ * the running thread, which the HotSpot JVM keeps count of; it is reported as -1 on
+ * a JVM that does not.
+ * <p>
+ * The results can be saved to a baseline file (a line for each benchmark with its name,
+ * throughput and bytes per operation, separated by tabs) and a later run compared with
+ * the baseline, reporting the benchmarks whose throughput or allocation changed by more
+ * than a tolerance.
+ * <p>
+ * The iterations can instead each do a fixed number of operations (when the operations
+ * work through a fixed set of inputs, say), and the time of each operation in the
+ * measured iterations can be recorded in a latency histogram to report percentiles.
+ * Reading the clock for each operation adds a little to the time of each, so this is
+ * best kept for operations that take a microsecond or more.
+ *
+ * @see BenchmarkOperation
+ */
+public class BenchmarkRunner
+{
+    int warmupIterations = 2;
+    int measurementIterations = 3;
+    long iterationMillis = 200;
+    long operationsPerIteration = 0;
+    boolean recordLatency = false;
+
+    Vector results = new Vector();
+
+    // the values returned by the operations are added here so they are used
+    double sink = 0.0;
+    volatile double publishedSink;
+
+    private com.sun.management.ThreadMXBean threadBean = null;
+
+    /**
+     * Create a runner with 2 warm-up iterations and 3 measured iterations of 200 ms.
+     */
+    public BenchmarkRunner()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {   threadBean = (com.sun.management.ThreadMXBean)bean;
+            if (!threadBean.isThreadAllocatedMemorySupported())
+                threadBean = null;
+            else
+                threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    /**
+     * Set the number and length of the iterations.
+     *
+     * @param warmupIterations the number of warm-up iterations (not measured)
+     * @param measurementIterations the number of measured iterations (at least 1)
+     * @param iterationMillis the time of each iteration in milliseconds
+     */
+    public void setIterations(int warmupIterations, int measurementIterations, long iterationMillis)
+    {
+        this.warmupIterations = Math.max(0, warmupIterations);
+        this.measurementIterations = Math.max(1, measurementIterations);
+        this.iterationMillis = Math.max(1, iterationMillis);
+    }
+
+    /**
+     * Make each iteration do a fixed number of operations rather than run for a fixed time.
+     *
+     * @param operations the number of operations in each iteration, or 0 to run each
+     *        iteration for the time given to setIterations
+     */
+    public void setOperationsPerIteration(long operations)
+    {
+        operationsPerIteration = Math.max(0, operations);
+    }
+
+    /**
+     * Record the time of each operation in the measured iterations in a latency histogram.
+     *
+     * @param b true to record the latencies
+     */
+    public void setRecordLatency(boolean b)
+    {
+        recordLatency = b;
+    }
+
+    /**
+     * The result of a benchmark.
+     */
+    public static class Result
+    {
+        String name;
+        double opsPerSecond;
+        double error;
+        double bytesPerOp;
+        double allocationRate;
+        Histogram latency;
+
+        Result(String name, double opsPerSecond, double error, double bytesPerOp, double allocationRate,
+               Histogram latency)
+        {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+            this.allocationRate = allocationRate;
+            this.latency = latency;
+        }
+
+        /** @return the name of the benchmark */
+        public String getName() { return name; }
+        /** @return the mean throughput of the measured iterations, in operations per second */
+        public double getOpsPerSecond() { return opsPerSecond; }
+        /** @return the standard deviation of the throughput of the measured iterations */
+        public double getError() { return error; }
+        /** @return the bytes allocated per operation, or -1 if not known */
+        public double getBytesPerOp() { return bytesPerOp; }
+        /** @return the allocation rate in MB per second, or -1 if not known */
+        public double getAllocationRate() { return allocationRate; }
+        /** @return the latencies of the operations in nanoseconds, or null if they were not recorded */
+        public Histogram getLatency() { return latency; }
+    }
+
+    /**
+     * Run a benchmark and add its result to the results of the runner.
+     *
+     * @param name the name of the benchmark
+     * @param op the operation to time
+     * @return the result
+     * @exception Exception if the operation fails
+     */
+    public Result run(String name, BenchmarkOperation op) throws Exception
+    {
+        // find a batch size that takes about a millisecond, so the clock is
+        // read rarely compared with the operations
+        int batch = 1;
+        while (operationsPerIteration == 0)
+        {   long start = System.nanoTime();
+            runBatch(op, batch);
+            long nanos = System.nanoTime() - start;
+            if (nanos >= 1000000L || batch >= (1 << 24))
+                break;
+            batch = (nanos < 100000L) ? batch*10 : batch*2;
+        }
+
+        for (int i=0; i<warmupIterations; i++)
+            runIteration(op, batch, null);
+
+        double[] rates = new double[measurementIterations];
+        long totalOps = 0, totalNanos = 0, totalBytes = 0;
+        Histogram latency = recordLatency ? new Histogram() : null;
+        for (int i=0; i<measurementIterations; i++)
+        {   long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long ops = runIteration(op, batch, latency);
+            long nanos = System.nanoTime() - start;
+            totalBytes += allocatedBytes() - bytesBefore;
+            totalOps += ops;
+            totalNanos += nanos;
+            rates[i] = ops*1.0e9/nanos;
+        }
+        publishedSink = sink;
+
+        double mean = 0.0;
+        for (int i=0; i<rates.length; i++)
+            mean += rates[i];
+        mean /= rates.length;
+        double variance = 0.0;
+        for (int i=0; i<rates.length; i++)
+            variance += (rates[i] - mean)*(rates[i] - mean);
+        double error = (rates.length > 1) ? Math.sqrt(variance/(rates.length - 1)) : 0.0;
+        double bytesPerOp = -1.0, allocationRate = -1.0;
+        if (threadBean != null)
+        {   bytesPerOp = (double)totalBytes/totalOps;
+            allocationRate = totalBytes*1.0e9/totalNanos/(1024.0*1024.0);
+        }
+
+        Result r = new Result(name, mean, error, bytesPerOp, allocationRate, latency);
+        results.addElement(r);
+        return r;
+    }
+
+    private long runIteration(BenchmarkOperation op, int batch, Histogram latency) throws Exception
+    {
+        if (operationsPerIteration > 0)
+        {   if (latency == null)
+                runBatch(op, operationsPerIteration);
+            else
+                runTimedBatch(op, operationsPerIteration, latency);
+            return operationsPerIteration;
+        }
+
+        long end = System.nanoTime() + iterationMillis*1000000L;
+        long ops = 0;
+        do
+        {   if (latency == null)
+                runBatch(op, batch);
+            else
+                runTimedBatch(op, batch, latency);
+            ops += batch;
+        } while (System.nanoTime() < end);
+        return ops;
+    }
+
+    private void runBatch(BenchmarkOperation op, long batch) throws Exception
+    {
+        double s = 0.0;
+        for (long i=0; i<batch; i++)
+            s += op.execute();
+        sink += s;
+    }
+
+    private void runTimedBatch(BenchmarkOperation op, long batch, Histogram latency) throws Exception
+    {
+        double s = 0.0;
+        for (long i=0; i<batch; i++)
+        {   long start = System.nanoTime();
+            s += op.execute();
+            latency.record(System.nanoTime() - start);
+        }
+        sink += s;
+    }
+
+    private long allocatedBytes()
+    {
+        return (threadBean == null) ? 0 : threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Get the results of the benchmarks run so far.
+     *
+     * @return a Vector of Results
+     */
+    public Vector getResults()
+    {
+        return results;
+    }
+
+    /**
+     * Print the results of the benchmarks run so far as a table.
+     *
+     * @param out where to print them
+     */
+    public void printResults(PrintStream out)
+    {
+        int width = 9;
+        boolean latencies = false;
+        for (int i=0; i<results.size(); i++)
+        {   Result r = (Result)results.elementAt(i);
+            width = Math.max(width, r.name.length());
+            latencies |= (r.latency != null);
+        }
+        out.println(pad("Benchmark", width) + "  " + padLeft("ops/s", 14) + "  " + padLeft("error", 12) +
+                    "  " + padLeft("B/op", 10) + "  " + padLeft("MB/s", 9) +
+                    (latencies ? "  " + padLeft("p50 ns", 9) + "  " + padLeft("p99 ns", 9) : ""));
+        for (int i=0; i<results.size(); i++)
+        {   Result r = (Result)results.elementAt(i);
+            String line = pad(r.name, width) + "  " + padLeft(format(r.opsPerSecond, 1), 14) + "  " +
+                          padLeft("+- " + format(r.error, 1), 12) + "  " +
+                          padLeft(format(r.bytesPerOp, 1), 10) + "  " + padLeft(format(r.allocationRate, 1), 9);
+            if (r.latency != null)
+                line += "  " + padLeft(String.valueOf(r.latency.getPercentile(50.0)), 9) +
+                        "  " + padLeft(String.valueOf(r.latency.getPercentile(99.0)), 9);
+            out.println(line);
+        }
+    }
+
+    /**
+     * Save the results of the benchmarks run so far as a baseline.
+     *
+     * @param fileName the baseline file
+     * @exception IOException if the file cannot be written
+     */
+    public void writeBaseline(String fileName) throws IOException
+    {
+        PrintWriter out = new PrintWriter(new FileWriter(fileName));
+        try
+        {   out.println("# benchmark\tops/s\tB/op");
+            for (int i=0; i<results.size(); i++)
+            {   Result r = (Result)results.elementAt(i);
+                out.println(r.name + "\t" + format(r.opsPerSecond, 1) + "\t" + format(r.bytesPerOp, 1));
+            }
+        }
+        finally
+        {   out.close();
+        }
+    }
+
+    /**
+     * Read a baseline file.
+     *
+     * @param fileName the baseline file
+     * @return the baseline: for the name of each benchmark a double[] with its
+     *         throughput and bytes per operation
+     * @exception IOException if the file cannot be read
+     */
+    public static Hashtable readBaseline(String fileName) throws IOException
+    {
+        Hashtable baseline = new Hashtable();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        try
+        {   String line;
+            while ((line = in.readLine()) != null)
+            {   if (line.startsWith("#") || line.trim().length() == 0)
+                    continue;
+                String[] fields = line.split("\t");
+                if (fields.length < 3)
+                    continue;
+                baseline.put(fields[0], new double[] {Double.parseDouble(fields[1]),
+                                                      Double.parseDouble(fields[2])});
+            }
+        }
+        finally
+        {   in.close();
+        }
+        return baseline;
+    }
+
+    /**
+     * Compare the results of the benchmarks run so far with a baseline, printing the
+     * benchmarks whose throughput changed by more than a tolerance, or that allocate
+     * more or less than they did.
+     *
+     * @param baseline the baseline (see readBaseline)
+     * @param tolerance the fraction by which the throughput may change before it is
+     *        reported (0.1 for 10%, say)
+     * @param out where to print the changes
+     * @return the number of regressions (benchmarks that are slower by more than the
+     *         tolerance or that allocate more)
+     */
+    public int compareWithBaseline(Hashtable baseline, double tolerance, PrintStream out)
+    {
+        int regressions = 0, improvements = 0, compared = 0;
+        for (int i=0; i<results.size(); i++)
+        {   Result r = (Result)results.elementAt(i);
+            double[] base = (double[])baseline.get(r.name);
+            if (base == null)
+                continue;
+            compared++;
+            double ratio = r.opsPerSecond/base[0];
+            // allow for the rounding of the bytes per operation and the odd stray allocation
+            boolean allocatesMore = (base[1] >= 0.0 && r.bytesPerOp > base[1]*1.05 + 1.0);
+            boolean allocatesLess = (base[1] >= 0.0 && r.bytesPerOp >= 0.0 && r.bytesPerOp < base[1]*0.95 - 1.0);
+            String change = null;
+            if (ratio < 1.0 - tolerance || allocatesMore)
+            {   change = "REGRESSION ";
+                regressions++;
+            }
+            else if (ratio > 1.0 + tolerance || allocatesLess)
+            {   change = "improvement";
+                improvements++;
+            }
+            if (change != null)
+                out.println(change + "  " + r.name + ": x" + format(ratio, 2) + " ops/s, " +
+                            format(base[1], 1) + " -> " + format(r.bytesPerOp, 1) + " B/op");
+        }
+        out.println(compared + " benchmarks compared with the baseline: " + regressions +
+                    " regressions, " + improvements + " improvements");
+        return regressions;
+    }
+
+    static String format(double d, int decimals)
+    {
+        if (d != d) return "NaN";
+        java.text.NumberFormat nf = java.text.NumberFormat.getNumberInstance(java.util.Locale.US);
+        nf.setGroupingUsed(false);
+        nf.setMinimumFractionDigits(decimals);
+        nf.setMaximumFractionDigits(decimals);
+        return nf.format(d);
+    }
+
+    static String pad(String s, int width)
+    {
+        StringBuffer sb = new StringBuffer(s);
+        while (sb.length() < width) sb.append(' ');
+        return sb.toString();
+    }
+
+    static String padLeft(String s, int width)
+    {
+        StringBuffer sb = new StringBuffer();
+        for (int i=s.length(); i<width; i++) sb.append(' ');
+        return sb.append(s).toString();
+    }
+}
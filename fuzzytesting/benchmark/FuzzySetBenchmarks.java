@@ -0,0 +1,251 @@
+package fuzzytesting.benchmark;
+
+import java.util.Hashtable;
+import nrc.fuzzy.*;
+
+/**
+ * Benchmarks of the FuzzySet algebra: the intersection, union and sum of two sets,
+ * maximumOfIntersection, getMembership, getAlphaCut, simplifySet, the moment, center of
+ * area, maximum and weighted average defuzzifiers, and the ModifierFunction methods
+ * expandSet and concentrateDilute. The benchmarks are run for sets of each shape family
+ * (Triangle, Trapezoid, S, Gaussian and PI) and, for the families that are curves, for
+ * several sizes (the number of points used to approximate the curve; the Triangle and
+ * Trapezoid sets always have 3 and 4 points). The operations on two sets are also run
+ * for several overlaps: the second set is the first moved to the right by a part of
+ * its width, so an overlap of 1 means the two sets are the same and an overlap of 0
+ * means they only touch.
+ * <p>
+ * The sets lie between 30 and 50 in a universe of discourse of 0 to 100. A benchmark
+ * is named for its operation and parameters, such as
+ * <code>fuzzyUnion(shape=Gaussian,size=33,overlap=0.5)</code>. The simplifySet
+ * benchmark includes copying the set (it changes the set it simplifies);
+ * copyFuzzySet is timed on its own so the cost of the copy can be taken off.
+ * From the directory above fuzzytesting:
+ * <pre>
+ *    java fuzzytesting.benchmark.FuzzySetBenchmarks [-filter regex] [-quick]
+ *         [-baseline file [-tolerance fraction]] [-save file]
+ * </pre>
+ * -filter runs only the benchmarks whose names contain a match of the regular
+ * expression, -quick runs 1 warm-up and 1 measured iteration of 100 ms for each
+ * benchmark, -baseline compares the results with a baseline file (such as the
+ * fuzzysetbaseline.txt file checked in with the benchmarks) and reports the
+ * benchmarks that changed by more than the tolerance (0.25 by default) and -save
+ * writes the results as a new baseline file. The program exits with status 1 if
+ * the comparison with the baseline found regressions.
+ *
+ * @see BenchmarkRunner
+ */
+public class FuzzySetBenchmarks
+{
+    public static final String[] SHAPES = {"Triangle", "Trapezoid", "S", "Gaussian", "PI"};
+    public static final int[] SIZES = {9, 33, 129};
+    public static final double[] OVERLAPS = {0.0, 0.5, 1.0};
+
+    static final double LEFT = 30.0;
+    static final double WIDTH = 20.0;
+    static final double MIN_UOD = 0.0;
+    static final double MAX_UOD = 100.0;
+
+    BenchmarkRunner runner;
+    java.util.regex.Pattern filter = null;
+
+    /**
+     * Create the benchmarks.
+     *
+     * @param runner the runner to time the benchmarks with
+     */
+    public FuzzySetBenchmarks(BenchmarkRunner runner)
+    {
+        this.runner = runner;
+    }
+
+    /**
+     * Only run the benchmarks whose names contain a match of a regular expression.
+     *
+     * @param regex the regular expression, or null to run all of the benchmarks
+     */
+    public void setFilter(String regex)
+    {
+        filter = (regex == null) ? null : java.util.regex.Pattern.compile(regex);
+    }
+
+    /**
+     * Create a set of a shape family, lying between left and left + WIDTH.
+     *
+     * @param shape one of SHAPES
+     * @param size the number of points used to approximate a curve
+     * @param left the left edge of the set
+     * @return the set
+     * @exception FuzzyException if the set cannot be created
+     */
+    public static FuzzySet createSet(String shape, int size, double left) throws FuzzyException
+    {
+        double center = left + WIDTH/2.0;
+        if (shape.equals("Triangle"))
+            return new TriangleFuzzySet(left, center, left + WIDTH);
+        if (shape.equals("Trapezoid"))
+            return new TrapezoidFuzzySet(left, left + WIDTH*0.3, left + WIDTH*0.7, left + WIDTH);
+        if (shape.equals("S"))
+            return new SFuzzySet(left, left + WIDTH, size);
+        if (shape.equals("Gaussian"))
+            return new GaussianFuzzySet(center, WIDTH/8.0, size);
+        if (shape.equals("PI"))
+            return new PIFuzzySet(center, WIDTH/2.0, size);
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+
+    /**
+     * Run all of the benchmarks (that pass the filter).
+     *
+     * @exception Exception if a benchmark fails
+     */
+    public void runAll() throws Exception
+    {
+        for (int s=0; s<SHAPES.length; s++)
+        {   String shape = SHAPES[s];
+            boolean curve = !(shape.equals("Triangle") || shape.equals("Trapezoid"));
+            int numSizes = curve ? SIZES.length : 1;
+            for (int z=0; z<numSizes; z++)
+            {   int size = SIZES[z];
+                String params = "shape=" + shape + (curve ? ",size=" + size : "");
+                final FuzzySet a = createSet(shape, size, LEFT);
+                runUnary(params, a);
+                for (int o=0; o<OVERLAPS.length; o++)
+                {   final FuzzySet b = createSet(shape, size, LEFT + (1.0 - OVERLAPS[o])*WIDTH);
+                    runBinary(params + ",overlap=" + OVERLAPS[o], a, b);
+                }
+            }
+        }
+    }
+
+    /** Run the benchmarks of the operations on one set. */
+    void runUnary(String params, final FuzzySet a) throws Exception
+    {
+        // the x values at which getMembership is timed, spread across the set and
+        // a little beyond it
+        final double[] xs = new double[64];
+        for (int i=0; i<xs.length; i++)
+            xs[i] = LEFT - WIDTH*0.1 + i*WIDTH*1.2/(xs.length - 1);
+
+        run("getMembership(" + params + ")", new BenchmarkOperation()
+            {   int i = 0;
+                public double execute()
+                {   i = (i + 1) & 63;
+                    return a.getMembership(xs[i]);
+                }
+            });
+        run("getAlphaCut(" + params + ")", new BenchmarkOperation()
+            {   public double execute()
+                {   IntervalVector iv = a.getAlphaCut(Parameters.WEAK, 0.5, MIN_UOD, MAX_UOD);
+                    return (iv == null) ? 0.0 : iv.size();
+                }
+            });
+        run("copyFuzzySet(" + params + ")", new BenchmarkOperation()
+            {   public double execute() throws CloneNotSupportedException
+                {   return a.copyFuzzySet().size();
+                }
+            });
+        run("simplifySet(" + params + ")", new BenchmarkOperation()
+            {   public double execute() throws CloneNotSupportedException
+                {   FuzzySet copy = a.copyFuzzySet();
+                    copy.simplifySet();
+                    return copy.size();
+                }
+            });
+        run("momentDefuzzify(" + params + ")", new BenchmarkOperation()
+            {   public double execute() throws FuzzyException
+                {   return a.momentDefuzzify(MIN_UOD, MAX_UOD);
+                }
+            });
+        run("centerOfAreaDefuzzify(" + params + ")", new BenchmarkOperation()
+            {   public double execute() throws FuzzyException
+                {   return a.centerOfAreaDefuzzify(MIN_UOD, MAX_UOD);
+                }
+            });
+        run("maximumDefuzzify(" + params + ")", new BenchmarkOperation()
+            {   public double execute() throws FuzzyException
+                {   return a.maximumDefuzzify(MIN_UOD, MAX_UOD);
+                }
+            });
+        run("weightedAverageDefuzzify(" + params + ")", new BenchmarkOperation()
+            {   public double execute() throws FuzzyException
+                {   return a.weightedAverageDefuzzify(MIN_UOD, MAX_UOD);
+                }
+            });
+        run("expandSet(" + params + ")", new BenchmarkOperation()
+            {   public double execute()
+                {   return ModifierFunction.expandSet(a).size();
+                }
+            });
+        run("concentrateDilute(" + params + ")", new BenchmarkOperation()
+            {   public double execute()
+                {   return ModifierFunction.concentrateDilute(a, 2.0).size();
+                }
+            });
+    }
+
+    /** Run the benchmarks of the operations on two sets. */
+    void runBinary(String params, final FuzzySet a, final FuzzySet b) throws Exception
+    {
+        run("fuzzyIntersection(" + params + ")", new BenchmarkOperation()
+            {   public double execute()
+                {   return a.fuzzyIntersection(b).size();
+                }
+            });
+        run("fuzzyUnion(" + params + ")", new BenchmarkOperation()
+            {   public double execute()
+                {   return a.fuzzyUnion(b).size();
+                }
+            });
+        run("fuzzySum(" + params + ")", new BenchmarkOperation()
+            {   public double execute()
+                {   return a.fuzzySum(b).size();
+                }
+            });
+        run("maximumOfIntersection(" + params + ")", new BenchmarkOperation()
+            {   public double execute()
+                {   return a.maximumOfIntersection(b);
+                }
+            });
+    }
+
+    void run(String name, BenchmarkOperation op) throws Exception
+    {
+        if (filter != null && !filter.matcher(name).find())
+            return;
+        runner.run(name, op);
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        FuzzySetBenchmarks benchmarks = new FuzzySetBenchmarks(runner);
+        String baselineFile = null, saveFile = null;
+        double tolerance = 0.25;
+        for (int i=0; i<args.length; i++)
+        {   if (args[i].equals("-filter") && i+1 < args.length)
+                benchmarks.setFilter(args[++i]);
+            else if (args[i].equals("-quick"))
+                runner.setIterations(1, 1, 100);
+            else if (args[i].equals("-baseline") && i+1 < args.length)
+                baselineFile = args[++i];
+            else if (args[i].equals("-tolerance") && i+1 < args.length)
+                tolerance = Double.parseDouble(args[++i]);
+            else if (args[i].equals("-save") && i+1 < args.length)
+                saveFile = args[++i];
+            else
+            {   System.err.println("Usage: FuzzySetBenchmarks [-filter regex] [-quick] [-baseline file [-tolerance fraction]] [-save file]");
+                System.exit(1);
+            }
+        }
+
+        // read the baseline first, so that -save can replace it
+        Hashtable baseline = (baselineFile == null) ? null : BenchmarkRunner.readBaseline(baselineFile);
+        benchmarks.runAll();
+        runner.printResults(System.out);
+        if (saveFile != null)
+            runner.writeBaseline(saveFile);
+        if (baseline != null && runner.compareWithBaseline(baseline, tolerance, System.out) > 0)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,410 @@
+package fuzzytesting.benchmark;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Hashtable;
+import java.util.Random;
+import nrc.fuzzy.*;
+import examples.simulation.PendulumSimulation;
+import examples.simulation.TruckBackerUpper;
+
+/**
+ * End-to-end benchmarks of fuzzy inference with the rule sets shipped with FuzzyJ,
+ * each making a fixed number of decisions from inputs chosen at random from a seed:
+ * <ul>
+ * <li> the 11 rules of the inverted pendulum controller (examples.simulation.PendulumSimulation,
+ *      as used by the fuzzypendulum example), deciding the motor current from the error
+ *      and angular velocity;
+ * <li> the 5x7 grid of rules of the truck backer-upper (examples.simulation.TruckBackerUpper,
+ *      as used by the fuzzytruckswing example), deciding the change of angle from the
+ *      position and angle of the truck;
+ * <li> the rules of the examples.sugenorule example, fired by the SugenoRuleBatch and,
+ *      as the example also does, as FuzzyRules with singleton conclusions;
+ * <li> the rules of the examples.tsukamotorule example, fired with the TsukamotoRuleExecutor;
+ * <li> the FuzzyJess programs examples/FuzzyJessExamples/fuzzyCompiler.clp and
+ *      fuzzytesting/FuzzyTestJessOnly/TestFuzzy-match1.clp to TestFuzzy-match4.clp,
+ *      where a decision is one run of the whole program. These need Jess and the
+ *      nrc.fuzzy.jess classes on the classpath and are skipped (with a message) if they
+ *      cannot be loaded or run.
+ * </ul>
+ * The pendulum and truck rules are run with the Mamdani (MamdaniMinMaxMinRuleExecutor)
+ * and Larsen (LarsenProductMaxMinRuleExecutor) rule executors. For each benchmark the
+ * decisions per second, the 50th and 99th percentiles of the time taken by a decision
+ * and the bytes allocated per decision are reported (see BenchmarkRunner). From the
+ * directory that holds the examples and fuzzytesting directories:
+ * <pre>
+ *    java fuzzytesting.benchmark.InferenceBenchmarks [-inferences n] [-seed n] [-filter regex]
+ *         [-quick] [-baseline file [-tolerance fraction]] [-save file]
+ * </pre>
+ * makes 10000 decisions (10 runs for the Jess programs) in each of 2 warm-up and
+ * 3 measured iterations, with seed 1, by default; -quick does 1 warm-up and 1
+ * measured iteration. The other options are those of FuzzySetBenchmarks.
+ * The FuzzyJess programs change the default rule executor and antecedent combine
+ * operator of FuzzyRules, so they are run last.
+ *
+ * @see BenchmarkRunner
+ * @see FuzzySetBenchmarks
+ */
+public class InferenceBenchmarks
+{
+    public static final String[] JESS_PROGRAMS =
+        {"examples/FuzzyJessExamples/fuzzyCompiler.clp",
+         "fuzzytesting/FuzzyTestJessOnly/TestFuzzy-match1.clp",
+         "fuzzytesting/FuzzyTestJessOnly/TestFuzzy-match2.clp",
+         "fuzzytesting/FuzzyTestJessOnly/TestFuzzy-match3.clp",
+         "fuzzytesting/FuzzyTestJessOnly/TestFuzzy-match4.clp"};
+
+    BenchmarkRunner runner;
+    int inferences = 10000;
+    int jessRuns = 10;
+    long seed = 1;
+    java.util.regex.Pattern filter = null;
+
+    /**
+     * Create the benchmarks.
+     *
+     * @param runner the runner to time the benchmarks with
+     */
+    public InferenceBenchmarks(BenchmarkRunner runner)
+    {
+        this.runner = runner;
+        runner.setRecordLatency(true);
+    }
+
+    /**
+     * Set the number of decisions made in each iteration and the seed of their inputs.
+     *
+     * @param inferences the number of decisions
+     * @param seed the seed
+     */
+    public void setInferences(int inferences, long seed)
+    {
+        this.inferences = Math.max(1, inferences);
+        this.seed = seed;
+    }
+
+    /**
+     * Only run the benchmarks whose names contain a match of a regular expression.
+     *
+     * @param regex the regular expression, or null to run all of the benchmarks
+     */
+    public void setFilter(String regex)
+    {
+        filter = (regex == null) ? null : java.util.regex.Pattern.compile(regex);
+    }
+
+    /**
+     * Run all of the benchmarks (that pass the filter).
+     *
+     * @exception Exception if a benchmark fails
+     */
+    public void runAll() throws Exception
+    {
+        runPendulum("Mamdani");
+        runPendulum("Larsen");
+        runTruck("Mamdani");
+        runTruck("Larsen");
+        runSugeno();
+        runTsukamoto();
+        for (int i=0; i<JESS_PROGRAMS.length; i++)
+            runJess(JESS_PROGRAMS[i]);
+    }
+
+    static FuzzyRuleExecutor createExecutor(String executor)
+    {
+        if (executor.equals("Larsen"))
+            return new LarsenProductMaxMinRuleExecutor();
+        return new MamdaniMinMaxMinRuleExecutor();
+    }
+
+    /** An array of n values chosen at random between min and max. */
+    double[] randomInputs(Random random, double min, double max)
+    {
+        double[] values = new double[inferences];
+        for (int i=0; i<inferences; i++)
+            values[i] = min + random.nextDouble()*(max - min);
+        return values;
+    }
+
+    void runPendulum(String executor) throws Exception
+    {
+        final PendulumSimulation pendulum = new PendulumSimulation();
+        for (int i=0; i<PendulumSimulation.NUM_RULES; i++)
+            pendulum.getFuzzyRule(i).setRuleExecutor(createExecutor(executor));
+        Random random = new Random(seed);
+        final double[] errors = randomInputs(random, PendulumSimulation.ERROR_MIN, PendulumSimulation.ERROR_MAX);
+        final double[] omegas = randomInputs(random, PendulumSimulation.OMEGA_MIN, PendulumSimulation.OMEGA_MAX);
+        run("pendulum(executor=" + executor + ")", inferences, new BenchmarkOperation()
+            {   int i = -1;
+                public double execute() throws FuzzyException
+                {   if (++i == errors.length) i = 0;
+                    pendulum.fireRules(errors[i], omegas[i]);
+                    return pendulum.getCurrent();
+                }
+            });
+    }
+
+    void runTruck(String executor) throws Exception
+    {
+        final TruckBackerUpper truck = new TruckBackerUpper();
+        for (int i=0; i<TruckBackerUpper.ROWS; i++)
+            for (int j=0; j<TruckBackerUpper.COLUMNS; j++)
+                truck.getFuzzyRule(i, j).setRuleExecutor(createExecutor(executor));
+        Random random = new Random(seed);
+        final double[] xs = randomInputs(random, 0.0, 100.0);
+        final double[] phis = randomInputs(random, -90.0, 270.0);
+        run("truck(executor=" + executor + ")", inferences, new BenchmarkOperation()
+            {   int i = -1;
+                public double execute() throws FuzzyException
+                {   if (++i == xs.length) i = 0;
+                    truck.reset(xs[i], 50.0, phis[i]);
+                    truck.step();
+                    return truck.getChangePhi();
+                }
+            });
+    }
+
+    void runSugeno() throws Exception
+    {
+        // the fuzzy variables and rules of examples.sugenorule.sugenoRule
+        final FuzzyVariable x = new FuzzyVariable("x", 0.0, 10.0, "");
+        x.addTerm("small", new RightLinearFuzzySet(0.0, 10.0));
+        x.addTerm("big", new LeftLinearFuzzySet(0.0, 10.0));
+        final FuzzyVariable y = new FuzzyVariable("y", 0.0, 100.0, "");
+        y.addTerm("medium", new TriangleFuzzySet(10, 50.0, 90.0));
+        y.addTerm("big", new LeftLinearFuzzySet(38.0, 100.0));
+        final FuzzyVariable z = new FuzzyVariable("z", -300.0, 300.0, "");
+
+        // IF x is big AND y is medium THEN z = x - 3y
+        SugenoRule sugenoBigMedium = new SugenoRule();
+        sugenoBigMedium.addAntecedent(new FuzzyValue(x,"big"));
+        sugenoBigMedium.addAntecedent(new FuzzyValue(y,"medium"));
+        sugenoBigMedium.addConsequentTerm(x, 1.0);
+        sugenoBigMedium.addConsequentTerm(y, -3.0);
+        // IF x is small AND y is big THEN z = 4 + 2x
+        SugenoRule sugenoSmallBig = new SugenoRule();
+        sugenoSmallBig.addAntecedent(new FuzzyValue(x,"small"));
+        sugenoSmallBig.addAntecedent(new FuzzyValue(y,"big"));
+        sugenoSmallBig.setConsequentConstant(4.0);
+        sugenoSmallBig.addConsequentTerm(x, 2.0);
+        final SugenoRuleBatch sugeno =
+            new SugenoRuleBatch(new SugenoRule[] {sugenoBigMedium, sugenoSmallBig},
+                                new FuzzyVariable[] {x, y});
+
+        // the same rules as FuzzyRules with singleton conclusions, as the example
+        // first fires them
+        final FuzzyRule bigMedium = new FuzzyRule();
+        bigMedium.addAntecedent(new FuzzyValue(x,"big"));
+        bigMedium.addAntecedent(new FuzzyValue(y,"medium"));
+        final FuzzyRule smallBig = new FuzzyRule();
+        smallBig.addAntecedent(new FuzzyValue(x,"small"));
+        smallBig.addAntecedent(new FuzzyValue(y,"big"));
+
+        // inputs for which both rules fire
+        Random random = new Random(seed);
+        final double[] xs = randomInputs(random, 0.5, 9.5);
+        final double[] ys = randomInputs(random, 40.0, 88.0);
+        run("sugenorule(executor=Sugeno)", inferences, new BenchmarkOperation()
+            {   int i = -1;
+                double[] inputs = new double[2];
+                public double execute() throws FuzzyException
+                {   if (++i == xs.length) i = 0;
+                    inputs[0] = xs[i];
+                    inputs[1] = ys[i];
+                    return sugeno.execute(inputs);
+                }
+            });
+        run("sugenorule(executor=Mamdani,singletons)", inferences, new BenchmarkOperation()
+            {   int i = -1;
+                public double execute() throws FuzzyException
+                {   if (++i == xs.length) i = 0;
+                    double xVal = xs[i], yVal = ys[i];
+                    FuzzyValue xFVal = new FuzzyValue(x, new SingletonFuzzySet(xVal));
+                    FuzzyValue yFVal = new FuzzyValue(y, new SingletonFuzzySet(yVal));
+                    bigMedium.removeAllInputs();
+                    bigMedium.addInput(xFVal);
+                    bigMedium.addInput(yFVal);
+                    smallBig.removeAllInputs();
+                    smallBig.addInput(xFVal);
+                    smallBig.addInput(yFVal);
+                    bigMedium.removeAllConclusions();
+                    bigMedium.addConclusion(new FuzzyValue(z, new SingletonFuzzySet(xVal - 3.0*yVal)));
+                    smallBig.removeAllConclusions();
+                    smallBig.addConclusion(new FuzzyValue(z, new SingletonFuzzySet(4.0 + 2.0*xVal)));
+                    FuzzyValueVector zfvv1 = bigMedium.execute();
+                    FuzzyValueVector zfvv2 = smallBig.execute();
+                    FuzzyValue zFVal = zfvv1.fuzzyValueAt(0).fuzzySum(zfvv2.fuzzyValueAt(0));
+                    return zFVal.weightedAverageDefuzzify();
+                }
+            });
+    }
+
+    void runTsukamoto() throws Exception
+    {
+        // the fuzzy variables and rules of examples.tsukamotorule.tsukamotoRule
+        final FuzzyVariable x = new FuzzyVariable("x", 0.0, 10.0, "");
+        x.addTerm("small", new RightLinearFuzzySet(0.0, 10.0));
+        x.addTerm("big", new LeftLinearFuzzySet(0.0, 10.0));
+        final FuzzyVariable y = new FuzzyVariable("y", 0.0, 100.0, "");
+        y.addTerm("medium", new TriangleFuzzySet(10, 50.0, 90.0));
+        y.addTerm("big", new LeftLinearFuzzySet(38.0, 100.0));
+        FuzzyVariable z = new FuzzyVariable("z", 0.0, 3.0, "meters");
+        z.addTerm("short", new RightLinearFuzzySet(1.0, 2.0));
+        z.addTerm("tall", new LeftLinearFuzzySet(1.0, 2.0));
+
+        // IF x is big AND y is medium THEN z = tall
+        final FuzzyRule bigMedium = new FuzzyRule(new TsukamotoRuleExecutor());
+        bigMedium.addAntecedent(new FuzzyValue(x,"big"));
+        bigMedium.addAntecedent(new FuzzyValue(y,"medium"));
+        bigMedium.addConclusion(new FuzzyValue(z,"tall"));
+        // IF x is small AND y is big THEN  z = short
+        final FuzzyRule smallBig = new FuzzyRule(new TsukamotoRuleExecutor());
+        smallBig.addAntecedent(new FuzzyValue(x,"small"));
+        smallBig.addAntecedent(new FuzzyValue(y,"big"));
+        smallBig.addConclusion(new FuzzyValue(z,"short"));
+
+        // inputs for which both rules fire
+        Random random = new Random(seed);
+        final double[] xs = randomInputs(random, 0.5, 9.5);
+        final double[] ys = randomInputs(random, 40.0, 88.0);
+        run("tsukamotorule(executor=Tsukamoto)", inferences, new BenchmarkOperation()
+            {   int i = -1;
+                public double execute() throws FuzzyException
+                {   if (++i == xs.length) i = 0;
+                    FuzzyValue xFVal = new FuzzyValue(x, new SingletonFuzzySet(xs[i]));
+                    FuzzyValue yFVal = new FuzzyValue(y, new SingletonFuzzySet(ys[i]));
+                    bigMedium.removeAllInputs();
+                    bigMedium.addInput(xFVal);
+                    bigMedium.addInput(yFVal);
+                    smallBig.removeAllInputs();
+                    smallBig.addInput(xFVal);
+                    smallBig.addInput(yFVal);
+                    FuzzyValueVector zfvv1 = bigMedium.execute();
+                    FuzzyValueVector zfvv2 = smallBig.execute();
+                    FuzzyValue zFVal = zfvv1.fuzzyValueAt(0).fuzzySum(zfvv2.fuzzyValueAt(0));
+                    return zFVal.weightedAverageDefuzzify();
+                }
+            });
+    }
+
+    /**
+     * Run a FuzzyJess program, through reflection so that the benchmarks can be compiled
+     * and run without Jess. The program is run in a new FuzzyRete each time with its
+     * output thrown away, and any (exit) in it is left out.
+     */
+    void runJess(String fileName) throws Exception
+    {
+        String name = "jess(program=" + new File(fileName).getName() + ")";
+        if (filter != null && !filter.matcher(name).find())
+            return;
+
+        final Method addOutputRouter, executeCommand;
+        final Class reteClass;
+        final String program;
+        try
+        {   reteClass = Class.forName("nrc.fuzzy.jess.FuzzyRete");
+            addOutputRouter = reteClass.getMethod("addOutputRouter", new Class[] {String.class, Writer.class});
+            executeCommand = reteClass.getMethod("executeCommand", new Class[] {String.class});
+            program = readProgram(fileName);
+        }
+        catch (Throwable t)
+        {   System.err.println(name + " skipped: " + t);
+            return;
+        }
+
+        final Writer nowhere = new Writer()
+            {   public void write(char[] cbuf, int off, int len) {}
+                public void flush() {}
+                public void close() {}
+            };
+        BenchmarkOperation op = new BenchmarkOperation()
+            {   public double execute() throws Exception
+                {   Object engine = reteClass.getConstructor(new Class[0]).newInstance(new Object[0]);
+                    String[] routers = {"t", "WSTDOUT", "WSTDERR"};
+                    for (int r=0; r<routers.length; r++)
+                        addOutputRouter.invoke(engine, new Object[] {routers[r], nowhere});
+                    executeCommand.invoke(engine, new Object[] {program});
+                    return 1.0;
+                }
+            };
+        try
+        {   op.execute();
+        }
+        catch (Throwable t)
+        {   if (t instanceof InvocationTargetException)
+                t = ((InvocationTargetException)t).getTargetException();
+            System.err.println(name + " skipped: " + t);
+            return;
+        }
+        run(name, jessRuns, op);
+    }
+
+    static String readProgram(String fileName) throws IOException
+    {
+        StringBuffer sb = new StringBuffer();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        try
+        {   String line;
+            while ((line = in.readLine()) != null)
+            {   if (line.trim().startsWith("(exit)"))
+                    continue;
+                sb.append(line).append('\n');
+            }
+        }
+        finally
+        {   in.close();
+        }
+        return sb.toString();
+    }
+
+    void run(String name, int operations, BenchmarkOperation op) throws Exception
+    {
+        if (filter != null && !filter.matcher(name).find())
+            return;
+        runner.setOperationsPerIteration(operations);
+        runner.run(name, op);
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        InferenceBenchmarks benchmarks = new InferenceBenchmarks(runner);
+        String baselineFile = null, saveFile = null;
+        double tolerance = 0.25;
+        int inferences = 10000;
+        long seed = 1;
+        for (int i=0; i<args.length; i++)
+        {   if (args[i].equals("-inferences") && i+1 < args.length)
+                inferences = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-seed") && i+1 < args.length)
+                seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-filter") && i+1 < args.length)
+                benchmarks.setFilter(args[++i]);
+            else if (args[i].equals("-quick"))
+                runner.setIterations(1, 1, 100);
+            else if (args[i].equals("-baseline") && i+1 < args.length)
+                baselineFile = args[++i];
+            else if (args[i].equals("-tolerance") && i+1 < args.length)
+                tolerance = Double.parseDouble(args[++i]);
+            else if (args[i].equals("-save") && i+1 < args.length)
+                saveFile = args[++i];
+            else
+            {   System.err.println("Usage: InferenceBenchmarks [-inferences n] [-seed n] [-filter regex] [-quick] [-baseline file [-tolerance fraction]] [-save file]");
+                System.exit(1);
+            }
+        }
+        benchmarks.setInferences(inferences, seed);
+
+        // read the baseline first, so that -save can replace it
+        Hashtable baseline = (baselineFile == null) ? null : BenchmarkRunner.readBaseline(baselineFile);
+        benchmarks.runAll();
+        System.out.println(inferences + " decisions per iteration (" + benchmarks.jessRuns +
+                           " runs for the Jess programs), seed " + seed + "; ops/s are decisions per second");
+        runner.printResults(System.out);
+        if (saveFile != null)
+            runner.writeBaseline(saveFile);
+        if (baseline != null && runner.compareWithBaseline(baseline, tolerance, System.out) > 0)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,239 @@
+package fuzzytesting.benchmark;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import examples.simulation.Histogram;
+
+/**
+ * A load generator for nrc.fuzzy.FuzzyInferenceServer. A number of client threads
+ * each send requests to evaluate a model, one after another, for a fixed time; each
+ * request has a number of rows of inputs chosen at random (from a seed) within the
+ * universes of discourse of the model's inputs, which are read from the server
+ * first. The requests are sent as JSON or, with -binary, in the binary form.
+ * <p>
+ * At the end it reports the requests and rows per second, the errors and the 50th,
+ * 90th and 99th percentiles and maximum of the latency seen by the clients, followed
+ * by the server's statistics for the model (which show how many rows it evaluated
+ * in each block). From the directory above fuzzytesting, with a server running:
+ * <pre>
+ *    java fuzzytesting.benchmark.InferenceServerLoadGenerator [-url url] [-model name]
+ *         [-clients n] [-rows n] [-seconds n] [-seed n] [-binary] [-fuzzy]
+ * </pre>
+ * The url is that of the server (http://127.0.0.1:8771 by default) and the model is
+ * shower by default. 16 clients each send requests of 1 row for 10 seconds by 
+ * default; -fuzzy asks for the fuzzy outputs as well.
+ *
+ * @see nrc.fuzzy.FuzzyInferenceServer
+ */
+public class InferenceServerLoadGenerator
+{
+    String url = "http://127.0.0.1:8771";
+    String model = "shower";
+    int clients = 16;
+    int rows = 1;
+    int seconds = 10;
+    long seed = 1;
+    boolean binary = false;
+    boolean fuzzy = false;
+
+    double[] minimums, maximums;
+
+    /** One client, sending requests until the end time. */
+    class Client extends Thread
+    {
+        Random random;
+        long end;
+        Histogram latency = new Histogram();
+        long requests = 0, errors = 0;
+        String lastError = null;
+
+        Client(long seed, long end)
+        {
+            random = new Random(seed);
+            this.end = end;
+        }
+
+        public void run()
+        {
+            URL target;
+            try
+            {   target = new URL(url + "/models/" + model + "/evaluate" + (fuzzy ? "?fuzzy=true" : ""));
+            }
+            catch (IOException e)
+            {   lastError = e.toString();
+                return;
+            }
+            while (System.nanoTime() < end)
+            {   byte[] body = binary ? binaryRequest() : jsonRequest();
+                long start = System.nanoTime();
+                try
+                {   HttpURLConnection connection = (HttpURLConnection)target.openConnection();
+                    connection.setRequestMethod("POST");
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", binary ? "application/octet-stream" : "application/json");
+                    connection.setFixedLengthStreamingMode(body.length);
+                    OutputStream out = connection.getOutputStream();
+                    out.write(body);
+                    out.close();
+                    int status = connection.getResponseCode();
+                    InputStream in = (status == 200) ? connection.getInputStream() : connection.getErrorStream();
+                    String reply = read(in);
+                    if (status != 200)
+                    {   errors++;
+                        lastError = reply;
+                    }
+                }
+                catch (IOException e)
+                {   errors++;
+                    lastError = e.toString();
+                }
+                latency.record((System.nanoTime() - start)/1000);
+                requests++;
+            }
+        }
+
+        double input(int v)
+        {
+            return minimums[v] + random.nextDouble()*(maximums[v] - minimums[v]);
+        }
+
+        byte[] jsonRequest()
+        {
+            StringBuffer sb = new StringBuffer("{\"inputs\":[");
+            for (int j=0; j<rows; j++)
+            {   sb.append((j == 0) ? "[" : ",[");
+                for (int v=0; v<minimums.length; v++)
+                    sb.append((v == 0) ? "" : ",").append(input(v));
+                sb.append(']');
+            }
+            return sb.append("]}").toString().getBytes();
+        }
+
+        byte[] binaryRequest()
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try
+            {   out.writeInt(rows);
+                out.writeInt(minimums.length);
+                for (int j=0; j<rows; j++)
+                    for (int v=0; v<minimums.length; v++)
+                        out.writeDouble(input(v));
+            }
+            catch (IOException e)
+            {   // not thrown by a ByteArrayOutputStream
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /** Read a stream to the end (so the connection can be kept alive) as a String. */
+    static String read(InputStream in) throws IOException
+    {
+        if (in == null)
+            return "";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            bytes.write(buffer, 0, n);
+        in.close();
+        return new String(bytes.toByteArray(), "UTF-8");
+    }
+
+    /** Get the model's description (or statistics) from the server. */
+    String describeModel() throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection)new URL(url + "/models/" + model).openConnection();
+        int status = connection.getResponseCode();
+        String reply = read((status == 200) ? connection.getInputStream() : connection.getErrorStream());
+        if (status != 200)
+            throw new IOException("The server answered " + status + ": " + reply);
+        return reply;
+    }
+
+    /**
+     * Run the clients and report the results.
+     *
+     * @param out the stream to report on
+     * @exception Exception if the model cannot be described by the server
+     */
+    public void run(PrintStream out) throws Exception
+    {
+        Matcher m = Pattern.compile("\\{\"name\":\"[^\"]*\",\"min\":([^,]+),\"max\":([^}]+)\\}")
+                           .matcher(describeModel());
+        Vector ranges = new Vector();
+        while (m.find())
+            ranges.addElement(new double[] {Double.parseDouble(m.group(1)), Double.parseDouble(m.group(2))});
+        minimums = new double[ranges.size()];
+        maximums = new double[ranges.size()];
+        for (int v=0; v<minimums.length; v++)
+        {   minimums[v] = ((double[])ranges.elementAt(v))[0];
+            maximums[v] = ((double[])ranges.elementAt(v))[1];
+        }
+
+        long start = System.nanoTime();
+        long end = start + seconds*1000000000L;
+        Client[] threads = new Client[clients];
+        for (int c=0; c<clients; c++)
+        {   threads[c] = new Client(seed + c, end);
+            threads[c].start();
+        }
+        Histogram latency = new Histogram();
+        long requests = 0, errors = 0;
+        String lastError = null;
+        for (int c=0; c<clients; c++)
+        {   threads[c].join();
+            latency.add(threads[c].latency);
+            requests += threads[c].requests;
+            errors += threads[c].errors;
+            if (threads[c].lastError != null)
+                lastError = threads[c].lastError;
+        }
+        double elapsed = (System.nanoTime() - start)/1e9;
+
+        out.println(clients + " clients, " + rows + " row(s) per request, " + 
+                    (binary ? "binary" : "JSON") + (fuzzy ? " with fuzzy outputs" : "") + 
+                    ", " + Math.round(elapsed*10)/10.0 + " s");
+        out.println("  requests/s " + Math.round(requests/elapsed) + ", rows/s " + Math.round(requests*rows/elapsed) + 
+                    ", errors " + errors);
+        out.println("  latency (us): p50 " + latency.getPercentile(50.0) + ", p90 " + latency.getPercentile(90.0) + 
+                    ", p99 " + latency.getPercentile(99.0) + ", max " + latency.getMaximum());
+        if (lastError != null)
+            out.println("  last error: " + lastError);
+        out.println("  server: " + describeModel());
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        InferenceServerLoadGenerator generator = new InferenceServerLoadGenerator();
+        for (int i=0; i<args.length; i++)
+        {   if (args[i].equals("-url") && i+1 < args.length)
+                generator.url = args[++i];
+            else if (args[i].equals("-model") && i+1 < args.length)
+                generator.model = args[++i];
+            else if (args[i].equals("-clients") && i+1 < args.length)
+                generator.clients = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-rows") && i+1 < args.length)
+                generator.rows = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-seconds") && i+1 < args.length)
+                generator.seconds = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-seed") && i+1 < args.length)
+                generator.seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-binary"))
+                generator.binary = true;
+            else if (args[i].equals("-fuzzy"))
+                generator.fuzzy = true;
+            else
+            {   System.err.println("Usage: InferenceServerLoadGenerator [-url url] [-model name] [-clients n] [-rows n] [-seconds n] [-seed n] [-binary] [-fuzzy]");
+                System.exit(1);
+            }
+        }
+        generator.run(System.out);
+    }
+}
@@ -669,6 +669,19 @@ System.out.println("fvv3 size is: " + fvv3.size());
 		    System.out.println(fv10b);
 		    FuzzyValue.setConfineFuzzySetsToUOD(true);
 		    
+		    // union where the second set crosses the flat top of the first exactly
+		    // at one of its corners (the corner used to be dropped)
+		    double xx26[] = { -45, -44.71869030714503, -24.812460204763354, -23.794761312174874, -6.205238687825126, -5 };
+		    double yy26[] = { 0, 0.01875397952366453, 0.01875397952366453, 0.12052386878251253, 0.12052386878251253, 0 };
+		    double xx27[] = { -25, -22.1306064377069, -7.8693935622931015, -5 };
+		    double yy27[] = { 0, 0.28693935622931016, 0.28693935622931016, 0 };
+		    FuzzySet fs26 = new FuzzySet(xx26, yy26, xx26.length);
+		    FuzzySet fs27 = new FuzzySet(xx27, yy27, xx27.length);
+		    FuzzySet fs28 = fs26.fuzzyUnion(fs27);
+		    System.out.println();
+		    System.out.println(fs28);
+		    System.out.println("Moment defuzzify is " + fs28.momentDefuzzify(-45, 45) + "  expecting -16.40655...");
+		    
 		  }
 		catch (Exception e)
 		  {//System.err.println("error: " + e + "\n" + e.getMessage());